@@ -69,6 +69,37 @@ public class AgentProperties{
      */
     public static final Property<Integer> VM_MEMBALLOON_STATS_PERIOD = new Property<>("vm.memballoon.stats.period", 0);
 
+    /**
+     * The number of threads used to collect the statistics of the VMs in parallel when handling a GetVmStatsCommand.<br>
+     * A value of 1 collects them serially.<br>
+     * Data type: Integer.<br>
+     * Default value: <code>8</code>
+     */
+    public static final Property<Integer> VM_STATS_COLLECTION_THREADS = new Property<>("vm.stats.collection.threads", 8);
+
+    /**
+     * Whether the scripts and files sent to virtual routers go through a persistent SSH connection per router, with each command
+     * multiplexed as a new session on it, instead of a new SSH connection (router_proxy.sh) per command.<br>
+     * Data type: Boolean.<br>
+     * Default value: <code>false</code>
+     */
+    public static final Property<Boolean> ROUTER_CONTROL_CHANNEL_ENABLE = new Property<>("router.control.channel.enable", false);
+
+    /**
+     * The time (in seconds) after which an unused virtual router control connection is closed.<br>
+     * Data type: Integer.<br>
+     * Default value: <code>300</code>
+     */
+    public static final Property<Integer> ROUTER_CONTROL_CHANNEL_IDLE_TIMEOUT = new Property<>("router.control.channel.idle.timeout", 300);
+
+    /**
+     * Whether a virtual router config section (network ACLs, firewall, port forwarding, static NAT, load balancer and DHCP entries)
+     * which is the same as the last one applied to the router is answered without sending it to the router again.<br>
+     * Data type: Boolean.<br>
+     * Default value: <code>true</code>
+     */
+    public static final Property<Boolean> ROUTER_SKIP_UNCHANGED_CONFIG = new Property<>("router.skip.unchanged.config", true);
+
     public static class Property <T>{
         private final String name;
         private final T defaultValue;
@@ -27,6 +27,7 @@ public class ApiConstants {
     public static final String ACTIVITY = "activity";
     public static final String ADAPTER_TYPE = "adaptertype";
     public static final String ADDRESS = "address";
+    public static final String AFTER_ID = "afterid";
     public static final String ALGORITHM = "algorithm";
     public static final String ALIAS = "alias";
     public static final String ALLOCATED_ONLY = "allocatedonly";
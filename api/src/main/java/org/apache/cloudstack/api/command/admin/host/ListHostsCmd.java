@@ -60,6 +60,9 @@ public class ListHostsCmd extends BaseListCmd {
     @Parameter(name = ApiConstants.ID, type = CommandType.UUID, entityType = HostResponse.class, description = "the id of the host")
     private Long id;
 
+    @Parameter(name = ApiConstants.AFTER_ID, type = CommandType.UUID, entityType = HostResponse.class, description = "list only the hosts with an ID greater than the one of the given host, ordered by ID; used for keyset pagination, where the page parameter is ignored and count is the number of the remaining hosts", since = "4.18.0")
+    private Long afterId;
+
     @Parameter(name = ApiConstants.NAME, type = CommandType.STRING, description = "the name of the host")
     private String hostName;
 
@@ -121,6 +124,10 @@ public class ListHostsCmd extends BaseListCmd {
         return id;
     }
 
+    public Long getAfterId() {
+        return afterId;
+    }
+
     public String getHostName() {
         return hostName;
     }
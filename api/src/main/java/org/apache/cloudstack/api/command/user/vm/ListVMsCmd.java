@@ -72,6 +72,9 @@ public class ListVMsCmd extends BaseListTaggedResourcesCmd implements UserCmd {
     @Parameter(name=ApiConstants.IDS, type=CommandType.LIST, collectionType=CommandType.UUID, entityType=UserVmResponse.class, description="the IDs of the virtual machines, mutually exclusive with id", since = "4.4")
     private List<Long> ids;
 
+    @Parameter(name = ApiConstants.AFTER_ID, type = CommandType.UUID, entityType = UserVmResponse.class, description = "list only the virtual machines with an ID greater than the one of the given virtual machine, ordered by ID; used for keyset pagination, where the page parameter is ignored and count is the number of the remaining virtual machines", since = "4.18.0")
+    private Long afterId;
+
     @Parameter(name = ApiConstants.NAME, type = CommandType.STRING, description = "name of the virtual machine (a substring match is made against the parameter value, data for all matching VMs will be returned)")
     private String name;
 
@@ -161,6 +164,10 @@ public class ListVMsCmd extends BaseListTaggedResourcesCmd implements UserCmd {
         return id;
     }
 
+    public Long getAfterId() {
+        return afterId;
+    }
+
     public List<Long> getIds() {
         return ids;
     }
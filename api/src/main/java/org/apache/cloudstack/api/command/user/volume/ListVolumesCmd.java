@@ -59,6 +59,9 @@ public class ListVolumesCmd extends BaseListTaggedResourcesCmd implements UserCm
     @Parameter(name = ApiConstants.IDS, type = CommandType.LIST, collectionType = CommandType.UUID, entityType = VolumeResponse.class, description = "the IDs of the volumes, mutually exclusive with id", since = "4.9")
     private List<Long> ids;
 
+    @Parameter(name = ApiConstants.AFTER_ID, type = CommandType.UUID, entityType = VolumeResponse.class, description = "list only the volumes with an ID greater than the one of the given volume, ordered by ID; used for keyset pagination, where the page parameter is ignored and count is the number of the remaining volumes", since = "4.18.0")
+    private Long afterId;
+
     @Parameter(name = ApiConstants.NAME, type = CommandType.STRING, description = "the name of the disk volume")
     private String volumeName;
 
@@ -111,6 +114,10 @@ public class ListVolumesCmd extends BaseListTaggedResourcesCmd implements UserCm
         return id;
     }
 
+    public Long getAfterId() {
+        return afterId;
+    }
+
     public String getVolumeName() {
         return volumeName;
     }
@@ -23,11 +23,15 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -45,6 +49,7 @@ import org.apache.cloudstack.diagnostics.DiagnosticsCommand;
 import org.apache.cloudstack.diagnostics.PrepareFilesAnswer;
 import org.apache.cloudstack.diagnostics.PrepareFilesCommand;
 import org.apache.cloudstack.utils.security.KeyStoreUtils;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.joda.time.Duration;
@@ -81,9 +86,23 @@ import com.cloud.utils.exception.CloudRuntimeException;
 public class VirtualRoutingResource {
 
     private static final Logger s_logger = Logger.getLogger(VirtualRoutingResource.class);
+
+    /**
+     * The config files which replace a whole section of the router's configuration and which can be
+     * skipped if they are the same as the last one that was applied to the router.
+     */
+    private static final Set<String> SKIP_UNCHANGED_CONFIGS = new HashSet<>(Arrays.asList(VRScripts.NETWORK_ACL_CONFIG, VRScripts.FIREWALL_RULES_CONFIG,
+            VRScripts.IPV6_FIREWALL_RULES_CONFIG, VRScripts.FORWARDING_RULES_CONFIG, VRScripts.STATICNAT_RULES_CONFIG, VRScripts.LOAD_BALANCER_CONFIG,
+            VRScripts.VM_DHCP_CONFIG));
+
     private VirtualRouterDeployer _vrDeployer;
     private Map<String, Queue<NetworkElementCommand>> _vrAggregateCommandsSet;
     protected Map<String, Lock> _vrLockMap = new HashMap<String, Lock>();
+    /**
+     * The hash of the last config applied to each section of each router, by router name
+     */
+    protected Map<String, Map<String, String>> _vrAppliedConfigs = new ConcurrentHashMap<>();
+    private boolean _skipUnchangedConfigs = false;
 
     private String _name;
     private int _sleep;
@@ -231,15 +250,65 @@ public class VirtualRoutingResource {
         throw new CloudRuntimeException("Unable to apply unknown configitem of type " + c.getClass().getSimpleName());
     }
 
+    /**
+     * Returns the section and the hash of the config if it only replaces one of the sections that can be
+     * skipped when unchanged, that is if it is a single config file followed by its update_config.py call.
+     */
+    protected static Pair<String, String> getConfigSection(List<ConfigItem> cfg) {
+        if (cfg.size() != 2 || !(cfg.get(0) instanceof FileConfigItem) || !(cfg.get(1) instanceof ScriptConfigItem)) {
+            return null;
+        }
+        FileConfigItem file = (FileConfigItem)cfg.get(0);
+        ScriptConfigItem script = (ScriptConfigItem)cfg.get(1);
+        if (!VRScripts.UPDATE_CONFIG.equals(script.getScript()) || file.getFileName() == null) {
+            return null;
+        }
+        // config files get a random suffix appended to their name
+        String section = StringUtils.substringBefore(file.getFileName(), ".json") + ".json";
+        if (!SKIP_UNCHANGED_CONFIGS.contains(section)) {
+            return null;
+        }
+        return new Pair<>(section, DigestUtils.sha256Hex(file.getFileContents()));
+    }
+
+    /**
+     * Forgets what was applied to the router, so that the next config of every section is sent to it.
+     * This has to be called whenever the router may have lost its configuration or may have been
+     * configured by someone else, e.g. when it was started, rebooted, stopped or migrated.
+     */
+    public void resetAppliedConfigs(String routerName) {
+        if (routerName != null) {
+            _vrAppliedConfigs.remove(routerName);
+        }
+    }
+
+    public void setSkipUnchangedConfigs(boolean skipUnchangedConfigs) {
+        _skipUnchangedConfigs = skipUnchangedConfigs;
+    }
+
     private Answer applyConfig(NetworkElementCommand cmd, List<ConfigItem> cfg) {
         if (cfg.isEmpty()) {
             return new Answer(cmd, true, "Nothing to do");
         }
 
+        final String routerName = cmd.getAccessDetail(NetworkElementCommand.ROUTER_NAME);
+        final Pair<String, String> section = _skipUnchangedConfigs && routerName != null ? getConfigSection(cfg) : null;
+        final Map<String, String> appliedConfigs = section != null ? _vrAppliedConfigs.get(routerName) : null;
+        final boolean unchanged = appliedConfigs != null && section.second().equals(appliedConfigs.get(section.first()));
+        if (unchanged && s_logger.isDebugEnabled()) {
+            s_logger.debug("Skipping " + section.first() + " on router " + routerName + " as it is the same as the last one applied");
+        }
+
         List<ExecutionResult> results = new ArrayList<ExecutionResult>();
         List<String> details = new ArrayList<String>();
         boolean finalResult = false;
         for (ConfigItem configItem : cfg) {
+            if (unchanged) {
+                results.add(new ExecutionResult(true, "unchanged"));
+                details.add(configItem.getInfo() + " - success: unchanged");
+                finalResult = true;
+                continue;
+            }
             long startTimestamp = System.currentTimeMillis();
             ExecutionResult result = applyConfigToVR(cmd.getRouterAccessIp(), configItem, VRScripts.VR_SCRIPT_EXEC_TIMEOUT);
             if (s_logger.isDebugEnabled()) {
@@ -254,6 +323,16 @@ public class VirtualRoutingResource {
             finalResult = result.isSuccess();
         }
 
+        if (_skipUnchangedConfigs && !unchanged) {
+            if (results.stream().allMatch(ExecutionResult::isSuccess)) {
+                if (section != null) {
+                    _vrAppliedConfigs.computeIfAbsent(routerName, r -> new ConcurrentHashMap<>()).put(section.first(), section.second());
+                }
+            } else {
+                resetAppliedConfigs(routerName);
+            }
+        }
+
         // Not sure why this matters, but log it anyway
         if (cmd.getAnswersCount() != results.size()) {
             s_logger.warn("Expected " + cmd.getAnswersCount() + " answers while executing " + cmd.getClass().getSimpleName() + " but received " + results.size());
@@ -532,6 +611,8 @@ public class VirtualRoutingResource {
 
         if (action == Action.Start) {
             assert (!_vrAggregateCommandsSet.containsKey(routerName));
+            // the aggregated commands replace the whole configuration of the router
+            resetAppliedConfigs(routerName);
 
             Queue<NetworkElementCommand> queue = new LinkedBlockingQueue<>();
             _vrAggregateCommandsSet.put(routerName, queue);
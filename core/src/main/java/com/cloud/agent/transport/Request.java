@@ -22,9 +22,14 @@ package com.cloud.agent.transport;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.io.StringReader;
+import java.io.Writer;
 import java.lang.reflect.Type;
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
@@ -115,8 +120,19 @@ public class Request {
     protected long _agentId;
     protected Command[] _cmds;
     protected String _content;
+    protected byte[] _contentBytes;
+    protected int _contentOffset;
+    protected int _contentLength;
     protected String _agentName;
 
+    /**
+     * Per thread buffer the commands are serialized into, so that the json is
+     * encoded straight to bytes instead of going through a String first.
+     */
+    private static final ThreadLocal<ContentBuffer> s_contentBuffer = new ThreadLocal<ContentBuffer>();
+    private static final int MAX_RETAINED_CONTENT_BUFFER = 1024 * 1024;
+    private static final int COMPRESSION_THRESHOLD = 8192;
+
     protected Request() {
     }
 
@@ -140,6 +156,11 @@ public class Request {
         _content = content;
     }
 
+    protected Request(Version ver, long seq, long agentId, long mgmtId, long via, short flags, final byte[] content, int offset, int length) {
+        this(ver, seq, agentId, mgmtId, via, flags, (Command[])null);
+        setContentBytes(content, offset, length);
+    }
+
     public Request(long agentId, long mgmtId, Command command, boolean fromServer) {
         this(agentId, mgmtId, new Command[] {command}, true, fromServer);
     }
@@ -248,20 +269,47 @@ public class Request {
     public Command[] getCommands() {
         if (_cmds == null) {
             try {
-                StringReader reader = new StringReader(_content);
-                JsonReader jsonReader = new JsonReader(reader);
+                JsonReader jsonReader = new JsonReader(getContentReader());
                 jsonReader.setLenient(true);
                 _cmds = s_gson.fromJson(jsonReader, (Type)Command[].class);
             } catch (JsonParseException e) {
                 _cmds = new Command[] { new BadCommand() };
             } catch (RuntimeException e) {
-                s_logger.error("Caught problem with " + _content, e);
+                s_logger.error("Caught problem with " + getContent(), e);
                 throw e;
             }
         }
         return _cmds;
     }
 
+    private void setContentBytes(byte[] content, int offset, int length) {
+        _contentBytes = content;
+        _contentOffset = offset;
+        _contentLength = length;
+    }
+
+    /**
+     * @return the serialized commands, only materialized as a String when it
+     * is actually needed, e.g. for logging.
+     */
+    protected String getContent() {
+        if (_content == null && _contentBytes != null) {
+            _content = new String(_contentBytes, _contentOffset, _contentLength, Charset.defaultCharset());
+        }
+        return _content;
+    }
+
+    /**
+     * @return a reader over the serialized commands that decodes the received
+     * bytes as they are parsed instead of copying them into a String first.
+     */
+    protected Reader getContentReader() {
+        if (_content == null && _contentBytes != null) {
+            return new InputStreamReader(new ByteArrayInputStream(_contentBytes, _contentOffset, _contentLength), Charset.defaultCharset());
+        }
+        return new StringReader(_content);
+    }
+
     protected String getType() {
         return "Cmd ";
     }
@@ -282,8 +330,12 @@ public class Request {
         return buffer;
     }
 
+    /**
+     * Decompresses the remaining bytes of the buffer. The length is the
+     * uncompressed size, so the data is inflated straight into a buffer of
+     * the right size.
+     */
     public static ByteBuffer doDecompress(ByteBuffer buffer, int length) {
-        byte[] byteArrayIn = new byte[1024];
         ByteArrayInputStream byteIn;
         if (buffer.hasArray()) {
             byteIn = new ByteArrayInputStream(buffer.array(), buffer.position() + buffer.arrayOffset(), buffer.remaining());
@@ -292,53 +344,57 @@ public class Request {
             buffer.get(array);
             byteIn = new ByteArrayInputStream(array);
         }
-        ByteBuffer retBuff = ByteBuffer.allocate(length);
-        int len = 0;
-        try {
-            GZIPInputStream in = new GZIPInputStream(byteIn);
-            while ((len = in.read(byteArrayIn)) > 0) {
-                retBuff.put(byteArrayIn, 0, len);
+        byte[] out = new byte[length];
+        int total = 0;
+        try (GZIPInputStream in = new GZIPInputStream(byteIn)) {
+            int len;
+            while (total < length && (len = in.read(out, total, length - total)) > 0) {
+                total += len;
             }
-            in.close();
         } catch (IOException e) {
             s_logger.error("Fail to decompress the request!", e);
         }
-        retBuff.flip();
-        return retBuff;
+        return ByteBuffer.wrap(out, 0, total);
     }
 
     public static ByteBuffer doCompress(ByteBuffer buffer, int length) {
-        ByteArrayOutputStream byteOut = new ByteArrayOutputStream(length);
-        byte[] array;
         if (buffer.hasArray()) {
-            array = buffer.array();
-        } else {
-            array = new byte[buffer.capacity()];
-            buffer.get(array);
+            return compress(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
         }
-        try {
-            GZIPOutputStream out = new GZIPOutputStream(byteOut, length);
-            out.write(array);
+        byte[] array = new byte[buffer.remaining()];
+        buffer.get(array);
+        return compress(array, 0, array.length);
+    }
+
+    private static ByteBuffer compress(byte[] array, int offset, int length) {
+        // json compresses well, start small instead of reserving the uncompressed size
+        ContentBuffer byteOut = new ContentBuffer(Math.max(length / 8, 512));
+        try (GZIPOutputStream out = new GZIPOutputStream(byteOut, Math.min(length, 64 * 1024))) {
+            out.write(array, offset, length);
             out.finish();
-            out.close();
         } catch (IOException e) {
             s_logger.error("Fail to compress the request!", e);
         }
-        return ByteBuffer.wrap(byteOut.toByteArray());
+        return byteOut.wrap();
     }
 
     public ByteBuffer[] toBytes() {
         final ByteBuffer[] buffers = new ByteBuffer[2];
         ByteBuffer tmp;
 
-        if (_content == null) {
-            _content = s_gson.toJson(_cmds, _cmds.getClass());
+        if (_contentBytes == null) {
+            if (_content != null) {
+                byte[] content = _content.getBytes();
+                setContentBytes(content, 0, content.length);
+            } else {
+                serializeCommands();
+            }
         }
-        tmp = ByteBuffer.wrap(_content.getBytes());
-        int capacity = tmp.capacity();
+        tmp = ByteBuffer.wrap(_contentBytes, _contentOffset, _contentLength);
+        int capacity = _contentLength;
         /* Check if we need to compress the data */
-        if (capacity >= 8192) {
-            tmp = doCompress(tmp, capacity);
+        if (capacity >= COMPRESSION_THRESHOLD) {
+            tmp = compress(_contentBytes, _contentOffset, _contentLength);
             _flags |= FLAG_COMPRESSED;
         }
         buffers[1] = tmp;
@@ -347,6 +403,57 @@ public class Request {
         return buffers;
     }
 
+    /**
+     * Encodes the commands to json straight into the per thread buffer and
+     * keeps an exactly sized copy of the result as the content of the request.
+     */
+    private void serializeCommands() {
+        ContentBuffer buffer = s_contentBuffer.get();
+        if (buffer == null) {
+            buffer = new ContentBuffer(COMPRESSION_THRESHOLD);
+            s_contentBuffer.set(buffer);
+        }
+        try {
+            buffer.reset();
+            Writer writer = buffer.getWriter();
+            s_gson.toJson(_cmds, _cmds.getClass(), writer);
+            writer.flush();
+            setContentBytes(buffer.toByteArray(), 0, buffer.size());
+        } catch (IOException e) {
+            throw new CloudRuntimeException("Unable to serialize the commands", e);
+        } finally {
+            if (buffer.capacity() > MAX_RETAINED_CONTENT_BUFFER) {
+                s_contentBuffer.remove();
+            }
+        }
+    }
+
+    /**
+     * A ByteArrayOutputStream that gives access to its buffer without copying it.
+     */
+    private static class ContentBuffer extends ByteArrayOutputStream {
+        private Writer _writer;
+
+        ContentBuffer(int size) {
+            super(size);
+        }
+
+        Writer getWriter() {
+            if (_writer == null) {
+                _writer = new OutputStreamWriter(this, Charset.defaultCharset());
+            }
+            return _writer;
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+
+        ByteBuffer wrap() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
     public byte[] getBytes() {
         final ByteBuffer[] buffers = toBytes();
         final int len1 = buffers[0].remaining();
@@ -402,9 +509,9 @@ public class Request {
         if (logContent) {
             if (_cmds == null) {
                 try {
-                    _cmds = s_gson.fromJson(_content, this instanceof Response ? Answer[].class : Command[].class);
+                    _cmds = s_gson.fromJson(getContentReader(), this instanceof Response ? Answer[].class : Command[].class);
                 } catch (RuntimeException e) {
-                    s_logger.error("Unable to deserialize from json: " + _content);
+                    s_logger.error("Unable to deserialize from json: " + getContent());
                     throw e;
                 }
             }
@@ -425,7 +532,7 @@ public class Request {
             }
         } else {
             if (_cmds == null) {
-                _cmds = s_gson.fromJson(_content, this instanceof Response ? Answer[].class : Command[].class);
+                _cmds = s_gson.fromJson(getContentReader(), this instanceof Response ? Answer[].class : Command[].class);
             }
             content.append("{ ");
             for (Command cmd : _cmds) {
@@ -518,21 +625,21 @@ public class Request {
 
         byte[] command = null;
         int offset = 0;
+        final int length = buff.remaining();
         if (buff.hasArray()) {
             command = buff.array();
             offset = buff.arrayOffset() + buff.position();
         } else {
-            command = new byte[buff.remaining()];
+            command = new byte[length];
             buff.get(command);
             offset = 0;
         }
 
-        final String content = new String(command, offset, command.length - offset);
-
+        // the content is kept as bytes and only decoded when the commands are parsed
         if (isRequest) {
-            return new Request(version, seq, agentId, mgmtId, via, flags, content);
+            return new Request(version, seq, agentId, mgmtId, via, flags, command, offset, length);
         } else {
-            return new Response(Version.get(ver), seq, agentId, mgmtId, via, flags, content);
+            return new Response(Version.get(ver), seq, agentId, mgmtId, via, flags, command, offset, length);
         }
     }
 
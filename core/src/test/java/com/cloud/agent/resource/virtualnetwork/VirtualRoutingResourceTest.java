@@ -20,6 +20,7 @@
 package com.cloud.agent.resource.virtualnetwork;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -90,6 +91,7 @@ public class VirtualRoutingResourceTest implements VirtualRouterDeployer {
     VirtualRoutingResource _resource;
     NetworkElementCommand _currentCmd;
     int _count;
+    int _vrExecutions;
     String _file;
 
     String ROUTERIP = "169.254.3.4";
@@ -104,6 +106,7 @@ public class VirtualRoutingResourceTest implements VirtualRouterDeployer {
     @Override
     public ExecutionResult executeInVR(final String routerIp, final String script, final String args, final Duration timeout) {
         assertEquals(routerIp, ROUTERIP);
+        _vrExecutions++;
         verifyCommand(_currentCmd, script, args);
         return new ExecutionResult(true, null);
     }
@@ -111,6 +114,7 @@ public class VirtualRoutingResourceTest implements VirtualRouterDeployer {
     @Override
     public ExecutionResult createFileInVR(final String routerIp, final String path, final String filename, final String content) {
         assertEquals(routerIp, ROUTERIP);
+        _vrExecutions++;
         verifyFile(_currentCmd, path, filename, content);
         return new ExecutionResult(true, null);
     }
@@ -595,6 +599,42 @@ public class VirtualRoutingResourceTest implements VirtualRouterDeployer {
         //TODO Didn't test egress rule because not able to generate FirewallRuleVO object
     }
 
+    @Test
+    public void testUnchangedConfigIsNotSentAgain() {
+        _resource.setSkipUnchangedConfigs(true);
+        _vrExecutions = 0;
+
+        assertTrue(_resource.executeRequest(generateSetFirewallRulesCommand()).getResult());
+        assertEquals(2, _vrExecutions);
+
+        assertTrue(_resource.executeRequest(generateSetFirewallRulesCommand()).getResult());
+        assertEquals(2, _vrExecutions);
+
+        _resource.resetAppliedConfigs(ROUTERNAME);
+        assertTrue(_resource.executeRequest(generateSetFirewallRulesCommand()).getResult());
+        assertEquals(4, _vrExecutions);
+    }
+
+    @Test
+    public void testUnchangedConfigIsSentAgainByDefault() {
+        _vrExecutions = 0;
+
+        assertTrue(_resource.executeRequest(generateSetFirewallRulesCommand()).getResult());
+        assertTrue(_resource.executeRequest(generateSetFirewallRulesCommand()).getResult());
+        assertEquals(4, _vrExecutions);
+    }
+
+    @Test
+    public void testGetConfigSection() {
+        final List<ConfigItem> cfg = new ArrayList<>();
+        cfg.add(new FileConfigItem(VRScripts.CONFIG_PERSIST_LOCATION, VRScripts.NETWORK_ACL_CONFIG + ".1234", "{}"));
+        cfg.add(new ScriptConfigItem(VRScripts.UPDATE_CONFIG, VRScripts.NETWORK_ACL_CONFIG + ".1234"));
+        assertEquals(VRScripts.NETWORK_ACL_CONFIG, VirtualRoutingResource.getConfigSection(cfg).first());
+
+        cfg.set(0, new FileConfigItem(VRScripts.CONFIG_PERSIST_LOCATION, VRScripts.IP_ASSOCIATION_CONFIG + ".1234", "{}"));
+        assertNull(VirtualRoutingResource.getConfigSection(cfg));
+    }
+
     protected SetFirewallRulesCommand generateSetFirewallRulesCommand() {
         final List<FirewallRuleTO> rules = new ArrayList<>();
         final List<String> sourceCidrs = new ArrayList<>();
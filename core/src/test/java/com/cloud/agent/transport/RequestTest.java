@@ -20,6 +20,7 @@
 package com.cloud.agent.transport;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import junit.framework.TestCase;
 
 import org.apache.log4j.Level;
@@ -137,6 +138,28 @@ public class RequestTest extends TestCase {
         compareRequest(cresp, sresp);
     }
 
+    public void testSerDeserCompressed() throws Exception {
+        s_logger.info("Testing a request large enough to be compressed survives the round trip");
+        SecStorageFirewallCfgCommand cmd = new SecStorageFirewallCfgCommand();
+        for (int i = 0; i < 500; i++) {
+            cmd.addPortConfig("10.1." + (i / 250) + "." + (i % 250), String.valueOf(1024 + i), true, "eth" + (i % 4));
+        }
+        Request sreq = new Request(2, 3, new Command[] {cmd}, true, true);
+        sreq.setSequence(42);
+
+        byte[] bytes = sreq.getBytes();
+        assertTrue("The content should have been compressed", (bytes[3] & Request.FLAG_COMPRESSED) != 0);
+
+        Request creq = Request.parse(bytes);
+        compareRequest(creq, sreq);
+        SecStorageFirewallCfgCommand parsed = (SecStorageFirewallCfgCommand)creq.getCommand();
+        assertEquals(cmd.getPortConfigs().size(), parsed.getPortConfigs().size());
+        assertEquals("10.1.1.249", parsed.getPortConfigs().get(499).getSourceIp());
+
+        // a parsed request is forwarded as is, without serializing the commands again
+        assertTrue(Arrays.equals(bytes, creq.getBytes()));
+    }
+
     public void testSerDeserTO() {
         s_logger.info("Testing serializing and deserializing interface TO works as expected");
 
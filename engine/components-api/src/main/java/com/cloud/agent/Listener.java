@@ -55,6 +55,17 @@ public interface Listener {
      */
     boolean processCommands(long agentId, long seq, Command[] commands);
 
+    /**
+     * Pings are by far the most frequent commands sent by the agents, so
+     * the AgentManager only passes them to processCommands() of the
+     * listeners that return true here.
+     *
+     * @return true if the listener processes ping commands.
+     */
+    default boolean processesPingCommands() {
+        return false;
+    }
+
     /**
      * process control command sent from agent under its management
      * @param agentId
@@ -16,6 +16,7 @@
 // under the License.
 package com.cloud.capacity;
 
+import java.util.List;
 import java.util.Map;
 
 import org.apache.cloudstack.framework.config.ConfigKey;
@@ -118,6 +119,16 @@ public interface CapacityManager {
                     "Percentage (as a value between 0 and 1) of secondary storage capacity threshold.",
                     true);
 
+    static final ConfigKey<Boolean> PlannedCapacityReservation =
+            new ConfigKey<>(
+                    ConfigKey.CATEGORY_ADVANCED,
+                    Boolean.class,
+                    "deployment.planning.capacity.reservation",
+                    "false",
+                    "When true, the capacity of a VM is reserved in memory on the host it is planned on until it is allocated when the VM starts there, "
+                    + "so that concurrent deployments don't all pick the capacity left on the same host. A planning that loses the host to a concurrent one plans again.",
+                    true);
+
     public boolean releaseVmCapacity(VirtualMachine vm, boolean moveFromReserved, boolean moveToReservered, Long hostId);
 
     void allocateVmCapacity(VirtualMachine vm, boolean fromLastHost);
@@ -174,4 +185,29 @@ public interface CapacityManager {
     long getUsedIops(StoragePoolVO pool);
 
     Pair<Boolean, Boolean> checkIfHostHasCpuCapabilityAndCapacity(Host host, ServiceOffering offering, boolean considerReservedCapacity);
+
+    /**
+     * Reads the CPU and memory capacity of the hosts and the overcommit ratios of their clusters, in one query for the
+     * capacities and one lookup per cluster, so that they can be checked without querying the database for each host.
+     * @param hosts the hosts to be checked
+     * @return the capacity snapshot of the hosts
+     */
+    HostCapacitySnapshot getHostCapacitySnapshot(List<? extends Host> hosts);
+
+    /**
+     * Reserves in memory the CPU and memory of the VM on the host it was planned on, until the capacity of the VM is
+     * allocated when it starts there. Does nothing if deployment.planning.capacity.reservation is false.
+     * @param vm the planned VM
+     * @param host the host the VM was planned on
+     * @param offering the service offering of the VM
+     * @return false if concurrent plannings took the capacity left on the host in the meantime
+     */
+    boolean reservePlannedCapacity(VirtualMachine vm, Host host, ServiceOffering offering);
+
+    void releasePlannedCapacity(long vmId);
+
+    /**
+     * Records the time a deployment planning took, in the planning stats.
+     */
+    void recordDeploymentPlanning(long planningTimeInMillis);
 }
@@ -0,0 +1,132 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.capacity;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.cloud.host.Host;
+import com.cloud.offering.ServiceOffering;
+import com.cloud.utils.Pair;
+
+/**
+ * The CPU and memory capacity of a set of hosts, read at once so that a host allocator can scan all of its
+ * candidates without querying the database for each of them. The values are only as recent as the snapshot,
+ * the capacity of the chosen host is still checked again when the VM capacity is allocated on it.
+ */
+public class HostCapacitySnapshot {
+    private final Map<Long, Integer> indexes;
+    private final int[] cpus;
+    private final int[] speeds;
+    private final long[] usedCpu;
+    private final long[] reservedCpu;
+    private final long[] totalCpu;
+    private final long[] usedMem;
+    private final long[] reservedMem;
+    private final long[] totalMem;
+    private final float[] cpuOvercommitRatios;
+    private final float[] memoryOvercommitRatios;
+    private final boolean[] cpuLoaded;
+    private final boolean[] memLoaded;
+
+    public HostCapacitySnapshot(List<? extends Host> hosts) {
+        int size = hosts.size();
+        indexes = new HashMap<>(size * 2);
+        cpus = new int[size];
+        speeds = new int[size];
+        usedCpu = new long[size];
+        reservedCpu = new long[size];
+        totalCpu = new long[size];
+        usedMem = new long[size];
+        reservedMem = new long[size];
+        totalMem = new long[size];
+        cpuOvercommitRatios = new float[size];
+        memoryOvercommitRatios = new float[size];
+        cpuLoaded = new boolean[size];
+        memLoaded = new boolean[size];
+
+        for (int i = 0; i < size; i++) {
+            Host host = hosts.get(i);
+            indexes.put(host.getId(), i);
+            cpus[i] = host.getCpus() != null ? host.getCpus() : 0;
+            speeds[i] = host.getSpeed() != null ? host.getSpeed().intValue() : 0;
+            cpuOvercommitRatios[i] = 1.0f;
+            memoryOvercommitRatios[i] = 1.0f;
+        }
+    }
+
+    /**
+     * @return true if both the CPU and the memory capacity of the host were loaded.
+     */
+    public boolean contains(long hostId) {
+        Integer index = indexes.get(hostId);
+        return index != null && cpuLoaded[index] && memLoaded[index];
+    }
+
+    /**
+     * Sets the values of a CPU or memory capacity entry of one of the hosts; the other types are ignored.
+     */
+    public void setCapacity(long hostId, short capacityType, long used, long reserved, long total) {
+        Integer index = indexes.get(hostId);
+        if (index == null) {
+            return;
+        }
+        if (capacityType == Capacity.CAPACITY_TYPE_CPU) {
+            usedCpu[index] = used;
+            reservedCpu[index] = reserved;
+            totalCpu[index] = total;
+            cpuLoaded[index] = true;
+        } else if (capacityType == Capacity.CAPACITY_TYPE_MEMORY) {
+            usedMem[index] = used;
+            reservedMem[index] = reserved;
+            totalMem[index] = total;
+            memLoaded[index] = true;
+        }
+    }
+
+    public void setOvercommitRatios(long hostId, float cpuOvercommitRatio, float memoryOvercommitRatio) {
+        Integer index = indexes.get(hostId);
+        if (index != null) {
+            cpuOvercommitRatios[index] = cpuOvercommitRatio;
+            memoryOvercommitRatios[index] = memoryOvercommitRatio;
+        }
+    }
+
+    /**
+     * Same check as {@link CapacityManager#checkIfHostHasCpuCapabilityAndCapacity(Host, ServiceOffering, boolean)}, done on the snapshot.
+     * @return whether the host has the CPU capability and the capacity for the offering, or null if the snapshot has no capacity for the host.
+     */
+    public Pair<Boolean, Boolean> checkIfHostHasCpuCapabilityAndCapacity(long hostId, ServiceOffering offering, boolean considerReservedCapacity) {
+        if (!contains(hostId)) {
+            return null;
+        }
+        int index = indexes.get(hostId);
+        boolean hasCpuCapability = cpus[index] >= offering.getCpu() && speeds[index] >= offering.getSpeed();
+
+        long cpuRequested = (long)offering.getCpu() * offering.getSpeed();
+        long ramRequested = offering.getRamSize() * 1024L * 1024L;
+        long reservedCpuToUse = considerReservedCapacity ? reservedCpu[index] : 0;
+        long reservedMemToUse = considerReservedCapacity ? reservedMem[index] : 0;
+        long totalCpuWithOvercommit = (long)(totalCpu[index] * cpuOvercommitRatios[index]);
+        long totalMemWithOvercommit = (long)(totalMem[index] * memoryOvercommitRatios[index]);
+        boolean hasCapacity = reservedCpuToUse + usedCpu[index] + cpuRequested <= totalCpuWithOvercommit
+                && reservedMemToUse + usedMem[index] + ramRequested <= totalMemWithOvercommit;
+
+        return new Pair<>(hasCpuCapability, hasCapacity);
+    }
+}
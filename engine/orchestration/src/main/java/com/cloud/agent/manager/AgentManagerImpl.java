@@ -115,6 +115,7 @@ import com.cloud.utils.exception.NioConnectionException;
 import com.cloud.utils.exception.TaskExecutionException;
 import com.cloud.utils.fsm.NoTransitionException;
 import com.cloud.utils.fsm.StateMachine2;
+import com.cloud.utils.mgmt.JmxUtil;
 import com.cloud.utils.nio.HandlerFactory;
 import com.cloud.utils.nio.Link;
 import com.cloud.utils.nio.NioServer;
@@ -135,6 +136,8 @@ public class AgentManagerImpl extends ManagerBase implements AgentManager, Handl
     protected ConcurrentHashMap<Long, AgentAttache> _agents = new ConcurrentHashMap<Long, AgentAttache>(10007);
     protected List<Pair<Integer, Listener>> _hostMonitors = new ArrayList<Pair<Integer, Listener>>(17);
     protected List<Pair<Integer, Listener>> _cmdMonitors = new ArrayList<Pair<Integer, Listener>>(17);
+    // the command monitors that want to be notified of pings
+    protected List<Pair<Integer, Listener>> _pingMonitors = new ArrayList<Pair<Integer, Listener>>(17);
     protected List<Pair<Integer, StartupCommandProcessor>> _creationMonitors = new ArrayList<Pair<Integer, StartupCommandProcessor>>(17);
     protected List<Long> _loadingAgents = new ArrayList<Long>();
     private int _monitorId = 0;
@@ -184,6 +187,24 @@ public class AgentManagerImpl extends ManagerBase implements AgentManager, Handl
 
     protected StateMachine2<Status, Status.Event, Host> _statusStateMachine = Status.getStateMachine();
     private final ConcurrentHashMap<Long, Long> _pingMap = new ConcurrentHashMap<Long, Long>(10007);
+    private final ConcurrentHashMap<Long, PingHostState> _pingHostStates = new ConcurrentHashMap<Long, PingHostState>(10007);
+    protected final AgentPingStats _pingStats = new AgentPingStats();
+
+    /**
+     * Zone and pod of a host that pings this management server and whether its gateway was
+     * accessible on its last ping, so that a ping only has to look up the host when its
+     * gateway becomes inaccessible. Dropped when the agent connects or disconnects.
+     */
+    protected static class PingHostState {
+        final long dataCenterId;
+        final Long podId;
+        volatile Boolean gatewayAccessible;
+
+        PingHostState(long dataCenterId, Long podId) {
+            this.dataCenterId = dataCenterId;
+            this.podId = podId;
+        }
+    }
 
     @Inject
     ResourceManager _resourceMgr;
@@ -264,6 +285,13 @@ public class AgentManagerImpl extends ManagerBase implements AgentManager, Handl
                 } else {
                     _cmdMonitors.add(new Pair<Integer, Listener>(_monitorId, listener));
                 }
+                if (listener.processesPingCommands()) {
+                    if (priority) {
+                        _pingMonitors.add(0, new Pair<Integer, Listener>(_monitorId, listener));
+                    } else {
+                        _pingMonitors.add(new Pair<Integer, Listener>(_monitorId, listener));
+                    }
+                }
             }
             if (s_logger.isDebugEnabled()) {
                 s_logger.debug("Registering listener " + listener.getClass().getSimpleName() + " with id " + _monitorId);
@@ -307,6 +335,10 @@ public class AgentManagerImpl extends ManagerBase implements AgentManager, Handl
     }
 
     public void handleCommands(final AgentAttache attache, final long sequence, final Command[] cmds) {
+        if (cmds.length == 1 && cmds[0] instanceof PingCommand) {
+            handlePingCommand(attache, sequence, cmds);
+            return;
+        }
         for (final Pair<Integer, Listener> listener : _cmdMonitors) {
             final boolean processed = listener.second().processCommands(attache.getId(), sequence, cmds);
             if (s_logger.isTraceEnabled()) {
@@ -315,6 +347,57 @@ public class AgentManagerImpl extends ManagerBase implements AgentManager, Handl
         }
     }
 
+    private void handlePingCommand(final AgentAttache attache, final long sequence, final Command[] cmds) {
+        final long startTime = System.currentTimeMillis();
+        for (final Pair<Integer, Listener> listener : _pingMonitors) {
+            final long listenerStartTime = System.currentTimeMillis();
+            final boolean processed = listener.second().processCommands(attache.getId(), sequence, cmds);
+            _pingStats.listenerNotified(listener.second().getClass().getSimpleName(), System.currentTimeMillis() - listenerStartTime);
+            if (s_logger.isTraceEnabled()) {
+                s_logger.trace("SeqA " + attache.getId() + "-" + sequence + ": " + (processed ? "processed" : "not processed") + " by " + listener.getClass());
+            }
+        }
+        _pingStats.listenersNotified(System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Alerts on every ping of a host that cannot reach its gateway, but only clears the alert
+     * on the first ping that reports it reachable again (or the first one after a connect).
+     */
+    protected void processGatewayReport(final long hostId, final boolean gatewayAccessible) {
+        PingHostState state = _pingHostStates.get(hostId);
+        if (state == null || !gatewayAccessible) {
+            final HostVO host = _hostDao.findById(Long.valueOf(hostId));
+            _pingStats.hostLookedUp();
+            if (host == null) {
+                s_logger.debug("Not processing " + PingRoutingCommand.class.getSimpleName() + " for agent id=" + hostId + "; can't find the host in the DB");
+                return;
+            }
+            if (state == null) {
+                state = new PingHostState(host.getDataCenterId(), host.getPodId());
+                _pingHostStates.put(hostId, state);
+            }
+            if (!gatewayAccessible) {
+                state.gatewayAccessible = Boolean.FALSE;
+                // alert that host lost connection to
+                // gateway (cannot ping the default route)
+                final DataCenterVO dcVO = _dcDao.findById(host.getDataCenterId());
+                final HostPodVO podVO = _podDao.findById(host.getPodId());
+                final String hostDesc = "name: " + host.getName() + " (id:" + host.getId() + "), availability zone: " + dcVO.getName() + ", pod: " + podVO.getName();
+
+                _alertMgr.sendAlert(AlertManager.AlertType.ALERT_TYPE_ROUTING, host.getDataCenterId(), host.getPodId(), "Host lost connection to gateway, " + hostDesc,
+                        "Host [" + hostDesc + "] lost connection to gateway (default route) and is possibly having network connection issues.");
+                return;
+            }
+        }
+
+        if (!Boolean.TRUE.equals(state.gatewayAccessible)) {
+            _alertMgr.clearAlert(AlertManager.AlertType.ALERT_TYPE_ROUTING, state.dataCenterId, state.podId);
+            _pingStats.alertCleared();
+            state.gatewayAccessible = Boolean.TRUE;
+        }
+    }
+
     public void notifyAnswersToMonitors(final long agentId, final long seq, final Answer[] answers) {
         for (final Pair<Integer, Listener> listener : _cmdMonitors) {
             listener.second().processAnswers(agentId, seq, answers);
@@ -521,6 +604,7 @@ public class AgentManagerImpl extends ManagerBase implements AgentManager, Handl
         if (s_logger.isDebugEnabled()) {
             s_logger.debug("Remove Agent : " + hostId);
         }
+        _pingHostStates.remove(hostId);
         AgentAttache removed = null;
         boolean conflict = false;
         synchronized (_agents) {
@@ -559,6 +643,7 @@ public class AgentManagerImpl extends ManagerBase implements AgentManager, Handl
 
     protected AgentAttache notifyMonitorsOfConnection(final AgentAttache attache, final StartupCommand[] cmd, final boolean forRebalance) throws ConnectionException {
         final long hostId = attache.getId();
+        _pingHostStates.remove(hostId);
         final HostVO host = _hostDao.findById(hostId);
         for (final Pair<Integer, Listener> monitor : _hostMonitors) {
             if (s_logger.isDebugEnabled()) {
@@ -645,6 +730,12 @@ public class AgentManagerImpl extends ManagerBase implements AgentManager, Handl
 
         _monitorExecutor.scheduleWithFixedDelay(new MonitorTask(), mgmtServiceConf.getPingInterval(), mgmtServiceConf.getPingInterval(), TimeUnit.SECONDS);
 
+        try {
+            JmxUtil.registerMBean("AgentManager", "PingStats", _pingStats);
+        } catch (final Exception e) {
+            s_logger.warn("Unable to register agent ping stats for JMX", e);
+        }
+
         return true;
     }
 
@@ -1324,6 +1415,7 @@ public class AgentManagerImpl extends ManagerBase implements AgentManager, Handl
                     } else if (cmd instanceof AgentControlCommand) {
                         answer = handleControlCommand(attache, (AgentControlCommand)cmd);
                     } else {
+                        final long startTime = System.currentTimeMillis();
                         handleCommands(attache, request.getSequence(), new Command[] {cmd});
                         if (cmd instanceof PingCommand) {
                             final long cmdHostId = ((PingCommand)cmd).getHostId();
@@ -1331,27 +1423,12 @@ public class AgentManagerImpl extends ManagerBase implements AgentManager, Handl
                             // if the router is sending a ping, verify the
                             // gateway was pingable
                             if (cmd instanceof PingRoutingCommand) {
-                                final boolean gatewayAccessible = ((PingRoutingCommand)cmd).isGatewayAccessible();
-                                final HostVO host = _hostDao.findById(Long.valueOf(cmdHostId));
-
-                                if (host != null) {
-                                    if (!gatewayAccessible) {
-                                        // alert that host lost connection to
-                                        // gateway (cannot ping the default route)
-                                        final DataCenterVO dcVO = _dcDao.findById(host.getDataCenterId());
-                                        final HostPodVO podVO = _podDao.findById(host.getPodId());
-                                        final String hostDesc = "name: " + host.getName() + " (id:" + host.getId() + "), availability zone: " + dcVO.getName() + ", pod: " + podVO.getName();
-
-                                        _alertMgr.sendAlert(AlertManager.AlertType.ALERT_TYPE_ROUTING, host.getDataCenterId(), host.getPodId(), "Host lost connection to gateway, " + hostDesc,
-                                                "Host [" + hostDesc + "] lost connection to gateway (default route) and is possibly having network connection issues.");
-                                    } else {
-                                        _alertMgr.clearAlert(AlertManager.AlertType.ALERT_TYPE_ROUTING, host.getDataCenterId(), host.getPodId());
-                                    }
-                                } else {
-                                    s_logger.debug("Not processing " + PingRoutingCommand.class.getSimpleName() + " for agent id=" + cmdHostId + "; can't find the host in the DB");
-                                }
+                                final long gatewayCheckStartTime = System.currentTimeMillis();
+                                processGatewayReport(cmdHostId, ((PingRoutingCommand)cmd).isGatewayAccessible());
+                                _pingStats.gatewayChecked(System.currentTimeMillis() - gatewayCheckStartTime);
                             }
                             answer = new PingAnswer((PingCommand)cmd);
+                            _pingStats.pingProcessed(System.currentTimeMillis() - startTime);
                         } else if (cmd instanceof ReadyAnswer) {
                             final HostVO host = _hostDao.findById(attache.getId());
                             if (host == null) {
@@ -1705,6 +1782,11 @@ public class AgentManagerImpl extends ManagerBase implements AgentManager, Handl
             return processed;
         }
 
+        @Override
+        public boolean processesPingCommands() {
+            return true;
+        }
+
         @Override
         public AgentControlAnswer processControlCommand(final long agentId, final AgentControlCommand cmd) {
             return null;
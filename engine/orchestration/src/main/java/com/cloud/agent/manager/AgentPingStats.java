@@ -0,0 +1,118 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.agent.manager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.StandardMBean;
+
+import com.cloud.utils.LatencyHistogram;
+
+/**
+ * Time spent by the management server on agent pings, split by stage: the listeners
+ * the ping is dispatched to (in total and per listener) and the gateway check of routing
+ * hosts. The processing time covers the whole ping, for the pings received over the wire.
+ */
+public class AgentPingStats extends StandardMBean implements AgentPingStatsMBean {
+    private final LatencyHistogram _pingTimes = new LatencyHistogram();
+    private final LatencyHistogram _listenerTimes = new LatencyHistogram();
+    private final LatencyHistogram _gatewayCheckTimes = new LatencyHistogram();
+    private final Map<String, LatencyHistogram> _timesByListener = new ConcurrentHashMap<String, LatencyHistogram>();
+
+    private final AtomicLong _hostLookups = new AtomicLong(0);
+    private final AtomicLong _alertClears = new AtomicLong(0);
+
+    public AgentPingStats() {
+        super(AgentPingStatsMBean.class, false);
+    }
+
+    public void pingProcessed(long durationInMillis) {
+        _pingTimes.record(durationInMillis);
+    }
+
+    public void listenersNotified(long durationInMillis) {
+        _listenerTimes.record(durationInMillis);
+    }
+
+    public void listenerNotified(String listener, long durationInMillis) {
+        _timesByListener.computeIfAbsent(listener, k -> new LatencyHistogram()).record(durationInMillis);
+    }
+
+    public void gatewayChecked(long durationInMillis) {
+        _gatewayCheckTimes.record(durationInMillis);
+    }
+
+    public void hostLookedUp() {
+        _hostLookups.incrementAndGet();
+    }
+
+    public void alertCleared() {
+        _alertClears.incrementAndGet();
+    }
+
+    @Override
+    public Map<String, String> getPingProcessingTimes() {
+        return _pingTimes.toMap();
+    }
+
+    @Override
+    public Map<String, String> getListenerTimes() {
+        return _listenerTimes.toMap();
+    }
+
+    @Override
+    public List<Map<String, String>> getListenerTimesByListener() {
+        List<Map<String, String>> result = new ArrayList<Map<String, String>>();
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<String, LatencyHistogram>(_timesByListener).entrySet()) {
+            Map<String, String> map = new HashMap<String, String>(entry.getValue().toMap());
+            map.put("listener", entry.getKey());
+            result.add(map);
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, String> getGatewayCheckTimes() {
+        return _gatewayCheckTimes.toMap();
+    }
+
+    @Override
+    public long getHostLookupCount() {
+        return _hostLookups.get();
+    }
+
+    @Override
+    public long getAlertClearCount() {
+        return _alertClears.get();
+    }
+
+    @Override
+    public void reset() {
+        _pingTimes.reset();
+        _listenerTimes.reset();
+        _gatewayCheckTimes.reset();
+        _timesByListener.clear();
+        _hostLookups.set(0);
+        _alertClears.set(0);
+    }
+}
@@ -1737,6 +1737,7 @@ public class VirtualMachineManagerImpl extends ManagerBase implements VirtualMac
                     if (userVm != null) {
                         userVm.setPowerState(PowerState.PowerOff);
                         _userVmDao.update(userVm.getId(), userVm);
+                        _syncMgr.resetVmSyncState(userVm.getId());
                     }
                 }
             } else {
@@ -3667,6 +3668,11 @@ public class VirtualMachineManagerImpl extends ManagerBase implements VirtualMac
         return processed;
     }
 
+    @Override
+    public boolean processesPingCommands() {
+        return true;
+    }
+
     @Override
     public AgentControlAnswer processControlCommand(final long agentId, final AgentControlCommand cmd) {
         return null;
@@ -4682,6 +4688,7 @@ public class VirtualMachineManagerImpl extends ManagerBase implements VirtualMac
         } else {
             s_logger.info("There is pending job or HA tasks working on the VM. vm id: " + vmId + ", postpone power-change report by resetting power-change counters");
             _vmDao.resetVmPowerStateTracking(vmId);
+            _syncMgr.resetVmSyncState(vmId);
         }
     }
 
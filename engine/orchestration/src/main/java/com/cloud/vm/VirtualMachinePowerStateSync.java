@@ -24,6 +24,11 @@ public interface VirtualMachinePowerStateSync {
 
     void resetHostSyncState(long hostId);
 
+    /**
+     * Forgets the last known power state of the VM, so that its next report is checked against the DB again.
+     */
+    void resetVmSyncState(long vmId);
+
     void processHostVmStateReport(long hostId, Map<String, HostVmStateReportEntry> report);
 
     // to adapt legacy ping report
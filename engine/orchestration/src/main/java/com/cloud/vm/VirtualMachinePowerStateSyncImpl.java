@@ -17,10 +17,12 @@
 package com.cloud.vm;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
 
@@ -41,21 +43,49 @@ public class VirtualMachinePowerStateSyncImpl implements VirtualMachinePowerStat
     @Inject VMInstanceDao _instanceDao;
     @Inject ManagementServiceConfiguration mgmtServiceConf;
 
+    // last known power state of the VMs reported by each host, keyed by host id and VM instance name
+    private final Map<Long, Map<String, PowerStateEntry>> _hostPowerStates = new ConcurrentHashMap<Long, Map<String, PowerStateEntry>>();
+
+    protected static class PowerStateEntry {
+        final long vmId;
+        final VirtualMachine.PowerState powerState;
+        // until when the state is known to be settled in the DB, 0 if it is not
+        final long settledUntil;
+
+        PowerStateEntry(long vmId, VirtualMachine.PowerState powerState, long settledUntil) {
+            this.vmId = vmId;
+            this.powerState = powerState;
+            this.settledUntil = settledUntil;
+        }
+
+        boolean isSettled(VirtualMachine.PowerState reportedState, long now) {
+            return powerState == reportedState && now < settledUntil;
+        }
+    }
+
     public VirtualMachinePowerStateSyncImpl() {
     }
 
     @Override
     public void resetHostSyncState(long hostId) {
         s_logger.info("Reset VM power state sync for host: " + hostId);
+        _hostPowerStates.remove(hostId);
         _instanceDao.resetHostPowerStateTracking(hostId);
     }
 
+    @Override
+    public void resetVmSyncState(long vmId) {
+        for (Map<String, PowerStateEntry> powerStates : _hostPowerStates.values()) {
+            powerStates.values().removeIf(entry -> entry.vmId == vmId);
+        }
+    }
+
     @Override
     public void processHostVmStateReport(long hostId, Map<String, HostVmStateReportEntry> report) {
             s_logger.debug("Process host VM state report. host: " + hostId);
 
-        Map<Long, VirtualMachine.PowerState> translatedInfo = convertVmStateReport(report);
-        processReport(hostId, translatedInfo);
+        _hostPowerStates.remove(hostId);
+        processReport(hostId, report);
     }
 
     @Override
@@ -63,31 +93,85 @@ public class VirtualMachinePowerStateSyncImpl implements VirtualMachinePowerStat
         if (s_logger.isDebugEnabled())
             s_logger.debug("Process host VM state report from ping process. host: " + hostId);
 
-        Map<Long, VirtualMachine.PowerState> translatedInfo = convertVmStateReport(report);
-        processReport(hostId, translatedInfo);
+        processReport(hostId, report);
     }
 
-    private void processReport(long hostId, Map<Long, VirtualMachine.PowerState> translatedInfo) {
+    /**
+     * Only the VMs whose power state is not known to be settled in the DB are looked up and updated,
+     * a VM that keeps reporting the same state is checked against the DB again once per graceful period.
+     */
+    private void processReport(long hostId, Map<String, HostVmStateReportEntry> report) {
+        if (report == null) {
+            report = new HashMap<String, HostVmStateReportEntry>();
+        }
 
         if (s_logger.isDebugEnabled()) {
-            s_logger.debug("Process VM state report. host: " + hostId + ", number of records in report: " + translatedInfo.size());
+            s_logger.debug("Process VM state report. host: " + hostId + ", number of records in report: " + report.size());
+        }
+
+        // 2 times of sync-update interval for graceful period
+        long milliSecondsGracefullPeriod = mgmtServiceConf.getPingInterval() * 2000L;
+
+        final Map<String, PowerStateEntry> knownStates = _hostPowerStates.computeIfAbsent(hostId, k -> new ConcurrentHashMap<String, PowerStateEntry>());
+        knownStates.keySet().retainAll(report.keySet());
+
+        final Map<Long, VirtualMachine.PowerState> translatedInfo = new HashMap<Long, VirtualMachine.PowerState>();
+        final Map<String, Long> vmsToUpdate = new HashMap<String, Long>();
+        final List<String> unknownVms = new ArrayList<String>();
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, HostVmStateReportEntry> entry : report.entrySet()) {
+            PowerStateEntry known = knownStates.get(entry.getKey());
+            if (known == null) {
+                unknownVms.add(entry.getKey());
+                continue;
+            }
+            translatedInfo.put(known.vmId, entry.getValue().getState());
+            if (!known.isSettled(entry.getValue().getState(), now)) {
+                vmsToUpdate.put(entry.getKey(), known.vmId);
+            }
         }
 
-        for (Map.Entry<Long, VirtualMachine.PowerState> entry : translatedInfo.entrySet()) {
+        if (!unknownVms.isEmpty()) {
+            for (VMInstanceVO vm : _instanceDao.listByInstanceNames(unknownVms)) {
+                HostVmStateReportEntry reportEntry = report.get(vm.getInstanceName());
+                if (reportEntry == null) {
+                    continue;
+                }
+                translatedInfo.put(vm.getId(), reportEntry.getState());
+                vmsToUpdate.put(vm.getInstanceName(), vm.getId());
+            }
+            if (s_logger.isDebugEnabled()) {
+                for (String vmName : unknownVms) {
+                    if (!vmsToUpdate.containsKey(vmName)) {
+                        s_logger.debug("Unable to find matched VM in CloudStack DB. name: " + vmName);
+                    }
+                }
+            }
+        }
+
+        if (s_logger.isTraceEnabled()) {
+            s_logger.trace("VM power states already settled, skip DB checks. host: " + hostId + ", number of VMs: " + (translatedInfo.size() - vmsToUpdate.size()));
+        }
+
+        for (Map.Entry<String, Long> entry : vmsToUpdate.entrySet()) {
+            final long vmId = entry.getValue();
+            final VirtualMachine.PowerState powerState = translatedInfo.get(vmId);
 
             if (s_logger.isDebugEnabled())
-                s_logger.debug("VM state report. host: " + hostId + ", vm id: " + entry.getKey() + ", power state: " + entry.getValue());
+                s_logger.debug("VM state report. host: " + hostId + ", vm id: " + vmId + ", power state: " + powerState);
 
-            if (_instanceDao.updatePowerState(entry.getKey(), hostId, entry.getValue(), DateUtil.currentGMTTime())) {
+            if (_instanceDao.updatePowerState(vmId, hostId, powerState, DateUtil.currentGMTTime())) {
                 if (s_logger.isInfoEnabled()) {
-                    s_logger.debug("VM state report is updated. host: " + hostId + ", vm id: " + entry.getKey() + ", power state: " + entry.getValue());
+                    s_logger.debug("VM state report is updated. host: " + hostId + ", vm id: " + vmId + ", power state: " + powerState);
                 }
 
-                _messageBus.publish(null, VirtualMachineManager.Topics.VM_POWER_STATE, PublishScope.GLOBAL, entry.getKey());
+                knownStates.put(entry.getKey(), new PowerStateEntry(vmId, powerState, 0));
+                _messageBus.publish(null, VirtualMachineManager.Topics.VM_POWER_STATE, PublishScope.GLOBAL, vmId);
             } else {
                 if (s_logger.isTraceEnabled()) {
-                    s_logger.trace("VM power state does not change, skip DB writing. vm id: " + entry.getKey());
+                    s_logger.trace("VM power state does not change, skip DB writing. vm id: " + vmId);
                 }
+                knownStates.put(entry.getKey(), new PowerStateEntry(vmId, powerState, now + milliSecondsGracefullPeriod));
             }
         }
 
@@ -110,9 +194,6 @@ public class VirtualMachinePowerStateSyncImpl implements VirtualMachinePowerStat
                 s_logger.debug("Run missing VM report. current time: " + currentTime.getTime());
             }
 
-            // 2 times of sync-update interval for graceful period
-            long milliSecondsGracefullPeriod = mgmtServiceConf.getPingInterval() * 2000L;
-
             for (VMInstanceVO instance : vmsThatAreMissingReport) {
 
                 // Make sure powerState is up to date for missing VMs
@@ -184,19 +265,16 @@ public class VirtualMachinePowerStateSyncImpl implements VirtualMachinePowerStat
             return map;
         }
 
-        for (Map.Entry<String, HostVmStateReportEntry> entry : states.entrySet()) {
-            VMInstanceVO vm = findVM(entry.getKey());
-            if (vm != null) {
-                map.put(vm.getId(), entry.getValue().getState());
-            } else {
-                s_logger.debug("Unable to find matched VM in CloudStack DB. name: " + entry.getKey());
+        for (VMInstanceVO vm : _instanceDao.listByInstanceNames(states.keySet())) {
+            HostVmStateReportEntry reportEntry = states.get(vm.getInstanceName());
+            if (reportEntry != null) {
+                map.put(vm.getId(), reportEntry.getState());
             }
         }
+        if (map.size() < states.size() && s_logger.isDebugEnabled()) {
+            s_logger.debug("Unable to find matched VMs in CloudStack DB for " + (states.size() - map.size()) + " of the reported VMs");
+        }
 
         return map;
     }
-
-    private VMInstanceVO findVM(String vmName) {
-        return _instanceDao.findVMByInstanceName(vmName);
-    }
 }
@@ -18,10 +18,14 @@ package com.cloud.agent.manager;
 
 import com.cloud.agent.Listener;
 import com.cloud.agent.api.Answer;
+import com.cloud.agent.api.Command;
+import com.cloud.agent.api.PingCommand;
 import com.cloud.agent.api.ReadyCommand;
 import com.cloud.agent.api.StartupCommand;
 import com.cloud.agent.api.StartupRoutingCommand;
+import com.cloud.alert.AlertManager;
 import com.cloud.exception.ConnectionException;
+import com.cloud.host.Host;
 import com.cloud.host.HostVO;
 import com.cloud.host.Status;
 import com.cloud.host.dao.HostDao;
@@ -57,6 +61,42 @@ public class AgentManagerImplTest {
         mgr._hostMonitors.add(new Pair<>(0, storagePoolMonitor));
     }
 
+    @Test
+    public void testPingIsOnlyPassedToPingListeners() {
+        Listener pingListener = Mockito.mock(Listener.class);
+        Listener commandListener = Mockito.mock(Listener.class);
+        Mockito.when(pingListener.processesPingCommands()).thenReturn(true);
+        mgr._cmdMonitors = new ArrayList<>();
+        mgr._pingMonitors = new ArrayList<>();
+        mgr.registerForHostEvents(pingListener, false, true, false);
+        mgr.registerForHostEvents(commandListener, false, true, false);
+
+        Command[] ping = new Command[] {new PingCommand(Host.Type.Routing, 1L)};
+        mgr.handleCommands(attache, 1L, ping);
+        Command[] ready = new Command[] {new ReadyCommand(1L)};
+        mgr.handleCommands(attache, 2L, ready);
+
+        Mockito.verify(pingListener).processCommands(1L, 1L, ping);
+        Mockito.verify(commandListener, Mockito.never()).processCommands(1L, 1L, ping);
+        Mockito.verify(pingListener).processCommands(1L, 2L, ready);
+        Mockito.verify(commandListener).processCommands(1L, 2L, ready);
+    }
+
+    @Test
+    public void testGatewayAlertIsOnlyClearedOnTransitions() {
+        AlertManager alertMgr = Mockito.mock(AlertManager.class);
+        mgr._alertMgr = alertMgr;
+        host.setPodId(2L);
+        Mockito.when(hostDao.findById(1L)).thenReturn(host);
+
+        mgr.processGatewayReport(1L, true);
+        mgr.processGatewayReport(1L, true);
+        mgr.processGatewayReport(1L, true);
+
+        Mockito.verify(hostDao, Mockito.times(1)).findById(1L);
+        Mockito.verify(alertMgr, Mockito.times(1)).clearAlert(AlertManager.AlertType.ALERT_TYPE_ROUTING, 1L, 2L);
+    }
+
     @Test
     public void testNotifyMonitorsOfConnectionNormal() throws ConnectionException {
         Mockito.when(hostDao.findById(Mockito.anyLong())).thenReturn(host);
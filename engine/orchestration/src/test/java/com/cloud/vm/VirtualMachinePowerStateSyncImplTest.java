@@ -0,0 +1,124 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.vm;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.cloudstack.framework.messagebus.MessageBus;
+import org.apache.cloudstack.framework.messagebus.PublishScope;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.cloud.agent.api.HostVmStateReportEntry;
+import com.cloud.configuration.ManagementServiceConfiguration;
+import com.cloud.vm.dao.VMInstanceDao;
+
+@RunWith(MockitoJUnitRunner.class)
+public class VirtualMachinePowerStateSyncImplTest {
+
+    private static final long HOST_ID = 1L;
+    private static final long VM_ID = 2L;
+    private static final String VM_NAME = "i-2-2-VM";
+
+    @Mock
+    private MessageBus messageBus;
+    @Mock
+    private VMInstanceDao instanceDao;
+    @Mock
+    private ManagementServiceConfiguration mgmtServiceConf;
+    @Mock
+    private VMInstanceVO vm;
+
+    @InjectMocks
+    private VirtualMachinePowerStateSyncImpl powerStateSync = new VirtualMachinePowerStateSyncImpl();
+
+    @Before
+    public void setup() {
+        when(mgmtServiceConf.getPingInterval()).thenReturn(60);
+        when(vm.getId()).thenReturn(VM_ID);
+        when(vm.getInstanceName()).thenReturn(VM_NAME);
+        when(instanceDao.listByInstanceNames(anyCollectionOf(String.class))).thenReturn(Arrays.asList(vm));
+    }
+
+    private Map<String, HostVmStateReportEntry> report(VirtualMachine.PowerState state) {
+        Map<String, HostVmStateReportEntry> report = new HashMap<String, HostVmStateReportEntry>();
+        report.put(VM_NAME, new HostVmStateReportEntry(state, "host"));
+        return report;
+    }
+
+    @Test
+    public void testSettledPowerStateIsNotCheckedAgain() {
+        when(instanceDao.updatePowerState(eq(VM_ID), eq(HOST_ID), eq(VirtualMachine.PowerState.PowerOn), any(Date.class))).thenReturn(false);
+
+        powerStateSync.processHostVmStatePingReport(HOST_ID, report(VirtualMachine.PowerState.PowerOn));
+        powerStateSync.processHostVmStatePingReport(HOST_ID, report(VirtualMachine.PowerState.PowerOn));
+
+        verify(instanceDao, times(1)).listByInstanceNames(anyCollectionOf(String.class));
+        verify(instanceDao, times(1)).updatePowerState(anyLong(), anyLong(), any(VirtualMachine.PowerState.class), any(Date.class));
+    }
+
+    @Test
+    public void testUnsettledPowerStateIsUpdatedAgain() {
+        when(instanceDao.updatePowerState(eq(VM_ID), eq(HOST_ID), eq(VirtualMachine.PowerState.PowerOn), any(Date.class))).thenReturn(true);
+
+        powerStateSync.processHostVmStatePingReport(HOST_ID, report(VirtualMachine.PowerState.PowerOn));
+        powerStateSync.processHostVmStatePingReport(HOST_ID, report(VirtualMachine.PowerState.PowerOn));
+
+        verify(instanceDao, times(1)).listByInstanceNames(anyCollectionOf(String.class));
+        verify(instanceDao, times(2)).updatePowerState(eq(VM_ID), eq(HOST_ID), eq(VirtualMachine.PowerState.PowerOn), any(Date.class));
+        verify(messageBus, times(2)).publish(any(), eq(VirtualMachineManager.Topics.VM_POWER_STATE), any(PublishScope.class), eq(VM_ID));
+    }
+
+    @Test
+    public void testPowerStateTransitionIsUpdated() {
+        powerStateSync.processHostVmStatePingReport(HOST_ID, report(VirtualMachine.PowerState.PowerOn));
+        powerStateSync.processHostVmStatePingReport(HOST_ID, report(VirtualMachine.PowerState.PowerOff));
+
+        verify(instanceDao).updatePowerState(eq(VM_ID), eq(HOST_ID), eq(VirtualMachine.PowerState.PowerOn), any(Date.class));
+        verify(instanceDao).updatePowerState(eq(VM_ID), eq(HOST_ID), eq(VirtualMachine.PowerState.PowerOff), any(Date.class));
+    }
+
+    @Test
+    public void testResetSyncStateForgetsKnownPowerStates() {
+        powerStateSync.processHostVmStatePingReport(HOST_ID, report(VirtualMachine.PowerState.PowerOn));
+        powerStateSync.resetVmSyncState(VM_ID);
+        powerStateSync.processHostVmStatePingReport(HOST_ID, report(VirtualMachine.PowerState.PowerOn));
+        powerStateSync.resetHostSyncState(HOST_ID);
+        powerStateSync.processHostVmStatePingReport(HOST_ID, report(VirtualMachine.PowerState.PowerOn));
+
+        verify(instanceDao, times(3)).listByInstanceNames(anyCollectionOf(String.class));
+        verify(instanceDao, times(3)).updatePowerState(eq(VM_ID), eq(HOST_ID), eq(VirtualMachine.PowerState.PowerOn), any(Date.class));
+        verify(instanceDao).resetHostPowerStateTracking(HOST_ID);
+        verify(instanceDao, never()).findVMByInstanceName(VM_NAME);
+    }
+}
@@ -28,6 +28,11 @@ import com.cloud.utils.db.GenericDao;
 public interface CapacityDao extends GenericDao<CapacityVO, Long> {
     CapacityVO findByHostIdType(Long hostId, short capacityType);
 
+    /**
+     * Lists the capacity entries of the given types for all of the given hosts in one query.
+     */
+    List<CapacityVO> listByHostIdsAndTypes(List<Long> hostIds, Short... capacityTypes);
+
     List<Long> listClustersInZoneOrPodByHostCapacities(long id, long vmId, int requiredCpu, long requiredRam, short capacityTypeForOrdering, boolean isZone);
 
     List<Long> listHostsWithEnoughCapacity(int requiredCpu, long requiredRam, Long clusterId, String hostType);
@@ -65,6 +65,9 @@ public class UsageJobVO implements InternalIdentity {
     @Column(name = "exec_time")
     private long execTime;
 
+    @Column(name = "parse_times")
+    private String parseTimes;
+
     @Temporal(TemporalType.TIMESTAMP)
     @Column(name = "start_date")
     private Date startDate;
@@ -148,6 +151,14 @@ public class UsageJobVO implements InternalIdentity {
         this.execTime = execTime;
     }
 
+    public String getParseTimes() {
+        return parseTimes;
+    }
+
+    public void setParseTimes(String parseTimes) {
+        this.parseTimes = parseTimes;
+    }
+
     public Date getStartDate() {
         return startDate;
     }
@@ -0,0 +1,54 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.usage;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Time up to which the usage of an account was parsed and committed, so that an interrupted usage job can be resumed
+ * where it stopped instead of parsing the whole period again.
+ */
+@Entity
+@Table(name = "usage_parse_checkpoint")
+public class UsageParseCheckpointVO {
+
+    @Id
+    @Column(name = "account_id")
+    private long accountId;
+
+    @Column(name = "parsed_until_millis")
+    private long parsedUntilMillis;
+
+    protected UsageParseCheckpointVO() {
+    }
+
+    public UsageParseCheckpointVO(long accountId, long parsedUntilMillis) {
+        this.accountId = accountId;
+        this.parsedUntilMillis = parsedUntilMillis;
+    }
+
+    public long getAccountId() {
+        return accountId;
+    }
+
+    public long getParsedUntilMillis() {
+        return parsedUntilMillis;
+    }
+}
@@ -37,4 +37,9 @@ public interface UsageJobDao extends GenericDao<UsageJobVO, Long> {
     UsageJobVO isOwner(String hostname, int pid);
 
     void updateJobSuccess(Long jobId, long startMillis, long endMillis, long execTime, boolean success);
+
+    /**
+     * @param parseTimes time spent in each of the usage parsers, e.g. "vm=1200,volume=800", in milliseconds
+     */
+    void updateJobSuccess(Long jobId, long startMillis, long endMillis, long execTime, boolean success, String parseTimes);
 }
@@ -0,0 +1,63 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.usage.dao;
+
+import java.sql.PreparedStatement;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.springframework.stereotype.Component;
+
+import com.cloud.usage.UsageParseCheckpointVO;
+import com.cloud.utils.db.GenericDaoBase;
+import com.cloud.utils.db.TransactionLegacy;
+import com.cloud.utils.exception.CloudRuntimeException;
+
+@Component
+public class UsageParseCheckpointDaoImpl extends GenericDaoBase<UsageParseCheckpointVO, Long> implements UsageParseCheckpointDao {
+    private static final Logger s_logger = Logger.getLogger(UsageParseCheckpointDaoImpl.class.getName());
+
+    private static final String UPDATE_PARSED_UNTIL = "INSERT INTO cloud_usage.usage_parse_checkpoint (account_id, parsed_until_millis) VALUES (?,?) "
+            + "ON DUPLICATE KEY UPDATE parsed_until_millis = VALUES(parsed_until_millis)";
+
+    public UsageParseCheckpointDaoImpl() {
+    }
+
+    @Override
+    public Map<Long, Long> getParsedUntil() {
+        Map<Long, Long> parsedUntil = new HashMap<>();
+        for (UsageParseCheckpointVO checkpoint : listAll()) {
+            parsedUntil.put(checkpoint.getAccountId(), checkpoint.getParsedUntilMillis());
+        }
+        return parsedUntil;
+    }
+
+    @Override
+    public void updateParsedUntil(long accountId, long parsedUntilMillis) {
+        TransactionLegacy txn = TransactionLegacy.currentTxn();
+        try {
+            PreparedStatement pstmt = txn.prepareAutoCloseStatement(UPDATE_PARSED_UNTIL);
+            pstmt.setLong(1, accountId);
+            pstmt.setLong(2, parsedUntilMillis);
+            pstmt.executeUpdate();
+        } catch (Exception ex) {
+            s_logger.error("error updating the usage parse checkpoint of account " + accountId, ex);
+            throw new CloudRuntimeException(ex.getMessage());
+        }
+    }
+}
@@ -869,3 +869,13 @@ WHERE   usage_unit = 'Policy-Month';
 
 -- delete configuration task.cleanup.retry.interval #6910
 DELETE FROM `cloud`.`configuration` WHERE name='task.cleanup.retry.interval';
+
+-- Time spent in each of the usage parsers
+CALL `cloud_usage`.`IDEMPOTENT_ADD_COLUMN`('cloud_usage.usage_job', 'parse_times', 'varchar(1024) DEFAULT NULL COMMENT ''time spent in each usage parser, in milliseconds'' ');
+
+-- Time up to which the usage of each account was parsed, to resume interrupted usage jobs
+CREATE TABLE IF NOT EXISTS `cloud_usage`.`usage_parse_checkpoint` (
+  `account_id` bigint unsigned NOT NULL,
+  `parsed_until_millis` bigint NOT NULL COMMENT 'time, in milliseconds, up to which the usage of the account was parsed',
+  PRIMARY KEY (`account_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
@@ -0,0 +1,254 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.cloud.utils.LatencyHistogram;
+
+/**
+ * Long-lived connection to the cluster channel of a peer. Requests are written back to back
+ * without waiting for the answers of the previous ones, a reader thread completes them as the
+ * responses come in. The number of requests in flight is capped, senders block once the cap
+ * is reached.
+ */
+public class ClusterChannelClient {
+    private static final Logger s_logger = Logger.getLogger(ClusterChannelClient.class);
+
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final long RECONNECT_BACKOFF_MS = 30000;
+
+    private final String _peer;
+    private final InetSocketAddress _address;
+    private final int _maxInFlight;
+    private final Semaphore _inFlight;
+
+    private final Map<Long, CompletableFuture<String>> _pending = new ConcurrentHashMap<Long, CompletableFuture<String>>();
+    private final AtomicLong _nextRequestId = new AtomicLong(1);
+
+    private final LatencyHistogram _latency = new LatencyHistogram();
+    private final AtomicLong _failures = new AtomicLong(0);
+
+    private Socket _socket;
+    private DataOutputStream _out;
+    // bytes handed to the socket, tells whether a failed request may have reached the peer
+    private final AtomicLong _written = new AtomicLong(0);
+    private long _connectAfter = 0;
+
+    public ClusterChannelClient(String peer, InetSocketAddress address, int maxInFlight) {
+        _peer = peer;
+        _address = address;
+        _maxInFlight = maxInFlight;
+        _inFlight = new Semaphore(maxInFlight);
+    }
+
+    public String getPeer() {
+        return _peer;
+    }
+
+    public InetSocketAddress getAddress() {
+        return _address;
+    }
+
+    /**
+     * Sends a request to the peer.
+     * @param waitMs how long to wait for a free in-flight slot
+     * @param timeoutMs how long to wait for the answer
+     * @return future completed with the answer of the peer, or exceptionally if the connection is lost or the answer times out.
+     * Either way the peer may have received the request, so the caller must not send it again through another transport.
+     * @throws IOException if no byte of the request reached the connection, the caller can fall back to another transport
+     */
+    public CompletableFuture<String> send(byte kind, byte[] body, long waitMs, long timeoutMs) throws IOException {
+        try {
+            if (!_inFlight.tryAcquire(waitMs, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Too many requests in flight to peer " + _peer);
+            }
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while waiting to send to peer " + _peer);
+        }
+
+        final long requestId = _nextRequestId.getAndIncrement();
+        final long startTick = System.currentTimeMillis();
+        final CompletableFuture<String> future = new CompletableFuture<String>();
+        _pending.put(requestId, future);
+        future.orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+        future.whenComplete((result, e) -> {
+            _pending.remove(requestId);
+            _inFlight.release();
+            if (e == null) {
+                _latency.record(System.currentTimeMillis() - startTick);
+            } else {
+                _failures.incrementAndGet();
+            }
+        });
+
+        synchronized (this) {
+            long written = -1;
+            try {
+                connect();
+                written = _written.get();
+                ClusterPduCodec.writeFrame(_out, requestId, kind, body);
+                _out.flush();
+            } catch (IOException e) {
+                future.completeExceptionally(e);
+                close(e);
+                if (written == -1 || written == _written.get()) {
+                    throw e;
+                }
+            }
+        }
+        return future;
+    }
+
+    private void connect() throws IOException {
+        if (_socket != null) {
+            return;
+        }
+        if (System.currentTimeMillis() < _connectAfter) {
+            throw new IOException("Cluster channel to peer " + _peer + " is backing off after a failure");
+        }
+
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            socket.connect(_address, CONNECT_TIMEOUT_MS);
+        } catch (IOException e) {
+            _connectAfter = System.currentTimeMillis() + RECONNECT_BACKOFF_MS;
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                s_logger.trace("[ignored] failed to close socket to " + _address);
+            }
+            throw e;
+        }
+
+        if (s_logger.isInfoEnabled()) {
+            s_logger.info("Opened cluster channel to peer " + _peer + " at " + _address);
+        }
+        _socket = socket;
+        _out = new DataOutputStream(new BufferedOutputStream(new CountingOutputStream(socket.getOutputStream(), _written)));
+
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        Thread reader = new Thread(() -> readResponses(socket, in), "Cluster-Channel-" + _peer);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void readResponses(Socket socket, DataInputStream in) {
+        try {
+            while (true) {
+                ClusterPduCodec.Frame frame = ClusterPduCodec.readFrame(in);
+                CompletableFuture<String> future = _pending.get(frame.getRequestId());
+                if (future != null) {
+                    future.complete(ClusterPduCodec.decodeString(frame.getBody()));
+                } else if (s_logger.isDebugEnabled()) {
+                    s_logger.debug("Dropping response to unknown or timed out request " + frame.getRequestId() + " from peer " + _peer);
+                }
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                if (_socket == socket) {
+                    close(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the connection, all the requests in flight on it fail. The next request reconnects.
+     */
+    public synchronized void close(Throwable cause) {
+        if (_socket != null) {
+            if (s_logger.isInfoEnabled()) {
+                s_logger.info("Closing cluster channel to peer " + _peer + (cause != null ? " due to " + cause.getMessage() : ""));
+            }
+            try {
+                _socket.close();
+            } catch (IOException e) {
+                s_logger.trace("[ignored] failed to close cluster channel to " + _address);
+            }
+            _socket = null;
+            _out = null;
+        }
+
+        IOException e = new IOException("Cluster channel to peer " + _peer + " is closed", cause);
+        for (CompletableFuture<String> future : _pending.values()) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    public synchronized boolean isConnected() {
+        return _socket != null;
+    }
+
+    public Map<String, String> getStats() {
+        Map<String, String> stats = new HashMap<String, String>(_latency.toMap());
+        stats.put("peer", _peer);
+        stats.put("address", _address.toString());
+        stats.put("connected", String.valueOf(isConnected()));
+        stats.put("inflight", String.valueOf(_maxInFlight - _inFlight.availablePermits()));
+        stats.put("failures", String.valueOf(_failures.get()));
+        return stats;
+    }
+
+    public void resetStats() {
+        _latency.reset();
+        _failures.set(0);
+    }
+
+    /**
+     * Counts the bytes handed to the underlying stream, including the ones of a write that fails.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private final AtomicLong _count;
+
+        CountingOutputStream(OutputStream out, AtomicLong count) {
+            super(out);
+            _count = count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            _count.incrementAndGet();
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            _count.addAndGet(len);
+            out.write(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.log4j.Logger;
+
+import com.cloud.utils.concurrency.NamedThreadFactory;
+
+/**
+ * Accepts cluster channel connections from the peers. Each connection is served by its own
+ * thread, which hands the PDUs over to the cluster manager in the order they were sent and
+ * answers each of them as soon as it is queued.
+ */
+public class ClusterChannelServer {
+    private static final Logger s_logger = Logger.getLogger(ClusterChannelServer.class);
+
+    private final ClusterManager _manager;
+    private final ExecutorService _executor = Executors.newCachedThreadPool(new NamedThreadFactory("Cluster-Channel-Server"));
+    private final Set<Socket> _connections = ConcurrentHashMap.newKeySet();
+
+    private ServerSocket _serverSocket;
+    private volatile boolean _stopped;
+
+    public ClusterChannelServer(ClusterManager manager) {
+        _manager = manager;
+    }
+
+    public void start(int port) throws IOException {
+        _serverSocket = new ServerSocket();
+        _serverSocket.setReuseAddress(true);
+        _serverSocket.bind(new InetSocketAddress(port));
+        s_logger.info("Cluster channel listening on port " + port);
+
+        _executor.execute(this::acceptConnections);
+    }
+
+    public void stop() {
+        _stopped = true;
+        try {
+            if (_serverSocket != null) {
+                _serverSocket.close();
+            }
+        } catch (IOException e) {
+            s_logger.debug("[ignored] failed to close cluster channel server socket", e);
+        }
+        for (Socket socket : _connections) {
+            closeQuietly(socket);
+        }
+        _executor.shutdownNow();
+    }
+
+    private void acceptConnections() {
+        while (!_stopped) {
+            try {
+                final Socket socket = _serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                _connections.add(socket);
+                _executor.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!_stopped) {
+                    s_logger.warn("Unable to accept cluster channel connection", e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        if (s_logger.isDebugEnabled()) {
+            s_logger.debug("Serving cluster channel connection from " + socket.getRemoteSocketAddress());
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            while (!_stopped) {
+                ClusterPduCodec.Frame frame = ClusterPduCodec.readFrame(in);
+                String response = handle(frame);
+                ClusterPduCodec.writeFrame(out, frame.getRequestId(), ClusterPduCodec.KIND_RESPONSE, ClusterPduCodec.encodeString(response));
+                // keep pipelined answers batched while more requests are buffered
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (EOFException | SocketException e) {
+            if (s_logger.isDebugEnabled()) {
+                s_logger.debug("Cluster channel connection from " + socket.getRemoteSocketAddress() + " is closed");
+            }
+        } catch (IOException e) {
+            s_logger.warn("Closing cluster channel connection from " + socket.getRemoteSocketAddress() + " due to " + e.getMessage());
+        } finally {
+            _connections.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    private String handle(ClusterPduCodec.Frame frame) throws IOException {
+        switch (frame.getKind()) {
+            case ClusterPduCodec.KIND_DELIVER_PDU:
+                _manager.OnReceiveClusterServicePdu(ClusterPduCodec.decodePdu(frame.getBody()));
+                return "true";
+
+            case ClusterPduCodec.KIND_PING:
+                if (s_logger.isDebugEnabled()) {
+                    s_logger.debug("Handle ping request from " + ClusterPduCodec.decodeString(frame.getBody()));
+                }
+                return "true";
+
+            default:
+                s_logger.error("Unrecognized cluster channel frame kind " + frame.getKind());
+                return "";
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            s_logger.trace("[ignored] failed to close cluster channel connection");
+        }
+    }
+}
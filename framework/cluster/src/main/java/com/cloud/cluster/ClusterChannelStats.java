@@ -0,0 +1,62 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.cluster;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.StandardMBean;
+
+/**
+ * Request latencies and in-flight requests of the cluster channels to the peers, along with
+ * the number of requests which had to fall back to the servlet.
+ */
+public class ClusterChannelStats extends StandardMBean implements ClusterChannelStatsMBean {
+    private final Map<String, ClusterChannelClient> _clients;
+    private final AtomicLong _fallbacks;
+
+    public ClusterChannelStats(Map<String, ClusterChannelClient> clients, AtomicLong fallbacks) {
+        super(ClusterChannelStatsMBean.class, false);
+        _clients = clients;
+        _fallbacks = fallbacks;
+    }
+
+    @Override
+    public List<Map<String, String>> getPeerChannels() {
+        List<Map<String, String>> result = new ArrayList<Map<String, String>>();
+        for (ClusterChannelClient client : new TreeMap<String, ClusterChannelClient>(_clients).values()) {
+            result.add(client.getStats());
+        }
+        return result;
+    }
+
+    @Override
+    public long getFallbackCount() {
+        return _fallbacks.get();
+    }
+
+    @Override
+    public void reset() {
+        for (ClusterChannelClient client : _clients.values()) {
+            client.resetStats();
+        }
+        _fallbacks.set(0);
+    }
+}
@@ -0,0 +1,336 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.cluster;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cloudstack.managed.context.ManagedContextRunnable;
+import org.apache.cloudstack.management.ManagementServerHost;
+import org.apache.log4j.Logger;
+
+import com.cloud.cluster.dao.ManagementServerHostDao;
+import com.cloud.utils.DateUtil;
+import com.cloud.utils.concurrency.NamedThreadFactory;
+import com.cloud.utils.db.LockController;
+
+/**
+ * LockController keeping lock ownership in management server memory instead of
+ * the database.
+ *
+ * The oldest running management server acts as lock coordinator and keeps the
+ * leases in a {@link LeaseLockTable}; the other nodes talk to it over the cluster
+ * PDU channel. Holders renew their leases periodically, so the locks of a node
+ * that disappears lapse after one lease period. When the coordinator itself goes
+ * away, the next oldest node takes over: during one lease period it only accepts
+ * renewals, which lets the surviving holders re-register their locks before any
+ * new lock is granted.
+ */
+public class ClusterLockController implements LockController, ClusterManagerListener, ClusterManager.Dispatcher {
+    private static final Logger s_logger = Logger.getLogger(ClusterLockController.class);
+
+    protected static final String OP_ACQUIRE = "acquire";
+    protected static final String OP_RELEASE = "release";
+    protected static final String OP_RENEW = "renew";
+
+    private static final long MAX_REMOTE_WAIT_MS = 5000;
+    private static final long RETRY_INTERVAL_MS = 200;
+
+    private final ClusterManager _clusterMgr;
+    private final ManagementServerHostDao _mshostDao;
+    private final long _msId;
+    private final long _leaseMs;
+
+    private final LeaseLockTable _leases = new LeaseLockTable();
+    private final Map<String, String> _heldByThisServer = new ConcurrentHashMap<String, String>();
+    // owner and key of the locks whose lease could not be renewed, until their holder releases them
+    private final Set<String> _lost = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<Map<String, Integer>> _heldByThread = ThreadLocal.withInitial(HashMap::new);
+    private final ScheduledExecutorService _renewExecutor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("Cluster-Lock-Renew"));
+
+    private volatile long _coordinatorMsId = -1;
+    private volatile long _graceUntil = 0;
+
+    public ClusterLockController(ClusterManager clusterMgr, ManagementServerHostDao mshostDao, long leaseSeconds) {
+        _clusterMgr = clusterMgr;
+        _mshostDao = mshostDao;
+        _msId = clusterMgr.getManagementNodeId();
+        _leaseMs = leaseSeconds * 1000L;
+    }
+
+    public void start() {
+        updateCoordinator();
+        final long interval = Math.max(1000, _leaseMs / 3);
+        _renewExecutor.scheduleWithFixedDelay(new ManagedContextRunnable() {
+            @Override
+            protected void runInContext() {
+                renewLeases();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        _renewExecutor.shutdownNow();
+    }
+
+    @Override
+    public String getName() {
+        return "ClusterLockController";
+    }
+
+    private String getOwner() {
+        return _msId + ":" + Thread.currentThread().getId();
+    }
+
+    private static String getLostKey(String owner, String key) {
+        return owner + "\n" + key;
+    }
+
+    protected boolean isCoordinator() {
+        return _coordinatorMsId == _msId;
+    }
+
+    /**
+     * The coordinator is the management server that has been running for the longest time,
+     * so that a node joining the cluster does not move the lock table.
+     */
+    protected void updateCoordinator() {
+        final Date cutTime = DateUtil.currentGMTTime();
+        final List<ManagementServerHostVO> peers = _mshostDao.getActiveList(new Date(cutTime.getTime() - ClusterManager.HeartbeatThreshold.value()));
+        ManagementServerHostVO coordinator = null;
+        for (ManagementServerHostVO peer : peers) {
+            if (coordinator == null || peer.getRunid() < coordinator.getRunid() || (peer.getRunid() == coordinator.getRunid() && peer.getMsid() < coordinator.getMsid())) {
+                coordinator = peer;
+            }
+        }
+        final long coordinatorMsId = coordinator != null ? coordinator.getMsid() : _msId;
+        if (coordinatorMsId != _coordinatorMsId) {
+            if (coordinatorMsId == _msId && _coordinatorMsId != -1) {
+                // take over: give the holders one lease period to re-register their locks
+                _graceUntil = System.currentTimeMillis() + _leaseMs;
+            }
+            s_logger.info("Lock coordinator is now management server " + coordinatorMsId);
+            _coordinatorMsId = coordinatorMsId;
+        }
+    }
+
+    @Override
+    public boolean acquire(String key, int timeoutSeconds) {
+        final Map<String, Integer> held = _heldByThread.get();
+        final Integer count = held.get(key);
+        if (count != null) {
+            if (isLost(key)) {
+                s_logger.error("Lock " + key + " has been lost by " + getOwner() + ", it can't be acquired again before it is released");
+                return false;
+            }
+            held.put(key, count + 1);
+            return true;
+        }
+
+        final String owner = getOwner();
+        final long deadline = System.currentTimeMillis() + timeoutSeconds * 1000L;
+        do {
+            final long attemptStart = System.currentTimeMillis();
+            final long waitMs = Math.min(MAX_REMOTE_WAIT_MS, Math.max(0, deadline - attemptStart));
+            final String result = execute(OP_ACQUIRE, owner, waitMs, key);
+            if (Boolean.parseBoolean(result)) {
+                held.put(key, 1);
+                _heldByThisServer.put(key, owner);
+                return true;
+            }
+            final long elapsed = System.currentTimeMillis() - attemptStart;
+            if (result == null || elapsed < Math.min(waitMs, RETRY_INTERVAL_MS)) {
+                // coordinator unreachable or not taking requests, back off until the cluster view settles
+                try {
+                    Thread.sleep(Math.min(RETRY_INTERVAL_MS, Math.max(1, deadline - System.currentTimeMillis())));
+                } catch (InterruptedException e) {
+                    s_logger.debug("[ignored] interrupted while acquiring lck-" + key);
+                }
+            }
+        } while (System.currentTimeMillis() < deadline);
+
+        s_logger.warn("Timed out on acquiring lock " + key + ". Waited for " + timeoutSeconds + " seconds");
+        return false;
+    }
+
+    @Override
+    public boolean release(String key) {
+        final Map<String, Integer> held = _heldByThread.get();
+        final Integer count = held.get(key);
+        if (count == null) {
+            s_logger.warn("Was unable to find lock for the key " + key + " and thread " + Thread.currentThread().getName());
+            return false;
+        }
+        if (count > 1) {
+            held.put(key, count - 1);
+            return true;
+        }
+        held.remove(key);
+        final String owner = getOwner();
+        if (_lost.remove(getLostKey(owner, key))) {
+            s_logger.error("Lock " + key + " was lost while it was held by " + owner);
+            return false;
+        }
+        _heldByThisServer.remove(key);
+        return Boolean.parseBoolean(execute(OP_RELEASE, owner, 0, key));
+    }
+
+    @Override
+    public boolean isLost(String key) {
+        return _lost.contains(getLostKey(getOwner(), key));
+    }
+
+    @Override
+    public void cleanupThread() {
+        final Map<String, Integer> held = _heldByThread.get();
+        if (held.isEmpty()) {
+            return;
+        }
+        s_logger.warn("There were still " + held.size() + " locks not released when the transaction ended: " + held.keySet());
+        final String owner = getOwner();
+        for (String key : new ArrayList<String>(held.keySet())) {
+            if (_lost.remove(getLostKey(owner, key))) {
+                continue;
+            }
+            _heldByThisServer.remove(key);
+            execute(OP_RELEASE, owner, 0, key);
+        }
+        held.clear();
+    }
+
+    @Override
+    public void cleanupForServer(long msId) {
+        if (isCoordinator()) {
+            int count = _leases.releaseAll(msId + ":");
+            s_logger.info("Released " + count + " locks for " + msId);
+        }
+    }
+
+    protected void renewLeases() {
+        final Map<String, List<String>> keysByOwner = new HashMap<String, List<String>>();
+        for (Map.Entry<String, String> entry : _heldByThisServer.entrySet()) {
+            keysByOwner.computeIfAbsent(entry.getValue(), k -> new ArrayList<String>()).add(entry.getKey());
+        }
+        for (Map.Entry<String, List<String>> entry : keysByOwner.entrySet()) {
+            final String result = execute(OP_RENEW, entry.getKey(), 0, entry.getValue().toArray(new String[0]));
+            if (result != null && !Boolean.parseBoolean(result) && !Boolean.FALSE.toString().equals(result)) {
+                s_logger.error("Lost the leases on " + result + " held by " + entry.getKey());
+                // stop renewing them and let the holder find out through isLost() and release()
+                for (String key : result.split(",")) {
+                    if (_heldByThisServer.remove(key, entry.getKey())) {
+                        _lost.add(getLostKey(entry.getKey(), key));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the lock operation locally if this node is the coordinator, or on the coordinator otherwise.
+     * @return the result of the operation, or null if the coordinator could not be reached
+     */
+    protected String execute(String op, String owner, long waitMs, String... keys) {
+        if (isCoordinator()) {
+            return handle(op, owner, waitMs, keys);
+        }
+        final StringBuilder payload = new StringBuilder();
+        payload.append(op).append('\n').append(owner).append('\n').append(waitMs);
+        for (String key : keys) {
+            payload.append('\n').append(key);
+        }
+        return _clusterMgr.execute(Long.toString(_coordinatorMsId), ClusterServicePdu.PDU_TYPE_LOCK_REQUEST, payload.toString());
+    }
+
+    protected String handle(String op, String owner, long waitMs, String... keys) {
+        switch (op) {
+        case OP_ACQUIRE:
+            final long graceLeft = _graceUntil - System.currentTimeMillis();
+            if (graceLeft > 0) {
+                // only renewals are accepted while the holders re-register their locks
+                if (graceLeft >= waitMs) {
+                    sleep(waitMs);
+                    return Boolean.toString(false);
+                }
+                sleep(graceLeft);
+                waitMs -= graceLeft;
+            }
+            return Boolean.toString(_leases.acquire(keys[0], owner, _leaseMs, waitMs));
+        case OP_RELEASE:
+            return Boolean.toString(_leases.release(keys[0], owner));
+        case OP_RENEW:
+            final List<String> lost = new ArrayList<String>();
+            for (String key : keys) {
+                if (!_leases.renew(key, owner, _leaseMs)) {
+                    lost.add(key);
+                }
+            }
+            return lost.isEmpty() ? Boolean.toString(true) : String.join(",", lost);
+        default:
+            s_logger.warn("Unknown lock operation " + op);
+            return null;
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            s_logger.debug("[ignored] interrupted while waiting for the lock coordinator take over");
+        }
+    }
+
+    @Override
+    public String dispatch(ClusterServicePdu pdu) {
+        if (!isCoordinator()) {
+            // the requester has a stale view of the cluster, it will retry
+            return Boolean.toString(false);
+        }
+        final String[] lines = pdu.getJsonPackage().split("\n");
+        if (lines.length < 3) {
+            s_logger.warn("Malformed lock request from " + pdu.getSourcePeer());
+            return null;
+        }
+        final String[] keys = new String[lines.length - 3];
+        System.arraycopy(lines, 3, keys, 0, keys.length);
+        return handle(lines[0], lines[1], Long.parseLong(lines[2]), keys);
+    }
+
+    @Override
+    public void onManagementNodeJoined(List<? extends ManagementServerHost> nodeList, long selfNodeId) {
+        updateCoordinator();
+    }
+
+    @Override
+    public void onManagementNodeLeft(List<? extends ManagementServerHost> nodeList, long selfNodeId) {
+        updateCoordinator();
+        for (ManagementServerHost node : nodeList) {
+            cleanupForServer(node.getMsid());
+        }
+    }
+
+    @Override
+    public void onManagementNodeIsolated() {
+    }
+}
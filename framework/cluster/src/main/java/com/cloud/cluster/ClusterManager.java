@@ -30,6 +30,16 @@ public interface ClusterManager extends Manager {
         "Interval to check for the heart beat between management server nodes", false);
     final ConfigKey<Integer> HeartbeatThreshold = new ConfigKey<Integer>(Integer.class, "cluster.heartbeat.threshold", "management-server", "150000",
         "Threshold before self-fence the management server", true);
+    final ConfigKey<String> LockControllerType = new ConfigKey<String>(String.class, "cluster.lock.controller", "management-server", "mysql",
+        "Distributed lock service used for global and table locks: 'mysql' (GET_LOCK() and the op_lock table) or 'cluster' (in-memory leases coordinated " +
+        "between management servers). All management servers must use the same value", false);
+    final ConfigKey<Integer> LockLeaseSeconds = new ConfigKey<Integer>(Integer.class, "cluster.lock.lease.seconds", "management-server", "60",
+        "Lease duration, in seconds, of the locks granted by the 'cluster' lock controller", false);
+    final ConfigKey<Boolean> ClusterChannelEnabled = new ConfigKey<Boolean>(Boolean.class, "cluster.channel.enabled", "management-server", "false",
+        "Send the PDUs to the peers over a persistent, pipelined binary connection to the port next to the cluster servlet port, " +
+        "falling back to the servlet whenever the connection is unavailable", false);
+    final ConfigKey<Integer> ClusterChannelMaxInFlight = new ConfigKey<Integer>(Integer.class, "cluster.channel.max.inflight", "management-server", "128",
+        "Maximum number of unanswered PDUs on the cluster channel to a peer", false);
 
     /**
      * Adds a new packet to the incoming queue.
@@ -39,6 +49,12 @@ public interface ClusterManager extends Manager {
 
     void publishStatus(String status);
 
+    /**
+     * Asks all the other management server nodes to drop their cached values of a config.
+     * @param configName name of the config that has been changed
+     */
+    void publishConfigInvalidation(String configName);
+
     /**
      * Creates and registers a PDU, notifies listeners, and waits on the PDU to be notified.
      * @param strPeer destination
@@ -49,6 +65,15 @@ public interface ClusterManager extends Manager {
      */
     String execute(String strPeer, long agentId, String cmds, boolean stopOnError);
 
+    /**
+     * Sends a request PDU of the given type to a peer and waits for its answer.
+     * @param strPeer destination
+     * @param pduType type of the PDU, dispatched on the far side to the dispatcher registered for it
+     * @param payload content of the PDU
+     * @return answer from the far side
+     */
+    String execute(String strPeer, int pduType, String payload);
+
     /**
      * Broadcast the command to all the management server nodes.
      * @param agentId agent id this broadcast is regarding
@@ -62,6 +87,11 @@ public interface ClusterManager extends Manager {
 
     void registerDispatcher(Dispatcher dispatcher);
 
+    /**
+     * Registers the dispatcher answering the request PDUs of the given type.
+     */
+    void registerDispatcher(int pduType, Dispatcher dispatcher);
+
     /**
      * Registers a listener for incoming status changes of ManagementServers.
      *
@@ -32,6 +32,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -59,6 +62,7 @@ import com.cloud.utils.concurrency.NamedThreadFactory;
 import com.cloud.utils.db.ConnectionConcierge;
 import com.cloud.utils.db.DB;
 import com.cloud.utils.db.DbProperties;
+import com.cloud.utils.db.LockControllers;
 import com.cloud.utils.db.Transaction;
 import com.cloud.utils.db.TransactionCallback;
 import com.cloud.utils.db.TransactionLegacy;
@@ -103,6 +107,9 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
     private ManagementServerHostPeerDao _mshostPeerDao;
 
     protected Dispatcher _dispatcher;
+    private final Map<Integer, Dispatcher> _pduDispatchers = new ConcurrentHashMap<Integer, Dispatcher>();
+
+    private ClusterLockController _lockController;
 
     private StatusAdministrator statusAdministrator;
 
@@ -144,6 +151,11 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
         _dispatcher = dispatcher;
     }
 
+    @Override
+    public void registerDispatcher(final int pduType, final Dispatcher dispatcher) {
+        _pduDispatchers.put(pduType, dispatcher);
+    }
+
     @Override
     public void registerStatusAdministrator(final StatusAdministrator administrator) {
         statusAdministrator = administrator;
@@ -178,6 +190,9 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
         for (final ClusterServiceRequestPdu pdu : candidates) {
             s_logger.warn("Cancel cluster request PDU to peer: " + strPeer + ", pdu: " + pdu.getJsonPackage());
             synchronized (pdu) {
+                if (pdu.getResponseResult() == null) {
+                    pdu.setResponseResult("");
+                }
                 pdu.notifyAll();
             }
         }
@@ -273,15 +288,20 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
                             final Profiler profiler = new Profiler();
                             profiler.start();
 
-                            final String strResult = peerService.execute(pdu);
-                            profiler.stop();
-
-                            if (s_logger.isDebugEnabled()) {
-                                s_logger.debug("Cluster PDU " + getSelfPeerName() + " -> " + pdu.getDestPeer() + " completed. time: " +
-                                        profiler.getDurationInMillis() + "ms. agent: " + pdu.getAgentId() + ", pdu seq: " + pdu.getSequenceId() +
-                                        ", pdu ack seq: " + pdu.getAckSequenceId() + ", json: " + pdu.getJsonPackage());
+                            final CompletableFuture<String> future = peerService.executeAsync(pdu);
+                            if (!future.isDone()) {
+                                // pipelined transport, which already falls back to the servlet on its own
+                                future.whenComplete((result, e) -> {
+                                    profiler.stop();
+                                    logPduCompletion(pdu, profiler, result, e);
+                                });
+                                break;
                             }
 
+                            final String strResult = getPduResult(future);
+                            profiler.stop();
+                            logPduCompletion(pdu, profiler, strResult, null);
+
                             if ("true".equals(strResult)) {
                                 break;
                             }
@@ -301,6 +321,30 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
         }
     }
 
+    private static String getPduResult(final CompletableFuture<String> future) throws RemoteException {
+        try {
+            return future.get();
+        } catch (final InterruptedException e) {
+            throw new RemoteException("Interrupted while delivering PDU", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RemoteException) {
+                throw (RemoteException)e.getCause();
+            }
+            throw new RemoteException("Unable to deliver PDU", e.getCause());
+        }
+    }
+
+    private void logPduCompletion(final ClusterServicePdu pdu, final Profiler profiler, final String result, final Throwable e) {
+        if (e != null || !"true".equals(result)) {
+            s_logger.warn("Cluster PDU " + getSelfPeerName() + " -> " + pdu.getDestPeer() + " failed. agent: " + pdu.getAgentId() + ", pdu seq: " +
+                    pdu.getSequenceId() + (e != null ? ", exception message: " + e.getMessage() : ", result: " + result));
+        } else if (s_logger.isDebugEnabled()) {
+            s_logger.debug("Cluster PDU " + getSelfPeerName() + " -> " + pdu.getDestPeer() + " completed. time: " +
+                    profiler.getDurationInMillis() + "ms. agent: " + pdu.getAgentId() + ", pdu seq: " + pdu.getSequenceId() +
+                    ", pdu ack seq: " + pdu.getAckSequenceId() + ", json: " + pdu.getJsonPackage());
+        }
+    }
+
     private void onNotifyingClusterPdu() {
         while (true) {
             try {
@@ -315,13 +359,15 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
                         if (pdu.getPduType() == ClusterServicePdu.PDU_TYPE_RESPONSE) {
                             final ClusterServiceRequestPdu requestPdu = popRequestPdu(pdu.getAckSequenceId());
                             if (requestPdu != null) {
-                                requestPdu.setResponseResult(pdu.getJsonPackage());
                                 synchronized (requestPdu) {
+                                    requestPdu.setResponseResult(pdu.getJsonPackage());
                                     requestPdu.notifyAll();
                                 }
                             } else {
                                 s_logger.warn("Original request has already been cancelled. pdu: " + pdu.getJsonPackage());
                             }
+                        } else if (pdu.getPduType() == ClusterServicePdu.PDU_TYPE_CONFIG_INVALIDATION) {
+                            _configDepot.invalidateConfigCache(pdu.getJsonPackage());
                         } else if (pdu.getPduType() == ClusterServicePdu.PDU_TYPE_STATUS_UPDATE) {
                             if (statusAdministrator == null) {
                                 s_logger.warn("No status administration to report a status update too.");
@@ -329,12 +375,13 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
                                 statusAdministrator.newStatus(pdu);
                             }
                         } else {
-                            String result = _dispatcher.dispatch(pdu);
+                            final Dispatcher pduDispatcher = _pduDispatchers.get(pdu.getPduType());
+                            String result = pduDispatcher != null ? pduDispatcher.dispatch(pdu) : _dispatcher.dispatch(pdu);
                             if (result == null) {
                                 result = "";
                             }
 
-                            if (pdu.getPduType() == ClusterServicePdu.PDU_TYPE_REQUEST) {
+                            if (pdu.getPduType() == ClusterServicePdu.PDU_TYPE_REQUEST || pduDispatcher != null) {
                                 final ClusterServicePdu responsePdu = new ClusterServicePdu();
                                 responsePdu.setPduType(ClusterServicePdu.PDU_TYPE_RESPONSE);
                                 responsePdu.setSourcePeer(pdu.getDestPeer());
@@ -421,6 +468,30 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
         }
     }
 
+    @Override
+    public void publishConfigInvalidation(final String configName) {
+        final Date cutTime = DateUtil.currentGMTTime();
+
+        final List<ManagementServerHostVO> peers = _mshostDao.getActiveList(new Date(cutTime.getTime() - HeartbeatThreshold.value()));
+        for (final ManagementServerHostVO peer : peers) {
+            final String peerName = Long.toString(peer.getMsid());
+            if (getSelfPeerName().equals(peerName)) {
+                continue;
+            }
+            if (s_logger.isDebugEnabled()) {
+                s_logger.debug("Forwarding invalidation of config " + configName + " to " + peer.getMsid());
+            }
+            final ClusterServicePdu pdu = new ClusterServicePdu();
+            pdu.setSourcePeer(getSelfPeerName());
+            pdu.setDestPeer(peerName);
+            pdu.setPduType(ClusterServicePdu.PDU_TYPE_CONFIG_INVALIDATION);
+            pdu.setAgentId(0);
+            pdu.setJsonPackage(configName);
+            pdu.setStopOnError(true);
+            addOutgoingClusterPdu(pdu);
+        }
+    }
+
     public void sendStatus(final String strPeer, final String status) {
         final ClusterServicePdu pdu = new ClusterServicePdu();
         pdu.setSourcePeer(getSelfPeerName());
@@ -465,6 +536,38 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
         return null;
     }
 
+    @Override
+    public String execute(final String strPeer, final int pduType, final String payload) {
+        final ClusterServiceRequestPdu pdu = new ClusterServiceRequestPdu();
+        pdu.setPduType(pduType);
+        pdu.setSourcePeer(getSelfPeerName());
+        pdu.setDestPeer(strPeer);
+        pdu.setAgentId(0);
+        pdu.setJsonPackage(payload);
+        pdu.setStopOnError(true);
+        registerRequestPdu(pdu);
+        addOutgoingClusterPdu(pdu);
+
+        // the response may arrive before we start waiting, so wait on the result rather than on a single notification
+        final long deadline = System.currentTimeMillis() + HeartbeatThreshold.value();
+        synchronized (pdu) {
+            long remaining;
+            while (pdu.getResponseResult() == null && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    pdu.wait(remaining);
+                } catch (final InterruptedException e) {
+                    break;
+                }
+            }
+        }
+        popRequestPdu(pdu.getSequenceId());
+
+        if (pdu.getResponseResult() != null && pdu.getResponseResult().length() > 0) {
+            return pdu.getResponseResult();
+        }
+        return null;
+    }
+
     @Override
     public ManagementServerHostVO getPeer(final String mgmtServerId) {
         return _mshostDao.findByMsid(Long.parseLong(mgmtServerId));
@@ -1032,6 +1135,14 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
 
         _mshostPeerDao.clearPeerInfo(_mshostId);
 
+        if ("cluster".equalsIgnoreCase(LockControllerType.value())) {
+            _lockController = new ClusterLockController(this, _mshostDao, LockLeaseSeconds.value());
+            registerDispatcher(ClusterServicePdu.PDU_TYPE_LOCK_REQUEST, _lockController);
+            registerListener(_lockController);
+            _lockController.start();
+            LockControllers.setLockController(_lockController);
+        }
+
         // use separate thread for heartbeat updates
         _heartbeatScheduler.scheduleAtFixedRate(getHeartbeatTask(), HeartbeatInterval.value(), HeartbeatInterval.value(), TimeUnit.MILLISECONDS);
         _notificationExecutor.submit(getNotificationTask());
@@ -1059,6 +1170,11 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
             mshostStatusDao.update(mshostStatus.getId(), mshostStatus);
         }
 
+        if (_lockController != null) {
+            LockControllers.setLockController(null);
+            _lockController.stop();
+        }
+
         _heartbeatScheduler.shutdownNow();
         _executor.shutdownNow();
 
@@ -1166,7 +1282,7 @@ public class ClusterManagerImpl extends ManagerBase implements ClusterManager, C
 
     @Override
     public ConfigKey<?>[] getConfigKeys() {
-        return new ConfigKey<?>[] {HeartbeatInterval, HeartbeatThreshold};
+        return new ConfigKey<?>[] {HeartbeatInterval, HeartbeatThreshold, LockControllerType, LockLeaseSeconds, ClusterChannelEnabled, ClusterChannelMaxInFlight};
     }
 
     private boolean pingManagementNode(final ManagementServerHostVO mshost) {
@@ -0,0 +1,149 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary framing of the cluster channel. Every frame is made of its length, a request id,
+ * the kind of the frame and a body; responses carry the id of the request they answer, so
+ * that any number of requests can be in flight on one connection.
+ */
+public final class ClusterPduCodec {
+    public static final byte KIND_DELIVER_PDU = 1;
+    public static final byte KIND_PING = 2;
+    public static final byte KIND_RESPONSE = 3;
+
+    public static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    private static final int FRAME_HEADER_SIZE = 8 + 1;
+
+    private ClusterPduCodec() {
+    }
+
+    public static class Frame {
+        private final long _requestId;
+        private final byte _kind;
+        private final byte[] _body;
+
+        public Frame(long requestId, byte kind, byte[] body) {
+            _requestId = requestId;
+            _kind = kind;
+            _body = body;
+        }
+
+        public long getRequestId() {
+            return _requestId;
+        }
+
+        public byte getKind() {
+            return _kind;
+        }
+
+        public byte[] getBody() {
+            return _body;
+        }
+    }
+
+    /**
+     * Writes a frame, callers sharing the stream need to serialize their writes.
+     */
+    public static void writeFrame(DataOutputStream out, long requestId, byte kind, byte[] body) throws IOException {
+        out.writeInt(FRAME_HEADER_SIZE + body.length);
+        out.writeLong(requestId);
+        out.writeByte(kind);
+        out.write(body);
+    }
+
+    public static Frame readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < FRAME_HEADER_SIZE || length > MAX_FRAME_SIZE) {
+            throw new IOException("Invalid cluster channel frame length " + length);
+        }
+        long requestId = in.readLong();
+        byte kind = in.readByte();
+        byte[] body = new byte[length - FRAME_HEADER_SIZE];
+        in.readFully(body);
+        return new Frame(requestId, kind, body);
+    }
+
+    public static byte[] encodePdu(ClusterServicePdu pdu) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeLong(pdu.getSequenceId());
+            out.writeLong(pdu.getAckSequenceId());
+            out.writeLong(pdu.getAgentId());
+            out.writeInt(pdu.getPduType());
+            out.writeBoolean(pdu.isStopOnError());
+            writeString(out, pdu.getSourcePeer());
+            writeString(out, pdu.getDestPeer());
+            writeString(out, pdu.getJsonPackage());
+        } catch (IOException e) {
+            // not expected when writing to memory
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static ClusterServicePdu decodePdu(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        ClusterServicePdu pdu = new ClusterServicePdu();
+        pdu.setSequenceId(in.readLong());
+        pdu.setAckSequenceId(in.readLong());
+        pdu.setAgentId(in.readLong());
+        pdu.setPduType(in.readInt());
+        pdu.setStopOnError(in.readBoolean());
+        pdu.setSourcePeer(readString(in));
+        pdu.setDestPeer(readString(in));
+        pdu.setJsonPackage(readString(in));
+        return pdu;
+    }
+
+    public static byte[] encodeString(String value) {
+        return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static String decodeString(byte[] body) {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
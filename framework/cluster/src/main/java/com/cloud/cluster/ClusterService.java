@@ -18,9 +18,23 @@ package com.cloud.cluster;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.concurrent.CompletableFuture;
 
 public interface ClusterService extends Remote {
     String execute(ClusterServicePdu pdu) throws RemoteException;
 
     boolean ping(String callingPeer) throws RemoteException;
+
+    /**
+     * Sends the PDU, transports which are able to pipeline requests return before the peer answers.
+     */
+    default CompletableFuture<String> executeAsync(ClusterServicePdu pdu) {
+        CompletableFuture<String> future = new CompletableFuture<String>();
+        try {
+            future.complete(execute(pdu));
+        } catch (RemoteException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
 }
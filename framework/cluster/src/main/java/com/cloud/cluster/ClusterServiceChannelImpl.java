@@ -0,0 +1,111 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.cluster;
+
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Cluster service of a peer reached over the cluster channel. A request that could not be
+ * written to the channel at all is sent through the servlet instead. Once the request went
+ * out, a failure is reported to the caller: resending it through the servlet could deliver
+ * it twice, or after requests sent later.
+ */
+public class ClusterServiceChannelImpl implements ClusterService {
+    private static final long serialVersionUID = -2396474880313406446L;
+    private static final Logger s_logger = Logger.getLogger(ClusterServiceChannelImpl.class);
+
+    // a saturated channel is left for the servlet quickly rather than holding up the sender
+    private static final long IN_FLIGHT_WAIT_MS = 1000;
+
+    private final ClusterChannelClient _client;
+    private final ClusterService _fallback;
+    private final ExecutorService _fallbackExecutor;
+    private final AtomicLong _fallbacks;
+
+    public ClusterServiceChannelImpl(ClusterChannelClient client, ClusterService fallback, ExecutorService fallbackExecutor, AtomicLong fallbacks) {
+        _client = client;
+        _fallback = fallback;
+        _fallbackExecutor = fallbackExecutor;
+        _fallbacks = fallbacks;
+    }
+
+    private static long getTimeoutMs() {
+        return ClusterServiceAdapter.ClusterMessageTimeOut.value() * 1000L;
+    }
+
+    @Override
+    public String execute(ClusterServicePdu pdu) throws RemoteException {
+        try {
+            return executeAsync(pdu).get(getTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException | TimeoutException e) {
+            throw new RemoteException("No answer from peer " + pdu.getDestPeer() + " on cluster channel", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RemoteException) {
+                throw (RemoteException)e.getCause();
+            }
+            throw new RemoteException("Unable to deliver PDU to peer " + pdu.getDestPeer(), e.getCause());
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> executeAsync(final ClusterServicePdu pdu) {
+        try {
+            return _client.send(ClusterPduCodec.KIND_DELIVER_PDU, ClusterPduCodec.encodePdu(pdu), IN_FLIGHT_WAIT_MS, getTimeoutMs());
+        } catch (IOException e) {
+            // nothing of the PDU reached the peer
+            return fallback(pdu, e);
+        }
+    }
+
+    private CompletableFuture<String> fallback(final ClusterServicePdu pdu, Throwable cause) {
+        _fallbacks.incrementAndGet();
+        if (s_logger.isDebugEnabled()) {
+            s_logger.debug("Sending PDU " + pdu.getSequenceId() + " to peer " + pdu.getDestPeer() + " through the servlet, cluster channel failed: " + cause.getMessage());
+        }
+
+        final CompletableFuture<String> future = new CompletableFuture<String>();
+        _fallbackExecutor.execute(() -> {
+            try {
+                future.complete(_fallback.execute(pdu));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public boolean ping(String callingPeer) throws RemoteException {
+        try {
+            String answer = _client.send(ClusterPduCodec.KIND_PING, ClusterPduCodec.encodeString(callingPeer), IN_FLIGHT_WAIT_MS, getTimeoutMs())
+                    .get(getTimeoutMs(), TimeUnit.MILLISECONDS);
+            return "true".equalsIgnoreCase(answer);
+        } catch (IOException | InterruptedException | ExecutionException | TimeoutException e) {
+            _fallbacks.incrementAndGet();
+            return _fallback.ping(callingPeer);
+        }
+    }
+}
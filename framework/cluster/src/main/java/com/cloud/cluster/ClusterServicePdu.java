@@ -21,6 +21,8 @@ public class ClusterServicePdu {
     public final static int PDU_TYPE_REQUEST = 1;
     public final static int PDU_TYPE_RESPONSE = 2;
     public final static int PDU_TYPE_STATUS_UPDATE = 3;
+    public final static int PDU_TYPE_CONFIG_INVALIDATION = 4;
+    public final static int PDU_TYPE_LOCK_REQUEST = 5;
 
     private long sequenceId;
     private long ackSequenceId;
@@ -16,9 +16,15 @@
 // under the License.
 package com.cloud.cluster;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.rmi.RemoteException;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 import javax.naming.ConfigurationException;
@@ -30,13 +36,16 @@ import com.cloud.cluster.dao.ManagementServerHostDao;
 import com.cloud.utils.NumbersUtil;
 import com.cloud.utils.component.AdapterBase;
 import com.cloud.utils.component.ComponentLifecycle;
+import com.cloud.utils.concurrency.NamedThreadFactory;
 import com.cloud.utils.db.DbProperties;
+import com.cloud.utils.mgmt.JmxUtil;
 
 public class ClusterServiceServletAdapter extends AdapterBase implements ClusterServiceAdapter {
 
     private static final Logger s_logger = Logger.getLogger(ClusterServiceServletAdapter.class);
     private static final int DEFAULT_SERVICE_PORT = 9090;
     private static final int DEFAULT_REQUEST_TIMEOUT = 300;            // 300 seconds
+    private static final int CHANNEL_PORT_OFFSET = 1;                  // cluster channel listens next to the servlet
 
     @Inject
     private ClusterManager _manager;
@@ -50,6 +59,11 @@ public class ClusterServiceServletAdapter extends AdapterBase implements Cluster
 
     private int _clusterServicePort = DEFAULT_SERVICE_PORT;
 
+    private ClusterChannelServer _channelServer;
+    private final Map<String, ClusterChannelClient> _channelClients = new ConcurrentHashMap<String, ClusterChannelClient>();
+    private final AtomicLong _channelFallbacks = new AtomicLong(0);
+    private final ExecutorService _channelFallbackExecutor = Executors.newCachedThreadPool(new NamedThreadFactory("Cluster-Channel-Fallback"));
+
     public ClusterServiceServletAdapter() {
         setRunLevel(ComponentLifecycle.RUN_LEVEL_FRAMEWORK);
     }
@@ -67,7 +81,30 @@ public class ClusterServiceServletAdapter extends AdapterBase implements Cluster
         if (serviceUrl == null)
             return null;
 
-        return new ClusterServiceServletImpl(serviceUrl);
+        ClusterService servletService = new ClusterServiceServletImpl(serviceUrl);
+        if (_channelServer == null) {
+            return servletService;
+        }
+
+        ManagementServerHostVO mshost = _mshostDao.findByMsid(Long.parseLong(strPeer));
+        if (mshost == null) {
+            return servletService;
+        }
+        return new ClusterServiceChannelImpl(getChannelClient(strPeer, mshost), servletService, _channelFallbackExecutor, _channelFallbacks);
+    }
+
+    private ClusterChannelClient getChannelClient(String strPeer, ManagementServerHostVO mshost) {
+        final InetSocketAddress address = new InetSocketAddress(mshost.getServiceIP(), mshost.getServicePort() + CHANNEL_PORT_OFFSET);
+        return _channelClients.compute(strPeer, (peer, client) -> {
+            if (client != null && client.getAddress().equals(address)) {
+                return client;
+            }
+            if (client != null) {
+                // the peer has come back at another address
+                client.close(null);
+            }
+            return new ClusterChannelClient(peer, address, ClusterManager.ClusterChannelMaxInFlight.value());
+        });
     }
 
     @Override
@@ -109,13 +146,42 @@ public class ClusterServiceServletAdapter extends AdapterBase implements Cluster
     public boolean start() {
         _servletContainer = new ClusterServiceServletContainer();
         _servletContainer.start(new ClusterServiceServletHttpHandler(_manager), _clusterServicePort);
+
+        if (ClusterManager.ClusterChannelEnabled.value()) {
+            startChannel();
+        }
         return true;
     }
 
+    private void startChannel() {
+        ClusterChannelServer channelServer = new ClusterChannelServer(_manager);
+        try {
+            channelServer.start(_clusterServicePort + CHANNEL_PORT_OFFSET);
+        } catch (IOException e) {
+            s_logger.error("Unable to start cluster channel on port " + (_clusterServicePort + CHANNEL_PORT_OFFSET) + ", peers are reached through the servlet only", e);
+            channelServer.stop();
+            return;
+        }
+        _channelServer = channelServer;
+
+        try {
+            JmxUtil.registerMBean("ClusterManager", "Channels", new ClusterChannelStats(_channelClients, _channelFallbacks));
+        } catch (Exception e) {
+            s_logger.warn("Unable to register cluster channel stats for JMX", e);
+        }
+    }
+
     @Override
     public boolean stop() {
         if (_servletContainer != null)
             _servletContainer.stop();
+        if (_channelServer != null) {
+            _channelServer.stop();
+            for (ClusterChannelClient client : _channelClients.values()) {
+                client.close(null);
+            }
+        }
+        _channelFallbackExecutor.shutdown();
         return true;
     }
 
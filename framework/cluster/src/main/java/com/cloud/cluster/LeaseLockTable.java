@@ -0,0 +1,190 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.cluster;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory table of lock leases kept by the lock coordinator. The table is split
+ * into stripes, each guarded by its own monitor, so that unrelated keys do not
+ * contend with each other. A lease belongs to an owner (management server id and
+ * thread) and lapses if it is not renewed before it expires.
+ */
+public class LeaseLockTable {
+    private static final int DEFAULT_STRIPES = 64;
+
+    private final Stripe[] _stripes;
+
+    private static class Lease {
+        final String owner;
+        long expireAt;
+
+        Lease(String owner, long expireAt) {
+            this.owner = owner;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private static class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition released = lock.newCondition();
+        final Map<String, Lease> leases = new HashMap<String, Lease>();
+    }
+
+    public LeaseLockTable() {
+        this(DEFAULT_STRIPES);
+    }
+
+    public LeaseLockTable(int stripes) {
+        _stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            _stripes[i] = new Stripe();
+        }
+    }
+
+    private Stripe stripeFor(String key) {
+        return _stripes[(key.hashCode() & 0x7fffffff) % _stripes.length];
+    }
+
+    private static boolean grant(Stripe stripe, String key, String owner, long leaseMs, long now) {
+        Lease lease = stripe.leases.get(key);
+        if (lease == null || lease.expireAt <= now || lease.owner.equals(owner)) {
+            stripe.leases.put(key, new Lease(owner, now + leaseMs));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Grants the lease on the key to the owner, waiting up to waitMs for it to be released or to expire.
+     */
+    public boolean acquire(String key, String owner, long leaseMs, long waitMs) {
+        final Stripe stripe = stripeFor(key);
+        final long deadline = System.currentTimeMillis() + waitMs;
+        stripe.lock.lock();
+        try {
+            while (true) {
+                long now = System.currentTimeMillis();
+                if (grant(stripe, key, owner, leaseMs, now)) {
+                    return true;
+                }
+                long remaining = deadline - now;
+                if (remaining <= 0) {
+                    return false;
+                }
+                Lease lease = stripe.leases.get(key);
+                long untilExpiry = lease != null ? lease.expireAt - now : remaining;
+                try {
+                    stripe.released.await(Math.max(1, Math.min(remaining, untilExpiry)), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Extends the lease of a key held by the owner. A key that is free, e.g. after the
+     * coordinator has changed, is taken over by the owner.
+     * @return false if the key is held by another owner
+     */
+    public boolean renew(String key, String owner, long leaseMs) {
+        final Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            return grant(stripe, key, owner, leaseMs, System.currentTimeMillis());
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public boolean release(String key, String owner) {
+        final Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            Lease lease = stripe.leases.get(key);
+            if (lease == null || !lease.owner.equals(owner)) {
+                return false;
+            }
+            stripe.leases.remove(key);
+            stripe.released.signalAll();
+            return true;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Drops all of the leases whose owner starts with the given prefix.
+     * @return number of leases dropped
+     */
+    public int releaseAll(String ownerPrefix) {
+        int count = 0;
+        for (Stripe stripe : _stripes) {
+            stripe.lock.lock();
+            try {
+                boolean removed = false;
+                Iterator<Lease> it = stripe.leases.values().iterator();
+                while (it.hasNext()) {
+                    if (it.next().owner.startsWith(ownerPrefix)) {
+                        it.remove();
+                        removed = true;
+                        count++;
+                    }
+                }
+                if (removed) {
+                    stripe.released.signalAll();
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return count;
+    }
+
+    public String getOwner(String key) {
+        final Stripe stripe = stripeFor(key);
+        stripe.lock.lock();
+        try {
+            Lease lease = stripe.leases.get(key);
+            return lease != null && lease.expireAt > System.currentTimeMillis() ? lease.owner : null;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : _stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.leases.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,208 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.cluster;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClusterChannelTest {
+
+    private ClusterChannelServer server;
+    private ClusterChannelClient client;
+    private final List<ClusterServicePdu> received = new CopyOnWriteArrayList<ClusterServicePdu>();
+
+    @Before
+    public void setup() throws IOException {
+        ClusterManager manager = mock(ClusterManager.class);
+        doAnswer(invocation -> {
+            received.add(invocation.getArgument(0));
+            return null;
+        }).when(manager).OnReceiveClusterServicePdu(any(ClusterServicePdu.class));
+
+        int port = getFreePort();
+        server = new ClusterChannelServer(manager);
+        server.start(port);
+        client = new ClusterChannelClient("2", new InetSocketAddress("127.0.0.1", port), 16);
+    }
+
+    @After
+    public void tearDown() {
+        client.close(null);
+        server.stop();
+    }
+
+    private static int getFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static ClusterServicePdu createPdu(long agentId, String json) {
+        ClusterServicePdu pdu = new ClusterServicePdu();
+        pdu.setSourcePeer("1");
+        pdu.setDestPeer("2");
+        pdu.setAgentId(agentId);
+        pdu.setAckSequenceId(7);
+        pdu.setPduType(ClusterServicePdu.PDU_TYPE_REQUEST);
+        pdu.setStopOnError(true);
+        pdu.setJsonPackage(json);
+        return pdu;
+    }
+
+    @Test
+    public void testPduRoundTrip() throws IOException {
+        ClusterServicePdu pdu = createPdu(42, "[{\"com.cloud.agent.api.ReadyCommand\":{}}] é");
+        pdu.setDestPeer(null);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ClusterPduCodec.writeFrame(new DataOutputStream(bytes), 99, ClusterPduCodec.KIND_DELIVER_PDU, ClusterPduCodec.encodePdu(pdu));
+        ClusterPduCodec.Frame frame = ClusterPduCodec.readFrame(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        Assert.assertEquals(99, frame.getRequestId());
+        Assert.assertEquals(ClusterPduCodec.KIND_DELIVER_PDU, frame.getKind());
+
+        ClusterServicePdu decoded = ClusterPduCodec.decodePdu(frame.getBody());
+        Assert.assertEquals(pdu.getSequenceId(), decoded.getSequenceId());
+        Assert.assertEquals(7, decoded.getAckSequenceId());
+        Assert.assertEquals(42, decoded.getAgentId());
+        Assert.assertEquals(ClusterServicePdu.PDU_TYPE_REQUEST, decoded.getPduType());
+        Assert.assertTrue(decoded.isStopOnError());
+        Assert.assertEquals("1", decoded.getSourcePeer());
+        Assert.assertNull(decoded.getDestPeer());
+        Assert.assertEquals(pdu.getJsonPackage(), decoded.getJsonPackage());
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidFrameLength() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new DataOutputStream(bytes).writeInt(-1);
+        ClusterPduCodec.readFrame(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test
+    public void testPipelinedDeliveryKeepsOrder() throws Exception {
+        List<CompletableFuture<String>> futures = new ArrayList<CompletableFuture<String>>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(client.send(ClusterPduCodec.KIND_DELIVER_PDU, ClusterPduCodec.encodePdu(createPdu(i, "json-" + i)), 10000, 10000));
+        }
+        for (CompletableFuture<String> future : futures) {
+            Assert.assertEquals("true", future.get(10, TimeUnit.SECONDS));
+        }
+
+        Assert.assertEquals(100, received.size());
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(i, received.get(i).getAgentId());
+        }
+        Assert.assertTrue(client.isConnected());
+        Assert.assertEquals("100", client.getStats().get("count"));
+        Assert.assertEquals("0", client.getStats().get("inflight"));
+    }
+
+    @Test
+    public void testReconnectAfterClose() throws Exception {
+        Assert.assertEquals("true", client.send(ClusterPduCodec.KIND_PING, ClusterPduCodec.encodeString("1"), 1000, 10000).get(10, TimeUnit.SECONDS));
+        client.close(null);
+        Assert.assertFalse(client.isConnected());
+        Assert.assertEquals("true", client.send(ClusterPduCodec.KIND_PING, ClusterPduCodec.encodeString("1"), 1000, 10000).get(10, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = IOException.class)
+    public void testSendFailsWhenPeerIsDown() throws Exception {
+        server.stop();
+        ClusterChannelClient downClient = new ClusterChannelClient("3", new InetSocketAddress("127.0.0.1", getFreePort()), 16);
+        downClient.send(ClusterPduCodec.KIND_PING, ClusterPduCodec.encodeString("1"), 1000, 1000);
+    }
+
+    @Test
+    public void testPduFallsBackToServletWhenNothingWasSent() throws Exception {
+        server.stop();
+        ClusterChannelClient downClient = new ClusterChannelClient("3", new InetSocketAddress("127.0.0.1", getFreePort()), 16);
+        ClusterService servlet = mock(ClusterService.class);
+        ClusterServicePdu pdu = createPdu(1, "json");
+        when(servlet.execute(pdu)).thenReturn("true");
+        ExecutorService fallbackExecutor = Executors.newSingleThreadExecutor();
+        AtomicLong fallbacks = new AtomicLong(0);
+        try {
+            ClusterServiceChannelImpl channel = new ClusterServiceChannelImpl(downClient, servlet, fallbackExecutor, fallbacks);
+            Assert.assertEquals("true", channel.executeAsync(pdu).get(10, TimeUnit.SECONDS));
+        } finally {
+            fallbackExecutor.shutdownNow();
+        }
+        verify(servlet, times(1)).execute(pdu);
+        Assert.assertEquals(1, fallbacks.get());
+    }
+
+    @Test
+    public void testPduIsNotResentThroughServletOnceWritten() throws Exception {
+        // a peer that takes the request and drops the connection without answering
+        try (ServerSocket peer = new ServerSocket(0)) {
+            Thread acceptor = new Thread(() -> {
+                try (Socket socket = peer.accept()) {
+                    ClusterPduCodec.readFrame(new DataInputStream(socket.getInputStream()));
+                } catch (IOException e) {
+                    // the test fails on the missing request
+                }
+            });
+            acceptor.start();
+
+            ClusterChannelClient peerClient = new ClusterChannelClient("4", new InetSocketAddress("127.0.0.1", peer.getLocalPort()), 16);
+            ClusterService servlet = mock(ClusterService.class);
+            ExecutorService fallbackExecutor = Executors.newSingleThreadExecutor();
+            AtomicLong fallbacks = new AtomicLong(0);
+            try {
+                ClusterServiceChannelImpl channel = new ClusterServiceChannelImpl(peerClient, servlet, fallbackExecutor, fallbacks);
+                channel.executeAsync(createPdu(1, "json")).get(10, TimeUnit.SECONDS);
+                Assert.fail("The lost connection should be reported to the caller");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof IOException);
+            } finally {
+                peerClient.close(null);
+                fallbackExecutor.shutdownNow();
+                acceptor.join(10000);
+            }
+            verify(servlet, never()).execute(any(ClusterServicePdu.class));
+            Assert.assertEquals(0, fallbacks.get());
+        }
+    }
+}
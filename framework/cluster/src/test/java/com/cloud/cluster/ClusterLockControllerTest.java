@@ -0,0 +1,72 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.cloud.cluster.dao.ManagementServerHostDao;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ClusterLockControllerTest {
+
+    @Mock
+    ClusterManager clusterMgr;
+
+    @Mock
+    ManagementServerHostDao mshostDao;
+
+    private ClusterLockController createLockController(long leaseSeconds) {
+        // no other management server is active, so this one coordinates the locks
+        ClusterLockController lockController = new ClusterLockController(clusterMgr, mshostDao, leaseSeconds);
+        lockController.updateCoordinator();
+        return lockController;
+    }
+
+    @Test
+    public void testRenewedLeaseIsNotLost() {
+        ClusterLockController lockController = createLockController(60);
+        assertTrue(lockController.acquire("key", 1));
+
+        lockController.renewLeases();
+
+        assertFalse(lockController.isLost("key"));
+        assertTrue(lockController.release("key"));
+    }
+
+    @Test
+    public void testLostLeaseIsReportedToTheHolder() {
+        ClusterLockController lockController = createLockController(60);
+        assertTrue(lockController.acquire("key", 1));
+        // the coordinator took this management server for gone and granted the lock to another one
+        lockController.cleanupForServer(clusterMgr.getManagementNodeId());
+        assertEquals("true", lockController.handle(ClusterLockController.OP_ACQUIRE, "2:10", 0, "key"));
+
+        lockController.renewLeases();
+
+        assertTrue(lockController.isLost("key"));
+        assertFalse(lockController.acquire("key", 1));
+        assertFalse(lockController.release("key"));
+        assertFalse(lockController.isLost("key"));
+    }
+}
@@ -0,0 +1,82 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LeaseLockTableTest {
+
+    @Test
+    public void testAcquireAndRelease() {
+        LeaseLockTable table = new LeaseLockTable(4);
+        assertTrue(table.acquire("vm.instance.1", "1:10", 60000, 0));
+        assertFalse(table.acquire("vm.instance.1", "2:10", 60000, 10));
+        assertTrue(table.acquire("vm.instance.2", "2:10", 60000, 0));
+        assertEquals("1:10", table.getOwner("vm.instance.1"));
+
+        assertFalse(table.release("vm.instance.1", "2:10"));
+        assertTrue(table.release("vm.instance.1", "1:10"));
+        assertNull(table.getOwner("vm.instance.1"));
+        assertTrue(table.acquire("vm.instance.1", "2:10", 60000, 0));
+    }
+
+    @Test
+    public void testExpiredLeaseCanBeTakenOver() throws InterruptedException {
+        LeaseLockTable table = new LeaseLockTable(4);
+        assertTrue(table.acquire("key", "1:10", 20, 0));
+        assertTrue(table.acquire("key", "2:10", 60000, 1000));
+        assertFalse(table.renew("key", "1:10", 60000));
+    }
+
+    @Test
+    public void testWaiterIsWokenUpOnRelease() throws InterruptedException {
+        final LeaseLockTable table = new LeaseLockTable(4);
+        assertTrue(table.acquire("key", "1:10", 60000, 0));
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+            }
+            table.release("key", "1:10");
+        });
+        releaser.start();
+        assertTrue(table.acquire("key", "2:10", 60000, 10000));
+        releaser.join();
+    }
+
+    @Test
+    public void testRenewAdoptsFreeKey() {
+        LeaseLockTable table = new LeaseLockTable(4);
+        assertTrue(table.renew("key", "1:10", 60000));
+        assertEquals("1:10", table.getOwner("key"));
+    }
+
+    @Test
+    public void testReleaseAll() {
+        LeaseLockTable table = new LeaseLockTable(4);
+        for (int i = 0; i < 10; i++) {
+            table.acquire("key" + i, (i % 2) + ":10", 60000, 0);
+        }
+        assertEquals(5, table.releaseAll("1:"));
+        assertEquals(5, table.size());
+    }
+}
@@ -31,4 +31,10 @@ public interface ConfigDepot {
     <T> void set(ConfigKey<T> key, T value);
 
     <T> void createOrUpdateConfigObject(String componentName, ConfigKey<T> key, String value);
+
+    /**
+     * Drops the cached values of the given config, in all scopes, on this management server.
+     * Callers that change a config are responsible for propagating this to the peers.
+     */
+    void invalidateConfigCache(String key);
 }
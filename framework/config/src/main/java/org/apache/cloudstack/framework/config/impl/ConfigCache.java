@@ -0,0 +1,208 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.framework.config.impl;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.management.StandardMBean;
+
+import org.apache.cloudstack.framework.config.ConfigKey;
+
+/**
+ * In-memory snapshot of configuration values, keyed by config name and scope.
+ *
+ * Every invalidation bumps a version counter; a value loaded from the database
+ * is only stored if no invalidation happened while it was being loaded, so a
+ * concurrent update can never be shadowed by a stale read. Entries also expire
+ * after a TTL, which bounds staleness for values changed outside of
+ * ConfigDepot (e.g. direct detail table updates).
+ */
+public class ConfigCache extends StandardMBean implements ConfigCacheMBean {
+    public static final long DEFAULT_TTL_MS = 30 * 1000L;
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private final long _ttlMs;
+    private final int _maxEntries;
+
+    private final Map<String, Map<String, Entry>> _entries = new ConcurrentHashMap<String, Map<String, Entry>>();
+    private final AtomicInteger _size = new AtomicInteger(0);
+    private final AtomicLong _version = new AtomicLong(0);
+
+    private final AtomicLong _hits = new AtomicLong(0);
+    private final AtomicLong _misses = new AtomicLong(0);
+    private final AtomicLong _evictions = new AtomicLong(0);
+    private final AtomicLong _invalidations = new AtomicLong(0);
+
+    private static class Entry {
+        final String value;
+        final long expireAt;
+
+        Entry(String value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+
+    public ConfigCache() {
+        this(DEFAULT_TTL_MS, DEFAULT_MAX_ENTRIES);
+    }
+
+    public ConfigCache(long ttlMs, int maxEntries) {
+        super(ConfigCacheMBean.class, false);
+        _ttlMs = ttlMs;
+        _maxEntries = maxEntries;
+    }
+
+    protected static String scopeKey(ConfigKey.Scope scope, Long id) {
+        if (scope == null || scope == ConfigKey.Scope.Global || id == null) {
+            return ConfigKey.Scope.Global.name();
+        }
+        return scope.name() + "-" + id;
+    }
+
+    /**
+     * Returns the cached value for the key in the given scope, loading it with
+     * the supplied loader on a miss. Null values are cached as well, as most
+     * scoped lookups do not have an override.
+     */
+    public String get(String name, ConfigKey.Scope scope, Long id, Supplier<String> loader) {
+        final String scopeKey = scopeKey(scope, id);
+        final long now = System.currentTimeMillis();
+
+        Map<String, Entry> scoped = _entries.get(name);
+        if (scoped != null) {
+            Entry entry = scoped.get(scopeKey);
+            if (entry != null) {
+                if (entry.expireAt > now) {
+                    _hits.incrementAndGet();
+                    return entry.value;
+                }
+                if (scoped.remove(scopeKey, entry)) {
+                    _size.decrementAndGet();
+                    _evictions.incrementAndGet();
+                }
+            }
+        }
+
+        _misses.incrementAndGet();
+        final long version = _version.get();
+        final String value = loader.get();
+
+        if (_version.get() == version) {
+            final Entry entry = new Entry(value, now + _ttlMs);
+            scoped = _entries.computeIfAbsent(name, k -> new ConcurrentHashMap<String, Entry>());
+            if (scoped.put(scopeKey, entry) == null && _size.incrementAndGet() > _maxEntries) {
+                evict(now);
+            }
+            // an invalidation may have raced with the put above
+            if (_version.get() != version && scoped.remove(scopeKey, entry)) {
+                _size.decrementAndGet();
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Drops all of the cached values for the key, in every scope.
+     */
+    public void invalidate(String name) {
+        _version.incrementAndGet();
+        _invalidations.incrementAndGet();
+        Map<String, Entry> scoped = _entries.remove(name);
+        if (scoped != null) {
+            _size.addAndGet(-scoped.size());
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        _version.incrementAndGet();
+        _invalidations.incrementAndGet();
+        _entries.clear();
+        _size.set(0);
+    }
+
+    /**
+     * Removes the expired entries and, if the cache is still above its limit,
+     * arbitrary entries until it is back to 90% of the limit.
+     */
+    private synchronized void evict(long now) {
+        if (_size.get() <= _maxEntries) {
+            return;
+        }
+        final int target = (int)(_maxEntries * 0.9);
+        for (int pass = 0; pass < 2 && _size.get() > target; pass++) {
+            for (Map<String, Entry> scoped : _entries.values()) {
+                Iterator<Entry> it = scoped.values().iterator();
+                while (it.hasNext()) {
+                    Entry entry = it.next();
+                    if (pass == 0 && entry.expireAt > now) {
+                        continue;
+                    }
+                    it.remove();
+                    _size.decrementAndGet();
+                    _evictions.incrementAndGet();
+                    if (pass > 0 && _size.get() <= target) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public long getHitCount() {
+        return _hits.get();
+    }
+
+    @Override
+    public long getMissCount() {
+        return _misses.get();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return _evictions.get();
+    }
+
+    @Override
+    public long getInvalidationCount() {
+        return _invalidations.get();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hits = _hits.get();
+        long total = hits + _misses.get();
+        return total == 0 ? 0 : (double)hits / total;
+    }
+
+    @Override
+    public int getSize() {
+        return _size.get();
+    }
+
+    @Override
+    public long getVersion() {
+        return _version.get();
+    }
+}
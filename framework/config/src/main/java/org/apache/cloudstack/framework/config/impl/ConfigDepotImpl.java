@@ -38,6 +38,7 @@ import org.apache.log4j.Logger;
 
 import com.cloud.utils.Pair;
 import com.cloud.utils.exception.CloudRuntimeException;
+import com.cloud.utils.mgmt.JmxUtil;
 
 /**
  * ConfigDepotImpl implements the ConfigDepot and ConfigDepotAdmin interface.
@@ -78,9 +79,16 @@ public class ConfigDepotImpl implements ConfigDepot, ConfigDepotAdmin {
 
     HashMap<ConfigKey.Scope, Set<ConfigKey<?>>> _scopeLevelConfigsMap = new HashMap<ConfigKey.Scope, Set<ConfigKey<?>>>();
 
+    final ConfigCache _configCache = new ConfigCache();
+
     public ConfigDepotImpl() {
         ConfigKey.init(this);
         createEmptyScopeLevelMappings();
+        try {
+            JmxUtil.registerMBean("ConfigDepot", "ConfigCache", _configCache);
+        } catch (Exception e) {
+            s_logger.warn("Unable to register config cache for JMX", e);
+        }
     }
 
     /**
@@ -147,6 +155,7 @@ public class ConfigDepotImpl implements ConfigDepot, ConfigDepotAdmin {
                 vo.setValue(value);
             }
             _configDao.persist(vo);
+            _configCache.invalidate(key.key());
         } else {
             if (vo.isDynamic() != key.isDynamic() || !ObjectUtils.equals(vo.getDescription(), key.description()) || !ObjectUtils.equals(vo.getDefaultValue(), key.defaultValue()) ||
                 !ObjectUtils.equals(vo.getScope(), key.scope().toString()) ||
@@ -158,6 +167,7 @@ public class ConfigDepotImpl implements ConfigDepot, ConfigDepotAdmin {
                 vo.setComponent(componentName);
                 vo.setUpdated(date);
                 _configDao.persist(vo);
+                _configCache.invalidate(key.key());
             }
         }
     }
@@ -177,23 +187,49 @@ public class ConfigDepotImpl implements ConfigDepot, ConfigDepotAdmin {
     }
 
     public ScopedConfigStorage findScopedConfigStorage(ConfigKey<?> config) {
+        return findScopedConfigStorage(config, config.scope());
+    }
+
+    public ScopedConfigStorage getDomainScope(ConfigKey<?> config) {
+        return findScopedConfigStorage(config, ConfigKey.Scope.Domain);
+    }
+
+    protected ScopedConfigStorage findScopedConfigStorage(ConfigKey<?> config, ConfigKey.Scope scope) {
         for (ScopedConfigStorage storage : _scopedStorages) {
-            if (storage.getScope() == config.scope()) {
+            if (storage.getScope() == scope) {
                 return storage;
             }
         }
 
-        throw new CloudRuntimeException("Unable to find config storage for this scope: " + config.scope() + " for " + config.key());
+        throw new CloudRuntimeException("Unable to find config storage for this scope: " + scope + " for " + config.key());
     }
 
-    public ScopedConfigStorage getDomainScope(ConfigKey<?> config) {
-        for (ScopedConfigStorage storage : _scopedStorages) {
-            if (storage.getScope() == ConfigKey.Scope.Domain) {
-                return storage;
-            }
+    /**
+     * Returns the raw value of the config in the given scope, served from the in-memory
+     * config cache. For the global scope, or when no scope id is given, this is the value
+     * in the configuration table; otherwise it is the value in the scoped storage, or null
+     * if there is no override for that scope.
+     */
+    public String getConfigStringValue(ConfigKey<?> config, ConfigKey.Scope scope, Long scopeId) {
+        if (scope == null || scope == ConfigKey.Scope.Global || scopeId == null) {
+            return _configCache.get(config.key(), ConfigKey.Scope.Global, null, () -> {
+                ConfigurationVO vo = _configDao.findById(config.key());
+                return vo != null ? vo.getValue() : null;
+            });
         }
+        return _configCache.get(config.key(), scope, scopeId, () -> findScopedConfigStorage(config, scope).getConfigValue(scopeId, config));
+    }
+
+    @Override
+    public void invalidateConfigCache(String key) {
+        if (s_logger.isDebugEnabled()) {
+            s_logger.debug("Invalidating cached values of config " + key);
+        }
+        _configCache.invalidate(key);
+    }
 
-        throw new CloudRuntimeException("Unable to find config storage for this scope: " + ConfigKey.Scope.Domain + " for " + config.key());
+    public ConfigCache getConfigCache() {
+        return _configCache;
     }
 
     public List<ScopedConfigStorage> getScopedStorages() {
@@ -222,6 +258,7 @@ public class ConfigDepotImpl implements ConfigDepot, ConfigDepotAdmin {
     @Override
     public <T> void set(ConfigKey<T> key, T value) {
         _configDao.update(key.key(), value.toString());
+        _configCache.invalidate(key.key());
     }
 
     @Override
@@ -0,0 +1,88 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+package org.apache.cloudstack.framework.config.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.cloudstack.framework.config.ConfigKey;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConfigCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger(0);
+
+    private String load(String value) {
+        loads.incrementAndGet();
+        return value;
+    }
+
+    @Test
+    public void getServesCachedValueUntilInvalidated() {
+        ConfigCache cache = new ConfigCache();
+        Assert.assertEquals("a", cache.get("key", ConfigKey.Scope.Global, null, () -> load("a")));
+        Assert.assertEquals("a", cache.get("key", ConfigKey.Scope.Global, null, () -> load("b")));
+        Assert.assertEquals(1, loads.get());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+
+        cache.invalidate("key");
+        Assert.assertEquals("b", cache.get("key", ConfigKey.Scope.Global, null, () -> load("b")));
+        Assert.assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void getCachesNullScopedValuesPerScopeId() {
+        ConfigCache cache = new ConfigCache();
+        Assert.assertNull(cache.get("key", ConfigKey.Scope.Zone, 1L, () -> load(null)));
+        Assert.assertNull(cache.get("key", ConfigKey.Scope.Zone, 1L, () -> load("x")));
+        Assert.assertEquals("y", cache.get("key", ConfigKey.Scope.Zone, 2L, () -> load("y")));
+        Assert.assertEquals(2, loads.get());
+        Assert.assertEquals(2, cache.getSize());
+    }
+
+    @Test
+    public void invalidateDuringLoadDoesNotCacheStaleValue() {
+        ConfigCache cache = new ConfigCache();
+        Assert.assertEquals("old", cache.get("key", ConfigKey.Scope.Global, null, () -> {
+            cache.invalidate("key");
+            return load("old");
+        }));
+        Assert.assertEquals("new", cache.get("key", ConfigKey.Scope.Global, null, () -> load("new")));
+        Assert.assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void expiredEntriesAreReloaded() {
+        ConfigCache cache = new ConfigCache(0, 10);
+        cache.get("key", ConfigKey.Scope.Global, null, () -> load("a"));
+        Assert.assertEquals("b", cache.get("key", ConfigKey.Scope.Global, null, () -> load("b")));
+        Assert.assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void sizeIsBoundedByMaxEntries() {
+        ConfigCache cache = new ConfigCache(60000, 10);
+        for (long i = 0; i < 50; i++) {
+            cache.get("key", ConfigKey.Scope.Account, i, () -> load("v"));
+        }
+        Assert.assertTrue(cache.getSize() <= 10);
+        Assert.assertTrue(cache.getEvictionCount() > 0);
+    }
+}
@@ -199,6 +199,23 @@ public interface GenericDao<T, ID extends Serializable> {
      **/
     T persist(T entity);
 
+    /**
+     * Persist the entity beans with batched inserts, in one transaction.  The
+     * id field of each entity is updated with its new id.
+     * @param entities the beans to persist.
+     * @return The persisted versions of the objects, in the same order.  A null
+     * is returned if there's no primary key specified in the VO object.
+     **/
+    List<T> persistAll(List<T> entities);
+
+    /**
+     * Update the changes made to the entity beans with batched updates, in one
+     * transaction.  The entities must have been retrieved through this dao.
+     * @param entities the beans to update.
+     * @return number of rows updated.
+     **/
+    int updateAll(List<T> entities);
+
     /**
      * remove the entity bean.  This will call delete automatically if
      * the entity bean does not have a removed field.
@@ -222,6 +239,13 @@ public interface GenericDao<T, ID extends Serializable> {
      */
     boolean expunge(ID id);
 
+    /**
+     * Expunge the rows with the given ids with batched deletes, in one transaction.
+     * @param ids
+     * @return number of rows deleted.
+     */
+    int expungeAll(List<ID> ids);
+
     /**
      * remove the entity bean specified by the search criteria
      * @param sc
@@ -40,6 +40,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
@@ -122,6 +123,11 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
 
     protected final static TimeZone s_gmtTimeZone = TimeZone.getTimeZone("GMT");
 
+    /**
+     * Maximum number of rows sent in one JDBC batch by persistAll, updateAll and expungeAll.
+     */
+    protected final static int BATCH_SIZE = 500;
+
     protected final static Map<Class<?>, GenericDao<?, ? extends Serializable>> s_daoMaps = new ConcurrentHashMap<Class<?>, GenericDao<?, ? extends Serializable>>(71);
 
     protected Class<T> _entityBeanType;
@@ -1495,6 +1501,257 @@ public abstract class GenericDaoBase<T, ID extends Serializable> extends Compone
         return _idField != null ? findByIdIncludingRemoved(id) : null;
     }
 
+    @Override
+    @DB()
+    @SuppressWarnings("unchecked")
+    public List<T> persistAll(final List<T> entities) {
+        if (entities == null || entities.isEmpty()) {
+            return new ArrayList<T>();
+        }
+
+        final List<T> inserts = new ArrayList<T>(entities.size());
+        final TransactionLegacy txn = TransactionLegacy.currentTxn();
+        PreparedStatement pstmt = null;
+        try {
+            txn.start();
+            for (final T entity : entities) {
+                if (Enhancer.isEnhanced(entity.getClass())) {
+                    persist(entity);
+                } else {
+                    inserts.add(entity);
+                }
+            }
+
+            for (int from = 0; from < inserts.size(); from += BATCH_SIZE) {
+                final List<T> batch = inserts.subList(from, Math.min(from + BATCH_SIZE, inserts.size()));
+                boolean primary = true;
+                for (final Pair<String, Attribute[]> pair : _insertSqls) {
+                    pstmt = txn.prepareAutoCloseStatement(pair.first(), Statement.RETURN_GENERATED_KEYS);
+                    for (final T entity : batch) {
+                        prepareAttributes(pstmt, entity, pair.second(), 1);
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+
+                    // the secondary tables need the ids generated for the primary one
+                    if (primary) {
+                        setGeneratedIds(batch, pstmt.getGeneratedKeys());
+                        primary = false;
+                    }
+                }
+            }
+
+            if (_ecAttributes != null && _ecAttributes.size() > 0) {
+                for (final T entity : inserts) {
+                    HashMap<Attribute, Object> ecAttributes = new HashMap<Attribute, Object>();
+                    for (Attribute attr : _ecAttributes) {
+                        Object ec = attr.field.get(entity);
+                        if (ec != null) {
+                            ecAttributes.put(attr, ec);
+                        }
+                    }
+
+                    insertElementCollection(entity, _idAttributes.get(_table)[0], (ID)_idField.get(entity), ecAttributes);
+                }
+            }
+            txn.commit();
+        } catch (final SQLException e) {
+            handleEntityExistsException(e);
+            throw new CloudRuntimeException("DB Exception on: " + pstmt, e);
+        } catch (IllegalArgumentException e) {
+            throw new CloudRuntimeException("Problem with getting the ec attribute ", e);
+        } catch (IllegalAccessException e) {
+            throw new CloudRuntimeException("Problem with getting the ec attribute ", e);
+        }
+
+        return _idField != null ? listByIdsIncludingRemoved(entities) : null;
+    }
+
+    private void setGeneratedIds(final List<T> entities, final ResultSet rs) throws SQLException, IllegalAccessException {
+        if (_idField == null) {
+            return;
+        }
+        for (final T entity : entities) {
+            if (rs == null || !rs.next()) {
+                return;
+            }
+            final Object id = rs.getObject(1);
+            if (id instanceof BigInteger) {
+                _idField.set(entity, ((BigInteger) id).longValue());
+            } else if (id != null) {
+                _idField.set(entity, id);
+            }
+        }
+    }
+
+    /**
+     * Reads back the given entities with one query per batch, keeping their order.
+     */
+    @SuppressWarnings("unchecked")
+    private List<T> listByIdsIncludingRemoved(final List<T> entities) {
+        final List<ID> ids = new ArrayList<ID>(entities.size());
+        try {
+            for (final T entity : entities) {
+                ids.add((ID)_idField.get(entity));
+            }
+        } catch (final IllegalAccessException e) {
+            throw new CloudRuntimeException("Yikes! ", e);
+        }
+
+        final Map<ID, T> found = new HashMap<ID, T>(ids.size());
+        for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+            final SearchCriteria<T> sc = createSearchCriteria();
+            sc.addAnd(_idAttributes.get(_table)[0], SearchCriteria.Op.IN, ids.subList(from, Math.min(from + BATCH_SIZE, ids.size())).toArray());
+            for (final T entity : searchIncludingRemoved(sc, null, null, false)) {
+                try {
+                    found.put((ID)_idField.get(entity), entity);
+                } catch (final IllegalAccessException e) {
+                    throw new CloudRuntimeException("Yikes! ", e);
+                }
+            }
+        }
+
+        final List<T> result = new ArrayList<T>(ids.size());
+        for (final ID id : ids) {
+            result.add(found.get(id));
+        }
+        return result;
+    }
+
+    @Override
+    @DB()
+    @SuppressWarnings("unchecked")
+    public int updateAll(final List<T> entities) {
+        if (entities == null || entities.isEmpty()) {
+            return 0;
+        }
+
+        // entities with the same set of changes share one statement
+        final Map<String, List<Ternary<ID, UpdateBuilder, SearchCriteria<T>>>> batches = new LinkedHashMap<String, List<Ternary<ID, UpdateBuilder, SearchCriteria<T>>>>();
+        final TransactionLegacy txn = TransactionLegacy.currentTxn();
+        PreparedStatement pstmt = null;
+        int rowsUpdated = 0;
+        try {
+            txn.start();
+            for (final T entity : entities) {
+                assert Enhancer.isEnhanced(entity.getClass()) : "Entity is not generated by this dao";
+
+                final ID id = (ID)_idField.get(entity);
+                final UpdateBuilder ub = getUpdateBuilder(entity);
+                if (ub.getCollectionChanges() != null) {
+                    insertElementCollection(entity, _idAttributes.get(_table)[0], id, ub.getCollectionChanges());
+                }
+
+                final StringBuilder sql = ub.toSql(_tables);
+                if (sql == null) {
+                    continue;
+                }
+                final SearchCriteria<T> sc = createSearchCriteria();
+                sc.addAnd(_idAttributes.get(_table)[0], SearchCriteria.Op.EQ, id);
+                sql.append(sc.getWhereClause());
+
+                List<Ternary<ID, UpdateBuilder, SearchCriteria<T>>> batch = batches.get(sql.toString());
+                if (batch == null) {
+                    batch = new ArrayList<Ternary<ID, UpdateBuilder, SearchCriteria<T>>>();
+                    batches.put(sql.toString(), batch);
+                }
+                batch.add(new Ternary<ID, UpdateBuilder, SearchCriteria<T>>(id, ub, sc));
+            }
+
+            for (final Map.Entry<String, List<Ternary<ID, UpdateBuilder, SearchCriteria<T>>>> entry : batches.entrySet()) {
+                final List<Ternary<ID, UpdateBuilder, SearchCriteria<T>>> batch = entry.getValue();
+                pstmt = txn.prepareAutoCloseStatement(entry.getKey());
+                for (int i = 0; i < batch.size(); i++) {
+                    final Ternary<ID, UpdateBuilder, SearchCriteria<T>> update = batch.get(i);
+                    if (_cache != null) {
+                        _cache.remove(update.first());
+                    }
+
+                    int j = 1;
+                    for (final Ternary<Attribute, Boolean, Object> value : update.second().getChanges()) {
+                        prepareAttribute(j++, pstmt, value.first(), value.third());
+                    }
+                    for (final Pair<Attribute, Object> value : update.third().getValues()) {
+                        prepareAttribute(j++, pstmt, value.first(), value.second());
+                    }
+                    pstmt.addBatch();
+
+                    if ((i + 1) % BATCH_SIZE == 0 || i == batch.size() - 1) {
+                        rowsUpdated += countRows(pstmt.executeBatch());
+                    }
+                }
+                for (final Ternary<ID, UpdateBuilder, SearchCriteria<T>> update : batch) {
+                    update.second().clear();
+                }
+            }
+            txn.commit();
+        } catch (final SQLException e) {
+            handleEntityExistsException(e);
+            throw new CloudRuntimeException("DB Exception on: " + pstmt, e);
+        } catch (final IllegalAccessException e) {
+            throw new CloudRuntimeException("Yikes! ", e);
+        }
+        return rowsUpdated;
+    }
+
+    @Override
+    @DB()
+    public int expungeAll(final List<ID> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return 0;
+        }
+
+        final TransactionLegacy txn = TransactionLegacy.currentTxn();
+        PreparedStatement pstmt = null;
+        int rowsDeleted = 0;
+        try {
+            txn.start();
+            // the primary table is the last one to be deleted from
+            for (final Pair<String, Attribute[]> deleteSql : _deleteSqls) {
+                final Attribute[] attrs = deleteSql.second();
+                pstmt = txn.prepareAutoCloseStatement(deleteSql.first());
+                rowsDeleted = 0;
+                for (int i = 0; i < ids.size(); i++) {
+                    for (int j = 0; j < attrs.length; j++) {
+                        prepareAttribute(j + 1, pstmt, attrs[j], ids.get(i));
+                    }
+                    pstmt.addBatch();
+
+                    if ((i + 1) % BATCH_SIZE == 0 || i == ids.size() - 1) {
+                        rowsDeleted += countRows(pstmt.executeBatch());
+                    }
+                }
+            }
+
+            txn.commit();
+            if (_cache != null) {
+                for (final ID id : ids) {
+                    _cache.remove(id);
+                }
+            }
+            return rowsDeleted;
+        } catch (final SQLException e) {
+            throw new CloudRuntimeException("DB Exception on: " + pstmt, e);
+        }
+    }
+
+    /**
+     * Sums the update counts of an executed batch.  A driver rewriting the batch into
+     * multi-row statements (rewriteBatchedStatements) may only report that each
+     * statement succeeded, which is counted as one row.
+     */
+    protected static int countRows(final int[] updateCounts) {
+        int rows = 0;
+        for (final int count : updateCounts) {
+            if (count > 0) {
+                rows += count;
+            } else if (count == Statement.SUCCESS_NO_INFO) {
+                rows++;
+            }
+        }
+        return rows;
+    }
+
     protected void insertElementCollection(T entity, Attribute idAttribute, ID id, Map<Attribute, Object> ecAttributes) throws SQLException {
         TransactionLegacy txn = TransactionLegacy.currentTxn();
         txn.start();
@@ -51,6 +51,7 @@ public class GlobalLock {
 
     private int referenceCount = 0;
     private long holdingStartTick = 0;
+    private LockController lockController = null;
 
     private static Map<String, GlobalLock> s_lockMap = new HashMap<String, GlobalLock>();
 
@@ -114,6 +115,7 @@ public class GlobalLock {
     }
 
     public boolean lock(int timeoutSeconds) {
+        final long startTick = System.currentTimeMillis();
         int remainingMilliSeconds = timeoutSeconds * 1000;
         Profiler profiler = new Profiler();
         boolean interrupted = false;
@@ -151,10 +153,14 @@ public class GlobalLock {
                     }
                 }
 
-                if (DbUtil.getGlobalLock(name, remainingMilliSeconds / 1000)) {
+                final LockController controller = LockControllers.forGlobalLocks();
+                final boolean acquired = controller.acquire(name, remainingMilliSeconds / 1000);
+                LockStats.getInstance().acquired(name, System.currentTimeMillis() - startTick, acquired);
+                if (acquired) {
                     synchronized (this) {
                         lockCount++;
                         holdingStartTick = System.currentTimeMillis();
+                        lockController = controller;
 
                         if (s_logger.isTraceEnabled())
                             s_logger.trace("lock " + name + " is acquired, lock count :" + lockCount);
@@ -175,13 +181,20 @@ public class GlobalLock {
         }
     }
 
+    /**
+     * @return false if the lock is not held by the current thread, or could not be released because it
+     * was lost while it was held
+     */
     public boolean unlock() {
         synchronized (this) {
             if (ownerThread != null && ownerThread == Thread.currentThread()) {
+                boolean released = true;
                 lockCount--;
                 if (lockCount == 0) {
                     ownerThread = null;
-                    DbUtil.releaseGlobalLock(name);
+                    released = lockController.release(name);
+                    lockController = null;
+                    LockStats.getInstance().released(name);
 
                     if (s_logger.isTraceEnabled())
                         s_logger.trace("lock " + name + " is returned to free state, total holding time :" + (System.currentTimeMillis() - holdingStartTick));
@@ -194,12 +207,22 @@ public class GlobalLock {
 
                 if (s_logger.isTraceEnabled())
                     s_logger.trace("lock " + name + " is released, lock count :" + lockCount);
-                return true;
+                return released;
             }
             return false;
         }
     }
 
+    /**
+     * @return true if the current thread holds the lock but it has been lost in the meantime, for example
+     * because its lease could not be renewed
+     */
+    public boolean isLost() {
+        synchronized (this) {
+            return ownerThread == Thread.currentThread() && lockController.isLost(name);
+        }
+    }
+
     public String getName() {
         return name;
     }
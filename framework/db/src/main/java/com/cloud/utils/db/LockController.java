@@ -0,0 +1,60 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+/**
+ * Service provider interface for the distributed locks used by GlobalLock and
+ * by the lock table (TransactionLegacy.lock()). Locks are re-entrant for the
+ * thread that holds them and must be released by that same thread.
+ *
+ * @see LockControllers
+ */
+public interface LockController {
+
+    String getName();
+
+    /**
+     * @return true if the lock has been acquired within the timeout
+     */
+    boolean acquire(String key, int timeoutSeconds);
+
+    /**
+     * @return false if the lock could not be released, which includes a lock that was lost while it was held
+     */
+    boolean release(String key);
+
+    /**
+     * @return true if the lock on the key held by the current thread has been taken away from it, for
+     * example because its lease could not be renewed. The holder can no longer assume it is the only one
+     * working on what the lock protects.
+     */
+    default boolean isLost(String key) {
+        return false;
+    }
+
+    /**
+     * Releases the locks still held by the current thread when its transaction ends.
+     */
+    default void cleanupThread() {
+    }
+
+    /**
+     * Releases the locks held by a management server that has left the cluster.
+     */
+    default void cleanupForServer(long msId) {
+    }
+}
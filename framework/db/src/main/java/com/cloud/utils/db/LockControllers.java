@@ -0,0 +1,77 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Holds the LockController in use on this management server.
+ *
+ * Unless a distributed lock service has been installed through
+ * {@link #setLockController(LockController)}, the MySQL based defaults are used:
+ * GET_LOCK() for GlobalLock and the op_lock table (Merovingian2) for table locks.
+ * GlobalLock and TransactionLegacy remember the controller that acquired each lock and
+ * release it through that one, so the controller can be replaced while locks are held:
+ * only the locks taken afterwards go to the new controller.
+ */
+public class LockControllers {
+    private static final Logger s_logger = Logger.getLogger(LockControllers.class);
+
+    private static final LockController s_dbLockController = new DbLockController();
+    private static volatile LockController s_lockController = null;
+
+    public static void setLockController(LockController lockController) {
+        s_logger.info("Using " + (lockController == null ? "MySQL" : lockController.getName()) + " lock controller");
+        s_lockController = lockController;
+    }
+
+    /**
+     * @return the lock controller backing GlobalLock
+     */
+    public static LockController forGlobalLocks() {
+        LockController lockController = s_lockController;
+        return lockController != null ? lockController : s_dbLockController;
+    }
+
+    /**
+     * @return the lock controller backing the lock table, or null if no lock controller has been created yet
+     */
+    public static LockController forTableLocks() {
+        LockController lockController = s_lockController;
+        return lockController != null ? lockController : Merovingian2.getLockController();
+    }
+
+    /**
+     * LockController on top of MySQL GET_LOCK() / RELEASE_LOCK(), each lock holding its own connection.
+     */
+    protected static class DbLockController implements LockController {
+        @Override
+        public String getName() {
+            return "MySQL";
+        }
+
+        @Override
+        public boolean acquire(String key, int timeoutSeconds) {
+            return DbUtil.getGlobalLock(key, timeoutSeconds);
+        }
+
+        @Override
+        public boolean release(String key) {
+            return DbUtil.releaseGlobalLock(key);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.StandardMBean;
+
+import org.apache.log4j.Logger;
+
+import com.cloud.utils.LatencyHistogram;
+import com.cloud.utils.mgmt.JmxUtil;
+
+/**
+ * Wait and hold time histograms of the distributed locks, grouped by lock key prefix
+ * (the part of the key before the first digit, e.g. "vm.instance." or "AccountLock").
+ */
+public class LockStats extends StandardMBean implements LockStatsMBean {
+    private static final Logger s_logger = Logger.getLogger(LockStats.class);
+
+    private static final LockStats s_instance = new LockStats();
+
+    private final Map<String, LatencyHistogram> _waitTimes = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final Map<String, LatencyHistogram> _holdTimes = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final ThreadLocal<Map<String, long[]>> _heldSince = ThreadLocal.withInitial(HashMap::new);
+
+    private LockStats() {
+        super(LockStatsMBean.class, false);
+        try {
+            JmxUtil.registerMBean("Locks", "LockStats", this);
+        } catch (Exception e) {
+            s_logger.warn("Unable to register lock stats for JMX", e);
+        }
+    }
+
+    public static LockStats getInstance() {
+        return s_instance;
+    }
+
+    protected static String getKeyPrefix(String key) {
+        if (key == null) {
+            return "";
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (Character.isDigit(key.charAt(i))) {
+                return key.substring(0, i);
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Records the outcome of an acquire attempt by the current thread. Re-entrant
+     * acquisitions only count towards the hold time of the outermost one.
+     */
+    public void acquired(String key, long waitTimeInMillis, boolean success) {
+        String prefix = getKeyPrefix(key);
+        _waitTimes.computeIfAbsent(prefix, k -> new LatencyHistogram()).record(waitTimeInMillis);
+        if (success) {
+            long[] held = _heldSince.get().computeIfAbsent(key, k -> new long[] {System.currentTimeMillis(), 0});
+            held[1]++;
+        }
+    }
+
+    public void released(String key) {
+        Map<String, long[]> heldSince = _heldSince.get();
+        long[] held = heldSince.get(key);
+        if (held == null) {
+            return;
+        }
+        if (--held[1] <= 0) {
+            heldSince.remove(key);
+            _holdTimes.computeIfAbsent(getKeyPrefix(key), k -> new LatencyHistogram()).record(System.currentTimeMillis() - held[0]);
+        }
+    }
+
+    protected LatencyHistogram getWaitTime(String prefix) {
+        return _waitTimes.get(prefix);
+    }
+
+    protected LatencyHistogram getHoldTime(String prefix) {
+        return _holdTimes.get(prefix);
+    }
+
+    private static List<Map<String, String>> toList(Map<String, LatencyHistogram> histograms) {
+        List<Map<String, String>> result = new ArrayList<Map<String, String>>();
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<String, LatencyHistogram>(histograms).entrySet()) {
+            Map<String, String> map = new HashMap<String, String>(entry.getValue().toMap());
+            map.put("prefix", entry.getKey());
+            result.add(map);
+        }
+        return result;
+    }
+
+    @Override
+    public List<Map<String, String>> getLockWaitTimes() {
+        return toList(_waitTimes);
+    }
+
+    @Override
+    public List<Map<String, String>> getLockHoldTimes() {
+        return toList(_holdTimes);
+    }
+
+    @Override
+    public void reset() {
+        _waitTimes.clear();
+        _holdTimes.clear();
+    }
+}
@@ -36,7 +36,7 @@ import com.cloud.utils.exception.CloudRuntimeException;
 import com.cloud.utils.mgmt.JmxUtil;
 import com.cloud.utils.time.InaccurateClock;
 
-public class Merovingian2 extends StandardMBean implements MerovingianMBean {
+public class Merovingian2 extends StandardMBean implements MerovingianMBean, LockController {
     private static final Logger s_logger = Logger.getLogger(Merovingian2.class);
 
     private static final String ACQUIRE_SQL =
@@ -118,6 +118,12 @@ public class Merovingian2 extends StandardMBean implements MerovingianMBean {
         count.count--;
     }
 
+    @Override
+    public String getName() {
+        return "MySQL op_lock";
+    }
+
+    @Override
     public boolean acquire(String key, int timeInSeconds) {
         Thread th = Thread.currentThread();
         String threadName = th.getName();
@@ -249,6 +255,7 @@ public class Merovingian2 extends StandardMBean implements MerovingianMBean {
         }
     }
 
+    @Override
     public boolean release(String key) {
         Thread th = Thread.currentThread();
         String threadName = th.getName();
@@ -369,6 +376,7 @@ public class Merovingian2 extends StandardMBean implements MerovingianMBean {
         }
     }
 
+    @Override
     public void cleanupThread() {
 
         Count count = s_tls.get();
@@ -25,10 +25,15 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Savepoint;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.sql.DataSource;
@@ -104,6 +109,8 @@ public class TransactionLegacy implements Closeable {
     private long _txnTime;
     private Statement _stmt;
     private String _creator;
+    private final List<Pair<Runnable, Boolean>> _completionTasks = new ArrayList<Pair<Runnable, Boolean>>();
+    private final Map<String, HeldLock> _heldLocks = new HashMap<String, HeldLock>();
 
     public static TransactionLegacy currentTxn() {
         return currentTxn(true);
@@ -117,6 +124,48 @@ public class TransactionLegacy implements Closeable {
         return txn;
     }
 
+    /**
+     * Runs the task once the transaction in progress on this thread is committed, or right away if there is none.
+     * The task is dropped if the transaction is rolled back.
+     */
+    public static void runAfterCommit(final Runnable task) {
+        addCompletionTask(task, true);
+    }
+
+    /**
+     * Runs the task once the transaction in progress on this thread is committed or rolled back, or right away if
+     * there is none.
+     */
+    public static void runAfterCompletion(final Runnable task) {
+        addCompletionTask(task, false);
+    }
+
+    private static void addCompletionTask(final Runnable task, final boolean commitOnly) {
+        final TransactionLegacy txn = tls.get();
+        if (txn == null || !txn._txn) {
+            task.run();
+            return;
+        }
+        txn._completionTasks.add(new Pair<Runnable, Boolean>(task, commitOnly));
+    }
+
+    protected void runCompletionTasks(final boolean committed) {
+        if (_completionTasks.isEmpty()) {
+            return;
+        }
+        final List<Pair<Runnable, Boolean>> tasks = new ArrayList<Pair<Runnable, Boolean>>(_completionTasks);
+        _completionTasks.clear();
+        for (final Pair<Runnable, Boolean> task : tasks) {
+            if (committed || !task.second()) {
+                try {
+                    task.first().run();
+                } catch (final Exception e) {
+                    s_logger.warn("Unable to run a completion task of transaction " + _name, e);
+                }
+            }
+        }
+    }
+
     public static TransactionLegacy open(final short databaseId) {
         String name = buildName();
         if (name == null) {
@@ -377,21 +426,50 @@ public class TransactionLegacy implements Closeable {
     }
 
     public boolean lock(final String name, final int timeoutSeconds) {
-        Merovingian2 lockController = Merovingian2.getLockController();
+        // a re-entrant acquisition goes to the lock controller that holds the lock
+        final HeldLock held = _heldLocks.get(name);
+        final LockController lockController = held != null ? held.lockController : LockControllers.forTableLocks();
         if (lockController == null) {
             throw new CloudRuntimeException("There's no support for locking yet");
         }
-        return lockController.acquire(name, timeoutSeconds);
+        final long startTick = System.currentTimeMillis();
+        final boolean acquired = lockController.acquire(name, timeoutSeconds);
+        LockStats.getInstance().acquired(name, System.currentTimeMillis() - startTick, acquired);
+        if (acquired) {
+            if (held != null) {
+                held.count++;
+            } else {
+                _heldLocks.put(name, new HeldLock(lockController));
+            }
+        }
+        return acquired;
     }
 
+    /**
+     * @return false if the lock could not be released, which includes a lock that was lost while it was held
+     */
     public boolean release(final String name) {
-        Merovingian2 lockController = Merovingian2.getLockController();
+        final HeldLock held = _heldLocks.get(name);
+        final LockController lockController = held != null ? held.lockController : LockControllers.forTableLocks();
         if (lockController == null) {
             throw new CloudRuntimeException("There's no support for locking yet");
         }
+        if (held != null && --held.count == 0) {
+            _heldLocks.remove(name);
+        }
+        LockStats.getInstance().released(name);
         return lockController.release(name);
     }
 
+    /**
+     * @return true if the lock taken with {@link #lock(String, int)} has been lost while it was held, for example
+     * because its lease could not be renewed, so that the work it protects may no longer be exclusive.
+     */
+    public boolean isLockLost(final String name) {
+        final HeldLock held = _heldLocks.get(name);
+        return held != null && held.lockController.isLost(name);
+    }
+
     /**
      * @deprecated Use {@link Transaction} for new code
      */
@@ -644,9 +722,18 @@ public class TransactionLegacy implements Closeable {
         closeConnection();
 
         _stack.clear();
-        Merovingian2 lockController = Merovingian2.getLockController();
+        // the lock controller may have been replaced since some of the locks were taken
+        final Set<LockController> lockControllers = new HashSet<LockController>();
+        for (final HeldLock held : _heldLocks.values()) {
+            lockControllers.add(held.lockController);
+        }
+        _heldLocks.clear();
+        final LockController lockController = LockControllers.forTableLocks();
         if (lockController != null) {
-            lockController.cleanupThread();
+            lockControllers.add(lockController);
+        }
+        for (final LockController controller : lockControllers) {
+            controller.cleanupThread();
         }
     }
 
@@ -733,9 +820,11 @@ public class TransactionLegacy implements Closeable {
                 clearLockTimes();
                 closeConnection();
             }
+            runCompletionTasks(true);
             return true;
         } catch (final SQLException e) {
             rollbackTransaction();
+            runCompletionTasks(false);
             throw new CloudRuntimeException("Unable to commit or close the connection. ", e);
         }
     }
@@ -854,6 +943,7 @@ public class TransactionLegacy implements Closeable {
         } catch (final SQLException e) {
             s_logger.warn("Unable to rollback", e);
         }
+        runCompletionTasks(false);
     }
 
     protected void rollbackSavepoint(Savepoint sp) {
@@ -868,6 +958,7 @@ public class TransactionLegacy implements Closeable {
         if (!hasTxnInStack()) {
             _txn = false;
             closeConnection();
+            runCompletionTasks(false);
         }
     }
 
@@ -998,6 +1089,18 @@ public class TransactionLegacy implements Closeable {
         }
     }
 
+    /**
+     * A lock taken through the lock table, released through the lock controller that acquired it.
+     */
+    private static class HeldLock {
+        final LockController lockController;
+        int count = 1;
+
+        HeldLock(LockController lockController) {
+            this.lockController = lockController;
+        }
+    }
+
     private static DataSource s_ds;
     private static DataSource s_usageDS;
     private static DataSource s_simulatorDS;
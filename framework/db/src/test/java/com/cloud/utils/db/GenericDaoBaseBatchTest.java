@@ -0,0 +1,194 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Inheritance;
+import javax.persistence.InheritanceType;
+import javax.persistence.PrimaryKeyJoinColumn;
+import javax.persistence.Table;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import net.sf.ehcache.Cache;
+
+public class GenericDaoBaseBatchTest {
+
+    @Entity
+    @Table(name = "test_base")
+    @Inheritance(strategy = InheritanceType.JOINED)
+    public static class BaseVO {
+        @Id
+        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        @Column(name = "id")
+        long id;
+
+        @Column(name = "name")
+        String name;
+
+        public BaseVO() {
+        }
+    }
+
+    @Entity
+    @Table(name = "test_derived")
+    @PrimaryKeyJoinColumn(name = "id")
+    public static class DerivedVO extends BaseVO {
+        @Column(name = "value")
+        String value;
+
+        public DerivedVO() {
+        }
+
+        public DerivedVO(String name, String value) {
+            this.name = name;
+            this.value = value;
+        }
+    }
+
+    public static class DerivedDao extends GenericDaoBase<DerivedVO, Long> {
+    }
+
+    TransactionLegacy txn;
+    Connection conn;
+    Cache cache;
+
+    @Before
+    public void setup() {
+        txn = TransactionLegacy.open(TransactionLegacy.CLOUD_DB);
+        conn = Mockito.mock(Connection.class);
+        txn.setConnection(conn);
+        cache = Mockito.mock(Cache.class);
+    }
+
+    @After
+    public void after() {
+        TransactionLegacy.currentTxn().close();
+    }
+
+    @Test
+    public void persistAllTestSetsGeneratedIdsAndInsertsSecondaryTable() throws Exception {
+        PreparedStatement baseStmt = Mockito.mock(PreparedStatement.class);
+        PreparedStatement derivedStmt = Mockito.mock(PreparedStatement.class);
+        ResultSet keys = Mockito.mock(ResultSet.class);
+        Mockito.when(conn.prepareStatement(Mockito.startsWith("INSERT INTO test_base"), Mockito.eq(Statement.RETURN_GENERATED_KEYS))).thenReturn(baseStmt);
+        Mockito.when(conn.prepareStatement(Mockito.startsWith("INSERT INTO test_derived"), Mockito.eq(Statement.RETURN_GENERATED_KEYS))).thenReturn(derivedStmt);
+        Mockito.when(baseStmt.getGeneratedKeys()).thenReturn(keys);
+        Mockito.when(keys.next()).thenReturn(true, true, false);
+        Mockito.when(keys.getObject(1)).thenReturn(BigInteger.valueOf(7), BigInteger.valueOf(8));
+
+        DerivedVO first = new DerivedVO("first", "a");
+        DerivedVO second = new DerivedVO("second", "b");
+        DerivedDao dao = Mockito.spy(new DerivedDao());
+        // the rows are read back in a different order than they were inserted
+        Mockito.doReturn(Arrays.asList(second, first)).when(dao).searchIncludingRemoved(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyBoolean());
+
+        List<DerivedVO> persisted = dao.persistAll(Arrays.asList(first, second));
+
+        Assert.assertEquals(7L, first.id);
+        Assert.assertEquals(8L, second.id);
+        Assert.assertEquals(Arrays.asList(first, second), persisted);
+        Mockito.verify(baseStmt, Mockito.times(2)).addBatch();
+        Mockito.verify(baseStmt).executeBatch();
+        Mockito.verify(derivedStmt, Mockito.times(2)).addBatch();
+        Mockito.verify(derivedStmt).executeBatch();
+        Mockito.verify(derivedStmt).setObject(Mockito.anyInt(), Mockito.eq(7L));
+        Mockito.verify(derivedStmt).setObject(Mockito.anyInt(), Mockito.eq(8L));
+        Mockito.verify(conn).commit();
+    }
+
+    @Test
+    public void updateAllTestGroupsEntitiesWithTheSameChanges() throws Exception {
+        PreparedStatement intStmt = Mockito.mock(PreparedStatement.class);
+        PreparedStatement stringStmt = Mockito.mock(PreparedStatement.class);
+        Mockito.when(conn.prepareStatement(Mockito.contains("fld_int"))).thenReturn(intStmt);
+        Mockito.when(conn.prepareStatement(Mockito.contains("fld_string"))).thenReturn(stringStmt);
+        Mockito.when(intStmt.executeBatch()).thenReturn(new int[] {1, 1});
+        Mockito.when(stringStmt.executeBatch()).thenReturn(new int[] {1});
+
+        DbTestDao dao = new DbTestDao();
+        dao._cache = cache;
+        DbTestVO first = dao.createForUpdate(1L);
+        DbTestVO second = dao.createForUpdate(2L);
+        DbTestVO third = dao.createForUpdate(3L);
+        GenericDaoBase.getUpdateBuilder(first).set(first, "fieldInt", 5);
+        GenericDaoBase.getUpdateBuilder(second).set(second, "fieldInt", 6);
+        GenericDaoBase.getUpdateBuilder(third).set(third, "fieldString", "third");
+
+        Assert.assertEquals(3, dao.updateAll(Arrays.asList(first, second, third)));
+
+        Mockito.verify(conn, Mockito.times(2)).prepareStatement(Mockito.anyString());
+        Mockito.verify(intStmt, Mockito.times(2)).addBatch();
+        Mockito.verify(intStmt).setObject(1, 5);
+        Mockito.verify(intStmt).setObject(1, 6);
+        Mockito.verify(stringStmt).addBatch();
+        Mockito.verify(cache).remove(1L);
+        Mockito.verify(cache).remove(2L);
+        Mockito.verify(cache).remove(3L);
+        Assert.assertFalse(GenericDaoBase.getUpdateBuilder(first).hasChanges());
+        Assert.assertFalse(GenericDaoBase.getUpdateBuilder(third).hasChanges());
+    }
+
+    @Test
+    public void updateAllTestSkipsEntitiesWithoutChanges() throws Exception {
+        DbTestDao dao = new DbTestDao();
+
+        Assert.assertEquals(0, dao.updateAll(Arrays.asList(dao.createForUpdate(1L))));
+
+        Mockito.verify(conn, Mockito.never()).prepareStatement(Mockito.anyString());
+    }
+
+    @Test
+    public void expungeAllTestDeletesInBatches() throws Exception {
+        PreparedStatement stmt = Mockito.mock(PreparedStatement.class);
+        Mockito.when(conn.prepareStatement(Mockito.startsWith("DELETE FROM test"))).thenReturn(stmt);
+        Mockito.when(stmt.executeBatch()).thenReturn(new int[GenericDaoBase.BATCH_SIZE], new int[] {1});
+
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= GenericDaoBase.BATCH_SIZE + 1; id++) {
+            ids.add(id);
+        }
+        DbTestDao dao = new DbTestDao();
+        dao._cache = cache;
+
+        Assert.assertEquals(1, dao.expungeAll(ids));
+
+        Mockito.verify(stmt, Mockito.times(GenericDaoBase.BATCH_SIZE + 1)).addBatch();
+        Mockito.verify(stmt, Mockito.times(2)).executeBatch();
+        Mockito.verify(stmt).setObject(1, 1L);
+        Mockito.verify(cache).remove(1L);
+        Mockito.verify(cache).remove((long)GenericDaoBase.BATCH_SIZE + 1);
+        Mockito.verify(conn).commit();
+    }
+}
@@ -18,6 +18,8 @@ package com.cloud.utils.db;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -214,4 +216,29 @@ public class GenericDaoBaseTest {
 
         Assert.assertEquals(resultSetSize, result);
     }
+
+    @Test
+    public void countRowsTestSumsUpdateCounts() {
+        Assert.assertEquals(5, GenericDaoBase.countRows(new int[] {1, 0, 4}));
+    }
+
+    @Test
+    public void countRowsTestCountsSuccessWithoutInfoAsOneRow() {
+        Assert.assertEquals(3, GenericDaoBase.countRows(new int[] {Statement.SUCCESS_NO_INFO, 2, Statement.EXECUTE_FAILED}));
+    }
+
+    @Test
+    public void persistAllTestNothingToPersist() {
+        Assert.assertTrue(genericDaoBaseMock.persistAll(new ArrayList<>()).isEmpty());
+    }
+
+    @Test
+    public void updateAllTestNothingToUpdate() {
+        Assert.assertEquals(0, genericDaoBaseMock.updateAll(new ArrayList<>()));
+    }
+
+    @Test
+    public void expungeAllTestNothingToExpunge() {
+        Assert.assertEquals(0, genericDaoBaseMock.expungeAll(new ArrayList<>()));
+    }
 }
@@ -0,0 +1,52 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.utils.db;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LockStatsTest {
+
+    @Test
+    public void testGetKeyPrefix() {
+        Assert.assertEquals("vm.instance.", LockStats.getKeyPrefix("vm.instance.42"));
+        Assert.assertEquals("AccountLock", LockStats.getKeyPrefix("AccountLock"));
+        Assert.assertEquals("", LockStats.getKeyPrefix("1234"));
+        Assert.assertEquals("", LockStats.getKeyPrefix(null));
+    }
+
+    @Test
+    public void testReentrantHoldIsRecordedOnce() {
+        LockStats stats = LockStats.getInstance();
+        stats.acquired("lockstats.test.1", 5, true);
+        stats.acquired("lockstats.test.1", 0, true);
+        stats.released("lockstats.test.1");
+        Assert.assertNull(stats.getHoldTime("lockstats.test."));
+        stats.released("lockstats.test.1");
+        Assert.assertEquals(1, stats.getHoldTime("lockstats.test.").getCount());
+        Assert.assertEquals(2, stats.getWaitTime("lockstats.test.").getCount());
+    }
+
+    @Test
+    public void testFailedAcquireOnlyRecordsWaitTime() {
+        LockStats stats = LockStats.getInstance();
+        stats.acquired("lockstats.failed.1", 1000, false);
+        stats.released("lockstats.failed.1");
+        Assert.assertEquals(1000, stats.getWaitTime("lockstats.failed.").getMax());
+        Assert.assertNull(stats.getHoldTime("lockstats.failed."));
+    }
+}
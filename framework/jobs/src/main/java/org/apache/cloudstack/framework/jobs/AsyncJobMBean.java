@@ -50,4 +50,9 @@ public interface AsyncJobMBean {
     public String getSyncQueueContentType();
 
     public String getSyncQueueContentId();
+
+    /**
+     * @return time the job has spent so far waiting on the completion of other jobs
+     */
+    public long getWaitTimeInMillis();
 }
@@ -16,6 +16,9 @@
 // under the License.
 package org.apache.cloudstack.framework.jobs.dao;
 
+import java.util.Date;
+import java.util.List;
+
 import org.apache.cloudstack.framework.jobs.impl.SyncQueueVO;
 
 import com.cloud.utils.db.GenericDao;
@@ -24,4 +27,12 @@ public interface SyncQueueDao extends GenericDao<SyncQueueVO, Long> {
     public void ensureQueue(String syncObjType, long syncObjId);
 
     public SyncQueueVO find(String syncObjType, long syncObjId);
+
+    public List<SyncQueueVO> lockQueues(List<Long> queueIds);
+
+    /**
+     * Bumps the process number and the active size of all of the given queues
+     * with a single statement.
+     */
+    public int markQueuesInProcess(List<Long> queueIds, Date dt);
 }
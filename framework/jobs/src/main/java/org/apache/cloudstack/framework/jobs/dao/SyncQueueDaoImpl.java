@@ -19,7 +19,9 @@ package org.apache.cloudstack.framework.jobs.dao;
 
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.TimeZone;
 
 import org.apache.log4j.Logger;
@@ -31,11 +33,13 @@ import com.cloud.utils.db.GenericDaoBase;
 import com.cloud.utils.db.SearchBuilder;
 import com.cloud.utils.db.SearchCriteria;
 import com.cloud.utils.db.TransactionLegacy;
+import com.cloud.utils.exception.CloudRuntimeException;
 
 public class SyncQueueDaoImpl extends GenericDaoBase<SyncQueueVO, Long> implements SyncQueueDao {
     private static final Logger s_logger = Logger.getLogger(SyncQueueDaoImpl.class.getName());
 
     SearchBuilder<SyncQueueVO> TypeIdSearch = createSearchBuilder();
+    SearchBuilder<SyncQueueVO> IdsSearch;
 
     public SyncQueueDaoImpl() {
         super();
@@ -43,6 +47,10 @@ public class SyncQueueDaoImpl extends GenericDaoBase<SyncQueueVO, Long> implemen
         TypeIdSearch.and("syncObjType", TypeIdSearch.entity().getSyncObjType(), SearchCriteria.Op.EQ);
         TypeIdSearch.and("syncObjId", TypeIdSearch.entity().getSyncObjId(), SearchCriteria.Op.EQ);
         TypeIdSearch.done();
+
+        IdsSearch = createSearchBuilder();
+        IdsSearch.and("ids", IdsSearch.entity().getId(), SearchCriteria.Op.IN);
+        IdsSearch.done();
     }
 
     @Override
@@ -74,4 +82,38 @@ public class SyncQueueDaoImpl extends GenericDaoBase<SyncQueueVO, Long> implemen
         return findOneBy(sc);
     }
 
+    @Override
+    public List<SyncQueueVO> lockQueues(List<Long> queueIds) {
+        if (queueIds == null || queueIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        SearchCriteria<SyncQueueVO> sc = IdsSearch.create();
+        sc.setParameters("ids", queueIds.toArray());
+        return lockRows(sc, null, true);
+    }
+
+    @Override
+    public int markQueuesInProcess(List<Long> queueIds, Date dt) {
+        if (queueIds == null || queueIds.isEmpty()) {
+            return 0;
+        }
+        StringBuilder sql = new StringBuilder("UPDATE sync_queue SET queue_proc_number = IFNULL(queue_proc_number, 0) + 1, queue_size = queue_size + 1, last_updated = ? WHERE id IN (");
+        for (int i = 0; i < queueIds.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+
+        TransactionLegacy txn = TransactionLegacy.currentTxn();
+        try {
+            PreparedStatement pstmt = txn.prepareAutoCloseStatement(sql.toString());
+            pstmt.setString(1, DateUtil.getDateDisplayString(TimeZone.getTimeZone("GMT"), dt));
+            int i = 2;
+            for (Long queueId : queueIds) {
+                pstmt.setLong(i++, queueId);
+            }
+            return pstmt.executeUpdate();
+        } catch (SQLException e) {
+            throw new CloudRuntimeException("Unable to mark sync queues " + queueIds + " in process", e);
+        }
+    }
 }
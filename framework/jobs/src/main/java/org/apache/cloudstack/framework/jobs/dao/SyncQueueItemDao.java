@@ -16,7 +16,9 @@
 // under the License.
 package org.apache.cloudstack.framework.jobs.dao;
 
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.cloudstack.framework.jobs.impl.SyncQueueItemVO;
 
@@ -28,6 +30,22 @@ public interface SyncQueueItemDao extends GenericDao<SyncQueueItemVO, Long> {
 
     public List<SyncQueueItemVO> getNextQueueItems(int maxItems);
 
+    /**
+     * @return the oldest pending item of each of the given queues, queues without any pending item are left out
+     */
+    public List<SyncQueueItemVO> getNextQueueItems(List<Long> queueIds);
+
+    /**
+     * @return the number of items in process, keyed by queue id, queues without any active item are left out
+     */
+    public Map<Long, Integer> getActiveQueueItemCounts(List<Long> queueIds);
+
+    /**
+     * Marks the given items as being processed by the management server with a single statement,
+     * the process number of each item is taken from its queue.
+     */
+    public int markItemsInProcess(List<Long> itemIds, long msid, Date dt);
+
     public List<SyncQueueItemVO> getActiveQueueItems(Long msid, boolean exclusive);
 
     public List<SyncQueueItemVO> getBlockedQueueItems(long thresholdMs, boolean exclusive);
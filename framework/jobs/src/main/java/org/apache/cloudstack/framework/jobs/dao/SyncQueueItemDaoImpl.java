@@ -21,8 +21,11 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TimeZone;
 
 import org.apache.log4j.Logger;
@@ -39,6 +42,7 @@ import com.cloud.utils.db.SearchCriteria;
 import com.cloud.utils.db.SearchCriteria.Func;
 import com.cloud.utils.db.SearchCriteria.Op;
 import com.cloud.utils.db.TransactionLegacy;
+import com.cloud.utils.exception.CloudRuntimeException;
 
 @DB
 public class SyncQueueItemDaoImpl extends GenericDaoBase<SyncQueueItemVO, Long> implements SyncQueueItemDao {
@@ -123,6 +127,104 @@ public class SyncQueueItemDaoImpl extends GenericDaoBase<SyncQueueItemVO, Long>
         return l;
     }
 
+    @Override
+    public List<SyncQueueItemVO> getNextQueueItems(List<Long> queueIds) {
+        if (queueIds == null || queueIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<SyncQueueItemVO> l = new ArrayList<SyncQueueItemVO>();
+
+        String sql = "SELECT i.id, i.queue_id, i.content_type, i.content_id, i.created " +
+                " FROM sync_queue_item AS i " +
+                " WHERE i.id IN (SELECT MIN(p.id) FROM sync_queue_item AS p " +
+                    " WHERE p.queue_proc_number IS NULL AND p.queue_id IN (" + placeholders(queueIds.size()) + ") " +
+                    " GROUP BY p.queue_id) " +
+                " ORDER BY i.id";
+
+        TransactionLegacy txn = TransactionLegacy.currentTxn();
+        try {
+            PreparedStatement pstmt = txn.prepareAutoCloseStatement(sql);
+            int i = 1;
+            for (Long queueId : queueIds) {
+                pstmt.setLong(i++, queueId);
+            }
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                SyncQueueItemVO item = new SyncQueueItemVO();
+                item.setId(rs.getLong(1));
+                item.setQueueId(rs.getLong(2));
+                item.setContentType(rs.getString(3));
+                item.setContentId(rs.getLong(4));
+                item.setCreated(DateUtil.parseDateString(TimeZone.getTimeZone("GMT"), rs.getString(5)));
+                l.add(item);
+            }
+        } catch (SQLException e) {
+            throw new CloudRuntimeException("Unable to fetch next items of sync queues " + queueIds, e);
+        }
+        return l;
+    }
+
+    @Override
+    public Map<Long, Integer> getActiveQueueItemCounts(List<Long> queueIds) {
+        Map<Long, Integer> counts = new HashMap<Long, Integer>();
+        if (queueIds == null || queueIds.isEmpty()) {
+            return counts;
+        }
+
+        String sql = "SELECT queue_id, COUNT(*) FROM sync_queue_item " +
+                " WHERE queue_proc_number IS NOT NULL AND queue_id IN (" + placeholders(queueIds.size()) + ") " +
+                " GROUP BY queue_id";
+
+        TransactionLegacy txn = TransactionLegacy.currentTxn();
+        try {
+            PreparedStatement pstmt = txn.prepareAutoCloseStatement(sql);
+            int i = 1;
+            for (Long queueId : queueIds) {
+                pstmt.setLong(i++, queueId);
+            }
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                counts.put(rs.getLong(1), rs.getInt(2));
+            }
+        } catch (SQLException e) {
+            throw new CloudRuntimeException("Unable to count active items of sync queues " + queueIds, e);
+        }
+        return counts;
+    }
+
+    @Override
+    public int markItemsInProcess(List<Long> itemIds, long msid, Date dt) {
+        if (itemIds == null || itemIds.isEmpty()) {
+            return 0;
+        }
+
+        String sql = "UPDATE sync_queue_item AS i JOIN sync_queue AS q ON i.queue_id = q.id " +
+                " SET i.queue_proc_msid = ?, i.queue_proc_number = q.queue_proc_number, i.queue_proc_time = ? " +
+                " WHERE i.queue_proc_number IS NULL AND i.id IN (" + placeholders(itemIds.size()) + ")";
+
+        TransactionLegacy txn = TransactionLegacy.currentTxn();
+        try {
+            PreparedStatement pstmt = txn.prepareAutoCloseStatement(sql);
+            pstmt.setLong(1, msid);
+            pstmt.setString(2, DateUtil.getDateDisplayString(TimeZone.getTimeZone("GMT"), dt));
+            int i = 3;
+            for (Long itemId : itemIds) {
+                pstmt.setLong(i++, itemId);
+            }
+            return pstmt.executeUpdate();
+        } catch (SQLException e) {
+            throw new CloudRuntimeException("Unable to mark sync queue items " + itemIds + " in process", e);
+        }
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.toString();
+    }
+
     @Override
     public List<SyncQueueItemVO> getActiveQueueItems(Long msid, boolean exclusive) {
         SearchBuilder<SyncQueueItemVO> sb = createSearchBuilder();
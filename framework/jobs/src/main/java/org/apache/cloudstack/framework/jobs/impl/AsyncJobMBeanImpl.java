@@ -28,11 +28,17 @@ import com.cloud.utils.DateUtil;
 
 public class AsyncJobMBeanImpl extends StandardMBean implements AsyncJobMBean {
     private final AsyncJob _job;
+    private final AsyncJobWaitStats _waitStats;
 
     public AsyncJobMBeanImpl(AsyncJob job) {
+        this(job, null);
+    }
+
+    public AsyncJobMBeanImpl(AsyncJob job, AsyncJobWaitStats waitStats) {
         super(AsyncJobMBean.class, false);
 
         _job = job;
+        _waitStats = waitStats;
     }
 
     @Override
@@ -162,4 +168,12 @@ public class AsyncJobMBeanImpl extends StandardMBean implements AsyncJobMBean {
         }
         return "N/A";
     }
+
+    @Override
+    public long getWaitTimeInMillis() {
+        if (_waitStats != null) {
+            return _waitStats.getJobWaitTime(_job.getId());
+        }
+        return 0;
+    }
 }
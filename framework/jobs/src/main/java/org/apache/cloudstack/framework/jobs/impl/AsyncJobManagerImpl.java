@@ -18,17 +18,20 @@
 package org.apache.cloudstack.framework.jobs.impl;
 
 import java.io.Serializable;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.inject.Inject;
 import javax.naming.ConfigurationException;
@@ -54,7 +57,7 @@ import org.apache.cloudstack.framework.jobs.dao.AsyncJobJoinMapDao;
 import org.apache.cloudstack.framework.jobs.dao.AsyncJobJournalDao;
 import org.apache.cloudstack.framework.jobs.dao.SyncQueueItemDao;
 import org.apache.cloudstack.framework.messagebus.MessageBus;
-import org.apache.cloudstack.framework.messagebus.MessageDetector;
+import org.apache.cloudstack.framework.messagebus.MessageSubscriber;
 import org.apache.cloudstack.framework.messagebus.PublishScope;
 import org.apache.cloudstack.jobs.JobInfo;
 import org.apache.cloudstack.jobs.JobInfo.Status;
@@ -88,6 +91,7 @@ import com.cloud.utils.db.SearchCriteria.Op;
 import com.cloud.utils.db.Transaction;
 import com.cloud.utils.db.TransactionCallback;
 import com.cloud.utils.db.TransactionCallbackNoReturn;
+import com.cloud.utils.db.TransactionLegacy;
 import com.cloud.utils.db.TransactionStatus;
 import com.cloud.utils.exception.CloudRuntimeException;
 import com.cloud.utils.exception.ExceptionUtil;
@@ -106,6 +110,9 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
     private static final ConfigKey<Integer> VmJobLockTimeout = new ConfigKey<Integer>("Advanced",
             Integer.class, "vm.job.lock.timeout", "1800",
             "Time in seconds to wait in acquiring lock to submit a vm worker job", false);
+    private static final ConfigKey<Long> JobWaitFallbackInterval = new ConfigKey<Long>("Advanced", Long.class, "job.wait.fallback.interval", "30",
+        "Interval (in seconds) at which a job waiting on another job executing on this management server checks the database, " +
+        "completions on this management server wake up their waiters right away", true, ConfigKey.Scope.Global);
     private static final ConfigKey<Boolean> HidePassword = new ConfigKey<Boolean>("Advanced", Boolean.class, "log.hide.password", "true", "If set to true, the password is hidden", true, ConfigKey.Scope.Global);
 
     private static final Logger s_logger = Logger.getLogger(AsyncJobManagerImpl.class);
@@ -152,6 +159,19 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
     private volatile long _executionRunNumber = 1;
 
     private final ScheduledExecutorService _heartbeatScheduler = Executors.newScheduledThreadPool(1, new NamedThreadFactory("AsyncJobMgr-Heartbeat"));
+    private final ExecutorService _dispatchExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("AsyncJobMgr-Dispatcher"));
+    private final AtomicBoolean _dispatchPending = new AtomicBoolean(false);
+
+    private final Map<Long, Set<AsyncJobWaiter>> _jobWaiters = new ConcurrentHashMap<Long, Set<AsyncJobWaiter>>();
+    private final AsyncJobWaitStats _waitStats = new AsyncJobWaitStats();
+    private final MessageSubscriber _jobStateSubscriber = new MessageSubscriber() {
+        @Override
+        public void onPublishMessage(String senderAddress, String subject, Object args) {
+            if (args instanceof Long) {
+                signalWaiters((Long)args);
+            }
+        }
+    };
     private ExecutorService _apiJobExecutor;
     private ExecutorService _workerJobExecutor;
 
@@ -162,7 +182,7 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
 
     @Override
     public ConfigKey<?>[] getConfigKeys() {
-        return new ConfigKey<?>[] {JobExpireMinutes, JobCancelThresholdMinutes, VmJobLockTimeout, HidePassword};
+        return new ConfigKey<?>[] {JobExpireMinutes, JobCancelThresholdMinutes, VmJobLockTimeout, JobWaitFallbackInterval, HidePassword};
     }
 
     @Override
@@ -232,21 +252,26 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
                 throw new CloudRuntimeException("Failed to acquire lock in submitting async job: " + job.getCmd() + " with timeout value = " + VmJobLockTimeout.value());
             }
 
+            long jobId;
             try {
                 // lock is acquired
-                return Transaction.execute(new TransactionCallback<Long>() {
+                jobId = Transaction.execute(new TransactionCallback<Long>() {
                     @Override
                     public Long doInTransaction(TransactionStatus status) {
                         job.setInitMsid(getMsid());
                         dao.persist(job);
 
-                        syncAsyncJobExecution(job, syncObjType, syncObjId, 1);
+                        queueAsyncJob(job, syncObjType, syncObjId, 1);
                         return job.getId();
                     }
                 });
             } finally {
                 _vmInstanceDao.unlockFromLockTable(String.valueOf(syncObjId));
             }
+
+            // no need to wait for the heartbeat to pick the queue item up once it is committed
+            TransactionLegacy.runAfterCommit(this::wakeupDispatcher);
+            return jobId;
         } catch (Exception e) {
             String errMsg = "Unable to schedule async job for command " + job.getCmd() + ", unexpected exception.";
             s_logger.warn(errMsg, e);
@@ -454,6 +479,11 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
 
     @Override
     public void syncAsyncJobExecution(AsyncJob job, String syncObjType, long syncObjId, long queueSizeLimit) {
+        queueAsyncJob(job, syncObjType, syncObjId, queueSizeLimit);
+        TransactionLegacy.runAfterCommit(this::wakeupDispatcher);
+    }
+
+    private void queueAsyncJob(AsyncJob job, String syncObjType, long syncObjId, long queueSizeLimit) {
         if (s_logger.isDebugEnabled()) {
             s_logger.debug("Sync job-" + job.getId() + " execution on object " + syncObjType + "." + syncObjId);
         }
@@ -574,13 +604,14 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
             @Override
             protected void runInContext() {
                 long runNumber = getJobRunNumber();
+                long startTick = System.currentTimeMillis();
 
                 try {
                     //
                     // setup execution environment
                     //
                     try {
-                        JmxUtil.registerMBean("AsyncJobManager", "Active Job " + job.getId(), new AsyncJobMBeanImpl(job));
+                        JmxUtil.registerMBean("AsyncJobManager", "Active Job " + job.getId(), new AsyncJobMBeanImpl(job, _waitStats));
                     } catch (Exception e) {
                         // Due to co-existence of normal-dispatched-job/wakeup-dispatched-job, MBean register() call
                         // is expected to fail under situations
@@ -589,6 +620,7 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
                     }
 
                     _jobMonitor.registerActiveTask(runNumber, job.getId());
+                    _waitStats.jobStarted(job.getId());
                     AsyncJobExecutionContext.setCurrentExecutionContext(new AsyncJobExecutionContext(job));
                     String related = job.getRelated();
                     String logContext = job.getShortUuid();
@@ -639,6 +671,10 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
                             _queueMgr.purgeItem(job.getSyncSource().getId());
                         }
 
+                        if (_queueMgr.hasReadyQueues()) {
+                            wakeupDispatcher();
+                        }
+
                         try {
                             JmxUtil.unregisterMBean("AsyncJobManager", "Active Job " + job.getId());
                         } catch (Exception e) {
@@ -653,6 +689,7 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
                         //
                         AsyncJobExecutionContext.unregister();
                         _jobMonitor.unregisterActiveTask(runNumber);
+                        _waitStats.jobFinished(job.getId(), System.currentTimeMillis() - startTick);
 
                     } catch (Throwable e) {
                         s_logger.error("Double exception", e);
@@ -745,32 +782,85 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
 
     @Override
     public boolean waitAndCheck(AsyncJob job, String[] wakeupTopicsOnMessageBus, long checkIntervalInMilliSeconds, long timeoutInMiliseconds, Predicate predicate) {
+        final long jobId = job.getId();
+        AsyncJobExecutionContext context = AsyncJobExecutionContext.getCurrent();
+        final Long waitingJobId = context != null && context.getJob() != null ? context.getJob().getId() : null;
+
+        // completion of the job is signalled through the JOB_STATE subscription of the manager,
+        // only the other topics need a subscription of their own
+        List<String> topics = new ArrayList<String>();
+        for (String topic : wakeupTopicsOnMessageBus) {
+            if (!AsyncJob.Topics.JOB_STATE.equals(topic)) {
+                topics.add(topic);
+            }
+        }
 
-        MessageDetector msgDetector = new MessageDetector();
-        String[] topics = Arrays.copyOf(wakeupTopicsOnMessageBus, wakeupTopicsOnMessageBus.length + 1);
-        topics[topics.length - 1] = AsyncJob.Topics.JOB_STATE;
-
-        msgDetector.open(_messageBus, topics);
+        AsyncJobWaiter waiter = new AsyncJobWaiter(jobId);
+        addWaiter(waiter);
+        waiter.open(_messageBus, topics.toArray(new String[topics.size()]));
+        long startTick = System.currentTimeMillis();
         try {
-            long startTick = System.currentTimeMillis();
             while (timeoutInMiliseconds < 0 || System.currentTimeMillis() - startTick < timeoutInMiliseconds) {
-                msgDetector.waitAny(checkIntervalInMilliSeconds);
-                job = _jobDao.findById(job.getId());
-                if (job != null && job.getStatus().done()) {
-                    return true;
+                long signalledAt = waiter.await(getWaitCheckInterval(job, checkIntervalInMilliSeconds));
+                boolean byEvent = signalledAt != 0;
+                _waitStats.wokenUp(byEvent);
+
+                AsyncJobVO jobVO = _jobDao.findById(jobId);
+                if (jobVO != null) {
+                    job = jobVO;
+                    if (jobVO.getStatus().done()) {
+                        _waitStats.completionDetected(byEvent, System.currentTimeMillis() - signalledAt);
+                        return true;
+                    }
                 }
 
                 if (predicate.checkCondition()) {
+                    _waitStats.completionDetected(byEvent, System.currentTimeMillis() - signalledAt);
                     return true;
                 }
             }
         } finally {
-            msgDetector.close();
+            waiter.close();
+            removeWaiter(waiter);
+            _waitStats.waited(waitingJobId, System.currentTimeMillis() - startTick);
         }
 
         return false;
     }
 
+    /**
+     * Completion of a job executing on this management server wakes up its waiters, so the
+     * database only needs to be checked as a fallback. Jobs which are not dispatched yet or
+     * which execute on another management server are checked at the interval of the caller.
+     */
+    private long getWaitCheckInterval(AsyncJob job, long checkIntervalInMilliSeconds) {
+        Long executingMsid = job.getExecutingMsid();
+        if (executingMsid != null && executingMsid == getMsid()) {
+            return Math.max(checkIntervalInMilliSeconds, JobWaitFallbackInterval.value() * 1000);
+        }
+        return checkIntervalInMilliSeconds;
+    }
+
+    private void addWaiter(AsyncJobWaiter waiter) {
+        _jobWaiters.computeIfAbsent(waiter.getJobId(), k -> ConcurrentHashMap.newKeySet()).add(waiter);
+    }
+
+    private void removeWaiter(AsyncJobWaiter waiter) {
+        _jobWaiters.computeIfPresent(waiter.getJobId(), (k, waiters) -> {
+            waiters.remove(waiter);
+            return waiters.isEmpty() ? null : waiters;
+        });
+    }
+
+    private void signalWaiters(long jobId) {
+        Set<AsyncJobWaiter> waiters = _jobWaiters.get(jobId);
+        if (waiters != null) {
+            for (AsyncJobWaiter waiter : waiters) {
+                waiter.signal();
+            }
+        }
+    }
+
     @Override
     public String marshallResultObject(Serializable obj) {
         if (obj != null)
@@ -806,6 +896,48 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
         }
     }
 
+    /**
+     * Schedules a dispatch round for the sync queues made ready on this management server,
+     * wakeups are coalesced so that there is at most one pending round at any time.
+     */
+    private void wakeupDispatcher() {
+        if (_dispatchPending.compareAndSet(false, true)) {
+            try {
+                _dispatchExecutor.submit(getDispatchTask());
+            } catch (RejectedExecutionException e) {
+                _dispatchPending.set(false);
+                s_logger.debug("Sync queue dispatcher is shut down, leaving ready queues to the heartbeat");
+            }
+        }
+    }
+
+    private Runnable getDispatchTask() {
+        return new ManagedContextRunnable() {
+            @Override
+            protected void runInContext() {
+                // reset first, a wakeup arriving while this round runs schedules another one
+                _dispatchPending.set(false);
+                try {
+                    List<SyncQueueItemVO> l;
+                    do {
+                        l = _queueMgr.dequeueFromReadyQueues(getMsid(), MAX_ONETIME_SCHEDULE_SIZE);
+                        if (l == null) {
+                            break;
+                        }
+                        for (SyncQueueItemVO item : l) {
+                            if (s_logger.isDebugEnabled()) {
+                                s_logger.debug("Dispatch sync-queue item: " + item.toString());
+                            }
+                            executeQueueItem(item, false);
+                        }
+                    } while (!l.isEmpty() && _queueMgr.hasReadyQueues());
+                } catch (Throwable e) {
+                    s_logger.error("Unexpected exception when dispatching ready sync queues, ", e);
+                }
+            }
+        };
+    }
+
     private Runnable getHeartbeatTask() {
         return new ManagedContextRunnable() {
 
@@ -827,6 +959,12 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
 
             protected void reallyRun() {
                 try {
+                    if (_queueMgr.hasReadyQueues()) {
+                        wakeupDispatcher();
+                    }
+
+                    // fallback scan, covers items queued by other management servers
+                    // and ready queues whose items were not committed yet when dispatched
                     List<SyncQueueItemVO> l = _queueMgr.dequeueFromAny(getMsid(), MAX_ONETIME_SCHEDULE_SIZE);
                     if (l != null && l.size() > 0) {
                         for (SyncQueueItemVO item : l) {
@@ -1130,6 +1268,13 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
     public boolean start() {
         cleanupLeftOverJobs(getMsid());
 
+        _messageBus.subscribe(AsyncJob.Topics.JOB_STATE, _jobStateSubscriber);
+        try {
+            JmxUtil.registerMBean("AsyncJobManager", "WaitStats", _waitStats);
+        } catch (Exception e) {
+            s_logger.warn("Unable to register async job wait stats for JMX", e);
+        }
+
         _heartbeatScheduler.scheduleAtFixedRate(getHeartbeatTask(), HEARTBEAT_INTERVAL, HEARTBEAT_INTERVAL, TimeUnit.MILLISECONDS);
         _heartbeatScheduler.scheduleAtFixedRate(getGCTask(), GC_INTERVAL, GC_INTERVAL, TimeUnit.MILLISECONDS);
 
@@ -1138,7 +1283,9 @@ public class AsyncJobManagerImpl extends ManagerBase implements AsyncJobManager,
 
     @Override
     public boolean stop() {
+        _messageBus.unsubscribe(AsyncJob.Topics.JOB_STATE, _jobStateSubscriber);
         _heartbeatScheduler.shutdown();
+        _dispatchExecutor.shutdown();
         _apiJobExecutor.shutdown();
         _workerJobExecutor.shutdown();
         return true;
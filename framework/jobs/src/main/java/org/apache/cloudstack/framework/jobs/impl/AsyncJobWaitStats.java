@@ -0,0 +1,155 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.framework.jobs.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.StandardMBean;
+
+import com.cloud.utils.LatencyHistogram;
+
+/**
+ * Time spent by jobs waiting on other jobs, split by what ended each wait: a completion
+ * event on this management server or the fallback database poll. Per executed job, the
+ * total wait time is also set against the rest of its execution time.
+ */
+public class AsyncJobWaitStats extends StandardMBean implements AsyncJobWaitStatsMBean {
+    private final LatencyHistogram _waitTimes = new LatencyHistogram();
+    private final LatencyHistogram _wakeupLatencies = new LatencyHistogram();
+    private final LatencyHistogram _jobWaitTimes = new LatencyHistogram();
+    private final LatencyHistogram _jobWorkTimes = new LatencyHistogram();
+
+    private final AtomicLong _eventWakeups = new AtomicLong(0);
+    private final AtomicLong _pollWakeups = new AtomicLong(0);
+    private final AtomicLong _completionsByEvent = new AtomicLong(0);
+    private final AtomicLong _completionsByPoll = new AtomicLong(0);
+    private final AtomicLong _dbChecks = new AtomicLong(0);
+
+    private final Map<Long, AtomicLong> _activeJobWaits = new ConcurrentHashMap<Long, AtomicLong>();
+
+    public AsyncJobWaitStats() {
+        super(AsyncJobWaitStatsMBean.class, false);
+    }
+
+    public void jobStarted(long jobId) {
+        _activeJobWaits.putIfAbsent(jobId, new AtomicLong(0));
+    }
+
+    public void jobFinished(long jobId, long executionTimeInMillis) {
+        AtomicLong waited = _activeJobWaits.remove(jobId);
+        if (waited != null) {
+            long waitTime = Math.min(waited.get(), executionTimeInMillis);
+            _jobWaitTimes.record(waitTime);
+            _jobWorkTimes.record(executionTimeInMillis - waitTime);
+        }
+    }
+
+    /**
+     * Records a wakeup of a waiter, followed by a database check of the job it waits on.
+     */
+    public void wokenUp(boolean byEvent) {
+        (byEvent ? _eventWakeups : _pollWakeups).incrementAndGet();
+        _dbChecks.incrementAndGet();
+    }
+
+    public void completionDetected(boolean byEvent, long wakeupLatencyInMillis) {
+        if (byEvent) {
+            _completionsByEvent.incrementAndGet();
+            _wakeupLatencies.record(wakeupLatencyInMillis);
+        } else {
+            _completionsByPoll.incrementAndGet();
+        }
+    }
+
+    /**
+     * @param waitingJobId job on behalf of which the wait happened, null if not known
+     */
+    public void waited(Long waitingJobId, long waitTimeInMillis) {
+        _waitTimes.record(waitTimeInMillis);
+        if (waitingJobId != null) {
+            AtomicLong waited = _activeJobWaits.get(waitingJobId);
+            if (waited != null) {
+                waited.addAndGet(waitTimeInMillis);
+            }
+        }
+    }
+
+    public long getJobWaitTime(long jobId) {
+        AtomicLong waited = _activeJobWaits.get(jobId);
+        return waited == null ? 0 : waited.get();
+    }
+
+    @Override
+    public Map<String, String> getWaitTimes() {
+        return _waitTimes.toMap();
+    }
+
+    @Override
+    public Map<String, String> getWakeupLatencies() {
+        return _wakeupLatencies.toMap();
+    }
+
+    @Override
+    public Map<String, String> getJobWaitTimes() {
+        return _jobWaitTimes.toMap();
+    }
+
+    @Override
+    public Map<String, String> getJobWorkTimes() {
+        return _jobWorkTimes.toMap();
+    }
+
+    @Override
+    public long getEventWakeupCount() {
+        return _eventWakeups.get();
+    }
+
+    @Override
+    public long getPollWakeupCount() {
+        return _pollWakeups.get();
+    }
+
+    @Override
+    public long getCompletionsDetectedByEvent() {
+        return _completionsByEvent.get();
+    }
+
+    @Override
+    public long getCompletionsDetectedByPoll() {
+        return _completionsByPoll.get();
+    }
+
+    @Override
+    public long getDatabaseCheckCount() {
+        return _dbChecks.get();
+    }
+
+    @Override
+    public void reset() {
+        _waitTimes.reset();
+        _wakeupLatencies.reset();
+        _jobWaitTimes.reset();
+        _jobWorkTimes.reset();
+        _eventWakeups.set(0);
+        _pollWakeups.set(0);
+        _completionsByEvent.set(0);
+        _completionsByPoll.set(0);
+        _dbChecks.set(0);
+    }
+}
@@ -0,0 +1,101 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.framework.jobs.impl;
+
+import org.apache.log4j.Logger;
+
+import org.apache.cloudstack.framework.messagebus.MessageBus;
+import org.apache.cloudstack.framework.messagebus.MessageSubscriber;
+
+/**
+ * Waits for the completion of a job. The job manager signals the waiter directly when the job
+ * completes on this management server; messages on any of the subscribed topics wake it up as
+ * well, so that the caller re-evaluates its condition. Unlike MessageDetector, a signal that
+ * arrives while the caller is not waiting is kept until the next wait.
+ */
+public class AsyncJobWaiter implements MessageSubscriber {
+    private static final Logger s_logger = Logger.getLogger(AsyncJobWaiter.class);
+
+    private final long _jobId;
+
+    private MessageBus _messageBus;
+    private String[] _subjects;
+
+    private boolean _signalled;
+    private long _signalledAt;
+
+    public AsyncJobWaiter(long jobId) {
+        _jobId = jobId;
+    }
+
+    public long getJobId() {
+        return _jobId;
+    }
+
+    public void open(MessageBus messageBus, String[] subjects) {
+        _messageBus = messageBus;
+        _subjects = subjects;
+        for (String subject : subjects) {
+            messageBus.subscribe(subject, this);
+        }
+    }
+
+    public void close() {
+        if (_subjects != null) {
+            for (String subject : _subjects) {
+                _messageBus.unsubscribe(subject, this);
+            }
+        }
+    }
+
+    public synchronized void signal() {
+        if (!_signalled) {
+            _signalled = true;
+            _signalledAt = System.currentTimeMillis();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Waits until the waiter is signalled or the time-out expires, and clears the signal.
+     * @return the time at which the waiter was signalled, 0 if the wait timed out
+     */
+    public synchronized long await(long timeoutInMilliSeconds) {
+        long deadline = System.currentTimeMillis() + timeoutInMilliSeconds;
+        while (!_signalled) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                break;
+            }
+            try {
+                wait(left);
+            } catch (InterruptedException e) {
+                s_logger.debug("[ignored] interrupted while waiting on job-" + _jobId);
+                break;
+            }
+        }
+
+        long signalledAt = _signalled ? _signalledAt : 0;
+        _signalled = false;
+        return signalledAt;
+    }
+
+    @Override
+    public void onPublishMessage(String senderAddress, String subject, Object args) {
+        signal();
+    }
+}
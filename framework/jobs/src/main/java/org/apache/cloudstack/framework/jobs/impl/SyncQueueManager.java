@@ -27,6 +27,14 @@ public interface SyncQueueManager extends Manager {
 
     public List<SyncQueueItemVO> dequeueFromAny(Long msid, int maxItems);
 
+    /**
+     * Dequeues the next item of up to maxItems of the queues that were made ready on this
+     * management server (by an enqueue, a completion or a returned item), in one transaction.
+     */
+    public List<SyncQueueItemVO> dequeueFromReadyQueues(Long msid, int maxItems);
+
+    public boolean hasReadyQueues();
+
     public void purgeItem(long queueItemId);
 
     public void returnItem(long queueItemId);
@@ -17,8 +17,15 @@
 package org.apache.cloudstack.framework.jobs.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import javax.inject.Inject;
 
@@ -32,6 +39,7 @@ import com.cloud.utils.db.DB;
 import com.cloud.utils.db.Transaction;
 import com.cloud.utils.db.TransactionCallback;
 import com.cloud.utils.db.TransactionCallbackNoReturn;
+import com.cloud.utils.db.TransactionLegacy;
 import com.cloud.utils.db.TransactionStatus;
 import com.cloud.utils.exception.CloudRuntimeException;
 
@@ -43,11 +51,16 @@ public class SyncQueueManagerImpl extends ManagerBase implements SyncQueueManage
     @Inject
     private SyncQueueItemDao _syncQueueItemDao;
 
+    // queues of which this management server knows that an item may be ready to be dispatched,
+    // the set keeps a queue from being indexed twice
+    private final ConcurrentLinkedQueue<Long> _readyQueues = new ConcurrentLinkedQueue<Long>();
+    private final Set<Long> _readyQueueIds = ConcurrentHashMap.newKeySet();
+
     @Override
     @DB
     public SyncQueueVO queue(final String syncObjType, final long syncObjId, final String itemType, final long itemId, final long queueSizeLimit) {
         try {
-            return Transaction.execute(new TransactionCallback<SyncQueueVO>() {
+            SyncQueueVO queue = Transaction.execute(new TransactionCallback<SyncQueueVO>() {
                 @Override
                 public SyncQueueVO doInTransaction(TransactionStatus status) {
                     _syncQueueDao.ensureQueue(syncObjType, syncObjId);
@@ -69,6 +82,8 @@ public class SyncQueueManagerImpl extends ManagerBase implements SyncQueueManage
                     return queueVO;
                 }
             });
+            markQueueReadyAfterCommit(queue.getId());
+            return queue;
         } catch (Exception e) {
             s_logger.error("Unexpected exception: ", e);
         }
@@ -82,7 +97,7 @@ public class SyncQueueManagerImpl extends ManagerBase implements SyncQueueManage
             return Transaction.execute(new TransactionCallback<SyncQueueItemVO>() {
                 @Override
                 public SyncQueueItemVO doInTransaction(TransactionStatus status) {
-                    SyncQueueVO queueVO = _syncQueueDao.findById(queueId);
+                    SyncQueueVO queueVO = _syncQueueDao.lockRow(queueId, true);
                     if(queueVO == null) {
                         s_logger.error("Sync queue(id: " + queueId + ") does not exist");
                         return null;
@@ -140,9 +155,10 @@ public class SyncQueueManagerImpl extends ManagerBase implements SyncQueueManage
                     List<SyncQueueItemVO> l = _syncQueueItemDao.getNextQueueItems(maxItems);
                     if(l != null && l.size() > 0) {
                         for(SyncQueueItemVO item : l) {
-                            SyncQueueVO queueVO = _syncQueueDao.findById(item.getQueueId());
+                            // lock the queue to serialize with the ready queue dispatcher
+                            SyncQueueVO queueVO = _syncQueueDao.lockRow(item.getQueueId(), true);
                             SyncQueueItemVO itemVO = _syncQueueItemDao.findById(item.getId());
-                            if(queueReadyToProcess(queueVO) && itemVO != null && itemVO.getLastProcessNumber() == null) {
+                            if(queueVO != null && queueReadyToProcess(queueVO) && itemVO != null && itemVO.getLastProcessNumber() == null) {
                                 Long processNumber = queueVO.getLastProcessNumber();
                                 if (processNumber == null)
                                     processNumber = new Long(1);
@@ -175,13 +191,123 @@ public class SyncQueueManagerImpl extends ManagerBase implements SyncQueueManage
         return null;
     }
 
+    @Override
+    @DB
+    public List<SyncQueueItemVO> dequeueFromReadyQueues(final Long msid, final int maxItems) {
+        final List<Long> queueIds = pollReadyQueues(maxItems);
+        if (queueIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final List<Long> moreQueueIds = new ArrayList<Long>();
+        try {
+            List<SyncQueueItemVO> items = Transaction.execute(new TransactionCallback<List<SyncQueueItemVO>>() {
+                @Override
+                public List<SyncQueueItemVO> doInTransaction(TransactionStatus status) {
+                    List<SyncQueueVO> queues = _syncQueueDao.lockQueues(queueIds);
+                    Map<Long, Integer> activeCounts = _syncQueueItemDao.getActiveQueueItemCounts(queueIds);
+
+                    Map<Long, SyncQueueVO> readyQueues = new HashMap<Long, SyncQueueVO>();
+                    for (SyncQueueVO queueVO : queues) {
+                        if (getActiveCount(activeCounts, queueVO.getId()) < queueVO.getQueueSizeLimit()) {
+                            readyQueues.put(queueVO.getId(), queueVO);
+                        } else if (s_logger.isTraceEnabled()) {
+                            s_logger.trace("Sync queue (" + queueVO.getId() + ") is reaching concurrency limit " + queueVO.getQueueSizeLimit());
+                        }
+                    }
+                    if (readyQueues.isEmpty()) {
+                        return Collections.<SyncQueueItemVO>emptyList();
+                    }
+
+                    List<SyncQueueItemVO> items = _syncQueueItemDao.getNextQueueItems(new ArrayList<Long>(readyQueues.keySet()));
+                    if (items.isEmpty()) {
+                        return items;
+                    }
+
+                    List<Long> itemQueueIds = new ArrayList<Long>(items.size());
+                    List<Long> itemIds = new ArrayList<Long>(items.size());
+                    for (SyncQueueItemVO item : items) {
+                        itemQueueIds.add(item.getQueueId());
+                        itemIds.add(item.getId());
+                    }
+
+                    Date dt = DateUtil.currentGMTTime();
+                    _syncQueueDao.markQueuesInProcess(itemQueueIds, dt);
+                    _syncQueueItemDao.markItemsInProcess(itemIds, msid, dt);
+
+                    for (SyncQueueItemVO item : items) {
+                        SyncQueueVO queueVO = readyQueues.get(item.getQueueId());
+                        Long processNumber = queueVO.getLastProcessNumber();
+                        item.setLastProcessMsid(msid);
+                        item.setLastProcessNumber(processNumber == null ? 1 : processNumber + 1);
+                        item.setLastProcessTime(dt);
+
+                        // a queue allowing more than one active item may have more to hand out right away
+                        if (getActiveCount(activeCounts, queueVO.getId()) + 1 < queueVO.getQueueSizeLimit()) {
+                            moreQueueIds.add(queueVO.getId());
+                        }
+                    }
+                    return items;
+                }
+            });
+
+            for (Long queueId : moreQueueIds) {
+                markQueueReadyAfterCommit(queueId);
+            }
+            return items;
+        } catch (Exception e) {
+            s_logger.error("Unexpected exception: ", e);
+
+            // leave them to the next round, the heartbeat scan picks them up anyway
+            for (Long queueId : queueIds) {
+                markQueueReady(queueId);
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public boolean hasReadyQueues() {
+        return !_readyQueues.isEmpty();
+    }
+
+    /**
+     * The caller may be running in an enclosing transaction, in which case the queue item is not
+     * visible to the dispatcher until that transaction commits.
+     */
+    protected void markQueueReadyAfterCommit(final long queueId) {
+        TransactionLegacy.runAfterCommit(() -> markQueueReady(queueId));
+    }
+
+    protected void markQueueReady(long queueId) {
+        if (_readyQueueIds.add(queueId)) {
+            _readyQueues.offer(queueId);
+        }
+    }
+
+    protected List<Long> pollReadyQueues(int maxQueues) {
+        Set<Long> queueIds = new LinkedHashSet<Long>();
+        Long queueId;
+        while (queueIds.size() < maxQueues && (queueId = _readyQueues.poll()) != null) {
+            _readyQueueIds.remove(queueId);
+            queueIds.add(queueId);
+        }
+        return new ArrayList<Long>(queueIds);
+    }
+
+    private static int getActiveCount(Map<Long, Integer> activeCounts, long queueId) {
+        Integer count = activeCounts.get(queueId);
+        return count == null ? 0 : count;
+    }
+
     @Override
     @DB
     public void purgeItem(final long queueItemId) {
         try {
-            Transaction.execute(new TransactionCallbackNoReturn() {
+            Long queueId = Transaction.execute(new TransactionCallback<Long>() {
                 @Override
-                public void doInTransactionWithoutResult(TransactionStatus status) {
+                public Long doInTransaction(TransactionStatus status) {
                     SyncQueueItemVO itemVO = _syncQueueItemDao.findById(queueItemId);
                     if(itemVO != null) {
                         SyncQueueVO queueVO = _syncQueueDao.findById(itemVO.getQueueId());
@@ -195,10 +321,15 @@ public class SyncQueueManagerImpl extends ManagerBase implements SyncQueueManage
                             assert (queueVO.getQueueSize() > 0) : "Count reduce happens when it's already <= 0!";
                             queueVO.setQueueSize(queueVO.getQueueSize() - 1);
                             _syncQueueDao.update(queueVO.getId(), queueVO);
+                            return queueVO.getId();
                         }
                     }
+                    return null;
                 }
             });
+            if (queueId != null) {
+                markQueueReadyAfterCommit(queueId);
+            }
         } catch (Exception e) {
             s_logger.error("Unexpected exception: ", e);
         }
@@ -209,9 +340,9 @@ public class SyncQueueManagerImpl extends ManagerBase implements SyncQueueManage
     public void returnItem(final long queueItemId) {
         s_logger.info("Returning queue item " + queueItemId + " back to queue for second try in case of DB deadlock");
         try {
-            Transaction.execute(new TransactionCallbackNoReturn() {
+            Long queueId = Transaction.execute(new TransactionCallback<Long>() {
                 @Override
-                public void doInTransactionWithoutResult(TransactionStatus status) {
+                public Long doInTransaction(TransactionStatus status) {
                     SyncQueueItemVO itemVO = _syncQueueItemDao.findById(queueItemId);
                     if(itemVO != null) {
                         SyncQueueVO queueVO = _syncQueueDao.findById(itemVO.getQueueId());
@@ -224,9 +355,14 @@ public class SyncQueueManagerImpl extends ManagerBase implements SyncQueueManage
                         queueVO.setQueueSize(queueVO.getQueueSize() - 1);
                         queueVO.setLastUpdated(DateUtil.currentGMTTime());
                         _syncQueueDao.update(queueVO.getId(), queueVO);
+                        return queueVO.getId();
                     }
+                    return null;
                 }
             });
+            if (queueId != null) {
+                markQueueReadyAfterCommit(queueId);
+            }
         } catch (Exception e) {
             s_logger.error("Unexpected exception: ", e);
         }
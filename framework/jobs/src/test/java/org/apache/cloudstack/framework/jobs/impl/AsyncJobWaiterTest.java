@@ -0,0 +1,68 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.framework.jobs.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AsyncJobWaiterTest {
+
+    @Test
+    public void testAwaitTimesOutWithoutSignal() {
+        AsyncJobWaiter waiter = new AsyncJobWaiter(1L);
+        Assert.assertEquals(0, waiter.await(20));
+    }
+
+    @Test
+    public void testSignalBeforeAwaitIsNotLost() {
+        AsyncJobWaiter waiter = new AsyncJobWaiter(1L);
+        long before = System.currentTimeMillis();
+        waiter.signal();
+
+        long signalledAt = waiter.await(10000);
+        Assert.assertTrue(signalledAt >= before);
+
+        // the signal is consumed by the first wait
+        Assert.assertEquals(0, waiter.await(20));
+    }
+
+    @Test
+    public void testSignalWakesUpWaiter() throws Exception {
+        final AsyncJobWaiter waiter = new AsyncJobWaiter(1L);
+        Thread signaller = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+            waiter.signal();
+        });
+        signaller.start();
+
+        long start = System.currentTimeMillis();
+        Assert.assertNotEquals(0, waiter.await(10000));
+        Assert.assertTrue(System.currentTimeMillis() - start < 10000);
+        signaller.join();
+    }
+
+    @Test
+    public void testMessageWakesUpWaiter() {
+        AsyncJobWaiter waiter = new AsyncJobWaiter(1L);
+        waiter.onPublishMessage(null, "topic", null);
+        Assert.assertNotEquals(0, waiter.await(10000));
+    }
+}
@@ -0,0 +1,82 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package org.apache.cloudstack.framework.jobs.impl;
+
+import org.apache.cloudstack.framework.jobs.dao.SyncQueueDao;
+import org.apache.cloudstack.framework.jobs.dao.SyncQueueItemDao;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.cloud.utils.db.TransactionLegacy;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SyncQueueManagerImplTest {
+
+    @Mock
+    SyncQueueDao syncQueueDao;
+
+    @Mock
+    SyncQueueItemDao syncQueueItemDao;
+
+    @InjectMocks
+    SyncQueueManagerImpl syncQueueManager = new SyncQueueManagerImpl();
+
+    @Before
+    public void setup() {
+        SyncQueueVO queue = Mockito.mock(SyncQueueVO.class);
+        Mockito.when(queue.getId()).thenReturn(1L);
+        Mockito.when(syncQueueDao.find("VmWorkJobQueue", 2L)).thenReturn(queue);
+    }
+
+    @Test
+    public void queueTestMarksTheQueueReady() {
+        Assert.assertNotNull(syncQueueManager.queue("VmWorkJobQueue", 2L, "AsyncJob", 3L, 1L));
+        Assert.assertTrue(syncQueueManager.hasReadyQueues());
+    }
+
+    @Test
+    public void queueTestMarksTheQueueReadyOnlyAfterTheEnclosingTransactionCommits() {
+        TransactionLegacy txn = TransactionLegacy.open("queueTestMarksTheQueueReadyOnlyAfterTheEnclosingTransactionCommits");
+        try {
+            txn.start();
+            Assert.assertNotNull(syncQueueManager.queue("VmWorkJobQueue", 2L, "AsyncJob", 3L, 1L));
+            Assert.assertFalse(syncQueueManager.hasReadyQueues());
+            txn.commit();
+        } finally {
+            txn.close();
+        }
+        Assert.assertTrue(syncQueueManager.hasReadyQueues());
+    }
+
+    @Test
+    public void queueTestDoesNotMarkTheQueueReadyWhenTheEnclosingTransactionRollsBack() {
+        TransactionLegacy txn = TransactionLegacy.open("queueTestDoesNotMarkTheQueueReadyWhenTheEnclosingTransactionRollsBack");
+        try {
+            txn.start();
+            Assert.assertNotNull(syncQueueManager.queue("VmWorkJobQueue", 2L, "AsyncJob", 3L, 1L));
+        } finally {
+            txn.close();
+        }
+        Assert.assertFalse(syncQueueManager.hasReadyQueues());
+    }
+}
@@ -18,6 +18,8 @@ package com.cloud.hypervisor.kvm.resource;
 
 import com.cloud.agent.properties.AgentProperties;
 import com.cloud.agent.properties.AgentPropertiesFileHandler;
+import com.cloud.utils.LatencyHistogram;
+import com.cloud.utils.concurrency.NamedThreadFactory;
 import com.cloud.utils.script.Script;
 import org.apache.log4j.Logger;
 import org.libvirt.Connect;
@@ -26,14 +28,29 @@ import org.libvirt.StoragePool;
 import org.libvirt.StoragePoolInfo.StoragePoolState;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class KVMHAMonitor extends KVMHABase implements Runnable {
 
@@ -48,6 +65,33 @@ public class KVMHAMonitor extends KVMHABase implements Runnable {
 
     private final String hostPrivateIp;
 
+    private final Map<String, PoolHeartBeat> poolHeartBeats = new ConcurrentHashMap<>();
+    private final ExecutorService heartBeatExecutor = Executors.newCachedThreadPool(new NamedThreadFactory("KVMHAMonitor-HeartBeat"));
+
+    /**
+     * Heartbeat state of a single pool. Every pool is written to by its own task, so a slow or hung
+     * storage only delays (and eventually fails) its own heartbeat and not the ones of the other pools.
+     */
+    protected static class PoolHeartBeat {
+        private final AtomicBoolean inProgress = new AtomicBoolean(false);
+        private final LatencyHistogram writeLatency = new LatencyHistogram();
+        private volatile Future<String> pendingWrite;
+        private volatile long lastSuccess;
+        private volatile long failures;
+
+        public LatencyHistogram getWriteLatency() {
+            return writeLatency;
+        }
+
+        public long getLastSuccess() {
+            return lastSuccess;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+    }
+
     public KVMHAMonitor(NfsStoragePool pool, RbdStoragePool rbdpool, ClvmStoragePool clvmpool, String host, String scriptPath, String scriptPathRbd, String scriptPathClvm) {
         if (pool != null) {
             nfsstoragePool.put(pool._poolUUID, pool);
@@ -127,37 +171,69 @@ public class KVMHAMonitor extends KVMHABase implements Runnable {
         return clvmstoragePool.get(uuid);
     }
 
+    /**
+     * @return the heartbeat state of the pool, or null if no heartbeat was written to it yet.
+     */
+    public PoolHeartBeat getPoolHeartBeat(String uuid) {
+        return poolHeartBeats.get(uuid);
+    }
+
+    public Map<String, PoolHeartBeat> getPoolHeartBeats() {
+        return Collections.unmodifiableMap(poolHeartBeats);
+    }
+
     protected void runHeartBeat() {
-        Set<String> removedPools = new HashSet<>();
+        poolHeartBeats.keySet().removeIf(uuid -> !nfsstoragePool.containsKey(uuid) && !rbdstoragePool.containsKey(uuid) && !clvmstoragePool.containsKey(uuid));
+
         if (nfsstoragePool != null && !nfsstoragePool.isEmpty()) {
             for (String uuid : nfsstoragePool.keySet()) {
                 NfsStoragePool nfsStoragePool = nfsstoragePool.get(uuid);
-                runHeartbeatToPool(nfsStoragePool, rbdStoragePool, clvmStoragePool, uuid, removedPools);
+                scheduleHeartBeat(nfsStoragePool, rbdStoragePool, clvmStoragePool, uuid);
             }
         }
 
         if (rbdstoragePool != null && !rbdstoragePool.isEmpty()) {
             for (String uuid : rbdstoragePool.keySet()) {
                 RbdStoragePool rbdStoragePool = rbdstoragePool.get(uuid);
-                runHeartbeatToPool(nfsStoragePool, rbdStoragePool, clvmStoragePool, uuid, removedPools);
+                scheduleHeartBeat(nfsStoragePool, rbdStoragePool, clvmStoragePool, uuid);
             }
         }
 
         if (clvmstoragePool != null && !clvmstoragePool.isEmpty()) {
             for (String uuid : clvmstoragePool.keySet()) {
                 ClvmStoragePool clvmStoragePool = clvmstoragePool.get(uuid);
-                runHeartbeatToPool(nfsStoragePool, rbdStoragePool, clvmStoragePool, uuid, removedPools);
+                scheduleHeartBeat(nfsStoragePool, rbdStoragePool, clvmStoragePool, uuid);
             }
         }
+    }
 
-        if (!removedPools.isEmpty()) {
-            for (String uuid : removedPools) {
-                removeStoragePool(uuid);
-            }
+    /**
+     * Runs the heartbeat of the pool in the background, unless the one of the previous round is
+     * still retrying, in which case this round is skipped for that pool only.
+     */
+    private void scheduleHeartBeat(NfsStoragePool nfsStoragePool, RbdStoragePool rbdStoragePool, ClvmStoragePool clvmStoragePool, String uuid) {
+        final PoolHeartBeat heartBeat = poolHeartBeats.computeIfAbsent(uuid, k -> new PoolHeartBeat());
+        if (!heartBeat.inProgress.compareAndSet(false, true)) {
+            s_logger.warn(String.format("The previous heartbeat to pool [%s] is still in progress, skipping this round for it.", uuid));
+            return;
         }
+        heartBeatExecutor.execute(() -> {
+            try {
+                Set<String> removedPools = new HashSet<>();
+                runHeartbeatToPool(nfsStoragePool, rbdStoragePool, clvmStoragePool, uuid, removedPools, heartBeat);
+                for (String removedPool : removedPools) {
+                    removeStoragePool(removedPool);
+                }
+            } catch (RuntimeException e) {
+                s_logger.warn(String.format("Unexpected error while writing the heartbeat to pool [%s].", uuid), e);
+            } finally {
+                heartBeat.inProgress.set(false);
+            }
+        });
     }
 
-    private void runHeartbeatToPool(NfsStoragePool nfsStoragePool, RbdStoragePool rbdStoragePool, ClvmStoragePool clvmStoragePool, String uuid, Set<String> removedPools) {
+    private void runHeartbeatToPool(NfsStoragePool nfsStoragePool, RbdStoragePool rbdStoragePool, ClvmStoragePool clvmStoragePool, String uuid, Set<String> removedPools,
+            PoolHeartBeat heartBeat) {
         StoragePool storage;
         try {
             Connect conn = LibvirtConnection.getConnection();
@@ -187,10 +263,10 @@ public class KVMHAMonitor extends KVMHABase implements Runnable {
         String result = null;
         Process process = null;
         for (int i = 1; i <= _heartBeatUpdateMaxTries; i++) {
+            long startTime = System.currentTimeMillis();
             if (nfsStoragePool != null) {
-                Script cmd = createHeartBeatCommand(nfsStoragePool, hostPrivateIp, true);
-                result = cmd.execute();
-                s_logger.debug(String.format("The command [%s], to the pool [%s], had the result [%s].", cmd.toString(), uuid, result));
+                result = writeNfsHeartBeat(nfsStoragePool, heartBeat);
+                s_logger.debug(String.format("The heartbeat write to the pool [%s] took [%s] ms and had the result [%s].", uuid, System.currentTimeMillis() - startTime, result));
             } else if (rbdStoragePool != null) {
                 ProcessBuilder processBuilder = createRbdHeartBeatCommand(rbdStoragePool, hostPrivateIp, true);
                 try {
@@ -206,7 +282,9 @@ public class KVMHAMonitor extends KVMHABase implements Runnable {
                 result = cmd.execute();
                 s_logger.debug(String.format("The command [%s], to the pool [%s], had the result [%s].", cmd.toString(), uuid, result));
             }
+            heartBeat.writeLatency.record(System.currentTimeMillis() - startTime);
             if (result != null) {
+                heartBeat.failures++;
                 s_logger.warn(String.format("Write heartbeat for pool [%s] failed: %s; try: %s of %s.", uuid, result, i, _heartBeatUpdateMaxTries));
                 try {
                     Thread.sleep(_heartBeatUpdateRetrySleep);
@@ -214,6 +292,7 @@ public class KVMHAMonitor extends KVMHABase implements Runnable {
                     s_logger.debug("[IGNORED] Interrupted between heartbeat retries.", e);
                 }
             } else {
+                heartBeat.lastSuccess = System.currentTimeMillis();
                 break;
             }
 
@@ -240,6 +319,75 @@ public class KVMHAMonitor extends KVMHABase implements Runnable {
         }
     }
 
+    /**
+     * Writes the heartbeat of an NFS pool from the agent itself, which spares a fork of the heartbeat script
+     * per pool and per round. The write is done in the background and waited for at most the heartbeat update
+     * timeout; a write that is still hung on the storage is waited for again by the next try instead of
+     * piling up another one. When the pool is not mounted (anymore) the heartbeat script is used, as it
+     * takes care of remounting it.
+     *
+     * @return null when the heartbeat was written, the reason of the failure otherwise.
+     */
+    private String writeNfsHeartBeat(NfsStoragePool pool, PoolHeartBeat heartBeat) {
+        final File heartBeatFolder = new File(pool._mountDestPath, "KVMHA");
+        if (!isNfsMounted(pool._mountDestPath) || !heartBeatFolder.isDirectory()) {
+            Script cmd = createHeartBeatCommand(pool, hostPrivateIp, true);
+            String result = cmd.execute();
+            s_logger.debug(String.format("The command [%s], to the pool [%s], had the result [%s].", cmd.toString(), pool._poolUUID, result));
+            return result;
+        }
+
+        Future<String> write = heartBeat.pendingWrite;
+        if (write == null || write.isDone()) {
+            final File heartBeatFile = new File(heartBeatFolder, "hb-" + hostPrivateIp);
+            write = heartBeatExecutor.submit(() -> writeHeartBeatFile(heartBeatFile));
+            heartBeat.pendingWrite = write;
+        }
+        try {
+            return write.get(_heartBeatUpdateTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return String.format("Timed out after [%s] ms writing the heartbeat file", _heartBeatUpdateTimeout);
+        } catch (ExecutionException e) {
+            return String.format("Failed to write the heartbeat file: %s", e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Interrupted while writing the heartbeat file";
+        }
+    }
+
+    /**
+     * Writes the current timestamp, in seconds, to the heartbeat file in the same format as the heartbeat
+     * script does, and waits until it reached the storage.
+     */
+    protected static String writeHeartBeatFile(File heartBeatFile) throws IOException {
+        byte[] timestamp = (System.currentTimeMillis() / 1000 + "\n").getBytes(StandardCharsets.US_ASCII);
+        try (FileChannel channel = FileChannel.open(heartBeatFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.DSYNC)) {
+            channel.write(ByteBuffer.wrap(timestamp));
+            channel.force(true);
+        }
+        return null;
+    }
+
+    protected boolean isNfsMounted(String mountPoint) {
+        try {
+            return isNfsMounted(Files.readAllLines(Paths.get("/proc/mounts")), mountPoint);
+        } catch (IOException e) {
+            s_logger.debug("Unable to read /proc/mounts: " + e.getMessage());
+            return false;
+        }
+    }
+
+    protected static boolean isNfsMounted(List<String> mounts, String mountPoint) {
+        for (String mount : mounts) {
+            String[] fields = mount.split(" ");
+            if (fields.length > 2 && fields[1].equals(mountPoint) && fields[2].startsWith("nfs")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private Script createHeartBeatCommand(NfsStoragePool primaryStoragePool, String hostPrivateIp, boolean hostValidation) {
         Script cmd = new Script(s_heartBeatPath, _heartBeatUpdateTimeout, s_logger);
         cmd.add("-i", primaryStoragePool._poolIp);
@@ -32,12 +32,17 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.inject.Inject;
@@ -186,6 +191,7 @@ import com.cloud.storage.resource.StorageSubsystemCommandHandler;
 import com.cloud.storage.resource.StorageSubsystemCommandHandlerBase;
 import com.cloud.utils.ExecutionResult;
 import com.cloud.utils.NumbersUtil;
+import com.cloud.utils.concurrency.NamedThreadFactory;
 import com.cloud.utils.Pair;
 import com.cloud.utils.PropertiesUtil;
 import com.cloud.utils.Ternary;
@@ -194,6 +200,7 @@ import com.cloud.utils.net.NetUtils;
 import com.cloud.utils.script.OutputInterpreter;
 import com.cloud.utils.script.OutputInterpreter.AllLinesParser;
 import com.cloud.utils.script.Script;
+import com.cloud.utils.ssh.SshConnectionPool;
 import com.cloud.utils.ssh.SshHelper;
 import com.cloud.utils.UuidUtils;
 import com.cloud.vm.VirtualMachine;
@@ -280,6 +287,9 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
      * PAE extends memory addressing capabilities, allowing more than 4 GB of random access memory (RAM) to be used.
      */
     private static final String PAE = "pae";
+
+    private static final String ROUTER_SCRIPTS_PATH = "/opt/cloud/bin/";
+    private static final int ROUTER_SSH_CONNECT_TIMEOUT = 60000;
     /**
      * Libvirt supports guest CPU mode since 0.9.10.
      */
@@ -314,6 +324,7 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
     private String _ovsPvlanDhcpHostPath;
     private String _ovsPvlanVmPath;
     private String _routerProxyPath;
+    private SshConnectionPool _routerControlChannel;
     private String _ovsTunnelPath;
     private String _host;
     private String _dcId;
@@ -429,6 +440,9 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
 
     private final Map <String, String> _pifs = new HashMap<String, String>();
     private final Map<String, VmStats> _vmStats = new ConcurrentHashMap<String, VmStats>();
+    private final Map<String, VmStatsDevices> _vmStatsDevices = new ConcurrentHashMap<String, VmStatsDevices>();
+    private static final long VM_STATS_DEVICES_TTL_MS = 10 * 60 * 1000L;
+    protected ExecutorService _vmStatsExecutor;
 
     protected static final HashMap<DomainState, PowerState> s_powerStatesTable;
     static {
@@ -485,6 +499,10 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
 
     @Override
     public ExecutionResult executeInVR(final String routerIp, final String script, final String args, final Duration timeout) {
+        if (_routerControlChannel != null) {
+            return executeInVRThroughControlChannel(routerIp, script, args, timeout);
+        }
+
         final Script command = new Script(_routerProxyPath, timeout, s_logger);
         final AllLinesParser parser = new AllLinesParser();
         command.add(script);
@@ -502,15 +520,38 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
         return new ExecutionResult(command.getExitValue() == 0, details);
     }
 
+    /**
+     * Runs the script as a new session on the persistent SSH connection to the router, which saves
+     * the connection setup of router_proxy.sh on every command.
+     */
+    private ExecutionResult executeInVRThroughControlChannel(final String routerIp, final String script, final String args, final Duration timeout) {
+        final String command = ROUTER_SCRIPTS_PATH + script + (args != null ? " " + args : "");
+        final long startTime = System.currentTimeMillis();
+        try {
+            final Pair<Boolean, String> result = _routerControlChannel.execute(routerIp, command, (int)timeout.getMillis());
+            if (s_logger.isDebugEnabled()) {
+                s_logger.debug(String.format("Executed script %s in VR %s in %d ms", script, routerIp, System.currentTimeMillis() - startTime));
+            }
+            return new ExecutionResult(result.first(), result.second());
+        } catch (final Exception e) {
+            s_logger.warn("Failed to execute script " + script + " in VR " + routerIp, e);
+            return new ExecutionResult(false, e.getMessage());
+        }
+    }
+
     @Override
     public ExecutionResult createFileInVR(final String routerIp, final String path, final String filename, final String content) {
-        final File permKey = new File("/root/.ssh/id_rsa.cloud");
+        final File permKey = new File(SSHPRVKEYPATH);
         boolean success = true;
         String details = "Creating file in VR, with ip: " + routerIp + ", file: " + filename;
         s_logger.debug(details);
 
         try {
-            SshHelper.scpTo(routerIp, 3922, "root", permKey, null, path, content.getBytes(), filename, null);
+            if (_routerControlChannel != null) {
+                _routerControlChannel.scpTo(routerIp, path, content.getBytes(), filename, null, (int)_timeout.getMillis());
+            } else {
+                SshHelper.scpTo(routerIp, Integer.parseInt(DEFAULTDOMRSSHPORT), "root", permKey, null, path, content.getBytes(), filename, null);
+            }
         } catch (final Exception e) {
             s_logger.warn("Failed to create file " + path + filename + " in VR " + routerIp, e);
             details = e.getMessage();
@@ -574,6 +615,16 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
         return _virtRouterResource;
     }
 
+    /**
+     * Makes the next config of every section be sent to the router again, for when the router
+     * may have lost its configuration or may have been configured from another host.
+     */
+    public void resetRouterAppliedConfigs(final String vmName) {
+        if (_virtRouterResource != null) {
+            _virtRouterResource.resetAppliedConfigs(vmName);
+        }
+    }
+
     public String getPublicBridgeName() {
         return _publicBridgeName;
     }
@@ -827,6 +878,11 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
             s_logger.error("uefi properties file not found due to: " + e.getLocalizedMessage());
         }
 
+        Integer vmStatsThreads = AgentPropertiesFileHandler.getPropertyValue(AgentProperties.VM_STATS_COLLECTION_THREADS);
+        if (vmStatsThreads != null && vmStatsThreads > 1) {
+            _vmStatsExecutor = Executors.newFixedThreadPool(vmStatsThreads, new NamedThreadFactory("VmStatsCollector"));
+        }
+
         try {
             loadTpmProperties();
         } catch (FileNotFoundException e) {
@@ -893,6 +949,7 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
 
         _virtRouterResource = new VirtualRoutingResource(this);
         success = _virtRouterResource.configure(name, params);
+        _virtRouterResource.setSkipUnchangedConfigs(AgentPropertiesFileHandler.getPropertyValue(AgentProperties.ROUTER_SKIP_UNCHANGED_CONFIG));
 
         if (!success) {
             return false;
@@ -1000,6 +1057,12 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
             throw new ConfigurationException("Unable to find the router_proxy.sh");
         }
 
+        if (Boolean.TRUE.equals(AgentPropertiesFileHandler.getPropertyValue(AgentProperties.ROUTER_CONTROL_CHANNEL_ENABLE))) {
+            Integer idleTimeout = AgentPropertiesFileHandler.getPropertyValue(AgentProperties.ROUTER_CONTROL_CHANNEL_IDLE_TIMEOUT);
+            _routerControlChannel = new SshConnectionPool(Integer.parseInt(DEFAULTDOMRSSHPORT), "root", new File(SSHPRVKEYPATH), ROUTER_SSH_CONNECT_TIMEOUT, ROUTER_SSH_CONNECT_TIMEOUT,
+                    idleTimeout * 1000L);
+        }
+
         _ovsPvlanDhcpHostPath = Script.findScript(networkScriptsDir, "ovs-pvlan-kvm-dhcp-host.sh");
         if (_ovsPvlanDhcpHostPath == null) {
             throw new ConfigurationException("Unable to find the ovs-pvlan-kvm-dhcp-host.sh");
@@ -1997,6 +2060,7 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
                 }
             }
 
+            invalidateVmStatsDevices(vmName);
             conn.domainCreateXML(domainXML, 0);
         } catch (final LibvirtException e) {
             throw e;
@@ -2006,6 +2070,12 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
 
     @Override
     public boolean stop() {
+        if (_vmStatsExecutor != null) {
+            _vmStatsExecutor.shutdownNow();
+        }
+        if (_routerControlChannel != null) {
+            _routerControlChannel.closeAll();
+        }
         try {
             final Connect conn = LibvirtConnection.getConnection();
             conn.close();
@@ -2223,6 +2293,7 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
 
         final Domain vm = getDomain(conn, vmName);
         vm.attachDevice(getVifDriver(nicTO.getType()).plug(nicTO, "Other PV", "", null).toString());
+        invalidateVmStatsDevices(vmName);
     }
 
 
@@ -2234,6 +2305,7 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
         for (final InterfaceDef pluggedNic : pluggedNics) {
             if (pluggedNic.getMacAddress().equalsIgnoreCase(macAddr)) {
                 vm.detachDevice(pluggedNic.toString());
+                invalidateVmStatsDevices(vmName);
                 // We don't know which "traffic type" is associated with
                 // each interface at this point, so inform all vif drivers
                 for (final VifDriver vifDriver : getAllVifDrivers()) {
@@ -3676,6 +3748,7 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
                 s_logger.debug("Detaching device: " + xml);
                 dm.detachDevice(xml);
             }
+            invalidateVmStatsDevices(vmName);
         } catch (final LibvirtException e) {
             if (attach) {
                 s_logger.warn("Failed to attach device to " + vmName + ": " + e.getMessage());
@@ -4007,6 +4080,8 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
         DomainState state = null;
         Domain dm = null;
 
+        invalidateVmStatsDevices(vmName);
+
         // delete the metadata of vm snapshots before stopping
         try {
             dm = conn.domainLookupByName(vmName);
@@ -4395,6 +4470,114 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
         Calendar _timestamp;
     }
 
+    /**
+     * The network and disk devices of a domain that are polled for statistics. They are cached so that the
+     * domain XML does not have to be fetched and parsed on every stats collection, and are invalidated
+     * whenever the VM is started or stopped or a device is plugged or unplugged.
+     */
+    private static class VmStatsDevices {
+        final List<String> _vifs = new ArrayList<String>();
+        final List<String> _disks = new ArrayList<String>();
+        final long _expireAt;
+
+        VmStatsDevices(final long expireAt) {
+            _expireAt = expireAt;
+        }
+    }
+
+    public void invalidateVmStatsDevices(final String vmName) {
+        _vmStatsDevices.remove(vmName);
+    }
+
+    private VmStatsDevices getVmStatsDevices(final Domain dm, final String vmName) throws LibvirtException {
+        VmStatsDevices devices = _vmStatsDevices.get(vmName);
+        final long now = System.currentTimeMillis();
+        if (devices != null && devices._expireAt > now) {
+            return devices;
+        }
+
+        devices = new VmStatsDevices(now + VM_STATS_DEVICES_TTL_MS);
+        final LibvirtDomainXMLParser parser = new LibvirtDomainXMLParser();
+        if (!parser.parseDomainXML(dm.getXMLDesc(0))) {
+            return devices;
+        }
+        for (final InterfaceDef vif : parser.getInterfaces()) {
+            devices._vifs.add(vif.getDevName());
+        }
+        for (final DiskDef disk : parser.getDisks()) {
+            if (disk.getDeviceType() == DeviceType.CDROM || disk.getDeviceType() == DeviceType.FLOPPY) {
+                continue;
+            }
+            devices._disks.add(disk.getDiskLabel());
+        }
+        _vmStatsDevices.put(vmName, devices);
+        return devices;
+    }
+
+    private void getVmDeviceStats(final Domain dm, final VmStatsDevices devices, final VmStats newStat) throws LibvirtException {
+        newStat._rx = 0;
+        newStat._tx = 0;
+        for (final String vif : devices._vifs) {
+            final DomainInterfaceStats ifStats = dm.interfaceStats(vif);
+            newStat._rx += ifStats.rx_bytes;
+            newStat._tx += ifStats.tx_bytes;
+        }
+
+        newStat._ioRead = 0;
+        newStat._ioWrote = 0;
+        newStat._bytesRead = 0;
+        newStat._bytesWrote = 0;
+        for (final String disk : devices._disks) {
+            final DomainBlockStats blockStats = dm.blockStats(disk);
+            newStat._ioRead += blockStats.rd_req;
+            newStat._ioWrote += blockStats.wr_req;
+            newStat._bytesRead += blockStats.rd_bytes;
+            newStat._bytesWrote += blockStats.wr_bytes;
+        }
+    }
+
+    /**
+     * Collects the statistics of the given VMs. When more than one collector thread is configured
+     * the VMs are queried in parallel, each one on its own libvirt connection; VMs whose statistics
+     * can not be retrieved are left out of the returned map.
+     */
+    public Map<String, VmStatsEntry> getVmStats(final Map<String, Connect> vmConnections) {
+        final Map<String, VmStatsEntry> vmStatsNameMap = new HashMap<String, VmStatsEntry>();
+        if (_vmStatsExecutor == null || vmConnections.size() <= 1) {
+            for (final Map.Entry<String, Connect> entry : vmConnections.entrySet()) {
+                try {
+                    final VmStatsEntry statEntry = getVmStat(entry.getValue(), entry.getKey());
+                    if (statEntry != null) {
+                        vmStatsNameMap.put(entry.getKey(), statEntry);
+                    }
+                } catch (final LibvirtException e) {
+                    s_logger.warn("Can't get vm stats: " + e.toString() + ", continue");
+                }
+            }
+            return vmStatsNameMap;
+        }
+
+        final Map<String, Future<VmStatsEntry>> futures = new LinkedHashMap<String, Future<VmStatsEntry>>();
+        for (final Map.Entry<String, Connect> entry : vmConnections.entrySet()) {
+            futures.put(entry.getKey(), _vmStatsExecutor.submit(() -> getVmStat(entry.getValue(), entry.getKey())));
+        }
+        for (final Map.Entry<String, Future<VmStatsEntry>> entry : futures.entrySet()) {
+            try {
+                final VmStatsEntry statEntry = entry.getValue().get();
+                if (statEntry != null) {
+                    vmStatsNameMap.put(entry.getKey(), statEntry);
+                }
+            } catch (final ExecutionException e) {
+                s_logger.warn("Can't get vm stats: " + e.getCause().toString() + ", continue");
+            } catch (final InterruptedException e) {
+                s_logger.warn("Interrupted while collecting vm stats, returning the stats collected so far");
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return vmStatsNameMap;
+    }
+
     public VmStatsEntry getVmStat(final Connect conn, final String vmName) throws LibvirtException {
         Domain dm = null;
         try {
@@ -4431,73 +4614,46 @@ public class LibvirtComputingResource extends ServerResourceBase implements Serv
                 }
             }
 
-            /* get network stats */
-
-            final List<InterfaceDef> vifs = getInterfaces(conn, vmName);
-            long rx = 0;
-            long tx = 0;
-            for (final InterfaceDef vif : vifs) {
-                final DomainInterfaceStats ifStats = dm.interfaceStats(vif.getDevName());
-                rx += ifStats.rx_bytes;
-                tx += ifStats.tx_bytes;
+            /* get network and disk stats */
+            final VmStats newStat = new VmStats();
+            try {
+                getVmDeviceStats(dm, getVmStatsDevices(dm, vmName), newStat);
+            } catch (final LibvirtException e) {
+                // a device may have been unplugged behind our back, retry once with a fresh device list
+                s_logger.debug("Failed to get device stats of " + vmName + " with the cached device list, reloading it: " + e.getMessage());
+                invalidateVmStatsDevices(vmName);
+                getVmDeviceStats(dm, getVmStatsDevices(dm, vmName), newStat);
             }
 
             if (oldStats != null) {
-                final double deltarx = rx - oldStats._rx;
+                final double deltarx = newStat._rx - oldStats._rx;
                 if (deltarx > 0) {
                     stats.setNetworkReadKBs(deltarx / 1024);
                 }
-                final double deltatx = tx - oldStats._tx;
+                final double deltatx = newStat._tx - oldStats._tx;
                 if (deltatx > 0) {
                     stats.setNetworkWriteKBs(deltatx / 1024);
                 }
-            }
-
-            /* get disk stats */
-            final List<DiskDef> disks = getDisks(conn, vmName);
-            long io_rd = 0;
-            long io_wr = 0;
-            long bytes_rd = 0;
-            long bytes_wr = 0;
-            for (final DiskDef disk : disks) {
-                if (disk.getDeviceType() == DeviceType.CDROM || disk.getDeviceType() == DeviceType.FLOPPY) {
-                    continue;
-                }
-                final DomainBlockStats blockStats = dm.blockStats(disk.getDiskLabel());
-                io_rd += blockStats.rd_req;
-                io_wr += blockStats.wr_req;
-                bytes_rd += blockStats.rd_bytes;
-                bytes_wr += blockStats.wr_bytes;
-            }
-
-            if (oldStats != null) {
-                final long deltaiord = io_rd - oldStats._ioRead;
+                final long deltaiord = newStat._ioRead - oldStats._ioRead;
                 if (deltaiord > 0) {
                     stats.setDiskReadIOs(deltaiord);
                 }
-                final long deltaiowr = io_wr - oldStats._ioWrote;
+                final long deltaiowr = newStat._ioWrote - oldStats._ioWrote;
                 if (deltaiowr > 0) {
                     stats.setDiskWriteIOs(deltaiowr);
                 }
-                final double deltabytesrd = bytes_rd - oldStats._bytesRead;
+                final double deltabytesrd = newStat._bytesRead - oldStats._bytesRead;
                 if (deltabytesrd > 0) {
                     stats.setDiskReadKBs(deltabytesrd / 1024);
                 }
-                final double deltabyteswr = bytes_wr - oldStats._bytesWrote;
+                final double deltabyteswr = newStat._bytesWrote - oldStats._bytesWrote;
                 if (deltabyteswr > 0) {
                     stats.setDiskWriteKBs(deltabyteswr / 1024);
                 }
             }
 
             /* save to Hashmap */
-            final VmStats newStat = new VmStats();
             newStat._usedTime = info.cpuTime;
-            newStat._rx = rx;
-            newStat._tx = tx;
-            newStat._ioRead = io_rd;
-            newStat._ioWrote = io_wr;
-            newStat._bytesRead = bytes_rd;
-            newStat._bytesWrote = bytes_wr;
             newStat._timestamp = now;
             _vmStats.put(vmName, newStat);
             return stats;
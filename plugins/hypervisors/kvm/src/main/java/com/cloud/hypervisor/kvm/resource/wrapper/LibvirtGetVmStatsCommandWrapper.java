@@ -20,7 +20,9 @@
 package com.cloud.hypervisor.kvm.resource.wrapper;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 import org.libvirt.Connect;
@@ -43,27 +45,18 @@ public final class LibvirtGetVmStatsCommandWrapper extends CommandWrapper<GetVmS
     public Answer execute(final GetVmStatsCommand command, final LibvirtComputingResource libvirtComputingResource) {
         final List<String> vmNames = command.getVmNames();
         try {
-            final HashMap<String, VmStatsEntry> vmStatsNameMap = new HashMap<String, VmStatsEntry>();
-            for (final String vmName : vmNames) {
-
-                final LibvirtUtilitiesHelper libvirtUtilitiesHelper = libvirtComputingResource.getLibvirtUtilitiesHelper();
-
-                final Connect conn = libvirtUtilitiesHelper.getConnectionByVmName(vmName);
-                try {
-                    final VmStatsEntry statEntry = libvirtComputingResource.getVmStat(conn, vmName);
-                    if (statEntry == null) {
-                        continue;
-                    }
+            final LibvirtUtilitiesHelper libvirtUtilitiesHelper = libvirtComputingResource.getLibvirtUtilitiesHelper();
 
-                    vmStatsNameMap.put(vmName, statEntry);
-                } catch (LibvirtException e) {
-                    s_logger.warn("Can't get vm stats: " + e.toString() + ", continue");
-                }
+            final Map<String, Connect> vmConnections = new LinkedHashMap<String, Connect>();
+            for (final String vmName : vmNames) {
+                vmConnections.put(vmName, libvirtUtilitiesHelper.getConnectionByVmName(vmName));
             }
+
+            final HashMap<String, VmStatsEntry> vmStatsNameMap = new HashMap<String, VmStatsEntry>(libvirtComputingResource.getVmStats(vmConnections));
             return new GetVmStatsAnswer(command, vmStatsNameMap);
         } catch (final LibvirtException e) {
             s_logger.debug("Can't get vm stats: " + e.toString());
             return new GetVmStatsAnswer(command, null);
         }
     }
-}
\ No newline at end of file
+}
@@ -40,6 +40,7 @@ public final class LibvirtRebootCommandWrapper extends CommandWrapper<RebootComm
     public Answer execute(final RebootCommand command, final LibvirtComputingResource libvirtComputingResource) {
         final LibvirtUtilitiesHelper libvirtUtilitiesHelper = libvirtComputingResource.getLibvirtUtilitiesHelper();
         final VirtualMachineTO vmSpec = command.getVirtualMachine();
+        libvirtComputingResource.resetRouterAppliedConfigs(command.getVmName());
 
         try {
             final Connect conn = libvirtUtilitiesHelper.getConnectionByVmName(command.getVmName());
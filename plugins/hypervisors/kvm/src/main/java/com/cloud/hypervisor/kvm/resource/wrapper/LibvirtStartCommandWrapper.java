@@ -56,6 +56,7 @@ public final class LibvirtStartCommandWrapper extends CommandWrapper<StartComman
         final VirtualMachineTO vmSpec = command.getVirtualMachine();
         vmSpec.setVncAddr(command.getHostIp());
         final String vmName = vmSpec.getName();
+        libvirtComputingResource.resetRouterAppliedConfigs(vmName);
         LibvirtVMDef vm = null;
 
         DomainState  state = DomainState.VIR_DOMAIN_SHUTOFF;
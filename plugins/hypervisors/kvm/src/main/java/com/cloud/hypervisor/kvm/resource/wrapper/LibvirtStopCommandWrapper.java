@@ -58,6 +58,7 @@ public final class LibvirtStopCommandWrapper extends CommandWrapper<StopCommand,
         final String vmName = command.getVmName();
         final Map<String, Boolean> vlanToPersistenceMap = command.getVlanToPersistenceMap();
         final LibvirtUtilitiesHelper libvirtUtilitiesHelper = libvirtComputingResource.getLibvirtUtilitiesHelper();
+        libvirtComputingResource.resetRouterAppliedConfigs(vmName);
 
         if (command.checkBeforeCleanup()) {
             try {
@@ -1211,6 +1211,7 @@ public class KVMStorageProcessor implements StorageProcessor {
             }
             throw e;
         } finally {
+            resource.invalidateVmStatsDevices(vmName);
             if (dm != null) {
                 try {
                     dm.free();
@@ -0,0 +1,66 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.hypervisor.kvm.resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class KVMHAMonitorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writeHeartBeatFileTestWritesTheTimestampInSeconds() throws IOException {
+        File heartBeatFile = new File(folder.getRoot(), "hb-10.1.1.1");
+        Files.write(heartBeatFile.toPath(), "a previous and longer heartbeat\n".getBytes(StandardCharsets.US_ASCII));
+
+        long before = System.currentTimeMillis() / 1000;
+        Assert.assertNull(KVMHAMonitor.writeHeartBeatFile(heartBeatFile));
+        long after = System.currentTimeMillis() / 1000;
+
+        String content = new String(Files.readAllBytes(heartBeatFile.toPath()), StandardCharsets.US_ASCII);
+        Assert.assertTrue(content.endsWith("\n"));
+        long timestamp = Long.parseLong(content.trim());
+        Assert.assertTrue(timestamp >= before && timestamp <= after);
+    }
+
+    @Test(expected = IOException.class)
+    public void writeHeartBeatFileTestFailsWhenTheFolderIsMissing() throws IOException {
+        KVMHAMonitor.writeHeartBeatFile(new File(folder.getRoot(), "KVMHA/hb-10.1.1.1"));
+    }
+
+    @Test
+    public void isNfsMountedTestMatchesOnlyNfsMountsOfTheMountPoint() {
+        List<String> mounts = Arrays.asList("/dev/sda1 / ext4 rw,relatime 0 0",
+                "10.2.2.2:/export/primary /mnt/5f4a7e0c-9b0e-3a54-bd5c-64f1a4b2f0d3 nfs4 rw,sync,soft 0 0",
+                "/dev/sdb1 /mnt/0b6e3f7a-5c52-3a36-9b3f-1b0b1a7d5c11 xfs rw 0 0");
+
+        Assert.assertTrue(KVMHAMonitor.isNfsMounted(mounts, "/mnt/5f4a7e0c-9b0e-3a54-bd5c-64f1a4b2f0d3"));
+        Assert.assertFalse(KVMHAMonitor.isNfsMounted(mounts, "/mnt/0b6e3f7a-5c52-3a36-9b3f-1b0b1a7d5c11"));
+        Assert.assertFalse(KVMHAMonitor.isNfsMounted(mounts, "/mnt/5f4a7e0c"));
+    }
+}
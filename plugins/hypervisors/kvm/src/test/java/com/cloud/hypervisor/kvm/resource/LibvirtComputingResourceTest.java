@@ -49,6 +49,7 @@ import java.util.Random;
 import java.util.Scanner;
 import java.util.UUID;
 import java.util.Vector;
+import java.util.concurrent.Executors;
 
 import javax.naming.ConfigurationException;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -153,7 +154,7 @@ import com.cloud.agent.api.UnPlugNicCommand;
 import com.cloud.agent.api.UnsupportedAnswer;
 import com.cloud.agent.api.UpdateHostPasswordCommand;
 import com.cloud.agent.api.UpgradeSnapshotCommand;
-//import com.cloud.agent.api.VmStatsEntry;
+import com.cloud.agent.api.VmStatsEntry;
 import com.cloud.agent.api.check.CheckSshCommand;
 import com.cloud.agent.api.proxy.CheckConsoleProxyLoadCommand;
 import com.cloud.agent.api.proxy.WatchConsoleProxyLoadCommand;
@@ -6190,4 +6191,29 @@ public class LibvirtComputingResourceTest {
         Mockito.verify(loggerMock).debug("Skipping the memory balloon stats period setting for the VM (Libvirt Domain) with ID [1] and name [fake-VM-name] because this"
                 + " VM has no memory balloon.");
     }
+
+    @Test
+    public void getVmStatsTestCollectsTheVmsInParallelAndSkipsTheMissingOnes() throws LibvirtException {
+        libvirtComputingResourceSpy._vmStatsExecutor = Executors.newFixedThreadPool(2);
+        try {
+            VmStatsEntry stats1 = new VmStatsEntry();
+            VmStatsEntry stats3 = new VmStatsEntry();
+            Mockito.doReturn(stats1).when(libvirtComputingResourceSpy).getVmStat(connMock, "vm-1");
+            Mockito.doReturn(null).when(libvirtComputingResourceSpy).getVmStat(connMock, "vm-2");
+            Mockito.doReturn(stats3).when(libvirtComputingResourceSpy).getVmStat(connMock, "vm-3");
+
+            Map<String, Connect> vmConnections = new HashMap<>();
+            vmConnections.put("vm-1", connMock);
+            vmConnections.put("vm-2", connMock);
+            vmConnections.put("vm-3", connMock);
+            Map<String, VmStatsEntry> result = libvirtComputingResourceSpy.getVmStats(vmConnections);
+
+            assertEquals(2, result.size());
+            Assert.assertSame(stats1, result.get("vm-1"));
+            Assert.assertSame(stats3, result.get("vm-3"));
+        } finally {
+            libvirtComputingResourceSpy._vmStatsExecutor.shutdownNow();
+            libvirtComputingResourceSpy._vmStatsExecutor = null;
+        }
+    }
 }
@@ -137,6 +137,7 @@ import com.cloud.vm.VMInstanceVO;
 import com.cloud.vm.VirtualMachine;
 import com.cloud.vm.VirtualMachine.Type;
 import com.cloud.vm.VirtualMachineManager;
+import com.cloud.vm.VirtualMachinePowerStateSync;
 import com.cloud.vm.VirtualMachineProfile;
 import com.cloud.vm.dao.UserVmDao;
 import com.google.gson.Gson;
@@ -177,6 +178,7 @@ public class VMwareGuru extends HypervisorGuruBase implements HypervisorGuru, Co
     @Inject DiskOfferingDao diskOfferingDao;
     @Inject PhysicalNetworkDao physicalNetworkDao;
     @Inject StoragePoolHostDao storagePoolHostDao;
+    @Inject VirtualMachinePowerStateSync powerStateSync;
 
     protected VMwareGuru() {
         super();
@@ -665,6 +667,7 @@ public class VMwareGuru extends HypervisorGuruBase implements HypervisorGuru, Co
             vm.setState(VirtualMachine.State.Stopped);
             vm.setPowerState(VirtualMachine.PowerState.PowerOff);
             virtualMachineDao.update(vm.getId(), vm);
+            powerStateSync.resetVmSyncState(vm.getId());
             if (vm.getRemoved() != null) {
                 virtualMachineDao.unremove(vm.getId());
                 UsageEventUtils.publishUsageEvent(EventTypes.EVENT_VM_CREATE, accountId, vm.getDataCenterId(), vm.getId(), vm.getHostName(), vm.getServiceOfferingId(), vm.getTemplateId(),
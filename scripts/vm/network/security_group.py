@@ -27,6 +27,7 @@ import libvirt
 import fcntl
 import time
 import ipaddress
+import hashlib
 
 logpath = "/var/run/cloud/"        # FIXME: Logs should reside in /var/log/cloud
 lock_file = "/var/lock/cloudstack_security_group.lock"
@@ -56,6 +57,15 @@ def execute(cmd):
         raise
 
 
+def execute_restore(cmd, data):
+    logging.debug("%s <<< %s", cmd, data)
+    try:
+        return check_output(cmd, input=data.encode(), shell=True).decode()
+    except CalledProcessError as e:
+        logging.exception('Command exited non-zero: %s', cmd)
+        raise
+
+
 def can_bridge_firewall(privnic):
     try:
         execute("which iptables")
@@ -228,6 +238,12 @@ def destroy_network_rules_for_vm(vm_name, vif=None):
     except:
         logging.debug("Ignoring failure to delete ipset " + vmchain)
 
+    for ipset in rule_ipset_names_for_vm(vm_name):
+        try:
+            execute('ipset destroy ' + ipset)
+        except:
+            logging.debug("Ignoring failure to delete ipset " + ipset)
+
     if vif:
         try:
             dnats = execute("""iptables -t nat -S | awk '/%s/ { sub(/-A/, "-D", $1) ; print }'""" % vif ).split("\n")
@@ -1095,6 +1111,111 @@ def parse_network_rules(rules):
     return ret
 
 
+#ipset names max len 31 char, appended with the rule index and family
+def rule_ipset_name(vm_name, index, ipv6=False, tmp=False):
+    name = vm_name[0:22] + ("-t" if tmp else "-r") + str(index)
+    if ipv6:
+        name += "-6"
+    return name
+
+
+def rule_ipset_names_for_vm(vm_name):
+    prefix = vm_name[0:22] + "-r"
+    try:
+        return [name for name in execute("ipset list -n").split("\n") if name.startswith(prefix)]
+    except:
+        return []
+
+
+def network_rules_ruleset(vm_name, rules):
+    """ Builds the iptables and ip6tables rulesets of the vm, in iptables-restore format, and the
+        content of the ipsets they match. The allowed cidrs of every rule go into an ipset of
+        their own, so that a change of the members of a security group only changes the ipsets
+        and not the rulesets """
+    vmchain = iptables_chain_name(vm_name)
+    egress_vmchain = egress_chain_name(vm_name)
+
+    ruleset = {4: [], 6: []}
+    ipsets = {}
+    egressrule = {4: 0, 6: 0}
+
+    for index, rule in enumerate(parse_network_rules(rules)):
+        start = rule['start']
+        end = rule['end']
+        protocol = rule['protocol']
+
+        if rule['ruletype'] == 'E':
+            chain = egress_vmchain
+            direction = "dst"
+            address = "-d"
+            action = "RETURN"
+        else:
+            chain = vmchain
+            direction = "src"
+            address = "-s"
+            action = "ACCEPT"
+
+        for family in [4, 6]:
+            cidrs = rule['ipv4'] if family == 4 else rule['ipv6']
+            if not cidrs:
+                continue
+            if rule['ruletype'] == 'E':
+                egressrule[family] += 1
+
+            if protocol == 'all':
+                match = "-m state --state NEW"
+            elif protocol == 'icmp':
+                icmp_range = 'any' if start == -1 else str(start) + '/' + str(end)
+                if family == 4:
+                    match = "-p icmp --icmp-type " + icmp_range
+                elif icmp_range == 'any':
+                    # ip6tables does not allow '--icmpv6-type any', allowing all ICMPv6 is done by not allowing a specific type
+                    match = "-p icmpv6"
+                else:
+                    match = "-p icmpv6 --icmpv6-type " + icmp_range
+            elif protocol in ['tcp', 'udp']:
+                dport = "" if start == 0 and end == 0 else " --dport " + str(start) + ":" + str(end)
+                match = "-p " + protocol + " -m " + protocol + dport + " -m state --state NEW"
+            else:
+                match = "-p " + protocol
+
+            # ipset hash:net does not take zero length prefixes
+            any_cidrs = [cidr for cidr in cidrs if ipaddress.ip_network(cidr, False).prefixlen == 0]
+            if any_cidrs:
+                ruleset[family].append("-A %s %s %s %s -j %s" % (chain, match, address, any_cidrs[0], action))
+                continue
+
+            ipset = rule_ipset_name(vm_name, index, family == 6)
+            ipsets[ipset] = (family, cidrs, rule_ipset_name(vm_name, index, family == 6, True))
+            ruleset[family].append("-A %s %s -m set --match-set %s %s -j %s" % (chain, match, ipset, direction, action))
+
+    for family in [4, 6]:
+        ruleset[family].append("-A %s -j %s" % (egress_vmchain, "DROP" if egressrule[family] else "RETURN"))
+
+    # the last rule carries a digest of the ruleset, to know whether the chains are still the ones built from it
+    digest = hashlib.sha1(("\n".join(ruleset[4] + ruleset[6])).encode()).hexdigest()[0:16]
+    for family in [4, 6]:
+        ruleset[family].append("-A %s -m comment --comment cloudstack-sg-%s -j DROP" % (vmchain, digest))
+
+    return ruleset, ipsets, digest
+
+
+def apply_rule_ipsets(ipsets):
+    """ Refills the ipsets in a single ipset restore, swapping in each new set atomically """
+    lines = []
+    for ipset in sorted(ipsets.keys()):
+        family, cidrs, tmp = ipsets[ipset]
+        inet = "inet" if family == 4 else "inet6"
+        lines.append("create %s hash:net family %s -exist" % (ipset, inet))
+        lines.append("create %s hash:net family %s -exist" % (tmp, inet))
+        lines.append("flush %s" % tmp)
+        lines.extend("add %s %s -exist" % (tmp, cidr) for cidr in cidrs)
+        lines.append("swap %s %s" % (tmp, ipset))
+        lines.append("destroy %s" % tmp)
+    if lines:
+        execute_restore("ipset restore", "\n".join(lines) + "\n")
+
+
 def add_network_rules(vm_name, vm_id, vm_ip, vm_ip6, signature, seqno, vmMac, rules, vif, brname, sec_ips):
     try:
         vmName = vm_name
@@ -1106,100 +1227,35 @@ def add_network_rules(vm_name, vm_id, vm_ip, vm_ip6, signature, seqno, vmMac, ru
             logging.debug("Rules already programmed for vm " + vm_name)
             return True
 
-        if rules == "" or rules == None:
-            lines = []
-        else:
-            lines = rules.split(';')[:-1]
-
         logging.debug("programming network rules for IP: " + vm_ip + " vmname=%s", vm_name)
 
-        egress_chain_name(vm_name)
         vmchain = iptables_chain_name(vm_name)
         egress_vmchain = egress_chain_name(vm_name)
 
+        ruleset, ipsets, digest = network_rules_ruleset(vm_name, rules)
+
         try:
-            for chain in [vmchain, egress_vmchain]:
-                execute('iptables -F ' + chain)
-                execute('ip6tables -F ' + chain)
+            current = execute('iptables -S ' + vmchain) + execute('ip6tables -S ' + vmchain)
         except:
-            logging.debug("Error flushing iptables rules for " + vm_name + ". Presuming firewall rules deleted, re-initializing." )
+            logging.debug("Error listing iptables rules for " + vm_name + ". Presuming firewall rules deleted, re-initializing." )
             default_network_rules(vm_name, vm_id, vm_ip, vm_ip6, vmMac, vif, brname, sec_ips, True)
+            current = ""
 
-        egressrule_v4 = 0
-        egressrule_v6 = 0
+        apply_rule_ipsets(ipsets)
 
-        for rule in parse_network_rules(rules):
-            start = rule['start']
-            end = rule['end']
-            protocol = rule['protocol']
-
-            if rule['ruletype'] == 'E':
-                vmchain = egress_vmchain
-                direction = "-d"
-                action = "RETURN"
-                if rule['ipv4']:
-                    egressrule_v4 =+ 1
-
-                if rule['ipv6']:
-                    egressrule_v6 +=1
-
-            else:
-                vmchain = vm_name
-                action = "ACCEPT"
-                direction = "-s"
-
-            if start == 0 and end == 0:
-                dport = ""
-            else:
-                dport = " --dport " + str(start) + ":" + str(end)
-
-            if protocol != 'all' and protocol != 'icmp' and protocol != 'tcp' and protocol != 'udp':
-                protocol_all = " -p " + protocol
-                protocol_state = " "
-            else:
-                protocol_all = " -p " + protocol + " -m " + protocol
-                protocol_state = " -m state --state NEW "
-
-            if 'icmp' == protocol:
-                range = str(start) + '/' + str(end)
-                if start == -1:
-                    range = 'any'
-
-            for ip in rule['ipv4']:
-                if protocol == 'all':
-                    execute('iptables -I ' + vmchain + ' -m state --state NEW ' + direction + ' ' + ip + ' -j ' + action)
-                elif protocol == 'icmp':
-                    execute("iptables -I " + vmchain + " -p icmp --icmp-type " + range + " " + direction + " " + ip + " -j " + action)
-                else:
-                    execute("iptables -I " + vmchain + protocol_all + dport + protocol_state + direction + " " + ip + " -j "+ action)
-
-            for ip in rule['ipv6']:
-                if protocol == 'all':
-                    execute('ip6tables -I ' + vmchain + ' -m state --state NEW ' + direction + ' ' + ip + ' -j ' + action)
-                elif 'icmp' != protocol:
-                    execute("ip6tables -I " + vmchain + protocol_all + dport + protocol_state + direction + " " + ip + " -j "+ action)
-                else:
-                    # ip6tables does not allow '--icmpv6-type any', allowing all ICMPv6 is done by not allowing a specific type
-                    if range == 'any':
-                        execute('ip6tables -I ' + vmchain + ' -p icmpv6 ' + direction + ' ' + ip + ' -j ' + action)
-                    else:
-                        execute('ip6tables -I ' + vmchain + ' -p icmpv6 --icmpv6-type ' + range + ' ' + direction + ' ' + ip + ' -j ' + action)
-
-        egress_vmchain = egress_chain_name(vm_name)
-        if egressrule_v4 == 0 :
-            execute('iptables -A ' + egress_vmchain + ' -j RETURN')
-        else:
-            execute('iptables -A ' + egress_vmchain + ' -j DROP')
-
-        if egressrule_v6 == 0 :
-            execute('ip6tables -A ' + egress_vmchain + ' -j RETURN')
+        if current.count("cloudstack-sg-" + digest) == 2:
+            logging.debug("Only the members of the rules changed for vm " + vm_name + ", updated the ipsets")
         else:
-            execute('ip6tables -A ' + egress_vmchain + ' -j DROP')
-
-        vmchain = iptables_chain_name(vm_name)
-
-        execute('iptables -A ' + vmchain + ' -j DROP')
-        execute('ip6tables -A ' + vmchain + ' -j DROP')
+            for family, restore in [(4, "iptables-restore --noflush"), (6, "ip6tables-restore --noflush")]:
+                lines = ["*filter", ":%s - [0:0]" % vmchain, ":%s - [0:0]" % egress_vmchain] + ruleset[family] + ["COMMIT"]
+                execute_restore(restore, "\n".join(lines) + "\n")
+
+            for ipset in rule_ipset_names_for_vm(vm_name):
+                if ipset not in ipsets:
+                    try:
+                        execute("ipset destroy " + ipset)
+                    except:
+                        logging.debug("Ignoring failure to delete ipset " + ipset)
 
         if not write_rule_log_for_vm(vmName, vm_id, vm_ip, domId, signature, seqno):
             return False
@@ -16,6 +16,10 @@
 // under the License.
 package com.cloud.api;
 
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.apache.cloudstack.acl.RoleType;
 import org.apache.cloudstack.api.ResponseObject;
 import org.apache.cloudstack.context.CallContext;
@@ -24,6 +28,7 @@ import com.cloud.serializer.Param;
 import com.cloud.user.Account;
 import com.google.gson.ExclusionStrategy;
 import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
 /**
@@ -33,6 +38,14 @@ public class ApiResponseGsonHelper {
     private static final GsonBuilder s_gBuilder;
     private static final GsonBuilder s_gLogBuilder;
 
+    /*
+     * Gson builds the type adapter of a response class once per instance and evaluates the exclusion strategies while
+     * doing so. As the strategies only depend on the type of the calling account, one instance per account type can
+     * be shared by all the requests, instead of creating (and compiling every response class again) on each request.
+     */
+    private static final Map<Account.Type, Gson> s_responseGsons = new ConcurrentHashMap<>();
+    private static final Map<Account.Type, Gson> s_logGsons = new ConcurrentHashMap<>();
+
     static {
         s_gBuilder = new GsonBuilder().setDateFormat("yyyy-MM-dd'T'HH:mm:ssZ");
         s_gBuilder.setVersion(1.3);
@@ -55,6 +68,43 @@ public class ApiResponseGsonHelper {
         return s_gLogBuilder;
     }
 
+    /**
+     * Returns the Gson used to serialize API responses for the calling account, skipping transient fields.
+     */
+    public static Gson getResponseGson() {
+        return getGson(s_responseGsons, s_gBuilder);
+    }
+
+    /**
+     * Returns the Gson used to serialize API responses for the logs of the calling account, skipping transient
+     * and sensitive fields.
+     */
+    public static Gson getLogGson() {
+        return getGson(s_logGsons, s_gLogBuilder);
+    }
+
+    private static Gson getGson(Map<Account.Type, Gson> gsons, GsonBuilder builder) {
+        Account.Type callerType = getCallerType();
+        if (callerType == null) {
+            return createGson(builder);
+        }
+        return gsons.computeIfAbsent(callerType, type -> createGson(builder));
+    }
+
+    private static Gson createGson(GsonBuilder builder) {
+        synchronized (builder) {
+            return builder.excludeFieldsWithModifiers(Modifier.TRANSIENT).create();
+        }
+    }
+
+    private static Account.Type getCallerType() {
+        CallContext context = CallContext.current();
+        if (context == null || context.getCallingAccount() == null) {
+            return null;
+        }
+        return context.getCallingAccount().getType();
+    }
+
     private static class ApiResponseExclusionStrategy implements ExclusionStrategy {
         public boolean shouldSkipClass(Class<?> arg0) {
             return false;
@@ -48,8 +48,8 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ApiResponseSerializer {
     private static final Logger s_logger = Logger.getLogger(ApiResponseSerializer.class.getName());
@@ -72,21 +72,68 @@ public class ApiResponseSerializer {
         }
     }
 
-    private static final Pattern s_unicodeEscapePattern = Pattern.compile("\\\\u([0-9A-Fa-f]{4})");
+    /**
+     * The serializable fields of the response classes, looked up once per class.
+     */
+    private static final Map<Class<?>, ResponseField[]> s_responseFields = new ConcurrentHashMap<>();
+
+    private static class ResponseField {
+        final Field field;
+        final SerializedName serializedName;
+        final Param param;
+
+        ResponseField(Field field, SerializedName serializedName, Param param) {
+            this.field = field;
+            this.serializedName = serializedName;
+            this.param = param;
+        }
+    }
 
     public static String unescape(String escaped) {
-        String str = escaped;
-        Matcher matcher = s_unicodeEscapePattern.matcher(str);
-        while (matcher.find()) {
-            str = str.replaceAll("\\" + matcher.group(0), Character.toString((char)Integer.parseInt(matcher.group(1), 16)));
+        if (escaped.indexOf("\\u") < 0) {
+            return escaped;
+        }
+        return appendUnescaped(new StringBuilder(escaped.length()), escaped).toString();
+    }
+
+    /**
+     * Appends the string to the builder, replacing the unicode escapes written by Gson by the characters they stand for.
+     */
+    private static StringBuilder appendUnescaped(StringBuilder sb, String escaped) {
+        int start = 0;
+        int index = escaped.indexOf("\\u");
+        while (index >= 0) {
+            int code = parseUnicodeEscape(escaped, index + 2);
+            if (code < 0) {
+                index = escaped.indexOf("\\u", index + 1);
+                continue;
+            }
+            sb.append(escaped, start, index).append((char)code);
+            start = index + 6;
+            index = escaped.indexOf("\\u", start);
+        }
+        return sb.append(escaped, start, escaped.length());
+    }
+
+    private static int parseUnicodeEscape(String str, int offset) {
+        if (offset + 4 > str.length()) {
+            return -1;
+        }
+        int code = 0;
+        for (int i = offset; i < offset + 4; i++) {
+            int digit = Character.digit(str.charAt(i), 16);
+            if (digit < 0) {
+                return -1;
+            }
+            code = (code << 4) | digit;
         }
-        return str;
+        return code;
     }
 
     public static String toJSONSerializedString(ResponseObject result, StringBuilder log) {
         if (result != null && log != null) {
-            Gson responseBuilder = ApiResponseGsonHelper.getBuilder().excludeFieldsWithModifiers(Modifier.TRANSIENT).create();
-            Gson logBuilder = ApiResponseGsonHelper.getLogBuilder().excludeFieldsWithModifiers(Modifier.TRANSIENT).create();
+            Gson responseBuilder = ApiResponseGsonHelper.getResponseGson();
+            Gson logBuilder = ApiResponseGsonHelper.getLogGson();
 
             StringBuilder sb = new StringBuilder();
 
@@ -102,23 +149,16 @@ public class ApiResponseSerializer {
                 }
 
                 if ((responses != null) && !responses.isEmpty()) {
-                    String jsonStr = responseBuilder.toJson(responses.get(0));
-                    jsonStr = unescape(jsonStr);
-                    String logStr = logBuilder.toJson(responses.get(0));
-                    logStr = unescape(logStr);
-
                     if (nonZeroCount) {
-                        sb.append(",\"").append(responses.get(0).getObjectName()).append("\":[").append(jsonStr);
-                        log.append(",\"").append(responses.get(0).getObjectName()).append("\":[").append(logStr);
+                        sb.append(",\"").append(responses.get(0).getObjectName()).append("\":[");
+                        log.append(",\"").append(responses.get(0).getObjectName()).append("\":[");
+                        appendUnescaped(sb, responseBuilder.toJson(responses.get(0)));
+                        appendUnescaped(log, logBuilder.toJson(responses.get(0)));
                     }
 
-                    for (int i = 1; i < ((ListResponse)result).getResponses().size(); i++) {
-                        jsonStr = responseBuilder.toJson(responses.get(i));
-                        jsonStr = unescape(jsonStr);
-                        logStr = logBuilder.toJson(responses.get(i));
-                        logStr = unescape(logStr);
-                        sb.append(",").append(jsonStr);
-                        log.append(",").append(logStr);
+                    for (int i = 1; i < responses.size(); i++) {
+                        appendUnescaped(sb.append(","), responseBuilder.toJson(responses.get(i)));
+                        appendUnescaped(log.append(","), logBuilder.toJson(responses.get(i)));
                     }
                     sb.append("]}");
                     log.append("]}");
@@ -223,24 +263,37 @@ public class ApiResponseSerializer {
         return fields.toArray(new Field[] {});
     }
 
+    private static ResponseField[] getResponseFields(Class<?> clz) {
+        return s_responseFields.computeIfAbsent(clz, c -> {
+            List<ResponseField> responseFields = new ArrayList<>();
+            for (Field field : getFlattenFields(c)) {
+                if ((field.getModifiers() & Modifier.TRANSIENT) != 0) {
+                    continue; // skip transient fields
+                }
+
+                SerializedName serializedName = field.getAnnotation(SerializedName.class);
+                if (serializedName == null) {
+                    continue; // skip fields w/o serialized name
+                }
+
+                field.setAccessible(true);
+                responseFields.add(new ResponseField(field, serializedName, field.getAnnotation(Param.class)));
+            }
+            return responseFields.toArray(new ResponseField[0]);
+        });
+    }
+
     private static void serializeResponseObjFieldsXML(StringBuilder sb, StringBuilder log, ResponseObject obj) {
         boolean isAsync = false;
         if (obj instanceof AsyncJobResponse)
             isAsync = true;
 
-        Field[] fields = getFlattenFields(obj.getClass());
-        for (Field field : fields) {
-            if ((field.getModifiers() & Modifier.TRANSIENT) != 0) {
-                continue; // skip transient fields
-            }
-
-            SerializedName serializedName = field.getAnnotation(SerializedName.class);
-            if (serializedName == null) {
-                continue; // skip fields w/o serialized name
-            }
+        for (ResponseField responseField : getResponseFields(obj.getClass())) {
+            Field field = responseField.field;
+            SerializedName serializedName = responseField.serializedName;
 
             boolean logField = true;
-            Param param = field.getAnnotation(Param.class);
+            Param param = responseField.param;
             if (param != null) {
                 RoleType[] allowedRoles = param.authorized();
                 if (allowedRoles.length > 0) {
@@ -262,7 +315,6 @@ public class ApiResponseSerializer {
                 }
             }
 
-            field.setAccessible(true);
             Object fieldValue = null;
             try {
                 fieldValue = field.get(obj);
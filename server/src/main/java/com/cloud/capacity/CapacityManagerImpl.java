@@ -19,6 +19,7 @@ package com.cloud.capacity;
 import static com.cloud.utils.NumbersUtil.toHumanReadableSize;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -86,6 +87,7 @@ import com.cloud.utils.db.TransactionStatus;
 import com.cloud.utils.exception.CloudRuntimeException;
 import com.cloud.utils.fsm.StateListener;
 import com.cloud.utils.fsm.StateMachine2;
+import com.cloud.utils.mgmt.JmxUtil;
 import com.cloud.vm.UserVmDetailVO;
 import com.cloud.vm.UserVmVO;
 import com.cloud.vm.VMInstanceVO;
@@ -142,6 +144,8 @@ public class CapacityManagerImpl extends ManagerBase implements CapacityManager,
     @Inject
     MessageBus _messageBus;
 
+    protected final PlannedCapacityLedger _plannedCapacity = new PlannedCapacityLedger();
+
     @Override
     public boolean configure(String name, Map<String, Object> params) throws ConfigurationException {
         _vmCapacityReleaseInterval = NumbersUtil.parseInt(_configDao.getValue(Config.CapacitySkipcountingHours.key()), 3600);
@@ -157,6 +161,11 @@ public class CapacityManagerImpl extends ManagerBase implements CapacityManager,
     public boolean start() {
         _resourceMgr.registerResourceEvent(ResourceListener.EVENT_PREPARE_MAINTENANCE_AFTER, this);
         _resourceMgr.registerResourceEvent(ResourceListener.EVENT_CANCEL_MAINTENANCE_AFTER, this);
+        try {
+            JmxUtil.registerMBean("CapacityManager", "PlannedCapacity", _plannedCapacity);
+        } catch (Exception e) {
+            s_logger.warn("Unable to register planned capacity stats for JMX", e);
+        }
         return true;
     }
 
@@ -382,11 +391,11 @@ public class CapacityManagerImpl extends ManagerBase implements CapacityManager,
 
                     if (hostHasCpuCapability) {
                         // first check from reserved capacity
-                        hostHasCapacity = checkIfHostHasCapacity(host.getId(), cpu, ram, true, cpuOvercommitRatio, memoryOvercommitRatio, true);
+                        hostHasCapacity = checkIfHostHasCapacity(host.getId(), cpu, ram, true, cpuOvercommitRatio, memoryOvercommitRatio, true, vmId);
 
                         // if not reserved, check the free capacity
                         if (!hostHasCapacity)
-                            hostHasCapacity = checkIfHostHasCapacity(host.getId(), cpu, ram, false, cpuOvercommitRatio, memoryOvercommitRatio, true);
+                            hostHasCapacity = checkIfHostHasCapacity(host.getId(), cpu, ram, false, cpuOvercommitRatio, memoryOvercommitRatio, true, vmId);
                     }
 
                     if (!hostHasCapacity || !hostHasCpuCapability) {
@@ -432,6 +441,15 @@ public class CapacityManagerImpl extends ManagerBase implements CapacityManager,
     @Override
     public boolean checkIfHostHasCapacity(long hostId, Integer cpu, long ram, boolean checkFromReservedCapacity, float cpuOvercommitRatio, float memoryOvercommitRatio,
         boolean considerReservedCapacity) {
+        return checkIfHostHasCapacity(hostId, cpu, ram, checkFromReservedCapacity, cpuOvercommitRatio, memoryOvercommitRatio, considerReservedCapacity, null);
+    }
+
+    /**
+     * @param allocatingVmId the VM whose capacity is being allocated, if any. Its own planned reservation on the host
+     * is not counted, as it is released only once the allocation is done.
+     */
+    protected boolean checkIfHostHasCapacity(long hostId, Integer cpu, long ram, boolean checkFromReservedCapacity, float cpuOvercommitRatio, float memoryOvercommitRatio,
+        boolean considerReservedCapacity, Long allocatingVmId) {
         boolean hasCapacity = false;
 
         if (s_logger.isDebugEnabled()) {
@@ -469,6 +487,13 @@ public class CapacityManagerImpl extends ManagerBase implements CapacityManager,
             s_logger.debug("Hosts's actual total CPU: " + actualTotalCpu + " and CPU after applying overprovisioning: " + totalCpu);
         }
 
+        // the capacity of the VMs planned on the host, but not allocated yet
+        long[] pending = _plannedCapacity.getPending(hostId, allocatingVmId);
+        if (pending != null) {
+            usedCpu += pending[0];
+            usedMem += pending[1];
+        }
+
         String failureReason = "";
         if (checkFromReservedCapacity) {
             long freeCpu = reservedCpu;
@@ -976,6 +1001,7 @@ public class CapacityManagerImpl extends ManagerBase implements CapacityManager,
           fromLastHost = true;
         }
         allocateVmCapacity(vm, fromLastHost);
+        _plannedCapacity.release(vm.getId());
       }
 
       if (newState == State.Stopped) {
@@ -1122,6 +1148,80 @@ public class CapacityManagerImpl extends ManagerBase implements CapacityManager,
         return new Pair<>(hostHasCpuCapability, hostHasCapacity);
     }
 
+    @Override
+    public HostCapacitySnapshot getHostCapacitySnapshot(List<? extends Host> hosts) {
+        HostCapacitySnapshot snapshot = new HostCapacitySnapshot(hosts);
+        if (hosts.isEmpty()) {
+            return snapshot;
+        }
+
+        List<Long> hostIds = new ArrayList<>(hosts.size());
+        Map<Long, Pair<Float, Float>> clusterOvercommitRatios = new HashMap<>();
+        for (Host host : hosts) {
+            hostIds.add(host.getId());
+            Long clusterId = host.getClusterId();
+            if (clusterId == null) {
+                continue;
+            }
+            Pair<Float, Float> ratios = clusterOvercommitRatios.get(clusterId);
+            if (ratios == null) {
+                ClusterDetailsVO clusterDetailsCpuOvercommit = _clusterDetailsDao.findDetail(clusterId, "cpuOvercommitRatio");
+                ClusterDetailsVO clusterDetailsRamOvercommmt = _clusterDetailsDao.findDetail(clusterId, "memoryOvercommitRatio");
+                ratios = new Pair<>(Float.parseFloat(clusterDetailsCpuOvercommit.getValue()), Float.parseFloat(clusterDetailsRamOvercommmt.getValue()));
+                clusterOvercommitRatios.put(clusterId, ratios);
+            }
+            snapshot.setOvercommitRatios(host.getId(), ratios.first(), ratios.second());
+        }
+
+        for (CapacityVO capacity : _capacityDao.listByHostIdsAndTypes(hostIds, Capacity.CAPACITY_TYPE_CPU, Capacity.CAPACITY_TYPE_MEMORY)) {
+            long used = capacity.getUsedCapacity();
+            long[] pending = _plannedCapacity.getPending(capacity.getHostOrPoolId());
+            if (pending != null) {
+                used += capacity.getCapacityType() == Capacity.CAPACITY_TYPE_CPU ? pending[0] : pending[1];
+            }
+            snapshot.setCapacity(capacity.getHostOrPoolId(), capacity.getCapacityType(), used, capacity.getReservedCapacity(), capacity.getTotalCapacity());
+        }
+        return snapshot;
+    }
+
+    @Override
+    public boolean reservePlannedCapacity(VirtualMachine vm, Host host, ServiceOffering offering) {
+        if (!PlannedCapacityReservation.value()) {
+            return true;
+        }
+        CapacityVO capacityCpu = _capacityDao.findByHostIdType(host.getId(), Capacity.CAPACITY_TYPE_CPU);
+        CapacityVO capacityMem = _capacityDao.findByHostIdType(host.getId(), Capacity.CAPACITY_TYPE_MEMORY);
+        if (capacityCpu == null || capacityMem == null) {
+            return true;
+        }
+
+        float cpuOvercommitRatio = Float.parseFloat(_clusterDetailsDao.findDetail(host.getClusterId(), "cpuOvercommitRatio").getValue());
+        float memoryOvercommitRatio = Float.parseFloat(_clusterDetailsDao.findDetail(host.getClusterId(), "memoryOvercommitRatio").getValue());
+        final long totalCpu = (long)(capacityCpu.getTotalCapacity() * cpuOvercommitRatio);
+        final long totalMem = (long)(capacityMem.getTotalCapacity() * memoryOvercommitRatio);
+        final long allocatedCpu = capacityCpu.getUsedCapacity() + capacityCpu.getReservedCapacity();
+        final long allocatedMem = capacityMem.getUsedCapacity() + capacityMem.getReservedCapacity();
+        long cpu = (long)offering.getCpu() * offering.getSpeed();
+        long ram = offering.getRamSize() * 1024L * 1024L;
+
+        boolean reserved = _plannedCapacity.reserve(vm.getId(), host.getId(), cpu, ram,
+                (pendingCpu, pendingMem) -> allocatedCpu + pendingCpu <= totalCpu && allocatedMem + pendingMem <= totalMem);
+        if (!reserved && s_logger.isDebugEnabled()) {
+            s_logger.debug(String.format("Unable to reserve the capacity of %s on host %s, concurrent deployments took it since it was planned", vm, host.getId()));
+        }
+        return reserved;
+    }
+
+    @Override
+    public void releasePlannedCapacity(long vmId) {
+        _plannedCapacity.release(vmId);
+    }
+
+    @Override
+    public void recordDeploymentPlanning(long planningTimeInMillis) {
+        _plannedCapacity.planned(planningTimeInMillis);
+    }
+
     @Override
     public boolean processAnswers(long agentId, long seq, Answer[] answers) {
         // TODO Auto-generated method stub
@@ -1256,6 +1356,7 @@ public class CapacityManagerImpl extends ManagerBase implements CapacityManager,
     @Override
     public ConfigKey<?>[] getConfigKeys() {
         return new ConfigKey<?>[] {CpuOverprovisioningFactor, MemOverprovisioningFactor, StorageCapacityDisableThreshold, StorageOverprovisioningFactor,
-            StorageAllocatedCapacityDisableThreshold, StorageOperationsExcludeCluster, ImageStoreNFSVersion, SecondaryStorageCapacityThreshold};
+            StorageAllocatedCapacityDisableThreshold, StorageOperationsExcludeCluster, ImageStoreNFSVersion, SecondaryStorageCapacityThreshold,
+            PlannedCapacityReservation};
     }
 }
@@ -0,0 +1,225 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.capacity;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.StandardMBean;
+
+import com.cloud.utils.LatencyHistogram;
+
+/**
+ * In-memory reservations of the CPU and memory of the VMs that were planned on a host but whose capacity is not
+ * allocated in op_host_capacity yet, which happens when they move to Starting. Counting them in the capacity checks
+ * keeps concurrent deployment plannings from all picking the room that is left on the same host.
+ *
+ * Each host has its own entry and lock, so plannings on different hosts don't contend. A reservation is released
+ * when the capacity of the VM is allocated, or expires if the VM never gets there.
+ */
+public class PlannedCapacityLedger extends StandardMBean implements PlannedCapacityLedgerMBean {
+    public static final long DEFAULT_RESERVATION_TTL_MS = 2 * 60 * 1000L;
+
+    /**
+     * Decides whether a host can take the given amount of CPU and memory on top of the capacity allocated in the database.
+     */
+    public interface CapacityCheck {
+        boolean fits(long pendingCpu, long pendingMemory);
+    }
+
+    private static class Reservation {
+        final long hostId;
+        final long cpu;
+        final long memory;
+        final long expireAt;
+
+        Reservation(long hostId, long cpu, long memory, long expireAt) {
+            this.hostId = hostId;
+            this.cpu = cpu;
+            this.memory = memory;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private static class HostEntry {
+        final Map<Long, Reservation> reservations = new ConcurrentHashMap<>();
+        long cpu;
+        long memory;
+    }
+
+    private final long _ttlMs;
+    private final Map<Long, HostEntry> _hosts = new ConcurrentHashMap<>();
+    private final Map<Long, Reservation> _vmReservations = new ConcurrentHashMap<>();
+
+    private final LatencyHistogram _planningTimes = new LatencyHistogram();
+    private final AtomicLong _plannings = new AtomicLong(0);
+    private final AtomicLong _reservations = new AtomicLong(0);
+    private final AtomicLong _conflicts = new AtomicLong(0);
+    private final AtomicLong _expired = new AtomicLong(0);
+
+    public PlannedCapacityLedger() {
+        this(DEFAULT_RESERVATION_TTL_MS);
+    }
+
+    public PlannedCapacityLedger(long ttlMs) {
+        super(PlannedCapacityLedgerMBean.class, false);
+        _ttlMs = ttlMs;
+    }
+
+    /**
+     * Reserves the CPU and memory for the VM on the host if the check still passes once the other reservations of
+     * the host are counted, replacing any previous reservation of the VM.
+     * @return false if the check failed, i.e. concurrent plannings took the capacity in the meantime.
+     */
+    public boolean reserve(long vmId, long hostId, long cpu, long memory, CapacityCheck check) {
+        release(vmId);
+
+        HostEntry entry = _hosts.computeIfAbsent(hostId, id -> new HostEntry());
+        synchronized (entry) {
+            expire(entry, System.currentTimeMillis());
+            if (!check.fits(entry.cpu + cpu, entry.memory + memory)) {
+                _conflicts.incrementAndGet();
+                return false;
+            }
+            Reservation reservation = new Reservation(hostId, cpu, memory, System.currentTimeMillis() + _ttlMs);
+            entry.reservations.put(vmId, reservation);
+            entry.cpu += cpu;
+            entry.memory += memory;
+            _vmReservations.put(vmId, reservation);
+        }
+        _reservations.incrementAndGet();
+        return true;
+    }
+
+    public void release(long vmId) {
+        Reservation reservation = _vmReservations.remove(vmId);
+        if (reservation == null) {
+            return;
+        }
+        HostEntry entry = _hosts.get(reservation.hostId);
+        if (entry == null) {
+            return;
+        }
+        synchronized (entry) {
+            if (entry.reservations.remove(vmId, reservation)) {
+                entry.cpu -= reservation.cpu;
+                entry.memory -= reservation.memory;
+            }
+        }
+    }
+
+    /**
+     * @return the CPU (in MHz) and memory (in bytes) reserved on the host, null if there is none.
+     */
+    public long[] getPending(long hostId) {
+        return getPending(hostId, null);
+    }
+
+    /**
+     * @return the CPU (in MHz) and memory (in bytes) reserved on the host by the VMs other than the given one, null
+     * if there is none. Used when the capacity of that VM is allocated, as its own reservation is still held then.
+     */
+    public long[] getPending(long hostId, Long excludedVmId) {
+        HostEntry entry = _hosts.get(hostId);
+        if (entry == null) {
+            return null;
+        }
+        synchronized (entry) {
+            expire(entry, System.currentTimeMillis());
+            long cpu = entry.cpu;
+            long memory = entry.memory;
+            int count = entry.reservations.size();
+            Reservation excluded = excludedVmId != null ? entry.reservations.get(excludedVmId) : null;
+            if (excluded != null) {
+                cpu -= excluded.cpu;
+                memory -= excluded.memory;
+                count--;
+            }
+            if (count == 0) {
+                return null;
+            }
+            return new long[] {cpu, memory};
+        }
+    }
+
+    private void expire(HostEntry entry, long now) {
+        Iterator<Map.Entry<Long, Reservation>> it = entry.reservations.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Reservation> reservation = it.next();
+            if (reservation.getValue().expireAt <= now) {
+                it.remove();
+                _vmReservations.remove(reservation.getKey(), reservation.getValue());
+                entry.cpu -= reservation.getValue().cpu;
+                entry.memory -= reservation.getValue().memory;
+                _expired.incrementAndGet();
+            }
+        }
+    }
+
+    public void planned(long planningTimeInMillis) {
+        _plannings.incrementAndGet();
+        _planningTimes.record(planningTimeInMillis);
+    }
+
+    @Override
+    public Map<String, String> getPlanningTimes() {
+        return _planningTimes.toMap();
+    }
+
+    @Override
+    public long getPlanningCount() {
+        return _plannings.get();
+    }
+
+    @Override
+    public long getReservationCount() {
+        return _reservations.get();
+    }
+
+    @Override
+    public long getConflictCount() {
+        return _conflicts.get();
+    }
+
+    @Override
+    public long getExpiredCount() {
+        return _expired.get();
+    }
+
+    @Override
+    public int getPendingReservationCount() {
+        return _vmReservations.size();
+    }
+
+    @Override
+    public double getConflictRate() {
+        long conflicts = _conflicts.get();
+        long total = conflicts + _reservations.get();
+        return total == 0 ? 0 : (double)conflicts / total;
+    }
+
+    @Override
+    public void reset() {
+        _planningTimes.reset();
+        _plannings.set(0);
+        _reservations.set(0);
+        _conflicts.set(0);
+        _expired.set(0);
+    }
+}
@@ -1214,6 +1214,22 @@ public enum Config {
             "Interval (in days) to check sanity of usage data. To disable set it to 0 or negative.",
             null),
     UsageAggregationTimezone("Usage", ManagementServer.class, String.class, "usage.aggregation.timezone", "GMT", "The timezone to use for usage stats aggregation", null),
+    UsageParseWorkers(
+            "Usage",
+            ManagementServer.class,
+            Integer.class,
+            "usage.parse.workers",
+            "1",
+            "Number of threads parsing the usage of the accounts in parallel. The accounts are split across them, and the usage records are only committed once all of them are done.",
+            null),
+    UsageParseIncremental(
+            "Usage",
+            ManagementServer.class,
+            Boolean.class,
+            "usage.parse.incremental",
+            "false",
+            "Commit the usage records of each account as soon as they are parsed, along with a checkpoint, so that an interrupted usage job resumes where it stopped.",
+            null),
     TrafficSentinelIncludeZones(
             "Usage",
             ManagementServer.class,
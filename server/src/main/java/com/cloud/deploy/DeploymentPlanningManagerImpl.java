@@ -184,6 +184,7 @@ StateListener<State, VirtualMachine.Event, VirtualMachine>, Configurable {
 
     private static final long ADMIN_ACCOUNT_ROLE_ID = 1l;
     private static final long INITIAL_RESERVATION_RELEASE_CHECKER_DELAY = 30L * 1000L; // thirty seconds expressed in milliseconds
+    private static final int MAX_PLANNED_CAPACITY_CONFLICTS = 3;
     protected long _nodeId = -1;
 
     protected List<StoragePoolAllocator> _storagePoolAllocators;
@@ -266,9 +267,37 @@ StateListener<State, VirtualMachine.Event, VirtualMachine>, Configurable {
         _affinityProcessors = affinityProcessors;
     }
 
+    /**
+     * Plans the deployment and reserves the capacity of the VM on the chosen host. If concurrent plannings took the
+     * capacity left on that host in the meantime, the host is avoided and the deployment planned again.
+     */
     @Override
     public DeployDestination planDeployment(VirtualMachineProfile vmProfile, DeploymentPlan plan, ExcludeList avoids, DeploymentPlanner planner)
             throws InsufficientServerCapacityException, AffinityConflictException {
+        long start = System.currentTimeMillis();
+        try {
+            VirtualMachine vm = vmProfile.getVirtualMachine();
+            for (int attempt = 0; ; attempt++) {
+                DeployDestination dest = planDeploymentOnce(vmProfile, plan, avoids, planner);
+                if (dest == null || dest.getHost() == null) {
+                    return dest;
+                }
+                // a host that was asked for, or that still holds the VM's capacity, is not traded for another one
+                Host host = dest.getHost();
+                boolean hostChosenByPlanner = plan.getHostId() == null && !Long.valueOf(host.getId()).equals(vm.getLastHostId());
+                if (_capacityMgr.reservePlannedCapacity(vm, host, vmProfile.getServiceOffering()) || !hostChosenByPlanner
+                        || attempt >= MAX_PLANNED_CAPACITY_CONFLICTS) {
+                    return dest;
+                }
+                avoids.addHost(host.getId());
+            }
+        } finally {
+            _capacityMgr.recordDeploymentPlanning(System.currentTimeMillis() - start);
+        }
+    }
+
+    protected DeployDestination planDeploymentOnce(VirtualMachineProfile vmProfile, DeploymentPlan plan, ExcludeList avoids, DeploymentPlanner planner)
+            throws InsufficientServerCapacityException, AffinityConflictException {
 
         ServiceOffering offering = vmProfile.getServiceOffering();
         int cpu_requested = offering.getCpu() * offering.getSpeed();
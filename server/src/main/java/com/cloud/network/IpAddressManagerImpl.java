@@ -166,9 +166,11 @@ import com.cloud.utils.db.TransactionCallback;
 import com.cloud.utils.db.TransactionCallbackNoReturn;
 import com.cloud.utils.db.TransactionCallbackWithException;
 import com.cloud.utils.db.TransactionCallbackWithExceptionNoReturn;
+import com.cloud.utils.db.TransactionLegacy;
 import com.cloud.utils.db.TransactionStatus;
 import com.cloud.utils.exception.CloudRuntimeException;
 import com.cloud.utils.exception.ExceptionUtil;
+import com.cloud.utils.mgmt.JmxUtil;
 import com.cloud.utils.net.Ip;
 import com.cloud.utils.net.NetUtils;
 import com.cloud.vm.Nic;
@@ -314,6 +316,14 @@ public class IpAddressManagerImpl extends ManagerBase implements IpAddressManage
             Boolean.class, "system.vm.public.ip.reservation.mode.strictness", "false",
             "If enabled, the use of System VMs public IP reservation is strict, preferred if not.", true, ConfigKey.Scope.Global);
 
+    private static final ConfigKey<Integer> PublicIpAllocationCandidates = new ConfigKey<Integer>("Advanced", Integer.class,
+            "public.ip.allocation.candidates", "16",
+            "Number of free public IP addresses read at once by an allocation, out of which it takes one that no other allocation on the same management server is taking. 0 makes all allocations lock the first free address.",
+            true, ConfigKey.Scope.Global);
+
+    private final PublicIpAddressClaims _ipAddressClaims = new PublicIpAddressClaims();
+    private final PublicIpAllocationStats _ipAllocationStats = new PublicIpAllocationStats(_ipAddressClaims);
+
     private Random rand = new Random(System.currentTimeMillis());
 
     private List<Long> getIpv6SupportingVlanRangeIds(long dcId) throws InsufficientAddressCapacityException {
@@ -524,6 +534,12 @@ public class IpAddressManagerImpl extends ManagerBase implements IpAddressManage
             rulesContinueOnErrFlag = RulesContinueOnError.value();
         }
 
+        try {
+            JmxUtil.registerMBean("IpAddressManager", "PublicIpAllocationStats", _ipAllocationStats);
+        } catch (Exception e) {
+            s_logger.warn("Unable to register public IP allocation stats for JMX", e);
+        }
+
         s_logger.info("IPAddress Manager is configured.");
 
         return true;
@@ -821,6 +837,34 @@ public class IpAddressManagerImpl extends ManagerBase implements IpAddressManage
     public List<IPAddressVO> listAvailablePublicIps(final long dcId, final Long podId, final List<Long> vlanDbIds, final Account owner, final VlanType vlanUse, final Long guestNetworkId,
                                                     final boolean sourceNat, final boolean assign, final boolean allocate, final String requestedIp, final String requestedGateway, final boolean isSystem,
                                                     final Long vpcId, final Boolean displayIp, final boolean forSystemVms, final boolean lockOneRow) throws InsufficientAddressCapacityException {
+        final List<Long> claimedAddressIds = new ArrayList<Long>();
+        try {
+            return listAvailablePublicIps(dcId, podId, vlanDbIds, owner, vlanUse, guestNetworkId, sourceNat, assign, allocate, requestedIp, requestedGateway, isSystem,
+                    vpcId, displayIp, forSystemVms, lockOneRow, claimedAddressIds);
+        } finally {
+            releaseAfterCompletion(claimedAddressIds);
+        }
+    }
+
+    /**
+     * The row of a claimed address stays locked until the enclosing transaction completes, so the
+     * claims are kept until then as well.
+     */
+    protected void releaseAfterCompletion(final List<Long> claimedAddressIds) {
+        if (claimedAddressIds.isEmpty()) {
+            return;
+        }
+        TransactionLegacy.runAfterCompletion(() -> {
+            for (Long addressId : claimedAddressIds) {
+                _ipAddressClaims.release(addressId);
+            }
+        });
+    }
+
+    private List<IPAddressVO> listAvailablePublicIps(final long dcId, final Long podId, final List<Long> vlanDbIds, final Account owner, final VlanType vlanUse, final Long guestNetworkId,
+                                                     final boolean sourceNat, final boolean assign, final boolean allocate, final String requestedIp, final String requestedGateway, final boolean isSystem,
+                                                     final Long vpcId, final Boolean displayIp, final boolean forSystemVms, final boolean lockOneRow, final List<Long> claimedAddressIds)
+            throws InsufficientAddressCapacityException {
         return Transaction.execute(new TransactionCallbackWithException<List<IPAddressVO>, InsufficientAddressCapacityException>() {
             @Override
             public List<IPAddressVO> doInTransaction(TransactionStatus status) throws InsufficientAddressCapacityException {
@@ -918,7 +962,7 @@ public class IpAddressManagerImpl extends ManagerBase implements IpAddressManage
                 List<IPAddressVO> addrs;
 
                 if (lockOneRow) {
-                    addrs = _ipAddressDao.lockRows(sc, filter, true);
+                    addrs = lockFreePublicIp(sc, filter, ascOrder, claimedAddressIds);
                 } else {
                     addrs = new ArrayList<>(_ipAddressDao.search(sc, null));
                 }
@@ -932,7 +976,7 @@ public class IpAddressManagerImpl extends ManagerBase implements IpAddressManage
                         sc.setParameters("vlanId", nonDedicatedVlanDbIds.toArray());
                         errorMessage.append(", vlanId id=" + Arrays.toString(nonDedicatedVlanDbIds.toArray()));
                         if (lockOneRow) {
-                            addrs = _ipAddressDao.lockRows(sc, filter, true);
+                            addrs = lockFreePublicIp(sc, filter, ascOrder, claimedAddressIds);
                         } else {
                             addrs.addAll(_ipAddressDao.search(sc, null));
                         }
@@ -964,6 +1008,44 @@ public class IpAddressManagerImpl extends ManagerBase implements IpAddressManage
         });
     }
 
+    /**
+     * Locks one free address matching the search criteria. Instead of having all of the concurrent
+     * allocations queue on the row lock of the first free address, the first free addresses are read
+     * without locking and each allocation claims one that no other allocation on this management
+     * server has claimed, then locks only that row. An address taken in the meantime by another
+     * management server is skipped, and when no claimed address can be locked the first free
+     * address is locked as before.
+     */
+    protected List<IPAddressVO> lockFreePublicIp(final SearchCriteria<IPAddressVO> sc, final Filter filter, final boolean ascOrder, final List<Long> claimedAddressIds) {
+        final long startTime = System.currentTimeMillis();
+        final int candidates = PublicIpAllocationCandidates.value();
+        if (candidates > 0) {
+            final Filter candidateFilter = new Filter(IPAddressVO.class, "forSystemVms", ascOrder, 0L, (long)candidates);
+            candidateFilter.addOrderBy(IPAddressVO.class, "vlanId", true);
+            for (IPAddressVO candidate : _ipAddressDao.search(sc, candidateFilter)) {
+                if (!_ipAddressClaims.claim(candidate.getId())) {
+                    _ipAllocationStats.localClaimSkipped();
+                    continue;
+                }
+                claimedAddressIds.add(candidate.getId());
+                final IPAddressVO locked = _ipAddressDao.lockRow(candidate.getId(), true);
+                if (locked != null && locked.getState() == State.Free && locked.getAllocatedTime() == null) {
+                    _ipAllocationStats.claimed(System.currentTimeMillis() - startTime);
+                    final List<IPAddressVO> addrs = new ArrayList<IPAddressVO>();
+                    addrs.add(locked);
+                    return addrs;
+                }
+                _ipAllocationStats.conflicted();
+                if (s_logger.isDebugEnabled()) {
+                    s_logger.debug("Public IP address id=" + candidate.getId() + " was taken by another allocation, trying the next free one");
+                }
+            }
+        }
+        final List<IPAddressVO> addrs = _ipAddressDao.lockRows(sc, filter, true);
+        _ipAllocationStats.fellBack(System.currentTimeMillis() - startTime);
+        return addrs;
+    }
+
     @DB
     @Override
     public void markPublicIpAsAllocated(final IPAddressVO addr) {
@@ -2304,7 +2386,8 @@ public class IpAddressManagerImpl extends ManagerBase implements IpAddressManage
 
     @Override
     public ConfigKey<?>[] getConfigKeys() {
-        return new ConfigKey<?>[] {UseSystemPublicIps, RulesContinueOnError, SystemVmPublicIpReservationModeStrictness, VrouterRedundantTiersPlacement};
+        return new ConfigKey<?>[] {UseSystemPublicIps, RulesContinueOnError, SystemVmPublicIpReservationModeStrictness, VrouterRedundantTiersPlacement,
+                PublicIpAllocationCandidates};
     }
 
     /**
@@ -29,7 +29,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.stream.Collectors;
 
 import javax.inject.Inject;
@@ -135,6 +134,7 @@ import com.cloud.utils.db.SearchBuilder;
 import com.cloud.utils.db.SearchCriteria;
 import com.cloud.utils.db.SearchCriteria.Op;
 import com.cloud.utils.exception.CloudRuntimeException;
+import com.cloud.utils.net.Ip4AddressBitmap;
 import com.cloud.utils.net.NetUtils;
 import com.cloud.vm.Nic;
 import com.cloud.vm.NicProfile;
@@ -149,6 +149,8 @@ import com.cloud.vm.dao.VMInstanceDao;
 public class NetworkModelImpl extends ManagerBase implements NetworkModel, Configurable {
     static final Logger s_logger = Logger.getLogger(NetworkModelImpl.class);
     public static final String UNABLE_TO_USE_NETWORK = "Unable to use network with id= %s, permission denied";
+    // guest ips are picked among the lowest free ones of the network
+    private static final int MAX_AVAILABLE_IPS = 255;
     @Inject
     EntityManager _entityMgr;
     @Inject
@@ -2015,7 +2017,7 @@ public class NetworkModelImpl extends ManagerBase implements NetworkModel, Confi
         }
         String[] cidr = network.getCidr().split("/");
         List<String> ips = getUsedIpsInNetwork(network);
-        Set<Long> usedIps = new TreeSet<Long>();
+        Ip4AddressBitmap usedIps = new Ip4AddressBitmap(cidr[0], Integer.parseInt(cidr[1]));
 
         for (String ip : ips) {
             if (requestedIp != null && requestedIp.equals(ip)) {
@@ -2023,16 +2025,17 @@ public class NetworkModelImpl extends ManagerBase implements NetworkModel, Confi
                 return null;
             }
 
-            usedIps.add(NetUtils.ip2Long(ip));
+            if (ip != null) {
+                usedIps.setUsed(ip);
+            }
         }
 
-        Set<Long> allPossibleIps = NetUtils.getAllIpsFromCidr(cidr[0], Integer.parseInt(cidr[1]), usedIps);
-
         String gateway = network.getGateway();
-        if ((gateway != null) && (allPossibleIps.contains(NetUtils.ip2Long(gateway))))
-            allPossibleIps.remove(NetUtils.ip2Long(gateway));
+        if (gateway != null) {
+            usedIps.setUsed(gateway);
+        }
 
-        return allPossibleIps;
+        return usedIps.getFreeIps(MAX_AVAILABLE_IPS);
     }
 
     @Override
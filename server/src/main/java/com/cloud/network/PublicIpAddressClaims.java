@@ -0,0 +1,44 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.network;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Free public IP addresses claimed by the allocations running on this management server. A claim
+ * is kept until the transaction of the allocation that made it completes, so that the other
+ * allocations on this management server don't wait on the row lock of an address being taken.
+ */
+public class PublicIpAddressClaims {
+    private final Set<Long> _claims = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @return false if another allocation on this management server already claimed the address.
+     */
+    public boolean claim(long addressId) {
+        return _claims.add(addressId);
+    }
+
+    public void release(long addressId) {
+        _claims.remove(addressId);
+    }
+
+    public int size() {
+        return _claims.size();
+    }
+}
@@ -0,0 +1,101 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.network;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.StandardMBean;
+
+import com.cloud.utils.LatencyHistogram;
+
+/**
+ * The time it took the allocations running on this management server to lock a free public
+ * IP address, how often a claimed address turned out to be taken by another management
+ * server, or the claims failed and the allocation fell back to locking the first free address.
+ */
+public class PublicIpAllocationStats extends StandardMBean implements PublicIpAllocationStatsMBean {
+    private final PublicIpAddressClaims _claims;
+
+    private final LatencyHistogram _allocationTimes = new LatencyHistogram();
+    private final AtomicLong _claimCount = new AtomicLong(0);
+    private final AtomicLong _localClaimSkips = new AtomicLong(0);
+    private final AtomicLong _conflicts = new AtomicLong(0);
+    private final AtomicLong _fallbacks = new AtomicLong(0);
+
+    public PublicIpAllocationStats(PublicIpAddressClaims claims) {
+        super(PublicIpAllocationStatsMBean.class, false);
+        _claims = claims;
+    }
+
+    public void localClaimSkipped() {
+        _localClaimSkips.incrementAndGet();
+    }
+
+    public void claimed(long durationInMillis) {
+        _claimCount.incrementAndGet();
+        _allocationTimes.record(durationInMillis);
+    }
+
+    public void conflicted() {
+        _conflicts.incrementAndGet();
+    }
+
+    public void fellBack(long durationInMillis) {
+        _fallbacks.incrementAndGet();
+        _allocationTimes.record(durationInMillis);
+    }
+
+    @Override
+    public Map<String, String> getAllocationTimes() {
+        return _allocationTimes.toMap();
+    }
+
+    @Override
+    public long getClaimCount() {
+        return _claimCount.get();
+    }
+
+    @Override
+    public long getLocalClaimSkipCount() {
+        return _localClaimSkips.get();
+    }
+
+    @Override
+    public long getConflictCount() {
+        return _conflicts.get();
+    }
+
+    @Override
+    public long getFallbackCount() {
+        return _fallbacks.get();
+    }
+
+    @Override
+    public int getActiveClaimCount() {
+        return _claims.size();
+    }
+
+    @Override
+    public void reset() {
+        _allocationTimes.reset();
+        _claimCount.set(0);
+        _localClaimSkips.set(0);
+        _conflicts.set(0);
+        _fallbacks.set(0);
+    }
+}
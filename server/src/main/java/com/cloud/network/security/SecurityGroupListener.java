@@ -151,6 +151,11 @@ public class SecurityGroupListener implements Listener {
         return processed;
     }
 
+    @Override
+    public boolean processesPingCommands() {
+        return true;
+    }
+
     @Override
     public void processHostAdded(long hostId) {
     }
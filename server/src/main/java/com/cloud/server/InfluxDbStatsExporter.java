@@ -0,0 +1,204 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import org.apache.log4j.Logger;
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.Point;
+
+import com.cloud.utils.LatencyHistogram;
+
+/**
+ * Streams the points produced by the stats collectors to InfluxDB over one long-lived connection.
+ *
+ * Collectors hand their points over as they produce them; the points are kept in a bounded queue and
+ * written in batches by a single exporter thread. When the queue is full a collector waits up to the
+ * configured time for room and the point is dropped after that, so a slow or unreachable InfluxDB
+ * can neither block the collectors nor make the management server run out of memory.
+ */
+public class InfluxDbStatsExporter implements Runnable {
+    private static final Logger LOGGER = Logger.getLogger(InfluxDbStatsExporter.class);
+
+    protected static final int MAX_BATCH_SIZE = 5000;
+    protected static final long RECONNECT_INTERVAL_MS = 10000L;
+
+    private final Supplier<InfluxDB> connectionFactory;
+    private final BiConsumer<InfluxDB, List<Point>> writer;
+    private final BlockingQueue<Point> queue;
+    private final long offerWaitMs;
+
+    private final AtomicLong exported = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final LatencyHistogram exportLatency = new LatencyHistogram();
+
+    private InfluxDB connection;
+    private long nextConnectAttempt;
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * @param connectionFactory opens the connection, it is called again only after a failed write.
+     * @param writer writes a batch of points on the connection.
+     * @param queueSize the maximum number of points waiting to be exported.
+     * @param offerWaitMs how long a collector waits for room in a full queue before the point is dropped.
+     */
+    public InfluxDbStatsExporter(Supplier<InfluxDB> connectionFactory, BiConsumer<InfluxDB, List<Point>> writer, int queueSize, long offerWaitMs) {
+        this.connectionFactory = connectionFactory;
+        this.writer = writer;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+        this.offerWaitMs = Math.max(0, offerWaitMs);
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "StatsCollector-InfluxDbExporter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    /**
+     * Queues the point to be exported.
+     *
+     * @return false if the point was dropped because the queue stayed full.
+     */
+    public boolean export(Point point) {
+        boolean queued;
+        try {
+            queued = offerWaitMs > 0 ? queue.offer(point, offerWaitMs, TimeUnit.MILLISECONDS) : queue.offer(point);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+        if (!queued) {
+            if (dropped.getAndIncrement() % 1000 == 0) {
+                LOGGER.warn(String.format("The InfluxDB export queue is full, dropping stats; %s points dropped so far.", dropped.get()));
+            }
+        }
+        return queued;
+    }
+
+    @Override
+    public void run() {
+        List<Point> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (running) {
+            try {
+                if (!ensureConnected()) {
+                    Thread.sleep(Math.max(1, nextConnectAttempt - System.currentTimeMillis()));
+                    continue;
+                }
+                Point first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                LOGGER.warn("Unexpected error while exporting stats to InfluxDB.", e);
+            } finally {
+                batch.clear();
+            }
+        }
+        closeConnection();
+    }
+
+    protected void write(List<Point> batch) {
+        long start = System.currentTimeMillis();
+        try {
+            writer.accept(connection, batch);
+            exported.addAndGet(batch.size());
+            exportLatency.record(System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            failed.addAndGet(batch.size());
+            LOGGER.warn(String.format("Failed to export %s points to InfluxDB, reconnecting: %s", batch.size(), e.getMessage()));
+            closeConnection();
+            nextConnectAttempt = System.currentTimeMillis() + RECONNECT_INTERVAL_MS;
+        }
+    }
+
+    protected boolean ensureConnected() {
+        if (connection != null) {
+            return true;
+        }
+        if (System.currentTimeMillis() < nextConnectAttempt) {
+            return false;
+        }
+        try {
+            connection = connectionFactory.get();
+            return true;
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to connect to InfluxDB, retrying in " + RECONNECT_INTERVAL_MS + " ms: " + e.getMessage());
+            nextConnectAttempt = System.currentTimeMillis() + RECONNECT_INTERVAL_MS;
+            return false;
+        }
+    }
+
+    private void closeConnection() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (RuntimeException e) {
+                LOGGER.debug("Failed to close the InfluxDB connection: " + e.getMessage());
+            }
+            connection = null;
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getExportedCount() {
+        return exported.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public LatencyHistogram getExportLatency() {
+        return exportLatency;
+    }
+}
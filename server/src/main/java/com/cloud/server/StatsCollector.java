@@ -151,6 +151,7 @@ import com.cloud.vm.dao.UserVmDao;
 import com.cloud.vm.dao.VMInstanceDao;
 import com.cloud.vm.dao.VmStatsDao;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.JvmAttributeGaugeSet;
 import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricRegistry;
@@ -268,6 +269,10 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
     private static final ConfigKey<String> statsOutputUri = new ConfigKey<>("Advanced", String.class, "stats.output.uri", "",
             "URI to send StatsCollector statistics to. The collector is defined on the URI scheme. Example: graphite://graphite-hostaddress:port or influxdb://influxdb-hostaddress/dbname. Note that the port is optional, if not added the default port for the respective collector (graphite or influxdb) will be used. Additionally, the database name '/dbname' is  also optional; default db name is 'cloudstack'. You must create and configure the database if using influxdb.",
             true);
+    private static final ConfigKey<Integer> STATS_OUTPUT_QUEUE_SIZE = new ConfigKey<>("Advanced", Integer.class, "stats.output.queue.size", "10000",
+            "The maximum number of stats points waiting to be sent to the InfluxDB host configured in 'stats.output.uri'. Points are dropped while the queue is full.", false);
+    private static final ConfigKey<Integer> STATS_OUTPUT_QUEUE_WAIT = new ConfigKey<>("Advanced", Integer.class, "stats.output.queue.wait", "0",
+            "The time (in milliseconds) a stats collector waits for room in the full InfluxDB export queue before dropping the point. When set to 0, the points are dropped right away.", false);
     protected static ConfigKey<Boolean> vmStatsIncrementMetrics = new ConfigKey<Boolean>("Advanced", Boolean.class, "vm.stats.increment.metrics", "true",
             "When set to 'true', VM metrics(NetworkReadKBs, NetworkWriteKBs, DiskWriteKBs, DiskReadKBs, DiskReadIOs and DiskWriteIOs) that are collected from the hypervisor are summed before being returned."
             + "On the other hand, when set to 'false', the VM metrics API will just display the latest metrics collected.", true);
@@ -340,6 +345,17 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
     private ConcurrentHashMap<Long, StorageStats> _storageStats = new ConcurrentHashMap<>();
     private ConcurrentHashMap<Long, StorageStats> _storagePoolStats = new ConcurrentHashMap<>();
 
+    /**
+     * Metrics of the VM samples kept in {@link #vmStatsStore}, the index of each one in a sample is its ordinal.
+     */
+    protected enum VmSampleMetric {
+        CPU_UTILIZATION, NUM_CPUS, MEMORY_KBS, INT_FREE_MEMORY_KBS, TARGET_MEMORY_KBS, INT_USABLE_MEMORY_KBS,
+        NETWORK_READ_KBS, NETWORK_WRITE_KBS, DISK_READ_KBS, DISK_WRITE_KBS, DISK_READ_IOS, DISK_WRITE_IOS
+    }
+
+    private static final int MAX_VM_STATS_SAMPLES = 1440;
+    protected StatsSampleStore vmStatsStore;
+
     private static final long DEFAULT_INITIAL_DELAY = 15000L;
 
     private long hostStatsInterval = -1L;
@@ -354,6 +370,7 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
     private String externalStatsScheme;
     ExternalStatsProtocol externalStatsType = ExternalStatsProtocol.NONE;
     private String databaseName = DEFAULT_DATABASE_NAME;
+    protected InfluxDbStatsExporter influxDbStatsExporter;
 
     private ScheduledExecutorService _diskStatsUpdateExecutor;
     private int _usageAggregationRange = 1440;
@@ -391,6 +408,9 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
     @Override
     public boolean stop() {
         _executor.shutdown();
+        if (influxDbStatsExporter != null) {
+            influxDbStatsExporter.stop();
+        }
         return true;
     }
 
@@ -411,6 +431,7 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
 
         hostStatsInterval = NumbersUtil.parseLong(configs.get("host.stats.interval"), ONE_MINUTE_IN_MILLISCONDS);
         vmStatsInterval = NumbersUtil.parseLong(configs.get("vm.stats.interval"), ONE_MINUTE_IN_MILLISCONDS);
+        vmStatsStore = new StatsSampleStore(VmSampleMetric.values().length, getVmStatsStoreCapacity());
         storageStatsInterval = NumbersUtil.parseLong(configs.get("storage.stats.interval"), ONE_MINUTE_IN_MILLISCONDS);
         volumeStatsInterval = NumbersUtil.parseLong(configs.get("volume.stats.interval"), ONE_MINUTE_IN_MILLISCONDS);
         autoScaleStatsInterval = AutoScaleManager.AutoScaleStatsInterval.value();
@@ -456,6 +477,10 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
             }
         }
 
+        if (externalStatsType == ExternalStatsProtocol.INFLUXDB) {
+            startInfluxDbStatsExporter();
+        }
+
         if (hostStatsInterval > 0) {
             _executor.scheduleWithFixedDelay(new HostCollector(), DEFAULT_INITIAL_DELAY, hostStatsInterval, TimeUnit.MILLISECONDS);
         }
@@ -1171,13 +1196,15 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
 
                         if (vmStatsById != null) {
                             Set<Long> vmIdSet = vmStatsById.keySet();
+                            List<VmStatsEntry> statsToPersist = new ArrayList<>(vmIdSet.size());
                             for (Long vmId : vmIdSet) {
                                 VmStatsEntry statsForCurrentIteration = vmStatsById.get(vmId);
                                 statsForCurrentIteration.setVmId(vmId);
                                 UserVmVO userVmVo = _userVmDao.findById(vmId);
                                 statsForCurrentIteration.setUserVmVO(userVmVo);
 
-                                persistVirtualMachineStats(statsForCurrentIteration, timestamp);
+                                statsToPersist.add(statsForCurrentIteration);
+                                recordVirtualMachineStats(statsForCurrentIteration, timestamp);
 
                                 if (externalStatsType == ExternalStatsProtocol.GRAPHITE) {
                                     prepareVmMetricsForGraphite(metrics, statsForCurrentIteration);
@@ -1185,6 +1212,7 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
                                     metrics.put(statsForCurrentIteration.getVmId(), statsForCurrentIteration);
                                 }
                             }
+                            persistVirtualMachineStats(statsToPersist, timestamp);
 
                             if (!metrics.isEmpty()) {
                                 if (externalStatsType == ExternalStatsProtocol.GRAPHITE) {
@@ -1224,6 +1252,9 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
     class VmStatsCleaner extends ManagedContextRunnable{
         protected void runInContext() {
             cleanUpVirtualMachineStats();
+            if (vmStatsStore != null) {
+                vmStatsStore.removeOlderThan(System.currentTimeMillis() - getVmStatsStoreWindow());
+            }
         }
     }
 
@@ -1235,16 +1266,98 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
      * @return the latest or the accumulation of the stats for the specified VM.
      */
     public VmStats getVmStats(long vmId, Boolean accumulate) {
+        boolean accumulateStats = accumulate != null ? accumulate.booleanValue() : BooleanUtils.toBoolean(vmStatsIncrementMetrics.value());
+
+        VmStatsEntry storedStats = getVmStatsFromStore(vmId, accumulateStats);
+        if (storedStats != null) {
+            return storedStats;
+        }
+
         List<VmStatsVO> vmStatsVOList = vmStatsDao.findByVmIdOrderByTimestampDesc(vmId);
 
         if (CollectionUtils.isEmpty(vmStatsVOList)) {
             return null;
         }
 
-        if (accumulate != null) {
-            return getLatestOrAccumulatedVmMetricsStats(vmStatsVOList, accumulate.booleanValue());
+        return getLatestOrAccumulatedVmMetricsStats(vmStatsVOList, accumulateStats);
+    }
+
+    /**
+     * The number of samples kept per VM in memory: enough to cover the retention time of the VM stats, within limits.
+     */
+    protected int getVmStatsStoreCapacity() {
+        if (vmStatsInterval <= 0) {
+            return 2;
+        }
+        long samples = getVmStatsStoreWindow() / vmStatsInterval + 1;
+        return (int)Math.max(2, Math.min(MAX_VM_STATS_SAMPLES, samples));
+    }
+
+    private long getVmStatsStoreWindow() {
+        Integer maxRetentionTime = vmStatsMaxRetentionTime.value();
+        long retention = maxRetentionTime != null && maxRetentionTime > 0 ? maxRetentionTime * 60000L : 0L;
+        return Math.max(retention, 2 * Math.max(vmStatsInterval, ONE_MINUTE_IN_MILLISCONDS));
+    }
+
+    /**
+     * Keeps the VM stats in the in-memory sample store, from which {@link #getVmStats(long, Boolean)} is served
+     * without reading and parsing the vm_stats rows of the VM.
+     */
+    protected void recordVirtualMachineStats(VmStatsEntry stats, Date timestamp) {
+        if (vmStatsStore == null) {
+            return;
+        }
+        vmStatsStore.record(stats.getVmId(), timestamp.getTime(), stats.getCPUUtilization(), stats.getNumCPUs(), stats.getMemoryKBs(),
+                stats.getIntFreeMemoryKBs(), stats.getTargetMemoryKBs(), stats.getIntUsableMemoryKBs(), stats.getNetworkReadKBs(),
+                stats.getNetworkWriteKBs(), stats.getDiskReadKBs(), stats.getDiskWriteKBs(), stats.getDiskReadIOs(), stats.getDiskWriteIOs());
+    }
+
+    /**
+     * Gets the latest or accumulated stats of the VM from the in-memory sample store. Only the VMs whose hosts
+     * are collected by this management server are in there, and the store only holds what was collected since
+     * it started, so null is returned (and the database is used) unless the samples are recent and, when
+     * accumulating, cover the whole retention time of the VM stats.
+     */
+    protected VmStatsEntry getVmStatsFromStore(long vmId, boolean accumulate) {
+        if (vmStatsStore == null || vmStatsInterval <= 0) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        Integer maxRetentionTime = vmStatsMaxRetentionTime.value();
+        long retention = maxRetentionTime != null ? maxRetentionTime * 60000L : 0L;
+        if (accumulate && (retention <= 0 || retention / vmStatsInterval + 1 > vmStatsStore.getCapacity())) {
+            return null;
+        }
+
+        long freshness = now - 2 * vmStatsInterval;
+        StatsSampleStore.Aggregate aggregate = vmStatsStore.aggregate(vmId, accumulate ? Math.min(now - retention, freshness) : freshness);
+        if (aggregate == null || aggregate.getLatestTimestamp() < freshness) {
+            return null;
         }
-        return getLatestOrAccumulatedVmMetricsStats(vmStatsVOList, BooleanUtils.toBoolean(vmStatsIncrementMetrics.value()));
+        if (accumulate && aggregate.getFirstRecorded() > now - retention) {
+            return null;
+        }
+
+        VmStatsEntry vmStatsEntry = new VmStatsEntry();
+        vmStatsEntry.setEntityType("vm");
+        vmStatsEntry.setVmId(vmId);
+        vmStatsEntry.setCPUUtilization(aggregate.getLatest(VmSampleMetric.CPU_UTILIZATION.ordinal()));
+        vmStatsEntry.setNumCPUs((int)aggregate.getLatest(VmSampleMetric.NUM_CPUS.ordinal()));
+        vmStatsEntry.setMemoryKBs(aggregate.getLatest(VmSampleMetric.MEMORY_KBS.ordinal()));
+        vmStatsEntry.setIntFreeMemoryKBs(aggregate.getLatest(VmSampleMetric.INT_FREE_MEMORY_KBS.ordinal()));
+        vmStatsEntry.setTargetMemoryKBs(aggregate.getLatest(VmSampleMetric.TARGET_MEMORY_KBS.ordinal()));
+        vmStatsEntry.setIntUsableMemoryKBs(aggregate.getLatest(VmSampleMetric.INT_USABLE_MEMORY_KBS.ordinal()));
+        vmStatsEntry.setNetworkReadKBs(getLatestOrSum(aggregate, VmSampleMetric.NETWORK_READ_KBS, accumulate));
+        vmStatsEntry.setNetworkWriteKBs(getLatestOrSum(aggregate, VmSampleMetric.NETWORK_WRITE_KBS, accumulate));
+        vmStatsEntry.setDiskReadKBs(getLatestOrSum(aggregate, VmSampleMetric.DISK_READ_KBS, accumulate));
+        vmStatsEntry.setDiskWriteKBs(getLatestOrSum(aggregate, VmSampleMetric.DISK_WRITE_KBS, accumulate));
+        vmStatsEntry.setDiskReadIOs(getLatestOrSum(aggregate, VmSampleMetric.DISK_READ_IOS, accumulate));
+        vmStatsEntry.setDiskWriteIOs(getLatestOrSum(aggregate, VmSampleMetric.DISK_WRITE_IOS, accumulate));
+        return vmStatsEntry;
+    }
+
+    private double getLatestOrSum(StatsSampleStore.Aggregate aggregate, VmSampleMetric metric, boolean accumulate) {
+        return accumulate ? aggregate.getSum(metric.ordinal()) : aggregate.getLatest(metric.ordinal());
     }
 
     /**
@@ -1320,15 +1433,15 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
                             public void doInTransactionWithoutResult(TransactionStatus status) {
                                 //get all stats with delta > 0
                                 List<VmDiskStatisticsVO> updatedVmNetStats = _vmDiskStatsDao.listUpdatedStats();
-                                for (VmDiskStatisticsVO stat : updatedVmNetStats) {
-                                    if (_dailyOrHourly) {
+                                if (_dailyOrHourly) {
+                                    for (VmDiskStatisticsVO stat : updatedVmNetStats) {
                                         //update agg bytes
                                         stat.setAggBytesRead(stat.getCurrentBytesRead() + stat.getNetBytesRead());
                                         stat.setAggBytesWrite(stat.getCurrentBytesWrite() + stat.getNetBytesWrite());
                                         stat.setAggIORead(stat.getCurrentIORead() + stat.getNetIORead());
                                         stat.setAggIOWrite(stat.getCurrentIOWrite() + stat.getNetIOWrite());
-                                        _vmDiskStatsDao.update(stat.getId(), stat);
                                     }
+                                    _vmDiskStatsDao.updateAll(updatedVmNetStats);
                                 }
                                 LOGGER.debug("Successfully updated aggregate vm disk stats");
                             }
@@ -1753,9 +1866,17 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
      */
     abstract class  AbstractStatsCollector extends ManagedContextRunnable {
         /**
-         * Sends metrics to influxdb host. This method supports both VM and Host metrics
+         * Sends metrics to influxdb host. This method supports both VM and Host metrics.
+         * When the exporter is running the points are only queued, and written by the exporter thread.
          */
         protected void sendMetricsToInfluxdb(Map<Object, Object> metrics) {
+            if (influxDbStatsExporter != null) {
+                for (Object metricsObject : metrics.values()) {
+                    influxDbStatsExporter.export(createInfluxDbPoint(metricsObject));
+                }
+                return;
+            }
+
             InfluxDB influxDbConnection = createInfluxDbConnection();
 
             try {
@@ -1875,6 +1996,26 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
      * @param timestamp the time that will be stamped.
      */
     protected void persistVirtualMachineStats(VmStatsEntry statsForCurrentIteration, Date timestamp) {
+        vmStatsDao.persist(createVmStatsVO(statsForCurrentIteration, timestamp));
+    }
+
+    /**
+     * Persists the stats of the VMs of a host in the database, with batched inserts.
+     * @param statsForCurrentIteration the metrics stats data of each VM to persist.
+     * @param timestamp the time that will be stamped.
+     */
+    protected void persistVirtualMachineStats(List<VmStatsEntry> statsForCurrentIteration, Date timestamp) {
+        if (statsForCurrentIteration.isEmpty()) {
+            return;
+        }
+        List<VmStatsVO> vmStatsVOs = new ArrayList<>(statsForCurrentIteration.size());
+        for (VmStatsEntry vmStatsEntry : statsForCurrentIteration) {
+            vmStatsVOs.add(createVmStatsVO(vmStatsEntry, timestamp));
+        }
+        vmStatsDao.persistAll(vmStatsVOs);
+    }
+
+    protected VmStatsVO createVmStatsVO(VmStatsEntry statsForCurrentIteration, Date timestamp) {
         VmStatsEntryBase vmStats = new VmStatsEntryBase(statsForCurrentIteration.getVmId(), statsForCurrentIteration.getMemoryKBs(), statsForCurrentIteration.getIntFreeMemoryKBs(),
                 statsForCurrentIteration.getTargetMemoryKBs(), statsForCurrentIteration.getIntUsableMemoryKBs(), statsForCurrentIteration.getCPUUtilization(), statsForCurrentIteration.getNetworkReadKBs(),
                 statsForCurrentIteration.getNetworkWriteKBs(), statsForCurrentIteration.getNumCPUs(), statsForCurrentIteration.getDiskReadKBs(),
@@ -1882,7 +2023,7 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
                 statsForCurrentIteration.getEntityType());
         VmStatsVO vmStatsVO = new VmStatsVO(statsForCurrentIteration.getVmId(), msId, timestamp, gson.toJson(vmStats));
         LOGGER.trace(String.format("Recording VM stats: [%s].", vmStatsVO.toString()));
-        vmStatsDao.persist(vmStatsVO);
+        return vmStatsVO;
     }
 
     /**
@@ -1970,6 +2111,46 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
         return influxDbConnection;
     }
 
+    /**
+     * Starts the exporter that streams the collected points to InfluxDB, replacing the one of a previous initialization.
+     * Its counters are exposed as gauges in the management server metrics.
+     */
+    protected void startInfluxDbStatsExporter() {
+        if (influxDbStatsExporter != null) {
+            influxDbStatsExporter.stop();
+        }
+        influxDbStatsExporter = new InfluxDbStatsExporter(this::createPingedInfluxDbConnection, (connection, points) -> writeBatches(connection, databaseName, points),
+                STATS_OUTPUT_QUEUE_SIZE.value(), STATS_OUTPUT_QUEUE_WAIT.value());
+        influxDbStatsExporter.start();
+
+        final InfluxDbStatsExporter exporter = influxDbStatsExporter;
+        registerInfluxDbExporterGauge("queue.depth", exporter::getQueueDepth);
+        registerInfluxDbExporterGauge("exported", exporter::getExportedCount);
+        registerInfluxDbExporterGauge("dropped", exporter::getDroppedCount);
+        registerInfluxDbExporterGauge("failed", exporter::getFailedCount);
+        registerInfluxDbExporterGauge("latency.mean", () -> exporter.getExportLatency().getMean());
+        registerInfluxDbExporterGauge("latency.p99", () -> exporter.getExportLatency().getPercentile(99));
+    }
+
+    private void registerInfluxDbExporterGauge(String name, Gauge<?> gauge) {
+        String metricName = "stats.influxdb." + name;
+        METRIC_REGISTRY.remove(metricName);
+        METRIC_REGISTRY.register(metricName, gauge);
+    }
+
+    /**
+     * Creates the InfluxDB connection used by the exporter, making sure the host answers before it is used.
+     */
+    protected InfluxDB createPingedInfluxDbConnection() {
+        InfluxDB influxDbConnection = createInfluxDbConnection();
+        Pong response = influxDbConnection.ping();
+        if (response.getVersion().equalsIgnoreCase("unknown")) {
+            influxDbConnection.close();
+            throw new CloudRuntimeException(String.format("Cannot ping influxdb host %s:%s.", externalStatsHost, externalStatsPort));
+        }
+        return influxDbConnection;
+    }
+
     /**
      * Writes batches of InfluxDB database points into a given database.
      */
@@ -2061,7 +2242,9 @@ public class StatsCollector extends ManagerBase implements ComponentMethodInterc
                 VM_STATS_INCREMENT_METRICS_IN_MEMORY,
                 MANAGEMENT_SERVER_STATUS_COLLECTION_INTERVAL,
                 DATABASE_SERVER_STATUS_COLLECTION_INTERVAL,
-                DATABASE_SERVER_LOAD_HISTORY_RETENTION_NUMBER};
+                DATABASE_SERVER_LOAD_HISTORY_RETENTION_NUMBER,
+                STATS_OUTPUT_QUEUE_SIZE,
+                STATS_OUTPUT_QUEUE_WAIT};
     }
 
     public double getImageStoreCapacityThreshold() {
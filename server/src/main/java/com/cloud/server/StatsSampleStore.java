@@ -0,0 +1,207 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.server;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Keeps the most recent samples of a fixed set of numeric metrics per entity (VM, host, volume)
+ * in preallocated ring buffers of primitives, so the memory used per entity is fixed and
+ * recording a sample does not allocate anything.
+ *
+ * Samples of an entity are expected to be recorded by a single collector at a time; readers
+ * never block the writer, they use optimistic reads and only fall back to a read lock if a
+ * sample was recorded while they were reading.
+ */
+public class StatsSampleStore {
+    private final int metricCount;
+    private final int capacity;
+    private final Map<Long, Ring> rings = new ConcurrentHashMap<>();
+
+    /**
+     * Result of the aggregation of the samples of an entity: the values of the latest sample and
+     * the sum of every metric over the aggregated samples.
+     */
+    public static class Aggregate {
+        private final double[] latest;
+        private final double[] sum;
+        private int count;
+        private long latestTimestamp;
+        private long oldestTimestamp;
+        private long firstRecorded;
+
+        Aggregate(int metricCount) {
+            latest = new double[metricCount];
+            sum = new double[metricCount];
+        }
+
+        public double getLatest(int metric) {
+            return latest[metric];
+        }
+
+        public double getSum(int metric) {
+            return sum[metric];
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getLatestTimestamp() {
+            return latestTimestamp;
+        }
+
+        public long getOldestTimestamp() {
+            return oldestTimestamp;
+        }
+
+        /**
+         * @return when the first sample of the entity was recorded in this store, older samples
+         * may have been overwritten since.
+         */
+        public long getFirstRecorded() {
+            return firstRecorded;
+        }
+    }
+
+    private static class Ring {
+        private final StampedLock lock = new StampedLock();
+        private final long[] timestamps;
+        private final double[] values;
+        private final long firstRecorded;
+        // number of samples ever recorded, the next one goes to slot written % capacity
+        private long written;
+
+        Ring(int capacity, int metricCount, long firstRecorded) {
+            timestamps = new long[capacity];
+            values = new double[capacity * metricCount];
+            this.firstRecorded = firstRecorded;
+        }
+    }
+
+    public StatsSampleStore(int metricCount, int capacity) {
+        if (metricCount <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("The number of metrics and the capacity must be positive");
+        }
+        this.metricCount = metricCount;
+        this.capacity = capacity;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return rings.size();
+    }
+
+    /**
+     * Records a sample of the entity, overwriting its oldest one when its ring is full.
+     * Samples are expected to be recorded in chronological order.
+     */
+    public void record(long entityId, long timestamp, double... sample) {
+        if (sample.length != metricCount) {
+            throw new IllegalArgumentException(String.format("Expected %d metrics, got %d", metricCount, sample.length));
+        }
+        Ring ring = rings.computeIfAbsent(entityId, id -> new Ring(capacity, metricCount, timestamp));
+        long stamp = ring.lock.writeLock();
+        try {
+            int slot = (int)(ring.written % capacity);
+            ring.timestamps[slot] = timestamp;
+            System.arraycopy(sample, 0, ring.values, slot * metricCount, metricCount);
+            ring.written++;
+        } finally {
+            ring.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Aggregates the samples of the entity recorded at or after the given time.
+     *
+     * @return null if there is no such sample.
+     */
+    public Aggregate aggregate(long entityId, long since) {
+        Ring ring = rings.get(entityId);
+        if (ring == null) {
+            return null;
+        }
+        Aggregate aggregate = new Aggregate(metricCount);
+        long stamp = ring.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            aggregate(ring, since, aggregate);
+            if (ring.lock.validate(stamp)) {
+                return aggregate.count > 0 ? aggregate : null;
+            }
+        }
+        stamp = ring.lock.readLock();
+        try {
+            aggregate(ring, since, aggregate);
+        } finally {
+            ring.lock.unlockRead(stamp);
+        }
+        return aggregate.count > 0 ? aggregate : null;
+    }
+
+    private void aggregate(Ring ring, long since, Aggregate aggregate) {
+        Arrays.fill(aggregate.sum, 0);
+        aggregate.count = 0;
+        aggregate.firstRecorded = ring.firstRecorded;
+
+        long written = ring.written;
+        int available = (int)Math.min(written, capacity);
+        // walk from the newest sample back, so the walk can stop at the first one that is too old
+        for (int i = 1; i <= available; i++) {
+            int slot = (int)((written - i) % capacity);
+            long timestamp = ring.timestamps[slot];
+            if (timestamp < since) {
+                break;
+            }
+            int offset = slot * metricCount;
+            if (aggregate.count == 0) {
+                System.arraycopy(ring.values, offset, aggregate.latest, 0, metricCount);
+                aggregate.latestTimestamp = timestamp;
+            }
+            for (int metric = 0; metric < metricCount; metric++) {
+                aggregate.sum[metric] += ring.values[offset + metric];
+            }
+            aggregate.oldestTimestamp = timestamp;
+            aggregate.count++;
+        }
+    }
+
+    public void remove(long entityId) {
+        rings.remove(entityId);
+    }
+
+    /**
+     * Drops the entities whose latest sample is older than the given time, e.g. expunged VMs or
+     * VMs whose host is now collected by another management server.
+     */
+    public void removeOlderThan(long timestamp) {
+        rings.values().removeIf(ring -> {
+            long stamp = ring.lock.readLock();
+            try {
+                return ring.written == 0 || ring.timestamps[(int)((ring.written - 1) % capacity)] < timestamp;
+            } finally {
+                ring.lock.unlockRead(stamp);
+            }
+        });
+    }
+}
@@ -192,6 +192,7 @@ public class TaggedResourceManagerImpl extends ManagerBase implements TaggedReso
         Transaction.execute(new TransactionCallbackNoReturn() {
             @Override
             public void doInTransactionWithoutResult(TransactionStatus status) {
+                List<ResourceTagVO> newTags = new ArrayList<>(tags.size() * resourceIds.size());
                 for (String key : tags.keySet()) {
                     for (String resourceId : resourceIds) {
                         if (!resourceType.resourceTagsSupport()) {
@@ -214,16 +215,18 @@ public class TaggedResourceManagerImpl extends ManagerBase implements TaggedReso
                             throw new InvalidParameterValueException("Value for the key " + key + " is either null or empty");
                         }
 
-                        ResourceTagVO resourceTag = new ResourceTagVO(key, value, accountDomainPair.first(), accountDomainPair.second(), id, resourceType, customer, resourceUuid);
-                        try {
-                            resourceTag = _resourceTagDao.persist(resourceTag);
-                        } catch (EntityExistsException e) {
-                            throw new CloudRuntimeException(String.format("tag %s already on %s with id %s", resourceTag.getKey(), resourceType.toString(), resourceId),e);
-                        }
-                        resourceTags.add(resourceTag);
-                        if (ResourceObjectType.UserVm.equals(resourceType)) {
-                            informStoragePoolForVmTags(id, key, value);
-                        }
+                        newTags.add(new ResourceTagVO(key, value, accountDomainPair.first(), accountDomainPair.second(), id, resourceType, customer, resourceUuid));
+                    }
+                }
+
+                try {
+                    resourceTags.addAll(_resourceTagDao.persistAll(newTags));
+                } catch (EntityExistsException e) {
+                    throw new CloudRuntimeException(String.format("one of the tags %s is already on %s with id %s", tags.keySet(), resourceType.toString(), resourceIds), e);
+                }
+                if (ResourceObjectType.UserVm.equals(resourceType)) {
+                    for (ResourceTagVO resourceTag : newTags) {
+                        informStoragePoolForVmTags(resourceTag.getResourceId(), resourceTag.getKey(), resourceTag.getValue());
                     }
                 }
             }
@@ -289,8 +292,9 @@ public class TaggedResourceManagerImpl extends ManagerBase implements TaggedReso
         Transaction.execute(new TransactionCallbackNoReturn() {
             @Override
             public void doInTransactionWithoutResult(TransactionStatus status) {
+                // resource tags have no removed column, so they are expunged
+                _resourceTagDao.expungeAll(tagsToDelete.stream().map(ResourceTag::getId).collect(Collectors.toList()));
                 for (ResourceTag tagToRemove : tagsToDelete) {
-                    _resourceTagDao.remove(tagToRemove.getId());
                     s_logger.debug("Removed the tag '" + tagToRemove + "' for resources (" +
                             String.join(", ", resourceIds) + ")");
                     if (ResourceObjectType.UserVm.equals(resourceType)) {
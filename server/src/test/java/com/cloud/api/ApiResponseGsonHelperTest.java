@@ -0,0 +1,85 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.api;
+
+import java.util.UUID;
+
+import org.apache.cloudstack.api.response.SnapshotPolicyResponse;
+import org.apache.cloudstack.context.CallContext;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.cloud.user.Account;
+import com.cloud.user.AccountVO;
+import com.cloud.user.User;
+import com.cloud.user.UserVO;
+import com.google.gson.Gson;
+
+public class ApiResponseGsonHelperTest {
+
+    @After
+    public void cleanup() {
+        CallContext.unregister();
+    }
+
+    private void registerCaller(Account.Type type) {
+        CallContext.unregister();
+        AccountVO account = new AccountVO("testaccount", 1L, "networkdomain", type, "uuid");
+        account.setId(1);
+        UserVO user = new UserVO(1, "testuser", "password", "firstname", "lastName", "email", "timezone",
+                UUID.randomUUID().toString(), User.Source.UNKNOWN);
+        CallContext.register(user, account);
+    }
+
+    private SnapshotPolicyResponse createResponse() {
+        SnapshotPolicyResponse response = new SnapshotPolicyResponse();
+        response.setId("policy-uuid");
+        // fordisplay is only returned to root admins
+        response.setForDisplay(true);
+        return response;
+    }
+
+    @Test
+    public void getResponseGsonKeepsExcludingAdminFieldsForAUserAfterAnAdminCall() {
+        registerCaller(Account.Type.ADMIN);
+        Gson adminGson = ApiResponseGsonHelper.getResponseGson();
+        String adminJson = adminGson.toJson(createResponse());
+        Assert.assertTrue(adminJson.contains("\"fordisplay\":true"));
+        Assert.assertSame(adminGson, ApiResponseGsonHelper.getResponseGson());
+
+        registerCaller(Account.Type.NORMAL);
+        Gson userGson = ApiResponseGsonHelper.getResponseGson();
+        String userJson = userGson.toJson(createResponse());
+
+        Assert.assertNotSame(adminGson, userGson);
+        Assert.assertTrue(userJson.contains("\"id\":\"policy-uuid\""));
+        Assert.assertFalse(userJson.contains("fordisplay"));
+    }
+
+    @Test
+    public void getLogGsonKeepsExcludingAdminFieldsForAUserAfterAnAdminCall() {
+        registerCaller(Account.Type.ADMIN);
+        Assert.assertTrue(ApiResponseGsonHelper.getLogGson().toJson(createResponse()).contains("\"fordisplay\":true"));
+
+        registerCaller(Account.Type.NORMAL);
+        String userJson = ApiResponseGsonHelper.getLogGson().toJson(createResponse());
+
+        Assert.assertTrue(userJson.contains("\"id\":\"policy-uuid\""));
+        Assert.assertFalse(userJson.contains("fordisplay"));
+    }
+}
@@ -25,7 +25,9 @@ import java.util.UUID;
 
 import org.apache.cloudstack.acl.SecurityChecker;
 import org.apache.cloudstack.api.ApiCommandResourceType;
+import org.apache.cloudstack.api.command.admin.host.ListHostsCmd;
 import org.apache.cloudstack.api.command.user.event.ListEventsCmd;
+import org.apache.cloudstack.api.command.user.vm.ListVMsCmd;
 import org.apache.cloudstack.api.response.EventResponse;
 import org.apache.cloudstack.api.response.ListResponse;
 import org.apache.cloudstack.context.CallContext;
@@ -33,6 +35,7 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -40,10 +43,13 @@ import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import com.cloud.api.query.dao.HostJoinDao;
 import com.cloud.api.query.vo.EventJoinVO;
+import com.cloud.api.query.vo.HostJoinVO;
 import com.cloud.event.dao.EventJoinDao;
 import com.cloud.exception.InvalidParameterValueException;
 import com.cloud.exception.PermissionDeniedException;
+import com.cloud.ha.HighAvailabilityManager;
 import com.cloud.network.Network;
 import com.cloud.network.dao.NetworkVO;
 import com.cloud.projects.Project;
@@ -72,6 +78,10 @@ public class QueryManagerImplTest {
     AccountManager accountManager;
     @Mock
     EventJoinDao eventJoinDao;
+    @Mock
+    HostJoinDao hostJoinDao;
+    @Mock
+    HighAvailabilityManager haMgr;
 
     private AccountVO account;
     private UserVO user;
@@ -187,4 +197,56 @@ public class QueryManagerImplTest {
         Mockito.doThrow(new PermissionDeniedException("Denied")).when(accountManager).checkAccess(account, SecurityChecker.AccessType.ListEntry, false, network);
         queryManager.searchForEvents(cmd);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void getListStartIndexTestUsesThePageWithoutAfterId() {
+        ListVMsCmd cmd = Mockito.mock(ListVMsCmd.class);
+        Mockito.when(cmd.getPageSizeVal()).thenReturn(20L);
+        Mockito.when(cmd.getStartIndex()).thenReturn(40L);
+
+        Assert.assertEquals(Long.valueOf(40L), queryManager.getListStartIndex(cmd, null));
+    }
+
+    @Test
+    public void getListStartIndexTestStartsAtTheFirstEntryAfterId() {
+        ListVMsCmd cmd = Mockito.mock(ListVMsCmd.class);
+        Mockito.when(cmd.getPageSizeVal()).thenReturn(20L);
+        Mockito.when(cmd.getStartIndex()).thenReturn(40L);
+
+        Assert.assertEquals(Long.valueOf(0L), queryManager.getListStartIndex(cmd, 100L));
+    }
+
+    @Test
+    public void getListStartIndexTestUnlimitedPageSizeWithAfterId() {
+        ListVMsCmd cmd = Mockito.mock(ListVMsCmd.class);
+        Mockito.when(cmd.getPageSizeVal()).thenReturn(null);
+        Mockito.when(cmd.getStartIndex()).thenReturn(null);
+
+        Assert.assertNull(queryManager.getListStartIndex(cmd, 100L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void searchForServersInternalTestAfterIdFiltersByIdAndIgnoresThePage() {
+        ListHostsCmd cmd = Mockito.mock(ListHostsCmd.class);
+        Mockito.when(cmd.getAfterId()).thenReturn(100L);
+        Mockito.when(cmd.getPageSizeVal()).thenReturn(20L);
+        Mockito.when(cmd.getStartIndex()).thenReturn(40L);
+        final SearchBuilder<HostJoinVO> searchBuilder = Mockito.mock(SearchBuilder.class);
+        final SearchCriteria<HostJoinVO> searchCriteria = Mockito.mock(SearchCriteria.class);
+        when(searchBuilder.entity()).thenReturn(Mockito.mock(HostJoinVO.class));
+        when(searchBuilder.create()).thenReturn(searchCriteria);
+        when(hostJoinDao.createSearchBuilder()).thenReturn(searchBuilder);
+        when(hostJoinDao.searchAndCount(Mockito.eq(searchCriteria), Mockito.any(Filter.class))).thenReturn(new Pair<>(new ArrayList<>(), 0));
+
+        queryManager.searchForServersInternal(cmd);
+
+        Mockito.verify(searchBuilder).and(Mockito.eq("idGT"), Mockito.any(), Mockito.eq(SearchCriteria.Op.GT));
+        Mockito.verify(searchCriteria).setParameters("idGT", 100L);
+        ArgumentCaptor<Filter> filter = ArgumentCaptor.forClass(Filter.class);
+        Mockito.verify(hostJoinDao).searchAndCount(Mockito.eq(searchCriteria), filter.capture());
+        Assert.assertEquals(Long.valueOf(0L), filter.getValue().getOffset());
+        Assert.assertEquals(Long.valueOf(20L), filter.getValue().getLimit());
+        Assert.assertTrue(filter.getValue().getOrderBy().contains("id ASC"));
+    }
+}
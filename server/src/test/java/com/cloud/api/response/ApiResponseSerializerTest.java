@@ -0,0 +1,40 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.api.response;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ApiResponseSerializerTest {
+
+    @Test
+    public void unescapeTestNoEscapes() {
+        String json = "{\"name\":\"vm-1\"}";
+        Assert.assertSame(json, ApiResponseSerializer.unescape(json));
+    }
+
+    @Test
+    public void unescapeTestReplacesTheUnicodeEscapes() {
+        Assert.assertEquals("{\"name\":\"<a&b='c'>\"}", ApiResponseSerializer.unescape("{\"name\":\"\\u003ca\\u0026b\\u003d\\u0027c\\u0027\\u003E\"}"));
+    }
+
+    @Test
+    public void unescapeTestKeepsTheIncompleteEscapes() {
+        Assert.assertEquals("\\u00 \\uzzzz <", ApiResponseSerializer.unescape("\\u00 \\uzzzz \\u003c"));
+        Assert.assertEquals("a\\u00", ApiResponseSerializer.unescape("a\\u00"));
+    }
+}
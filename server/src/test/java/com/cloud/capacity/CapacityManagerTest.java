@@ -23,14 +23,24 @@ import static org.mockito.Matchers.isA;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.Mockito;
 
 import com.cloud.capacity.dao.CapacityDao;
 import com.cloud.dc.ClusterDetailsDao;
 import com.cloud.dc.ClusterDetailsVO;
+import com.cloud.host.Host;
+import com.cloud.host.HostVO;
+import com.cloud.host.dao.HostDao;
 import com.cloud.service.ServiceOfferingVO;
 import com.cloud.service.dao.ServiceOfferingDao;
+import com.cloud.utils.Pair;
+import com.cloud.utils.db.TransactionLegacy;
+import com.cloud.utils.exception.CloudRuntimeException;
 import com.cloud.vm.VirtualMachine;
 
 public class CapacityManagerTest {
@@ -76,4 +86,123 @@ public class CapacityManagerTest {
         Assert.assertTrue(hasCapacity);
 
     }
+
+    private Host mockHost(long id, long clusterId) {
+        Host host = mock(Host.class);
+        when(host.getId()).thenReturn(id);
+        when(host.getClusterId()).thenReturn(clusterId);
+        when(host.getCpus()).thenReturn(4);
+        when(host.getSpeed()).thenReturn(2000L);
+        return host;
+    }
+
+    private CapacityVO mockCapacity(long hostId, short type, long used, long total) {
+        CapacityVO capacity = mock(CapacityVO.class);
+        when(capacity.getHostOrPoolId()).thenReturn(hostId);
+        when(capacity.getCapacityType()).thenReturn(type);
+        when(capacity.getUsedCapacity()).thenReturn(used);
+        when(capacity.getReservedCapacity()).thenReturn(0L);
+        when(capacity.getTotalCapacity()).thenReturn(total);
+        return capacity;
+    }
+
+    @Test
+    public void getHostCapacitySnapshotTest() {
+        capMgr = setUp();
+        List<Host> hosts = Arrays.asList(mockHost(1L, 10L), mockHost(2L, 10L), mockHost(3L, 10L));
+        when(ClusterDetailsDao.findDetail(10L, "cpuOvercommitRatio")).thenReturn(clusterDetailCpu);
+        when(ClusterDetailsDao.findDetail(10L, "memoryOvercommitRatio")).thenReturn(clusterDetailRam);
+        when(clusterDetailCpu.getValue()).thenReturn("2");
+        when(clusterDetailRam.getValue()).thenReturn("1");
+        long gb = 1024L * 1024 * 1024;
+        when(CDao.listByHostIdsAndTypes(Arrays.asList(1L, 2L, 3L), Capacity.CAPACITY_TYPE_CPU, Capacity.CAPACITY_TYPE_MEMORY)).thenReturn(Arrays.asList(
+                mockCapacity(1L, Capacity.CAPACITY_TYPE_CPU, 7000L, 8000L), mockCapacity(1L, Capacity.CAPACITY_TYPE_MEMORY, 0L, 4 * gb),
+                mockCapacity(2L, Capacity.CAPACITY_TYPE_CPU, 0L, 8000L), mockCapacity(2L, Capacity.CAPACITY_TYPE_MEMORY, 3 * gb, 4 * gb),
+                mockCapacity(3L, Capacity.CAPACITY_TYPE_CPU, 0L, 8000L)));
+        when(svo.getCpu()).thenReturn(2);
+        when(svo.getSpeed()).thenReturn(1000);
+        when(svo.getRamSize()).thenReturn(2048);
+
+        HostCapacitySnapshot snapshot = capMgr.getHostCapacitySnapshot(hosts);
+
+        // 7000 + 2000 MHz fits in 8000 MHz with a CPU overcommit ratio of 2
+        Assert.assertEquals(new Pair<>(true, true), snapshot.checkIfHostHasCpuCapabilityAndCapacity(1L, svo, false));
+        // 3 GB + 2 GB doesn't fit in 4 GB
+        Assert.assertEquals(new Pair<>(true, false), snapshot.checkIfHostHasCpuCapabilityAndCapacity(2L, svo, false));
+        // no memory capacity entry
+        Assert.assertNull(snapshot.checkIfHostHasCpuCapabilityAndCapacity(3L, svo, false));
+        Mockito.verify(ClusterDetailsDao, Mockito.times(1)).findDetail(10L, "cpuOvercommitRatio");
+    }
+
+    private void mockAllocation(long hostId, long vmId, long usedCpu, long usedMemory) {
+        HostDao hostDao = mock(HostDao.class);
+        capMgr._hostDao = hostDao;
+        HostVO host = mock(HostVO.class);
+        when(hostDao.findById(hostId)).thenReturn(host);
+        when(host.getId()).thenReturn(hostId);
+        when(host.getClusterId()).thenReturn(10L);
+        when(host.getCpus()).thenReturn(4);
+        when(host.getSpeed()).thenReturn(2000L);
+        when(ClusterDetailsDao.findDetail(10L, "cpuOvercommitRatio")).thenReturn(clusterDetailCpu);
+        when(ClusterDetailsDao.findDetail(10L, "memoryOvercommitRatio")).thenReturn(clusterDetailRam);
+        when(clusterDetailCpu.getValue()).thenReturn("1");
+        when(clusterDetailRam.getValue()).thenReturn("1");
+
+        when(vm.getId()).thenReturn(vmId);
+        when(vm.getHostId()).thenReturn(hostId);
+        when(vm.getServiceOfferingId()).thenReturn(2L);
+        when(SOfferingDao.findById(vmId, 2L)).thenReturn(svo);
+        when(svo.getCpu()).thenReturn(1);
+        when(svo.getSpeed()).thenReturn(2000);
+        when(svo.getRamSize()).thenReturn(1024);
+
+        long gb = 1024L * 1024 * 1024;
+        CapacityVO cpu = mockCapacity(hostId, Capacity.CAPACITY_TYPE_CPU, usedCpu, 8000L);
+        CapacityVO memory = mockCapacity(hostId, Capacity.CAPACITY_TYPE_MEMORY, usedMemory, 4 * gb);
+        CapacityVO cpuCore = mockCapacity(hostId, Capacity.CAPACITY_TYPE_CPU_CORE, 2L, 4L);
+        when(cpu.getId()).thenReturn(100L);
+        when(memory.getId()).thenReturn(101L);
+        when(cpuCore.getId()).thenReturn(102L);
+        when(CDao.findByHostIdType(hostId, Capacity.CAPACITY_TYPE_CPU)).thenReturn(cpu);
+        when(CDao.findByHostIdType(hostId, Capacity.CAPACITY_TYPE_MEMORY)).thenReturn(memory);
+        when(CDao.findByHostIdType(hostId, Capacity.CAPACITY_TYPE_CPU_CORE)).thenReturn(cpuCore);
+        when(CDao.lockRow(100L, true)).thenReturn(cpu);
+        when(CDao.lockRow(101L, true)).thenReturn(memory);
+        when(CDao.lockRow(102L, true)).thenReturn(cpuCore);
+    }
+
+    @Test
+    public void allocateVmCapacityTestIgnoresTheOwnPlannedReservationOfTheVm() {
+        capMgr = setUp();
+        long gb = 1024L * 1024 * 1024;
+        // the host has exactly the room left for the VM, which is still reserved in the ledger
+        mockAllocation(1L, 5L, 6000L, 3 * gb);
+        capMgr._plannedCapacity.reserve(5L, 1L, 2000L, gb, (pendingCpu, pendingMemory) -> true);
+
+        TransactionLegacy txn = TransactionLegacy.open("allocateVmCapacityTestIgnoresTheOwnPlannedReservationOfTheVm");
+        try {
+            capMgr.allocateVmCapacity(vm, false);
+        } finally {
+            txn.close();
+        }
+
+        Mockito.verify(CDao).update(eq(100L), isA(CapacityVO.class));
+        Mockito.verify(CDao).update(eq(101L), isA(CapacityVO.class));
+    }
+
+    @Test(expected = CloudRuntimeException.class)
+    public void allocateVmCapacityTestCountsThePlannedReservationsOfOtherVms() {
+        capMgr = setUp();
+        long gb = 1024L * 1024 * 1024;
+        mockAllocation(1L, 5L, 6000L, 3 * gb);
+        capMgr._plannedCapacity.reserve(5L, 1L, 2000L, gb, (pendingCpu, pendingMemory) -> true);
+        capMgr._plannedCapacity.reserve(6L, 1L, 2000L, gb, (pendingCpu, pendingMemory) -> true);
+
+        TransactionLegacy txn = TransactionLegacy.open("allocateVmCapacityTestCountsThePlannedReservationsOfOtherVms");
+        try {
+            capMgr.allocateVmCapacity(vm, false);
+        } finally {
+            txn.close();
+        }
+    }
 }
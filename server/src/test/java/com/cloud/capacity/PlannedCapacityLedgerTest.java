@@ -0,0 +1,104 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.capacity;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PlannedCapacityLedgerTest {
+
+    private static PlannedCapacityLedger.CapacityCheck fitsWithin(long cpu, long memory) {
+        return (pendingCpu, pendingMemory) -> pendingCpu <= cpu && pendingMemory <= memory;
+    }
+
+    @Test
+    public void reserveCountsOtherReservationsOfTheHost() {
+        PlannedCapacityLedger ledger = new PlannedCapacityLedger();
+
+        Assert.assertTrue(ledger.reserve(1L, 10L, 1000L, 1024L, fitsWithin(1500L, 4096L)));
+        Assert.assertFalse(ledger.reserve(2L, 10L, 1000L, 1024L, fitsWithin(1500L, 4096L)));
+        Assert.assertTrue(ledger.reserve(2L, 11L, 1000L, 1024L, fitsWithin(1500L, 4096L)));
+
+        Assert.assertArrayEquals(new long[] {1000L, 1024L}, ledger.getPending(10L));
+        Assert.assertEquals(2, ledger.getPendingReservationCount());
+        Assert.assertEquals(2, ledger.getReservationCount());
+        Assert.assertEquals(1, ledger.getConflictCount());
+    }
+
+    @Test
+    public void reserveReplacesPreviousReservationOfTheVm() {
+        PlannedCapacityLedger ledger = new PlannedCapacityLedger();
+
+        Assert.assertTrue(ledger.reserve(1L, 10L, 1000L, 1024L, fitsWithin(1500L, 4096L)));
+        Assert.assertTrue(ledger.reserve(1L, 11L, 1000L, 1024L, fitsWithin(1500L, 4096L)));
+
+        Assert.assertNull(ledger.getPending(10L));
+        Assert.assertArrayEquals(new long[] {1000L, 1024L}, ledger.getPending(11L));
+        Assert.assertEquals(1, ledger.getPendingReservationCount());
+    }
+
+    @Test
+    public void getPendingExcludesTheGivenVm() {
+        PlannedCapacityLedger ledger = new PlannedCapacityLedger();
+
+        ledger.reserve(1L, 10L, 1000L, 1024L, fitsWithin(4000L, 4096L));
+        ledger.reserve(2L, 10L, 500L, 512L, fitsWithin(4000L, 4096L));
+
+        Assert.assertArrayEquals(new long[] {500L, 512L}, ledger.getPending(10L, 1L));
+        Assert.assertArrayEquals(new long[] {1500L, 1536L}, ledger.getPending(10L, 3L));
+        ledger.release(2L);
+        Assert.assertNull(ledger.getPending(10L, 1L));
+    }
+
+    @Test
+    public void releaseFreesTheCapacity() {
+        PlannedCapacityLedger ledger = new PlannedCapacityLedger();
+
+        ledger.reserve(1L, 10L, 1000L, 1024L, fitsWithin(1500L, 4096L));
+        ledger.release(1L);
+        ledger.release(1L);
+
+        Assert.assertNull(ledger.getPending(10L));
+        Assert.assertEquals(0, ledger.getPendingReservationCount());
+        Assert.assertTrue(ledger.reserve(2L, 10L, 1000L, 1024L, fitsWithin(1500L, 4096L)));
+    }
+
+    @Test
+    public void reservationsExpire() {
+        PlannedCapacityLedger ledger = new PlannedCapacityLedger(0);
+
+        Assert.assertTrue(ledger.reserve(1L, 10L, 1000L, 1024L, fitsWithin(1500L, 4096L)));
+        Assert.assertTrue(ledger.reserve(2L, 10L, 1000L, 1024L, fitsWithin(1500L, 4096L)));
+
+        Assert.assertNull(ledger.getPending(10L));
+        Assert.assertEquals(0, ledger.getPendingReservationCount());
+        Assert.assertEquals(2, ledger.getExpiredCount());
+    }
+
+    @Test
+    public void conflictRate() {
+        PlannedCapacityLedger ledger = new PlannedCapacityLedger();
+        Assert.assertEquals(0, ledger.getConflictRate(), 0);
+
+        ledger.reserve(1L, 10L, 1000L, 1024L, fitsWithin(1000L, 1024L));
+        ledger.reserve(2L, 10L, 1000L, 1024L, fitsWithin(1000L, 1024L));
+        Assert.assertEquals(0.5, ledger.getConflictRate(), 0);
+
+        ledger.reset();
+        Assert.assertEquals(0, ledger.getConflictRate(), 0);
+    }
+}
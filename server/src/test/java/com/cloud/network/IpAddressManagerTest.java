@@ -26,6 +26,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -51,6 +52,9 @@ import com.cloud.network.rules.StaticNatImpl;
 import com.cloud.offerings.NetworkOfferingVO;
 import com.cloud.offerings.dao.NetworkOfferingDao;
 import com.cloud.user.AccountVO;
+import com.cloud.utils.db.Filter;
+import com.cloud.utils.db.SearchCriteria;
+import com.cloud.utils.db.TransactionLegacy;
 import com.cloud.utils.net.Ip;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -230,4 +234,83 @@ public class IpAddressManagerTest {
         return network;
     }
 
-}
\ No newline at end of file
+
+    private IPAddressVO mockAddress(long id, IpAddress.State state) {
+        IPAddressVO address = mock(IPAddressVO.class);
+        when(address.getId()).thenReturn(id);
+        when(address.getState()).thenReturn(state);
+        return address;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void lockFreePublicIpTestSkipsAddressesClaimedOnThisServer() {
+        IPAddressVO first = mockAddress(1L, IpAddress.State.Free);
+        IPAddressVO second = mockAddress(2L, IpAddress.State.Free);
+        SearchCriteria<IPAddressVO> sc = mock(SearchCriteria.class);
+        Filter filter = new Filter(IPAddressVO.class, "forSystemVms", true, 0L, 1L);
+        when(ipAddressDao.search(Mockito.eq(sc), Mockito.any(Filter.class))).thenReturn(Arrays.asList(first, second));
+        when(ipAddressDao.lockRow(1L, true)).thenReturn(first);
+        when(ipAddressDao.lockRow(2L, true)).thenReturn(second);
+
+        List<Long> claimedAddressIds = new ArrayList<>();
+        Assert.assertEquals(Arrays.asList(first), ipAddressManager.lockFreePublicIp(sc, filter, true, claimedAddressIds));
+        Assert.assertEquals(Arrays.asList(second), ipAddressManager.lockFreePublicIp(sc, filter, true, claimedAddressIds));
+
+        Assert.assertEquals(Arrays.asList(1L, 2L), claimedAddressIds);
+        Mockito.verify(ipAddressDao, Mockito.times(1)).lockRow(1L, true);
+        Mockito.verify(ipAddressDao, Mockito.never()).lockRows(sc, filter, true);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void lockFreePublicIpTestFallsBackWhenClaimedAddressWasTaken() {
+        IPAddressVO taken = mockAddress(3L, IpAddress.State.Allocated);
+        List<IPAddressVO> firstFree = Arrays.asList(mock(IPAddressVO.class));
+        SearchCriteria<IPAddressVO> sc = mock(SearchCriteria.class);
+        Filter filter = new Filter(IPAddressVO.class, "forSystemVms", true, 0L, 1L);
+        when(ipAddressDao.search(Mockito.eq(sc), Mockito.any(Filter.class))).thenReturn(Arrays.asList(taken));
+        when(ipAddressDao.lockRow(3L, true)).thenReturn(taken);
+        when(ipAddressDao.lockRows(sc, filter, true)).thenReturn(firstFree);
+
+        Assert.assertEquals(firstFree, ipAddressManager.lockFreePublicIp(sc, filter, true, new ArrayList<>()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void lockFreePublicIpWithinTransaction(boolean commit) {
+        IPAddressVO first = mockAddress(1L, IpAddress.State.Free);
+        IPAddressVO second = mockAddress(2L, IpAddress.State.Free);
+        SearchCriteria<IPAddressVO> sc = mock(SearchCriteria.class);
+        Filter filter = new Filter(IPAddressVO.class, "forSystemVms", true, 0L, 1L);
+        when(ipAddressDao.search(Mockito.eq(sc), Mockito.any(Filter.class))).thenReturn(Arrays.asList(first, second));
+        when(ipAddressDao.lockRow(1L, true)).thenReturn(first);
+        when(ipAddressDao.lockRow(2L, true)).thenReturn(second);
+
+        TransactionLegacy txn = TransactionLegacy.open("lockFreePublicIpWithinTransaction");
+        try {
+            txn.start();
+            List<Long> claimedAddressIds = new ArrayList<>();
+            Assert.assertEquals(Arrays.asList(first), ipAddressManager.lockFreePublicIp(sc, filter, true, claimedAddressIds));
+            ipAddressManager.releaseAfterCompletion(claimedAddressIds);
+
+            Assert.assertEquals(Arrays.asList(second), ipAddressManager.lockFreePublicIp(sc, filter, true, new ArrayList<>()));
+            if (commit) {
+                txn.commit();
+            }
+        } finally {
+            txn.close();
+        }
+
+        Assert.assertEquals(Arrays.asList(first), ipAddressManager.lockFreePublicIp(sc, filter, true, new ArrayList<>()));
+    }
+
+    @Test
+    public void releaseAfterCompletionTestKeepsTheClaimsUntilCommit() {
+        lockFreePublicIpWithinTransaction(true);
+    }
+
+    @Test
+    public void releaseAfterCompletionTestKeepsTheClaimsUntilRollback() {
+        lockFreePublicIpWithinTransaction(false);
+    }
+}
@@ -0,0 +1,114 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.influxdb.InfluxDB;
+import org.influxdb.dto.Point;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class InfluxDbStatsExporterTest {
+
+    private final InfluxDB connection = Mockito.mock(InfluxDB.class);
+    private final List<List<Point>> batches = new ArrayList<>();
+    private InfluxDbStatsExporter exporter;
+
+    @After
+    public void tearDown() {
+        if (exporter != null) {
+            exporter.stop();
+        }
+    }
+
+    private Point point(long value) {
+        return Point.measurement("vm_stats").time(System.currentTimeMillis(), TimeUnit.MILLISECONDS).addField("value", value).build();
+    }
+
+    private synchronized void write(InfluxDB influxDb, List<Point> points) {
+        batches.add(new ArrayList<>(points));
+        notifyAll();
+    }
+
+    private synchronized int writtenPoints(int expected, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        int written = 0;
+        while (true) {
+            written = batches.stream().mapToInt(List::size).sum();
+            long left = deadline - System.currentTimeMillis();
+            if (written >= expected || left <= 0) {
+                return written;
+            }
+            wait(left);
+        }
+    }
+
+    @Test
+    public void exportTestDropsThePointsWhenTheQueueIsFull() {
+        exporter = new InfluxDbStatsExporter(() -> connection, this::write, 2, 0);
+
+        Assert.assertTrue(exporter.export(point(1)));
+        Assert.assertTrue(exporter.export(point(2)));
+        Assert.assertFalse(exporter.export(point(3)));
+
+        Assert.assertEquals(2, exporter.getQueueDepth());
+        Assert.assertEquals(1, exporter.getDroppedCount());
+    }
+
+    @Test
+    public void runTestWritesTheQueuedPointsInBatches() throws InterruptedException {
+        exporter = new InfluxDbStatsExporter(() -> connection, this::write, 100, 0);
+        for (int i = 0; i < 50; i++) {
+            exporter.export(point(i));
+        }
+        exporter.start();
+
+        Assert.assertEquals(50, writtenPoints(50, 5000));
+        Assert.assertTrue(batches.size() < 50);
+        Assert.assertEquals(50, exporter.getExportedCount());
+        Assert.assertEquals(0, exporter.getQueueDepth());
+    }
+
+    @Test
+    public void runTestCountsTheFailedPointsAndReconnects() throws InterruptedException {
+        AtomicInteger connections = new AtomicInteger();
+        exporter = new InfluxDbStatsExporter(() -> {
+            connections.incrementAndGet();
+            return connection;
+        }, (influxDb, points) -> {
+            throw new RuntimeException("write failed");
+        }, 100, 0);
+        exporter.export(point(1));
+        exporter.start();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (exporter.getFailedCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        Assert.assertEquals(1, exporter.getFailedCount());
+        Assert.assertEquals(0, exporter.getExportedCount());
+        Assert.assertEquals(1, connections.get());
+        Mockito.verify(connection, Mockito.timeout(5000)).close();
+    }
+}
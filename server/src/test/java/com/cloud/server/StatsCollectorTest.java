@@ -85,6 +85,9 @@ public class StatsCollectorTest {
     @Captor
     ArgumentCaptor<VmStatsVO> vmStatsVOCaptor;
 
+    @Captor
+    ArgumentCaptor<List<VmStatsVO>> vmStatsVOListCaptor;
+
     @Captor
     ArgumentCaptor<Boolean> booleanCaptor;
 
@@ -304,6 +307,31 @@ public class StatsCollectorTest {
         Assert.assertEquals(timestamp, actual.getTimestamp());
     }
 
+    @Test
+    public void persistVirtualMachineStatsTestPersistsAllInOneBatch() {
+        statsCollector.msId = 1L;
+        Date timestamp = new Date();
+        List<VmStatsEntry> stats = Arrays.asList(new VmStatsEntry(2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, "vm"),
+                new VmStatsEntry(3, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, "vm"));
+
+        statsCollector.persistVirtualMachineStats(stats, timestamp);
+
+        Mockito.verify(vmStatsDaoMock).persistAll(vmStatsVOListCaptor.capture());
+        Mockito.verify(vmStatsDaoMock, Mockito.never()).persist(Mockito.any());
+        List<VmStatsVO> actual = vmStatsVOListCaptor.getValue();
+        Assert.assertEquals(2, actual.size());
+        Assert.assertEquals(Long.valueOf(2L), actual.get(0).getVmId());
+        Assert.assertEquals(Long.valueOf(3L), actual.get(1).getVmId());
+        Assert.assertEquals(timestamp, actual.get(1).getTimestamp());
+    }
+
+    @Test
+    public void persistVirtualMachineStatsTestNothingToPersist() {
+        statsCollector.persistVirtualMachineStats(new ArrayList<>(), new Date());
+
+        Mockito.verify(vmStatsDaoMock, Mockito.never()).persistAll(Mockito.any());
+    }
+
     @Test
     public void getVmStatsTestWithAccumulateNotNull() {
         Mockito.doReturn(Arrays.asList(vmStatsVoMock1)).when(vmStatsDaoMock).findByVmIdOrderByTimestampDesc(Mockito.anyLong());
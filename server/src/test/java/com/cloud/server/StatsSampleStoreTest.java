@@ -0,0 +1,88 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.server;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StatsSampleStoreTest {
+
+    private final StatsSampleStore store = new StatsSampleStore(2, 3);
+
+    @Test
+    public void aggregateTestUnknownEntity() {
+        Assert.assertNull(store.aggregate(1L, 0L));
+    }
+
+    @Test
+    public void aggregateTestLatestAndSumOfTheSamplesSince() {
+        store.record(1L, 1000L, 1, 10);
+        store.record(1L, 2000L, 2, 20);
+        store.record(1L, 3000L, 3, 30);
+
+        StatsSampleStore.Aggregate aggregate = store.aggregate(1L, 2000L);
+
+        Assert.assertEquals(2, aggregate.getCount());
+        Assert.assertEquals(3, aggregate.getLatest(0), 0);
+        Assert.assertEquals(30, aggregate.getLatest(1), 0);
+        Assert.assertEquals(5, aggregate.getSum(0), 0);
+        Assert.assertEquals(50, aggregate.getSum(1), 0);
+        Assert.assertEquals(3000L, aggregate.getLatestTimestamp());
+        Assert.assertEquals(2000L, aggregate.getOldestTimestamp());
+        Assert.assertEquals(1000L, aggregate.getFirstRecorded());
+    }
+
+    @Test
+    public void aggregateTestOldestSamplesAreOverwritten() {
+        for (int i = 1; i <= 5; i++) {
+            store.record(1L, i * 1000L, i, -i);
+        }
+
+        StatsSampleStore.Aggregate aggregate = store.aggregate(1L, 0L);
+
+        Assert.assertEquals(3, aggregate.getCount());
+        Assert.assertEquals(5, aggregate.getLatest(0), 0);
+        Assert.assertEquals(3 + 4 + 5, aggregate.getSum(0), 0);
+        Assert.assertEquals(-(3 + 4 + 5), aggregate.getSum(1), 0);
+        Assert.assertEquals(3000L, aggregate.getOldestTimestamp());
+    }
+
+    @Test
+    public void aggregateTestNoSampleSince() {
+        store.record(1L, 1000L, 1, 10);
+
+        Assert.assertNull(store.aggregate(1L, 2000L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void recordTestWrongNumberOfMetrics() {
+        store.record(1L, 1000L, 1, 2, 3);
+    }
+
+    @Test
+    public void removeOlderThanTestDropsOnlyTheStaleEntities() {
+        store.record(1L, 1000L, 1, 1);
+        store.record(2L, 1000L, 1, 1);
+        store.record(2L, 5000L, 1, 1);
+
+        store.removeOlderThan(2000L);
+
+        Assert.assertEquals(1, store.size());
+        Assert.assertNull(store.aggregate(1L, 0L));
+        Assert.assertNotNull(store.aggregate(2L, 0L));
+    }
+}
@@ -191,6 +191,17 @@ public class MockUsageEventDao implements UsageEventDao{
         return entity;
     }
 
+    @Override
+    public List<UsageEventVO> persistAll(List<UsageEventVO> entities) {
+        persistedItems.addAll(entities);
+        return entities;
+    }
+
+    @Override
+    public int updateAll(List<UsageEventVO> entities) {
+        return 0;
+    }
+
     @Override
     public boolean remove(Long id) {
         return false;
@@ -206,6 +217,11 @@ public class MockUsageEventDao implements UsageEventDao{
         return false;
     }
 
+    @Override
+    public int expungeAll(List<Long> ids) {
+        return 0;
+    }
+
     @Override
     public int expunge(SearchCriteria<UsageEventVO> sc) {
         return 0;
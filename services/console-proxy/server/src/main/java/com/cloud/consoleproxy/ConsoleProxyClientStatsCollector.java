@@ -75,6 +75,9 @@ public class ConsoleProxyClientStatsCollector {
                 conn.createTime = client.getClientCreateTime();
                 conn.lastUsedTime = client.getClientLastFrontEndActivityTime();
                 conn.setSessionUuid(client.getSessionUuid());
+                if (client instanceof ConsoleProxyNoVncClient) {
+                    conn.setRelayStats((ConsoleProxyNoVncClient)client);
+                }
                 conns.add(conn);
             }
         }
@@ -90,6 +93,11 @@ public class ConsoleProxyClientStatsCollector {
         public long createTime;
         public long lastUsedTime;
         protected String sessionUuid;
+        public long bytesFromServer;
+        public long bytesToServer;
+        public long bytesPerSecond;
+        public double sendLatencyMean;
+        public long sendLatencyP99;
 
         public String getSessionUuid() {
             return sessionUuid;
@@ -101,5 +109,14 @@ public class ConsoleProxyClientStatsCollector {
 
         public ConsoleProxyConnection() {
         }
+
+        void setRelayStats(ConsoleProxyNoVncClient client) {
+            bytesFromServer = client.getBytesFromServer();
+            bytesToServer = client.getBytesToServer();
+            long seconds = Math.max(1, (System.currentTimeMillis() - createTime) / 1000);
+            bytesPerSecond = (bytesFromServer + bytesToServer) / seconds;
+            sendLatencyMean = client.getSendLatency().getMean();
+            sendLatencyP99 = client.getSendLatency().getPercentile(99);
+        }
     }
 }
@@ -0,0 +1,230 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.consoleproxy;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Relays the traffic of the console sessions on a few selector threads, instead of a thread per session.
+ *
+ * Handlers are either registered with a channel, in which case they are called when it is readable or writable,
+ * or without one. All of them are ticked about once a second, which is when they can check on the state of their
+ * session. Handlers are only ever called on the thread of their loop.
+ */
+public class ConsoleProxyEventLoop implements Runnable {
+    private static final Logger s_logger = Logger.getLogger(ConsoleProxyEventLoop.class);
+
+    protected static final long TICK_INTERVAL_MS = 1000L;
+    private static final int LOOP_COUNT = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static ConsoleProxyEventLoop[] s_loops;
+    private static final AtomicInteger s_nextLoop = new AtomicInteger(0);
+    private static ExecutorService s_connectExecutor;
+
+    public interface Handler {
+        void onReadable(SelectionKey key) throws IOException;
+
+        void onWritable(SelectionKey key) throws IOException;
+
+        /**
+         * @return false if the handler is done, in which case it is unregistered and its channel key cancelled.
+         */
+        boolean onTick(long now);
+
+        void onClosed();
+    }
+
+    private final String _name;
+    private final Selector _selector;
+    private final Queue<Runnable> _tasks = new ConcurrentLinkedQueue<>();
+    private final Set<Handler> _handlers = ConcurrentHashMap.newKeySet();
+    private volatile boolean _running = true;
+
+    protected ConsoleProxyEventLoop(String name) throws IOException {
+        _name = name;
+        _selector = Selector.open();
+    }
+
+    /**
+     * @return one of the loops, picked round-robin, starting them on first use.
+     */
+    public static synchronized ConsoleProxyEventLoop next() {
+        if (s_loops == null) {
+            ConsoleProxyEventLoop[] loops = new ConsoleProxyEventLoop[LOOP_COUNT];
+            for (int i = 0; i < loops.length; i++) {
+                try {
+                    loops[i] = new ConsoleProxyEventLoop("Console-Proxy-Event-Loop-" + i);
+                } catch (IOException e) {
+                    throw new RuntimeException("Unable to open the selector of the console proxy event loop", e);
+                }
+                Thread thread = new Thread(loops[i], loops[i]._name);
+                thread.setDaemon(true);
+                thread.start();
+            }
+            s_loops = loops;
+        }
+        return s_loops[Math.floorMod(s_nextLoop.getAndIncrement(), s_loops.length)];
+    }
+
+    /**
+     * Runs the blocking part of setting up a session (connecting and authenticating to the VNC server) off the
+     * event loops, on threads that are reused across sessions.
+     */
+    public static synchronized void executeBlocking(Runnable task) {
+        if (s_connectExecutor == null) {
+            AtomicInteger count = new AtomicInteger(0);
+            s_connectExecutor = Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "Console-Proxy-Session-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        s_connectExecutor.execute(task);
+    }
+
+    /**
+     * Runs the task on the thread of the loop.
+     */
+    public void execute(Runnable task) {
+        _tasks.add(task);
+        _selector.wakeup();
+    }
+
+    public void register(SelectableChannel channel, int ops, Handler handler) {
+        execute(() -> {
+            try {
+                channel.register(_selector, ops, handler);
+                _handlers.add(handler);
+            } catch (ClosedChannelException e) {
+                s_logger.info("Channel of " + handler + " was closed before it could be registered");
+                handler.onClosed();
+            }
+        });
+    }
+
+    public void register(Handler handler) {
+        execute(() -> _handlers.add(handler));
+    }
+
+    /**
+     * Updates the interest set of the channel from any thread, once it is registered.
+     */
+    public void setInterest(SelectableChannel channel, int ops, boolean enabled) {
+        execute(() -> {
+            SelectionKey key = channel.keyFor(_selector);
+            if (key != null && key.isValid()) {
+                key.interestOps(enabled ? key.interestOps() | ops : key.interestOps() & ~ops);
+            }
+        });
+    }
+
+    public int getHandlerCount() {
+        return _handlers.size();
+    }
+
+    public void stop() {
+        _running = false;
+        _selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        long lastTick = System.currentTimeMillis();
+        while (_running) {
+            try {
+                _selector.select(TICK_INTERVAL_MS);
+
+                Iterator<SelectionKey> it = _selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    handle(key);
+                }
+
+                Runnable task;
+                while ((task = _tasks.poll()) != null) {
+                    task.run();
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastTick >= TICK_INTERVAL_MS) {
+                    lastTick = now;
+                    tick(now);
+                }
+            } catch (Throwable e) {
+                s_logger.error("Unexpected exception in " + _name, e);
+            }
+        }
+        for (Handler handler : _handlers) {
+            close(handler);
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        Handler handler = (Handler)key.attachment();
+        try {
+            if (key.isValid() && key.isReadable()) {
+                handler.onReadable(key);
+            }
+            if (key.isValid() && key.isWritable()) {
+                handler.onWritable(key);
+            }
+        } catch (IOException e) {
+            s_logger.info("Closing " + handler + " due to " + e.getMessage());
+            close(handler);
+        }
+    }
+
+    private void tick(long now) {
+        for (Handler handler : _handlers) {
+            boolean alive;
+            try {
+                alive = handler.onTick(now);
+            } catch (Throwable e) {
+                s_logger.warn("Unexpected exception while checking " + handler, e);
+                alive = false;
+            }
+            if (!alive) {
+                close(handler);
+            }
+        }
+    }
+
+    private void close(Handler handler) {
+        _handlers.remove(handler);
+        for (SelectionKey key : _selector.keys()) {
+            if (key.attachment() == handler) {
+                key.cancel();
+            }
+        }
+        handler.onClosed();
+    }
+}
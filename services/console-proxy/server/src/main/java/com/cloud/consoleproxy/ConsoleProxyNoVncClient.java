@@ -19,21 +19,31 @@ package com.cloud.consoleproxy;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
 import org.eclipse.jetty.websocket.api.extensions.Frame;
 
 import java.awt.Image;
+import java.io.EOFException;
 import java.io.IOException;
 import java.net.URI;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.cloud.consoleproxy.vnc.NoVncClient;
+import com.cloud.utils.LatencyHistogram;
 
 public class ConsoleProxyNoVncClient implements ConsoleProxyClient {
     private static final Logger s_logger = Logger.getLogger(ConsoleProxyNoVncClient.class);
     private static int nextClientId = 0;
 
+    private static final int RELAY_BUFFER_SIZE = 64 * 1024;
+
     private NoVncClient client;
     private Session session;
 
@@ -43,7 +53,14 @@ public class ConsoleProxyNoVncClient implements ConsoleProxyClient {
     protected long createTime = System.currentTimeMillis();
     protected long lastFrontEndActivityTime = System.currentTimeMillis();
 
-    private boolean connectionAlive;
+    private volatile boolean connectionAlive;
+
+    private final Object writeLock = new Object();
+    private ChannelRelay channelRelay;
+
+    private final AtomicLong bytesFromServer = new AtomicLong(0);
+    private final AtomicLong bytesToServer = new AtomicLong(0);
+    private final LatencyHistogram sendLatency = new LatencyHistogram();
 
     private ConsoleProxyClientParam clientParam;
     private String sessionUuid;
@@ -80,9 +97,19 @@ public class ConsoleProxyNoVncClient implements ConsoleProxyClient {
     }
 
     public void sendClientFrame(Frame f) throws IOException {
-        byte[] data = new byte[f.getPayloadLength()];
-        f.getPayload().get(data);
-        client.write(data);
+        if (!f.hasPayload()) {
+            return;
+        }
+        bytesToServer.addAndGet(f.getPayloadLength());
+        synchronized (writeLock) {
+            if (channelRelay != null) {
+                channelRelay.write(f.getPayload());
+                return;
+            }
+            byte[] data = new byte[f.getPayloadLength()];
+            f.getPayload().get(data);
+            client.write(data);
+        }
     }
 
     @Override
@@ -93,7 +120,7 @@ public class ConsoleProxyNoVncClient implements ConsoleProxyClient {
         this.sessionUuid = param.getSessionUuid();
 
         updateFrontEndActivityTime();
-        Thread worker = new Thread(new Runnable() {
+        ConsoleProxyEventLoop.executeBlocking(new Runnable() {
             public void run() {
                 try {
 
@@ -105,34 +132,166 @@ public class ConsoleProxyNoVncClient implements ConsoleProxyClient {
 
                     authenticateToVNCServer();
 
-                    int readBytes;
-                    byte[] b;
-                    while (connectionAlive) {
-                        if (client.isVncOverWebSocketConnection()) {
-                            if (client.isVncOverWebSocketConnectionOpen()) {
-                                updateFrontEndActivityTime();
-                            }
-                            connectionAlive = client.isVncOverWebSocketConnectionAlive();
-                        } else {
-                            b = new byte[100];
-                            readBytes = client.read(b);
-                            if (readBytes == -1) {
-                                break;
-                            }
-                            if (readBytes > 0) {
-                                session.getRemote().sendBytes(ByteBuffer.wrap(b, 0, readBytes));
-                                updateFrontEndActivityTime();
-                            }
-                        }
-                    }
+                    startRelay();
+                } catch (IOException | RuntimeException e) {
+                    s_logger.error("Failed to relay the console session " + sessionUuid + " to the VNC server", e);
                     connectionAlive = false;
-                } catch (IOException e) {
-                    e.printStackTrace();
+                    client.close();
                 }
             }
 
         });
-        worker.start();
+    }
+
+    /**
+     * Relays the data of the VNC server to the session: a direct connection is relayed by the event loops without
+     * blocking, a websocket connection relays itself and is only checked on by them. A tunnel connection is read
+     * on the current thread, as it may be encrypted.
+     */
+    private void startRelay() throws IOException {
+        if (client.isVncOverWebSocketConnection()) {
+            ConsoleProxyEventLoop.next().register(new ChannelRelay(null, null));
+            return;
+        }
+
+        SocketChannel channel = client.getChannel();
+        if (channel != null) {
+            ConsoleProxyEventLoop loop = ConsoleProxyEventLoop.next();
+            synchronized (writeLock) {
+                channel.configureBlocking(false);
+                channelRelay = new ChannelRelay(loop, channel);
+            }
+            loop.register(channel, SelectionKey.OP_READ, channelRelay);
+            return;
+        }
+
+        byte[] b = new byte[RELAY_BUFFER_SIZE];
+        int readBytes;
+        while (connectionAlive) {
+            readBytes = client.read(b);
+            if (readBytes == -1) {
+                break;
+            }
+            if (readBytes > 0) {
+                long start = System.currentTimeMillis();
+                session.getRemote().sendBytes(ByteBuffer.wrap(b, 0, readBytes));
+                sendLatency.record(System.currentTimeMillis() - start);
+                bytesFromServer.addAndGet(readBytes);
+                updateFrontEndActivityTime();
+            }
+        }
+        connectionAlive = false;
+        client.close();
+    }
+
+    /**
+     * Relays a session on an event loop. The data read from the VNC server is handed to the websocket as is, and the
+     * channel is not read again until it is sent, so a slow viewer pushes back on the server rather than queueing up
+     * in the proxy. Without a channel, the relay only checks that the websocket connection to the server is alive.
+     */
+    private class ChannelRelay implements ConsoleProxyEventLoop.Handler {
+        private final ConsoleProxyEventLoop loop;
+        private final SocketChannel channel;
+        private final ByteBuffer readBuffer;
+        private final Queue<ByteBuffer> pendingWrites = new ArrayDeque<>();
+
+        ChannelRelay(ConsoleProxyEventLoop loop, SocketChannel channel) {
+            this.loop = loop;
+            this.channel = channel;
+            this.readBuffer = channel != null ? ByteBuffer.allocateDirect(RELAY_BUFFER_SIZE) : null;
+        }
+
+        @Override
+        public void onReadable(SelectionKey key) throws IOException {
+            int readBytes = channel.read(readBuffer);
+            if (readBytes == -1) {
+                throw new EOFException("connection closed by the VNC server");
+            }
+            if (readBytes == 0) {
+                return;
+            }
+            bytesFromServer.addAndGet(readBytes);
+            readBuffer.flip();
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+
+            final long start = System.currentTimeMillis();
+            session.getRemote().sendBytes(readBuffer, new WriteCallback() {
+                @Override
+                public void writeFailed(Throwable x) {
+                    s_logger.info("Failed to send data to the console session " + sessionUuid + ": " + x.getMessage());
+                    connectionAlive = false;
+                }
+
+                @Override
+                public void writeSuccess() {
+                    sendLatency.record(System.currentTimeMillis() - start);
+                    updateFrontEndActivityTime();
+                    readBuffer.clear();
+                    loop.setInterest(channel, SelectionKey.OP_READ, true);
+                }
+            });
+        }
+
+        /**
+         * Writes the data of the viewer to the VNC server, queueing what the channel does not take right away.
+         * Called with the write lock held.
+         */
+        void write(ByteBuffer data) throws IOException {
+            if (pendingWrites.isEmpty()) {
+                while (data.hasRemaining()) {
+                    if (channel.write(data) == 0) {
+                        break;
+                    }
+                }
+                if (!data.hasRemaining()) {
+                    return;
+                }
+            }
+            ByteBuffer pending = ByteBuffer.allocate(data.remaining());
+            pending.put(data).flip();
+            pendingWrites.add(pending);
+            loop.setInterest(channel, SelectionKey.OP_WRITE, true);
+        }
+
+        @Override
+        public void onWritable(SelectionKey key) throws IOException {
+            synchronized (writeLock) {
+                ByteBuffer pending;
+                while ((pending = pendingWrites.peek()) != null) {
+                    channel.write(pending);
+                    if (pending.hasRemaining()) {
+                        return;
+                    }
+                    pendingWrites.poll();
+                }
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            }
+        }
+
+        @Override
+        public boolean onTick(long now) {
+            if (!connectionAlive || !session.isOpen()) {
+                return false;
+            }
+            if (client.isVncOverWebSocketConnection()) {
+                if (client.isVncOverWebSocketConnectionOpen()) {
+                    updateFrontEndActivityTime();
+                }
+                return client.isVncOverWebSocketConnectionAlive();
+            }
+            return true;
+        }
+
+        @Override
+        public void onClosed() {
+            connectionAlive = false;
+            client.close();
+        }
+
+        @Override
+        public String toString() {
+            return "console session " + sessionUuid;
+        }
     }
 
     /**
@@ -279,4 +438,16 @@ public class ConsoleProxyNoVncClient implements ConsoleProxyClient {
         return session;
     }
 
+    public long getBytesFromServer() {
+        return bytesFromServer.get();
+    }
+
+    public long getBytesToServer() {
+        return bytesToServer.get();
+    }
+
+    public LatencyHistogram getSendLatency() {
+        return sendLatency;
+    }
+
 }
@@ -19,11 +19,13 @@ package com.cloud.consoleproxy.vnc;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.Charset;
 import java.security.spec.KeySpec;
 
@@ -41,6 +43,7 @@ public class NoVncClient {
     private static final Logger s_logger = Logger.getLogger(NoVncClient.class);
 
     private Socket socket;
+    private SocketChannel channel;
     private DataInputStream is;
     private DataOutputStream os;
 
@@ -65,10 +68,19 @@ public class NoVncClient {
     public void connectTo(String host, int port) throws UnknownHostException, IOException {
         // Connect to server
         s_logger.info("Connecting to VNC server " + host + ":" + port + "...");
-        socket = new Socket(host, port);
+        channel = SocketChannel.open(new InetSocketAddress(host, port));
+        socket = channel.socket();
         setStreams();
     }
 
+    /**
+     * @return the channel of a direct connection to the VNC server, which can be relayed without blocking once the
+     * handshake is done, null when connected through a tunnel or over websocket.
+     */
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
     // VNC over WebSocket connection helpers
     public void connectToWebSocket(String websocketUrl, Session session) throws URISyntaxException {
         webSocketReverseProxy = new WebSocketReverseProxy(new URI(websocketUrl), session);
@@ -251,4 +263,17 @@ public class NoVncClient {
         }
     }
 
+    public void close() {
+        if (isVncOverWebSocketConnection()) {
+            webSocketReverseProxy.close();
+        }
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                s_logger.debug("Failed to close the connection to the VNC server: " + e.getMessage());
+            }
+        }
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,104 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.consoleproxy;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ConsoleProxyEventLoopTest {
+
+    private ConsoleProxyEventLoop loop;
+    private Pipe pipe;
+
+    private static class TestHandler implements ConsoleProxyEventLoop.Handler {
+        final CountDownLatch read = new CountDownLatch(1);
+        final CountDownLatch closed = new CountDownLatch(1);
+        final Pipe.SourceChannel source;
+        volatile boolean alive = true;
+        volatile int readBytes;
+
+        TestHandler(Pipe.SourceChannel source) {
+            this.source = source;
+        }
+
+        @Override
+        public void onReadable(SelectionKey key) throws IOException {
+            readBytes += source.read(ByteBuffer.allocate(16));
+            read.countDown();
+        }
+
+        @Override
+        public void onWritable(SelectionKey key) {
+        }
+
+        @Override
+        public boolean onTick(long now) {
+            return alive;
+        }
+
+        @Override
+        public void onClosed() {
+            closed.countDown();
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        loop = new ConsoleProxyEventLoop("test");
+        new Thread(loop).start();
+        pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        loop.stop();
+        pipe.sink().close();
+        pipe.source().close();
+    }
+
+    @Test
+    public void readableChannelIsHandedToItsHandler() throws Exception {
+        TestHandler handler = new TestHandler(pipe.source());
+        loop.register(pipe.source(), SelectionKey.OP_READ, handler);
+
+        pipe.sink().write(ByteBuffer.wrap(new byte[] {1, 2, 3}));
+
+        Assert.assertTrue(handler.read.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(3, handler.readBytes);
+        Assert.assertEquals(1, loop.getHandlerCount());
+    }
+
+    @Test
+    public void handlerIsClosedWhenItsTickFails() throws Exception {
+        TestHandler handler = new TestHandler(pipe.source());
+        loop.register(handler);
+        handler.alive = false;
+
+        Assert.assertTrue(handler.closed.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, loop.getHandlerCount());
+    }
+}
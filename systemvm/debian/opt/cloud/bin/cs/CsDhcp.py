@@ -54,6 +54,7 @@ class CsDhcp(CsDataBag):
         self.configure_server()
 
         restart_dnsmasq = False
+        reload_dnsmasq = False
         need_delete_leases = False
 
         if self.conf.commit():
@@ -61,23 +62,30 @@ class CsDhcp(CsDataBag):
             need_delete_leases = True
 
         if self.dhcp_hosts.commit():
+            reload_dnsmasq = True
             need_delete_leases = True
 
         if self.dhcp_leases.commit():
             need_delete_leases = True
 
-        self.dhcp_opts.commit()
+        if self.dhcp_opts.commit():
+            reload_dnsmasq = True
 
         if need_delete_leases:
             self.delete_leases()
-        self.write_hosts()
+            reload_dnsmasq = True
+        if self.write_hosts():
+            reload_dnsmasq = True
 
         if not self.cl.is_redundant() or self.cl.is_primary():
             if restart_dnsmasq:
                 CsHelper.service("dnsmasq", "restart")
             else:
                 CsHelper.start_if_stopped("dnsmasq")
-                CsHelper.service("dnsmasq", "reload")
+                if reload_dnsmasq:
+                    CsHelper.service("dnsmasq", "reload")
+                else:
+                    logging.debug("DHCP hosts and options did not change, not reloading dnsmasq")
 
     def configure_server(self):
         # self.conf.addeq("dhcp-hostsfile=%s" % DHCP_HOSTS)
@@ -183,8 +191,9 @@ class CsDhcp(CsDataBag):
         if file.is_changed():
             file.commit()
             logging.info("Updated hosts file")
-        else:
-            logging.debug("Hosts file unchanged")
+            return True
+        logging.debug("Hosts file unchanged")
+        return False
 
     def add(self, entry):
         self.add_host(entry['ipv4_address'], entry['host_name'])
@@ -16,6 +16,7 @@
 # specific language governing permissions and limitations
 # under the License.
 
+import hashlib
 import json
 import os
 import uuid
@@ -81,6 +82,52 @@ class DataBag:
         self.key = key
 
 
+class AppliedConfig:
+    """ Keeps the hash of the content of each data bag as it was when it was last
+        converged successfully, so that a data bag which did not change since does
+        not have to be converged (and its services reloaded) again """
+
+    DPATH = "/etc/cloudstack"
+    APATH = "/etc/cloudstack/applied"
+
+    def __init__(self, key):
+        self.key = key
+
+    def __hash(self):
+        try:
+            with open(os.path.join(self.DPATH, self.key + '.json'), 'rb') as _fh:
+                return hashlib.sha256(_fh.read()).hexdigest()
+        except IOError:
+            return None
+
+    def __path(self):
+        return os.path.join(self.APATH, self.key + '.sha256')
+
+    def is_applied(self):
+        current = self.__hash()
+        if current is None:
+            return False
+        try:
+            with open(self.__path(), 'r') as _fh:
+                return _fh.read().strip() == current
+        except IOError:
+            return False
+
+    def set_applied(self):
+        current = self.__hash()
+        if current is None:
+            return
+        if not os.path.exists(self.APATH):
+            os.makedirs(self.APATH)
+        with open(self.__path(), 'w') as _fh:
+            _fh.write(current)
+
+    @classmethod
+    def clear(cls):
+        if os.path.exists(cls.APATH):
+            shutil.rmtree(cls.APATH, ignore_errors=True)
+
+
 class updateDataBag:
 
     DPATH = "/etc/cloudstack"
@@ -142,6 +189,7 @@ class updateDataBag:
         else:
             logging.error("Error I do not know what to do with file of type %s", self.qFile.type)
             return
+        self.qFile.dataBagKey = self.db.key
         self.db.save(dbag)
 
     def processGuestNetwork(self, dbag):
@@ -280,6 +328,7 @@ class QueueFile:
     configCache = "/var/cache/cloud"
     keep = True
     data = {}
+    dataBagKey = None
 
     def load(self, data):
         if data is not None:
@@ -17,7 +17,7 @@
 # under the License.
 
 import sys
-from merge import QueueFile
+from merge import QueueFile, AppliedConfig
 import logging
 import subprocess
 from subprocess import PIPE, STDOUT
@@ -38,10 +38,24 @@ jsonFilename = sys.argv[1]
 jsonConfigFile = jsonPath % jsonFilename
 currentGuestNetConfig = "/etc/cloudstack/guestnetwork.json"
 
+# Data bags whose convergence only depends on their own content (and that reload
+# iptables, dnsmasq or haproxy), so it can be skipped when the content did not change
+# since it was last converged
+SKIP_UNCHANGED_DATABAGS = ["networkacl", "firewallrules", "ipv6firewallrules", "forwardingrules", "loadbalancer", "dhcpentry"]
 
-def finish_config():
+
+def finish_config(dataBagKey=None):
     # Converge
-    returncode = configure.main(sys.argv)
+    try:
+        returncode = configure.main(sys.argv)
+    except Exception:
+        AppliedConfig.clear()
+        raise
+    if returncode == 0 and dataBagKey in SKIP_UNCHANGED_DATABAGS:
+        AppliedConfig(dataBagKey).set_applied()
+    elif returncode != 0:
+        # Something may be left half applied, converge everything on the next update
+        AppliedConfig.clear()
     sys.exit(returncode)
 
 
@@ -53,10 +67,16 @@ def process_file():
 
     qf.setFile(sys.argv[1])
     qf.load(None)
+    if qf.getType() == "cmdline":
+        # Everything gets converged again
+        AppliedConfig.clear()
+    elif qf.dataBagKey in SKIP_UNCHANGED_DATABAGS and AppliedConfig(qf.dataBagKey).is_applied():
+        logging.info("Data bag %s did not change since it was last applied, nothing to converge" % qf.dataBagKey)
+        sys.exit(0)
     # These can be safely deferred, dramatically speeding up loading times
     if not (os.environ.get('DEFER_CONFIG', False) and ('vm_dhcp_entry.json' in sys.argv[1] or 'vm_metadata.json' in sys.argv[1])):
         # Converge
-        finish_config()
+        finish_config(qf.dataBagKey)
 
 
 def is_guestnet_configured(guestnet_dict, keys):
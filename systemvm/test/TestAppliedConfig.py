@@ -0,0 +1,59 @@
+# Licensed to the Apache Software Foundation (ASF) under one
+# or more contributor license agreements.  See the NOTICE file
+# distributed with this work for additional information
+# regarding copyright ownership.  The ASF licenses this file
+# to you under the Apache License, Version 2.0 (the
+# "License"); you may not use this file except in compliance
+# with the License.  You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing,
+# software distributed under the License is distributed on an
+# "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+# KIND, either express or implied.  See the License for the
+# specific language governing permissions and limitations
+# under the License.
+
+import os
+import shutil
+import tempfile
+import unittest
+import merge
+
+
+class TestAppliedConfig(unittest.TestCase):
+
+    def setUp(self):
+        self.dpath = tempfile.mkdtemp()
+        merge.AppliedConfig.DPATH = self.dpath
+        merge.AppliedConfig.APATH = os.path.join(self.dpath, "applied")
+
+    def tearDown(self):
+        shutil.rmtree(self.dpath)
+
+    def write_databag(self, content):
+        with open(os.path.join(self.dpath, "networkacl.json"), "w") as _fh:
+            _fh.write(content)
+
+    def test_not_applied_without_databag(self):
+        self.assertFalse(merge.AppliedConfig("networkacl").is_applied())
+
+    def test_applied_until_databag_changes(self):
+        self.write_databag('{"id": "networkacl"}')
+        applied = merge.AppliedConfig("networkacl")
+        self.assertFalse(applied.is_applied())
+        applied.set_applied()
+        self.assertTrue(applied.is_applied())
+        self.write_databag('{"eth2": {}, "id": "networkacl"}')
+        self.assertFalse(applied.is_applied())
+
+    def test_clear(self):
+        self.write_databag('{"id": "networkacl"}')
+        merge.AppliedConfig("networkacl").set_applied()
+        merge.AppliedConfig.clear()
+        self.assertFalse(merge.AppliedConfig("networkacl").is_applied())
+
+
+if __name__ == '__main__':
+    unittest.main()
@@ -20,15 +20,27 @@ import java.net.InetAddress;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
 
 import javax.inject.Inject;
 import javax.naming.ConfigurationException;
@@ -59,6 +71,7 @@ import com.cloud.usage.dao.UsageJobDao;
 import com.cloud.usage.dao.UsageLoadBalancerPolicyDao;
 import com.cloud.usage.dao.UsageNetworkDao;
 import com.cloud.usage.dao.UsageNetworkOfferingDao;
+import com.cloud.usage.dao.UsageParseCheckpointDao;
 import com.cloud.usage.dao.UsagePortForwardingRuleDao;
 import com.cloud.usage.dao.UsageSecurityGroupDao;
 import com.cloud.usage.dao.UsageBackupDao;
@@ -76,6 +89,7 @@ import com.cloud.usage.parser.NetworkUsageParser;
 import com.cloud.usage.parser.PortForwardingUsageParser;
 import com.cloud.usage.parser.SecurityGroupUsageParser;
 import com.cloud.usage.parser.StorageUsageParser;
+import com.cloud.usage.parser.UsageRecordBatch;
 import com.cloud.usage.parser.BackupUsageParser;
 import com.cloud.usage.parser.VMInstanceUsageParser;
 import com.cloud.usage.parser.VMSnapshotOnPrimaryParser;
@@ -90,6 +104,7 @@ import com.cloud.user.VmDiskStatisticsVO;
 import com.cloud.user.dao.AccountDao;
 import com.cloud.user.dao.UserStatisticsDao;
 import com.cloud.user.dao.VmDiskStatisticsDao;
+import com.cloud.utils.Pair;
 import com.cloud.utils.component.ManagerBase;
 import com.cloud.utils.concurrency.NamedThreadFactory;
 import com.cloud.utils.db.DB;
@@ -142,6 +157,8 @@ public class UsageManagerImpl extends ManagerBase implements UsageManager, Runna
     @Inject
     private UsageJobDao _usageJobDao;
     @Inject
+    private UsageParseCheckpointDao _usageParseCheckpointDao;
+    @Inject
     private VmDiskStatisticsDao _vmDiskStatsDao;
     @Inject
     private UsageVmDiskDao _usageVmDiskDao;
@@ -187,6 +204,10 @@ public class UsageManagerImpl extends ManagerBase implements UsageManager, Runna
     private Future _heartbeat = null;
     private Future _sanity = null;
     private boolean  usageSnapshotSelection = false;
+    private int _parseWorkers = 1;
+    private boolean _incrementalParse = false;
+    private ExecutorService _parseExecutor = null;
+    private final Map<String, AtomicLong> _parseTimes = new ConcurrentHashMap<>();
 
     public UsageManagerImpl() {
     }
@@ -230,6 +251,14 @@ public class UsageManagerImpl extends ManagerBase implements UsageManager, Runna
         if (sanityCheckInterval != null) {
             _sanityCheckInterval = Integer.parseInt(sanityCheckInterval);
         }
+        String parseWorkers = configs.get("usage.parse.workers");
+        if (parseWorkers != null) {
+            _parseWorkers = Math.max(1, Integer.parseInt(parseWorkers));
+        }
+        _incrementalParse = Boolean.parseBoolean(configs.get("usage.parse.incremental"));
+        if (_parseWorkers > 1) {
+            _parseExecutor = Executors.newFixedThreadPool(_parseWorkers, new NamedThreadFactory("Usage-Parser"));
+        }
 
         if (aggreagationTimeZone != null && !aggreagationTimeZone.isEmpty()) {
             _usageTimezone = TimeZone.getTimeZone(aggreagationTimeZone);
@@ -341,6 +370,9 @@ public class UsageManagerImpl extends ManagerBase implements UsageManager, Runna
         if (_sanity != null) {
             _sanity.cancel(true);
         }
+        if (_parseExecutor != null) {
+            _parseExecutor.shutdownNow();
+        }
         return true;
     }
 
@@ -450,6 +482,7 @@ public class UsageManagerImpl extends ManagerBase implements UsageManager, Runna
 
         boolean success = false;
         long timeStart = System.currentTimeMillis();
+        _parseTimes.clear();
         try {
             if ((endDateMillis == 0) || (endDateMillis > timeStart)) {
                 endDateMillis = timeStart;
@@ -762,84 +795,19 @@ public class UsageManagerImpl extends ManagerBase implements UsageManager, Runna
                 usageTxn.commit();
                 usageTxn.start();
 
-                boolean parsed = false;
-                numAcctsProcessed = 0;
-
-                Date currentStartDate = startDate;
-                Date currentEndDate = endDate;
-                Date tempDate = endDate;
-
-                Calendar aggregateCal = Calendar.getInstance(_usageTimezone);
-
-                while ((tempDate.after(startDate)) && ((tempDate.getTime() - startDate.getTime()) > 60000)) {
-                    currentEndDate = tempDate;
-                    aggregateCal.setTime(tempDate);
-                    aggregateCal.add(Calendar.MINUTE, -_aggregationDuration);
-                    tempDate = aggregateCal.getTime();
-                }
-
-                while (!currentEndDate.after(endDate) || (currentEndDate.getTime() - endDate.getTime() < 60000)) {
-                    Long offset = Long.valueOf(0);
-                    Long limit = Long.valueOf(500);
-
-                    do {
-                        Filter filter = new Filter(AccountVO.class, "id", true, offset, limit);
-                        accounts = _accountDao.listAll(filter);
-                        if ((accounts != null) && !accounts.isEmpty()) {
-                            for (AccountVO account : accounts) {
-                                parsed = parseHelperTables(account, currentStartDate, currentEndDate);
-                                numAcctsProcessed++;
-                            }
-                        }
-                        offset = new Long(offset.longValue() + limit.longValue());
-                    } while ((accounts != null) && !accounts.isEmpty());
+                List<Pair<Date, Date>> aggregationWindows = getAggregationWindows(startDate, endDate, _aggregationDuration, _usageTimezone);
+                List<AccountVO> activeAccounts = listAccounts(false, recentlyDeletedDate);
+                List<AccountVO> deletedAccounts = listAccounts(true, recentlyDeletedDate);
+                // what an interrupted job, or a parse worker of a failed one, already committed is not parsed again
+                Map<Long, Long> checkpoints = _incrementalParse || _parseWorkers > 1 ? _usageParseCheckpointDao.getParsedUntil() : Collections.emptyMap();
 
-                    if (s_logger.isDebugEnabled()) {
-                        s_logger.debug("processed VM/Network Usage for " + numAcctsProcessed + " ACTIVE accts");
-                    }
-                    numAcctsProcessed = 0;
-
-                    // reset offset
-                    offset = Long.valueOf(0);
-
-                    do {
-                        Filter filter = new Filter(AccountVO.class, "id", true, offset, limit);
-
-                        accounts = _accountDao.findRecentlyDeletedAccounts(null, recentlyDeletedDate, filter);
-
-                        if ((accounts != null) && !accounts.isEmpty()) {
-                            for (AccountVO account : accounts) {
-                                parsed = parseHelperTables(account, currentStartDate, currentEndDate);
-                                List<Long> publicTemplates = _usageDao.listPublicTemplatesByAccount(account.getId());
-                                for (Long templateId : publicTemplates) {
-                                    //mark public templates owned by deleted accounts as deleted
-                                    List<UsageStorageVO> storageVOs = _usageStorageDao.listById(account.getId(), templateId, StorageTypes.TEMPLATE);
-                                    if (storageVOs.size() > 1) {
-                                        s_logger.warn("More that one usage entry for storage: " + templateId + " assigned to account: " + account.getId() +
-                                                "; marking them all as deleted...");
-                                    }
-                                    for (UsageStorageVO storageVO : storageVOs) {
-                                        if (s_logger.isDebugEnabled()) {
-                                            s_logger.debug("deleting template: " + storageVO.getId() + " from account: " + storageVO.getAccountId());
-                                        }
-                                        storageVO.setDeleted(account.getRemoved());
-                                        _usageStorageDao.update(storageVO);
-                                    }
-                                }
-                                numAcctsProcessed++;
-                            }
-                        }
-                        offset = new Long(offset.longValue() + limit.longValue());
-                    } while ((accounts != null) && !accounts.isEmpty());
-
-                    currentStartDate = new Date(currentEndDate.getTime() + 1);
-                    aggregateCal.setTime(currentEndDate);
-                    aggregateCal.add(Calendar.MINUTE, _aggregationDuration);
-                    currentEndDate = aggregateCal.getTime();
-                }
-
-                if (s_logger.isDebugEnabled()) {
-                    s_logger.debug("processed Usage for " + numAcctsProcessed + " RECENTLY DELETED accts");
+                boolean parsed;
+                if (_parseWorkers > 1) {
+                    parsed = parseInParallel(activeAccounts, deletedAccounts, aggregationWindows, checkpoints);
+                } else {
+                    UsageRecordBatch.begin();
+                    parsed = parseAccounts(activeAccounts, deletedAccounts, aggregationWindows, checkpoints);
+                    UsageRecordBatch.end();
                 }
 
                 // FIXME: we don't break the above loop if something fails to parse, so it gets reset every account,
@@ -851,10 +819,11 @@ public class UsageManagerImpl extends ManagerBase implements UsageManager, Runna
                 }
             } catch (Exception ex) {
                 s_logger.error("Exception in usage manager", ex);
+                UsageRecordBatch.discard();
                 usageTxn.rollback();
             } finally {
                 // everything seemed to work...set endDate as the last success date
-                _usageJobDao.updateJobSuccess(job.getId(), startDateMillis, endDateMillis, System.currentTimeMillis() - timeStart, success);
+                _usageJobDao.updateJobSuccess(job.getId(), startDateMillis, endDateMillis, System.currentTimeMillis() - timeStart, success, getParseTimes());
 
                 // create a new job if this is a recurring job
                 if (job.getJobType() == UsageJobVO.JOB_TYPE_RECURRING) {
@@ -879,97 +848,340 @@ public class UsageManagerImpl extends ManagerBase implements UsageManager, Runna
         }
     }
 
-    private boolean parseHelperTables(AccountVO account, Date currentStartDate, Date currentEndDate) {
+    /**
+     * Splits the period between the start and end date into the aggregation ranges the usage is parsed in.
+     */
+    protected static List<Pair<Date, Date>> getAggregationWindows(Date startDate, Date endDate, int aggregationDuration, TimeZone timezone) {
+        List<Pair<Date, Date>> windows = new ArrayList<>();
+        Date currentStartDate = startDate;
+        Date currentEndDate = endDate;
+        Date tempDate = endDate;
+
+        Calendar aggregateCal = Calendar.getInstance(timezone);
+
+        while ((tempDate.after(startDate)) && ((tempDate.getTime() - startDate.getTime()) > 60000)) {
+            currentEndDate = tempDate;
+            aggregateCal.setTime(tempDate);
+            aggregateCal.add(Calendar.MINUTE, -aggregationDuration);
+            tempDate = aggregateCal.getTime();
+        }
+
+        while (!currentEndDate.after(endDate) || (currentEndDate.getTime() - endDate.getTime() < 60000)) {
+            windows.add(new Pair<>(currentStartDate, currentEndDate));
+            currentStartDate = new Date(currentEndDate.getTime() + 1);
+            aggregateCal.setTime(currentEndDate);
+            aggregateCal.add(Calendar.MINUTE, aggregationDuration);
+            currentEndDate = aggregateCal.getTime();
+        }
+        return windows;
+    }
+
+    private List<AccountVO> listAccounts(boolean recentlyDeleted, Date recentlyDeletedDate) {
+        List<AccountVO> accounts = new ArrayList<>();
+        List<AccountVO> page;
+        Long offset = Long.valueOf(0);
+        Long limit = Long.valueOf(500);
+        do {
+            Filter filter = new Filter(AccountVO.class, "id", true, offset, limit);
+            page = recentlyDeleted ? _accountDao.findRecentlyDeletedAccounts(null, recentlyDeletedDate, filter) : _accountDao.listAll(filter);
+            if (page != null) {
+                accounts.addAll(page);
+            }
+            offset = new Long(offset.longValue() + limit.longValue());
+        } while ((page != null) && !page.isEmpty());
+        return accounts;
+    }
+
+    private boolean parseAccounts(List<AccountVO> activeAccounts, List<AccountVO> deletedAccounts, List<Pair<Date, Date>> aggregationWindows,
+            Map<Long, Long> checkpoints) {
+        boolean parsed = false;
+        for (Pair<Date, Date> window : aggregationWindows) {
+            Date currentStartDate = window.first();
+            Date currentEndDate = window.second();
+
+            for (AccountVO account : activeAccounts) {
+                parsed = parseAccount(account, currentStartDate, currentEndDate, checkpoints);
+            }
+            if (s_logger.isDebugEnabled()) {
+                s_logger.debug("processed VM/Network Usage for " + activeAccounts.size() + " ACTIVE accts");
+            }
+
+            for (AccountVO account : deletedAccounts) {
+                parsed = parseAccount(account, currentStartDate, currentEndDate, checkpoints);
+                List<Long> publicTemplates = _usageDao.listPublicTemplatesByAccount(account.getId());
+                for (Long templateId : publicTemplates) {
+                    //mark public templates owned by deleted accounts as deleted
+                    List<UsageStorageVO> storageVOs = _usageStorageDao.listById(account.getId(), templateId, StorageTypes.TEMPLATE);
+                    if (storageVOs.size() > 1) {
+                        s_logger.warn("More that one usage entry for storage: " + templateId + " assigned to account: " + account.getId() +
+                                "; marking them all as deleted...");
+                    }
+                    for (UsageStorageVO storageVO : storageVOs) {
+                        if (s_logger.isDebugEnabled()) {
+                            s_logger.debug("deleting template: " + storageVO.getId() + " from account: " + storageVO.getAccountId());
+                        }
+                        storageVO.setDeleted(account.getRemoved());
+                        _usageStorageDao.update(storageVO);
+                    }
+                }
+            }
+        }
+        if (s_logger.isDebugEnabled()) {
+            s_logger.debug("processed Usage for " + deletedAccounts.size() + " RECENTLY DELETED accts");
+        }
+        return parsed;
+    }
+
+    /**
+     * Parses the usage of the account in the range, leaving out what an interrupted job already parsed. In incremental
+     * mode, the records of the account are committed right away, along with the time they were parsed up to.
+     */
+    protected boolean parseAccount(AccountVO account, Date startDate, Date endDate, Map<Long, Long> checkpoints) {
+        Long parsedUntil = checkpoints.get(account.getId());
+        if (parsedUntil != null) {
+            if (parsedUntil >= endDate.getTime()) {
+                return true;
+            }
+            if (parsedUntil >= startDate.getTime()) {
+                startDate = new Date(parsedUntil + 1);
+            }
+        }
+
+        boolean parsed = parseHelperTables(account, startDate, endDate);
+
+        if (_incrementalParse) {
+            UsageRecordBatch.flush();
+            _usageParseCheckpointDao.updateParsedUntil(account.getId(), endDate.getTime());
+            TransactionLegacy txn = TransactionLegacy.currentTxn();
+            txn.commit();
+            txn.start();
+        }
+        return parsed;
+    }
+
+    /**
+     * Parses the usage of the accounts on the parse workers, each of them taking a share of the accounts in its own
+     * transaction. The transactions are only committed once all of the workers are done, and all of them are rolled
+     * back if one failed. In incremental mode, the records are committed as each account is parsed instead.
+     *
+     * The workers still commit one after the other, so one commit can fail after others went through. Each worker
+     * commits the parse checkpoints of its accounts along with their records, so the next job does not parse those
+     * accounts again for the same range.
+     */
+    protected boolean parseInParallel(List<AccountVO> activeAccounts, List<AccountVO> deletedAccounts, List<Pair<Date, Date>> aggregationWindows,
+            Map<Long, Long> checkpoints) throws InterruptedException {
+        final int workers = _parseWorkers;
+        final List<Pair<List<AccountVO>, List<AccountVO>>> shards = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            List<AccountVO> shardActiveAccounts = getShard(activeAccounts, i, workers);
+            List<AccountVO> shardDeletedAccounts = getShard(deletedAccounts, i, workers);
+            // there may be fewer accounts than workers
+            if (!shardActiveAccounts.isEmpty() || !shardDeletedAccounts.isEmpty()) {
+                shards.add(new Pair<>(shardActiveAccounts, shardDeletedAccounts));
+            }
+        }
+        final Date parsedUntil = aggregationWindows.isEmpty() ? null : aggregationWindows.get(aggregationWindows.size() - 1).second();
+
+        final CountDownLatch parsedLatch = new CountDownLatch(shards.size());
+        final CompletableFuture<Boolean> commit = new CompletableFuture<>();
+        final AtomicBoolean allParsed = new AtomicBoolean(true);
+
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (Pair<List<AccountVO>, List<AccountVO>> shard : shards) {
+            final List<AccountVO> shardActiveAccounts = shard.first();
+            final List<AccountVO> shardDeletedAccounts = shard.second();
+            final Callable<Boolean> worker = () -> {
+                TransactionLegacy txn = null;
+                boolean parsed = false;
+                try {
+                    try {
+                        txn = TransactionLegacy.open(TransactionLegacy.USAGE_DB);
+                        txn.start();
+                        UsageRecordBatch.begin();
+                        parsed = parseAccounts(shardActiveAccounts, shardDeletedAccounts, aggregationWindows, checkpoints);
+                        UsageRecordBatch.end();
+                    } catch (Exception e) {
+                        s_logger.error("Failed to parse the usage of " + shardActiveAccounts.size() + " active and " + shardDeletedAccounts.size() +
+                                " recently deleted accounts", e);
+                        UsageRecordBatch.discard();
+                    } finally {
+                        // the job waits for every worker, whatever made this one fail
+                        if (!parsed) {
+                            allParsed.set(false);
+                        }
+                        parsedLatch.countDown();
+                    }
+
+                    if (commit.get()) {
+                        if (!_incrementalParse && parsedUntil != null) {
+                            updateParsedUntil(shardActiveAccounts, parsedUntil);
+                            updateParsedUntil(shardDeletedAccounts, parsedUntil);
+                        }
+                        txn.commit();
+                        return true;
+                    }
+                    if (txn != null) {
+                        txn.rollback();
+                    }
+                    return false;
+                } finally {
+                    if (txn != null) {
+                        txn.close();
+                    }
+                }
+            };
+            try {
+                results.add(_parseExecutor.submit(worker));
+            } catch (RejectedExecutionException e) {
+                s_logger.error("Unable to start a usage parse worker", e);
+                allParsed.set(false);
+                parsedLatch.countDown();
+            }
+        }
+
+        parsedLatch.await();
+        commit.complete(allParsed.get());
+
+        boolean committed = true;
+        for (Future<Boolean> result : results) {
+            try {
+                committed &= result.get();
+            } catch (ExecutionException e) {
+                s_logger.error("Failed to commit the parsed usage records", e.getCause());
+                committed = false;
+            }
+        }
+        return allParsed.get() && committed;
+    }
+
+    private void updateParsedUntil(List<AccountVO> accounts, Date parsedUntil) {
+        for (AccountVO account : accounts) {
+            _usageParseCheckpointDao.updateParsedUntil(account.getId(), parsedUntil.getTime());
+        }
+    }
+
+    private static <T> List<T> getShard(List<T> list, int shard, int shards) {
+        List<T> result = new ArrayList<>(list.size() / shards + 1);
+        for (int i = shard; i < list.size(); i += shards) {
+            result.add(list.get(i));
+        }
+        return result;
+    }
+
+    private boolean timeParser(String name, BooleanSupplier parser) {
+        long start = System.currentTimeMillis();
+        try {
+            return parser.getAsBoolean();
+        } finally {
+            _parseTimes.computeIfAbsent(name, k -> new AtomicLong()).addAndGet(System.currentTimeMillis() - start);
+        }
+    }
+
+    protected String getParseTimes() {
+        if (_parseTimes.isEmpty()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, AtomicLong> entry : new TreeMap<>(_parseTimes).entrySet()) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(entry.getKey()).append('=').append(entry.getValue().get());
+        }
+        return sb.toString();
+    }
+
+    protected boolean parseHelperTables(AccountVO account, Date currentStartDate, Date currentEndDate) {
         boolean parsed = false;
 
-        parsed = VMInstanceUsageParser.parse(account, currentStartDate, currentEndDate);
+        parsed = timeParser("vm", () -> VMInstanceUsageParser.parse(account, currentStartDate, currentEndDate));
         if (s_logger.isDebugEnabled()) {
             if (!parsed) {
                 s_logger.debug("vm usage instances successfully parsed? " + parsed + " (for account: " + account.getAccountName() + ", id: " + account.getId() + ")");
             }
         }
 
-        parsed = NetworkUsageParser.parse(account, currentStartDate, currentEndDate);
+        parsed = timeParser("network", () -> NetworkUsageParser.parse(account, currentStartDate, currentEndDate));
         if (s_logger.isDebugEnabled()) {
             if (!parsed) {
                 s_logger.debug("network usage successfully parsed? " + parsed + " (for account: " + account.getAccountName() + ", id: " + account.getId() + ")");
             }
         }
 
-        parsed = VmDiskUsageParser.parse(account, currentStartDate, currentEndDate);
+        parsed = timeParser("vmdisk", () -> VmDiskUsageParser.parse(account, currentStartDate, currentEndDate));
         if (s_logger.isDebugEnabled()) {
             if (!parsed) {
                 s_logger.debug("vm disk usage successfully parsed? " + parsed + " (for account: " + account.getAccountName() + ", id: " + account.getId() + ")");
             }
         }
 
-        parsed = VolumeUsageParser.parse(account, currentStartDate, currentEndDate);
+        parsed = timeParser("volume", () -> VolumeUsageParser.parse(account, currentStartDate, currentEndDate));
         if (s_logger.isDebugEnabled()) {
             if (!parsed) {
                 s_logger.debug("volume usage successfully parsed? " + parsed + " (for account: " + account.getAccountName() + ", id: " + account.getId() + ")");
             }
         }
 
-        parsed = StorageUsageParser.parse(account, currentStartDate, currentEndDate);
+        parsed = timeParser("storage", () -> StorageUsageParser.parse(account, currentStartDate, currentEndDate));
         if (s_logger.isDebugEnabled()) {
             if (!parsed) {
                 s_logger.debug("storage usage successfully parsed? " + parsed + " (for account: " + account.getAccountName() + ", id: " + account.getId() + ")");
             }
         }
 
-        parsed = SecurityGroupUsageParser.parse(account, currentStartDate, currentEndDate);
+        parsed = timeParser("securitygroup", () -> SecurityGroupUsageParser.parse(account, currentStartDate, currentEndDate));
         if (s_logger.isDebugEnabled()) {
             if (!parsed) {
                 s_logger.debug("Security Group usage successfully parsed? " + parsed + " (for account: " + account.getAccountName() + ", id: " + account.getId() + ")");
             }
         }
 
-        parsed = LoadBalancerUsageParser.parse(account, currentStartDate, currentEndDate);
+        parsed = timeParser("loadbalancer", () -> LoadBalancerUsageParser.parse(account, currentStartDate, currentEndDate));
         if (s_logger.isDebugEnabled()) {
             if (!parsed) {
                 s_logger.debug("load balancer usage successfully parsed? " + parsed + " (for account: " + account.getAccountName() + ", id: " + account.getId() + ")");
             }
         }
 
-        parsed = PortForwardingUsageParser.parse(account, currentStartDate, currentEndDate);
+        parsed = timeParser("portforwarding", () -> PortForwardingUsageParser.parse(account, currentStartDate, currentEndDate));
         if (s_logger.isDebugEnabled()) {
             if (!parsed) {
                 s_logger.debug("port forwarding usage successfully parsed? " + parsed + " (for account: " + account.getAccountName() + ", id: " + account.getId() + ")");
             }
         }
 
-        parsed = NetworkOfferingUsageParser.parse(account, currentStartDate, currentEndDate);
+        parsed = timeParser("networkoffering", () -> NetworkOfferingUsageParser.parse(account, currentStartDate, currentEndDate));
         if (s_logger.isDebugEnabled()) {
             if (!parsed) {
                 s_logger.debug("network offering usage successfully parsed? " + parsed + " (for account: " + account.getAccountName() + ", id: " + account.getId() + ")");
             }
         }
 
-        parsed = IPAddressUsageParser.parse(account, currentStartDate, currentEndDate);
+        parsed = timeParser("ipaddress", () -> IPAddressUsageParser.parse(account, currentStartDate, currentEndDate));
         if (s_logger.isDebugEnabled()) {
             if (!parsed) {
                 s_logger.debug("IPAddress usage successfully parsed? " + parsed + " (for account: " + account.getAccountName() + ", id: " + account.getId() + ")");
             }
         }
-        parsed = VPNUserUsageParser.parse(account, currentStartDate, currentEndDate);
+        parsed = timeParser("vpnuser", () -> VPNUserUsageParser.parse(account, currentStartDate, currentEndDate));
         if (s_logger.isDebugEnabled()) {
             if (!parsed) {
                 s_logger.debug("VPN user usage successfully parsed? " + parsed + " (for account: " + account.getAccountName() + ", id: " + account.getId() + ")");
             }
         }
-        parsed = VMSnapshotUsageParser.parse(account, currentStartDate, currentEndDate);
+        parsed = timeParser("vmsnapshot", () -> VMSnapshotUsageParser.parse(account, currentStartDate, currentEndDate));
         if (s_logger.isDebugEnabled()) {
             if (!parsed) {
                 s_logger.debug("VM Snapshot usage successfully parsed? " + parsed + " (for account: " + account.getAccountName() + ", id: " + account.getId() + ")");
             }
         }
-        parsed = VMSnapshotOnPrimaryParser.parse(account, currentStartDate, currentEndDate);
+        parsed = timeParser("vmsnapshotonprimary", () -> VMSnapshotOnPrimaryParser.parse(account, currentStartDate, currentEndDate));
         if (s_logger.isDebugEnabled()) {
             if (!parsed) {
                 s_logger.debug("VM Snapshot on primary usage successfully parsed? " + parsed + " (for account: " + account.getAccountName() + ", id: " + account.getId() + ")");
             }
         }
-        parsed = BackupUsageParser.parse(account, currentStartDate, currentEndDate);
+        parsed = timeParser("backup", () -> BackupUsageParser.parse(account, currentStartDate, currentEndDate));
         if (s_logger.isDebugEnabled()) {
             if (!parsed) {
                 s_logger.debug("VM Backup usage successfully parsed? " + parsed + " (for account: " + account.getAccountName() + ", id: " + account.getId() + ")");
@@ -30,7 +30,6 @@ import org.springframework.stereotype.Component;
 
 import com.cloud.usage.UsageBackupVO;
 import com.cloud.usage.UsageVO;
-import com.cloud.usage.dao.UsageDao;
 import com.cloud.usage.dao.UsageBackupDao;
 import com.cloud.user.AccountVO;
 
@@ -38,17 +37,13 @@ import com.cloud.user.AccountVO;
 public class BackupUsageParser {
     public static final Logger LOGGER = Logger.getLogger(BackupUsageParser.class);
 
-    private static UsageDao s_usageDao;
     private static UsageBackupDao s_usageBackupDao;
 
-    @Inject
-    private UsageDao usageDao;
     @Inject
     private UsageBackupDao usageBackupDao;
 
     @PostConstruct
     void init() {
-        s_usageDao = usageDao;
         s_usageBackupDao = usageBackupDao;
     }
 
@@ -90,7 +85,7 @@ public class BackupUsageParser {
                     new UsageVO(zoneId, account.getAccountId(), account.getDomainId(), description, usageDisplay + " Hrs",
                             UsageTypes.BACKUP, new Double(usage), vmId, null, offeringId, null, vmId,
                             usageBackup.getSize(), usageBackup.getProtectedSize(), startDate, endDate);
-            s_usageDao.persist(usageRecord);
+            UsageRecordBatch.add(usageRecord);
         }
 
         return true;
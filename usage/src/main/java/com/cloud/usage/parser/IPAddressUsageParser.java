@@ -32,7 +32,6 @@ import org.apache.cloudstack.usage.UsageTypes;
 
 import com.cloud.usage.UsageIPAddressVO;
 import com.cloud.usage.UsageVO;
-import com.cloud.usage.dao.UsageDao;
 import com.cloud.usage.dao.UsageIPAddressDao;
 import com.cloud.user.AccountVO;
 import com.cloud.utils.Pair;
@@ -41,17 +40,13 @@ import com.cloud.utils.Pair;
 public class IPAddressUsageParser {
     public static final Logger s_logger = Logger.getLogger(IPAddressUsageParser.class.getName());
 
-    private static UsageDao s_usageDao;
     private static UsageIPAddressDao s_usageIPAddressDao;
 
-    @Inject
-    private UsageDao _usageDao;
     @Inject
     private UsageIPAddressDao _usageIPAddressDao;
 
     @PostConstruct
     void init() {
-        s_usageDao = _usageDao;
         s_usageIPAddressDao = _usageIPAddressDao;
     }
 
@@ -160,7 +155,7 @@ public class IPAddressUsageParser {
         UsageVO usageRecord =
             new UsageVO(zoneId, account.getAccountId(), account.getDomainId(), usageDesc, usageDisplay + " Hrs", UsageTypes.IP_ADDRESS, new Double(usage), ipId,
                 (isSystem ? 1 : 0), (isSourceNat ? "SourceNat" : ""), startDate, endDate, isHidden);
-        s_usageDao.persist(usageRecord);
+        UsageRecordBatch.add(usageRecord);
     }
 
     private static class IpInfo {
@@ -32,7 +32,6 @@ import org.apache.cloudstack.usage.UsageTypes;
 
 import com.cloud.usage.UsageLoadBalancerPolicyVO;
 import com.cloud.usage.UsageVO;
-import com.cloud.usage.dao.UsageDao;
 import com.cloud.usage.dao.UsageLoadBalancerPolicyDao;
 import com.cloud.user.AccountVO;
 import com.cloud.utils.Pair;
@@ -41,17 +40,13 @@ import com.cloud.utils.Pair;
 public class LoadBalancerUsageParser {
     public static final Logger s_logger = Logger.getLogger(LoadBalancerUsageParser.class.getName());
 
-    private static UsageDao s_usageDao;
     private static UsageLoadBalancerPolicyDao s_usageLoadBalancerPolicyDao;
 
-    @Inject
-    private UsageDao _usageDao;
     @Inject
     private UsageLoadBalancerPolicyDao _usageLoadBalancerPolicyDao;
 
     @PostConstruct
     void init() {
-        s_usageDao = _usageDao;
         s_usageLoadBalancerPolicyDao = _usageLoadBalancerPolicyDao;
     }
 
@@ -157,7 +152,7 @@ public class LoadBalancerUsageParser {
         UsageVO usageRecord =
             new UsageVO(zoneId, account.getId(), account.getDomainId(), usageDesc, usageDisplay + " Hrs", type, new Double(usage), null, null, null, null, lbId, null,
                 startDate, endDate);
-        s_usageDao.persist(usageRecord);
+        UsageRecordBatch.add(usageRecord);
     }
 
     private static class LBInfo {
@@ -32,7 +32,6 @@ import org.apache.cloudstack.usage.UsageTypes;
 
 import com.cloud.usage.UsageNetworkOfferingVO;
 import com.cloud.usage.UsageVO;
-import com.cloud.usage.dao.UsageDao;
 import com.cloud.usage.dao.UsageNetworkOfferingDao;
 import com.cloud.user.AccountVO;
 import com.cloud.utils.Pair;
@@ -41,17 +40,13 @@ import com.cloud.utils.Pair;
 public class NetworkOfferingUsageParser {
     public static final Logger s_logger = Logger.getLogger(NetworkOfferingUsageParser.class.getName());
 
-    private static UsageDao s_usageDao;
     private static UsageNetworkOfferingDao s_usageNetworkOfferingDao;
 
-    @Inject
-    private UsageDao _usageDao;
     @Inject
     private UsageNetworkOfferingDao _usageNetworkOfferingDao;
 
     @PostConstruct
     void init() {
-        s_usageDao = _usageDao;
         s_usageNetworkOfferingDao = _usageNetworkOfferingDao;
     }
 
@@ -159,7 +154,7 @@ public class NetworkOfferingUsageParser {
         UsageVO usageRecord =
             new UsageVO(zoneId, account.getId(), account.getDomainId(), usageDesc, usageDisplay + " Hrs", type, new Double(usage), vmId, null, noId, null, defaultNic,
                 null, startDate, endDate);
-        s_usageDao.persist(usageRecord);
+        UsageRecordBatch.add(usageRecord);
     }
 
     private static class NOInfo {
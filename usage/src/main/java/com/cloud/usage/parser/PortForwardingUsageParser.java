@@ -32,7 +32,6 @@ import org.apache.cloudstack.usage.UsageTypes;
 
 import com.cloud.usage.UsagePortForwardingRuleVO;
 import com.cloud.usage.UsageVO;
-import com.cloud.usage.dao.UsageDao;
 import com.cloud.usage.dao.UsagePortForwardingRuleDao;
 import com.cloud.user.AccountVO;
 import com.cloud.utils.Pair;
@@ -41,17 +40,13 @@ import com.cloud.utils.Pair;
 public class PortForwardingUsageParser {
     public static final Logger s_logger = Logger.getLogger(PortForwardingUsageParser.class.getName());
 
-    private static UsageDao s_usageDao;
     private static UsagePortForwardingRuleDao s_usagePFRuleDao;
 
-    @Inject
-    private UsageDao _usageDao;
     @Inject
     private UsagePortForwardingRuleDao _usagePFRuleDao;
 
     @PostConstruct
     void init() {
-        s_usageDao = _usageDao;
         s_usagePFRuleDao = _usagePFRuleDao;
     }
 
@@ -157,7 +152,7 @@ public class PortForwardingUsageParser {
         UsageVO usageRecord =
             new UsageVO(zoneId, account.getId(), account.getDomainId(), usageDesc, usageDisplay + " Hrs", type, new Double(usage), null, null, null, null, pfId, null,
                 startDate, endDate);
-        s_usageDao.persist(usageRecord);
+        UsageRecordBatch.add(usageRecord);
     }
 
     private static class PFInfo {
@@ -32,7 +32,6 @@ import org.apache.cloudstack.usage.UsageTypes;
 
 import com.cloud.usage.UsageSecurityGroupVO;
 import com.cloud.usage.UsageVO;
-import com.cloud.usage.dao.UsageDao;
 import com.cloud.usage.dao.UsageSecurityGroupDao;
 import com.cloud.user.AccountVO;
 import com.cloud.utils.Pair;
@@ -41,17 +40,13 @@ import com.cloud.utils.Pair;
 public class SecurityGroupUsageParser {
     public static final Logger s_logger = Logger.getLogger(SecurityGroupUsageParser.class.getName());
 
-    private static UsageDao s_usageDao;
     private static UsageSecurityGroupDao s_usageSecurityGroupDao;
 
-    @Inject
-    private UsageDao _usageDao;
     @Inject
     private UsageSecurityGroupDao _usageSecurityGroupDao;
 
     @PostConstruct
     void init() {
-        s_usageDao = _usageDao;
         s_usageSecurityGroupDao = _usageSecurityGroupDao;
     }
 
@@ -157,7 +152,7 @@ public class SecurityGroupUsageParser {
         UsageVO usageRecord =
             new UsageVO(zoneId, account.getId(), account.getDomainId(), usageDesc, usageDisplay + " Hrs", type, new Double(usage), vmId, null, null, null, sgId, null,
                 startDate, endDate);
-        s_usageDao.persist(usageRecord);
+        UsageRecordBatch.add(usageRecord);
     }
 
     private static class SGInfo {
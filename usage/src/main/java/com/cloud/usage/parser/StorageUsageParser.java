@@ -33,7 +33,6 @@ import org.apache.cloudstack.usage.UsageTypes;
 import com.cloud.usage.StorageTypes;
 import com.cloud.usage.UsageStorageVO;
 import com.cloud.usage.UsageVO;
-import com.cloud.usage.dao.UsageDao;
 import com.cloud.usage.dao.UsageStorageDao;
 import com.cloud.user.AccountVO;
 import com.cloud.utils.Pair;
@@ -44,17 +43,13 @@ import static com.cloud.utils.NumbersUtil.toHumanReadableSize;
 public class StorageUsageParser {
     public static final Logger s_logger = Logger.getLogger(StorageUsageParser.class.getName());
 
-    private static UsageDao s_usageDao;
     private static UsageStorageDao s_usageStorageDao;
 
-    @Inject
-    private UsageDao _usageDao;
     @Inject
     private UsageStorageDao _usageStorageDao;
 
     @PostConstruct
     void init() {
-        s_usageDao = _usageDao;
         s_usageStorageDao = _usageStorageDao;
     }
 
@@ -197,7 +192,7 @@ public class StorageUsageParser {
         UsageVO usageRecord =
             new UsageVO(zoneId, account.getId(), account.getDomainId(), usageDesc, usageDisplay + " Hrs", usage_type, new Double(usage), null, null, null, tmplSourceId,
                 storageId, size, virtualSize, startDate, endDate);
-        s_usageDao.persist(usageRecord);
+        UsageRecordBatch.add(usageRecord);
     }
 
     private static class StorageInfo {
@@ -0,0 +1,96 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.usage.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+
+import org.springframework.stereotype.Component;
+
+import com.cloud.usage.UsageVO;
+import com.cloud.usage.dao.UsageDao;
+
+/**
+ * Collects the usage records created by the parsers on the current thread and writes them to cloud_usage in batches,
+ * instead of one insert per record. Records are written as they are added on threads that did not begin a batch.
+ */
+@Component
+public class UsageRecordBatch {
+    public static final int BATCH_SIZE = 500;
+
+    private static final ThreadLocal<List<UsageVO>> s_records = new ThreadLocal<>();
+    private static UsageDao s_usageDao;
+
+    @Inject
+    private UsageDao _usageDao;
+
+    @PostConstruct
+    void init() {
+        s_usageDao = _usageDao;
+    }
+
+    public static void begin() {
+        if (s_records.get() == null) {
+            s_records.set(new ArrayList<>(BATCH_SIZE));
+        }
+    }
+
+    public static void add(UsageVO usageRecord) {
+        List<UsageVO> records = s_records.get();
+        if (records == null) {
+            s_usageDao.persist(usageRecord);
+            return;
+        }
+        records.add(usageRecord);
+        if (records.size() >= BATCH_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the records added so far on the current thread, in the transaction of the caller.
+     */
+    public static void flush() {
+        List<UsageVO> records = s_records.get();
+        if (records == null || records.isEmpty()) {
+            return;
+        }
+        s_usageDao.saveUsageRecords(records);
+        records.clear();
+    }
+
+    /**
+     * Writes the pending records and stops batching on the current thread.
+     */
+    public static void end() {
+        try {
+            flush();
+        } finally {
+            s_records.remove();
+        }
+    }
+
+    /**
+     * Drops the pending records, e.g. when the transaction they belong to is rolled back.
+     */
+    public static void discard() {
+        s_records.remove();
+    }
+}
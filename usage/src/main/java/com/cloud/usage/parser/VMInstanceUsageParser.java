@@ -32,7 +32,6 @@ import org.apache.commons.lang3.StringUtils;
 
 import com.cloud.usage.UsageVMInstanceVO;
 import com.cloud.usage.UsageVO;
-import com.cloud.usage.dao.UsageDao;
 import com.cloud.usage.dao.UsageVMInstanceDao;
 import com.cloud.user.AccountVO;
 import com.cloud.utils.Pair;
@@ -41,17 +40,13 @@ import com.cloud.utils.Pair;
 public class VMInstanceUsageParser {
     public static final Logger s_logger = Logger.getLogger(VMInstanceUsageParser.class.getName());
 
-    private static UsageDao s_usageDao;
     private static UsageVMInstanceDao s_usageInstanceDao;
 
-    @Inject
-    private UsageDao _usageDao;;
     @Inject
     private UsageVMInstanceDao _usageInstanceDao;
 
     @PostConstruct
     void init() {
-        s_usageDao = _usageDao;
         s_usageInstanceDao = _usageInstanceDao;
     }
 
@@ -188,7 +183,7 @@ public class VMInstanceUsageParser {
         UsageVO usageRecord =
             new UsageVO(Long.valueOf(zoneId), account.getId(), account.getDomainId(), usageDesc, usageDisplay + " Hrs", type, new Double(usage), Long.valueOf(vmId),
                 vmName, cpuCores, cpuSpeed, memory, Long.valueOf(serviceOfferingId), Long.valueOf(templateId), Long.valueOf(vmId), startDate, endDate, hypervisorType);
-        s_usageDao.persist(usageRecord);
+        UsageRecordBatch.add(usageRecord);
     }
 
     private static class VMInfo {
@@ -32,7 +32,6 @@ import org.apache.cloudstack.usage.UsageTypes;
 
 import com.cloud.usage.UsageSnapshotOnPrimaryVO;
 import com.cloud.usage.UsageVO;
-import com.cloud.usage.dao.UsageDao;
 import com.cloud.usage.dao.UsageVMSnapshotOnPrimaryDao;
 import com.cloud.user.AccountVO;
 
@@ -42,17 +41,13 @@ import static com.cloud.utils.NumbersUtil.toHumanReadableSize;
 public class VMSnapshotOnPrimaryParser {
     public static final Logger s_logger = Logger.getLogger(VMSnapshotOnPrimaryParser.class.getName());
 
-    private static UsageDao s_usageDao;
     private static UsageVMSnapshotOnPrimaryDao s_usageSnapshotOnPrimaryDao;
 
-    @Inject
-    private UsageDao _usageDao;
     @Inject
     private UsageVMSnapshotOnPrimaryDao _usageSnapshotOnPrimaryDao;
 
     @PostConstruct
     void init() {
-        s_usageDao = _usageDao;
         s_usageSnapshotOnPrimaryDao = _usageSnapshotOnPrimaryDao;
     }
 
@@ -125,7 +120,7 @@ public class VMSnapshotOnPrimaryParser {
 
         UsageVO usageRecord = new UsageVO(zoneId, account.getId(), account.getDomainId(), usageDesc, usageDisplay + " Hrs", usageType, new Double(usage), vmId, name, null, null,
                 vmSnapshotId, physicalSize, virtualSize, startDate, endDate);
-        s_usageDao.persist(usageRecord);
+        UsageRecordBatch.add(usageRecord);
     }
 
 }
@@ -32,7 +32,6 @@ import org.apache.cloudstack.usage.UsageTypes;
 
 import com.cloud.usage.UsageVMSnapshotVO;
 import com.cloud.usage.UsageVO;
-import com.cloud.usage.dao.UsageDao;
 import com.cloud.usage.dao.UsageVMSnapshotDao;
 import com.cloud.user.AccountVO;
 
@@ -42,17 +41,13 @@ import static com.cloud.utils.NumbersUtil.toHumanReadableSize;
 public class VMSnapshotUsageParser {
     public static final Logger s_logger = Logger.getLogger(VMSnapshotUsageParser.class.getName());
 
-    private static UsageDao s_usageDao;
     private static UsageVMSnapshotDao s_usageVMSnapshotDao;
 
-    @Inject
-    private UsageDao _usageDao;
     @Inject
     private UsageVMSnapshotDao _usageVMSnapshotDao;
 
     @PostConstruct
     void init() {
-        s_usageDao = _usageDao;
         s_usageVMSnapshotDao = _usageVMSnapshotDao;
     }
 
@@ -150,7 +145,7 @@ public class VMSnapshotUsageParser {
         UsageVO usageRecord =
             new UsageVO(zoneId, account.getId(), account.getDomainId(), usageDesc, usageDisplay + " Hrs", type, new Double(usage), vmId, null, doId, null, vmSnapshotId, size,
                 startDate, endDate);
-        s_usageDao.persist(usageRecord);
+        UsageRecordBatch.add(usageRecord);
     }
 
 }
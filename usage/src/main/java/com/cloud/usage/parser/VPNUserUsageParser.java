@@ -32,7 +32,6 @@ import org.apache.cloudstack.usage.UsageTypes;
 
 import com.cloud.usage.UsageVO;
 import com.cloud.usage.UsageVPNUserVO;
-import com.cloud.usage.dao.UsageDao;
 import com.cloud.usage.dao.UsageVPNUserDao;
 import com.cloud.user.AccountVO;
 import com.cloud.utils.Pair;
@@ -41,17 +40,13 @@ import com.cloud.utils.Pair;
 public class VPNUserUsageParser {
     public static final Logger s_logger = Logger.getLogger(VPNUserUsageParser.class.getName());
 
-    private static UsageDao s_usageDao;
     private static UsageVPNUserDao s_usageVPNUserDao;
 
-    @Inject
-    private UsageDao _usageDao;
     @Inject
     private UsageVPNUserDao _usageVPNUserDao;
 
     @PostConstruct
     void init() {
-        s_usageDao = _usageDao;
         s_usageVPNUserDao = _usageVPNUserDao;
     }
 
@@ -152,7 +147,7 @@ public class VPNUserUsageParser {
         UsageVO usageRecord =
             new UsageVO(zoneId, account.getId(), account.getDomainId(), usageDesc, usageDisplay + " Hrs", type, new Double(usage), null, null, null, null, userId, null,
                 startDate, endDate);
-        s_usageDao.persist(usageRecord);
+        UsageRecordBatch.add(usageRecord);
     }
 
     private static class VUInfo {
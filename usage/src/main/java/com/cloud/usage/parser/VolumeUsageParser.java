@@ -32,7 +32,6 @@ import org.apache.cloudstack.usage.UsageTypes;
 
 import com.cloud.usage.UsageVO;
 import com.cloud.usage.UsageVolumeVO;
-import com.cloud.usage.dao.UsageDao;
 import com.cloud.usage.dao.UsageVolumeDao;
 import com.cloud.user.AccountVO;
 import com.cloud.utils.Pair;
@@ -41,17 +40,13 @@ import com.cloud.utils.Pair;
 public class VolumeUsageParser {
     public static final Logger s_logger = Logger.getLogger(VolumeUsageParser.class.getName());
 
-    private static UsageDao s_usageDao;
     private static UsageVolumeDao s_usageVolumeDao;
 
-    @Inject
-    private UsageDao _usageDao;
     @Inject
     private UsageVolumeDao _usageVolumeDao;
 
     @PostConstruct
     void init() {
-        s_usageDao = _usageDao;
         s_usageVolumeDao = _usageVolumeDao;
     }
 
@@ -168,7 +163,7 @@ public class VolumeUsageParser {
 
         UsageVO usageRecord = new UsageVO(zoneId, account.getId(), account.getDomainId(), usageDesc, usageDisplay + " Hrs", type, new Double(usage), null, null, doId, templateId, volId,
                 size, startDate, endDate);
-        s_usageDao.persist(usageRecord);
+        UsageRecordBatch.add(usageRecord);
     }
 
     private static class VolInfo {
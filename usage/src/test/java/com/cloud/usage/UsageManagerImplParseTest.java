@@ -0,0 +1,207 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+package com.cloud.usage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.cloud.usage.dao.UsageParseCheckpointDao;
+import com.cloud.user.AccountVO;
+import com.cloud.utils.Pair;
+import com.cloud.utils.db.TransactionLegacy;
+import com.cloud.utils.exception.CloudRuntimeException;
+
+@RunWith(MockitoJUnitRunner.class)
+public class UsageManagerImplParseTest {
+
+    private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final long START = 1640995200000L; // 2022-01-01 00:00:00 GMT
+    private static final long ACCOUNT_ID = 1L;
+
+    @Spy
+    @InjectMocks
+    private UsageManagerImpl usageManagerImpl;
+
+    @Mock
+    private UsageParseCheckpointDao usageParseCheckpointDaoMock;
+
+    @Mock
+    private AccountVO accountMock;
+
+    private final Date startDate = new Date(START);
+    private final Date endDate = new Date(START + HOUR - 1);
+
+    @Before
+    public void before() {
+        ReflectionTestUtils.setField(usageManagerImpl, "_incrementalParse", true);
+    }
+
+    private boolean parseAccountInTransaction(Map<Long, Long> checkpoints) {
+        TransactionLegacy txn = TransactionLegacy.open(TransactionLegacy.USAGE_DB);
+        try {
+            txn.start();
+            boolean parsed = usageManagerImpl.parseAccount(accountMock, startDate, endDate, checkpoints);
+            txn.commit();
+            return parsed;
+        } finally {
+            txn.close();
+        }
+    }
+
+    @Test
+    public void getAggregationWindowsSplitsThePeriodInAggregationRanges() {
+        List<Pair<Date, Date>> windows = UsageManagerImpl.getAggregationWindows(new Date(START), new Date(START + 3 * HOUR - 1), 60, GMT);
+
+        Assert.assertEquals(3, windows.size());
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(START + i * HOUR, windows.get(i).first().getTime());
+            Assert.assertEquals(START + (i + 1) * HOUR - 1, windows.get(i).second().getTime());
+        }
+    }
+
+    @Test
+    public void getAggregationWindowsSingleRange() {
+        List<Pair<Date, Date>> windows = UsageManagerImpl.getAggregationWindows(new Date(START), new Date(START + HOUR - 1), 60, GMT);
+
+        Assert.assertEquals(1, windows.size());
+        Assert.assertEquals(START, windows.get(0).first().getTime());
+        Assert.assertEquals(START + HOUR - 1, windows.get(0).second().getTime());
+    }
+
+    @Test
+    public void parseAccountSkipsAnAccountWhoseCheckpointCoversTheRange() {
+        Mockito.when(accountMock.getId()).thenReturn(ACCOUNT_ID);
+
+        Assert.assertTrue(parseAccountInTransaction(Collections.singletonMap(ACCOUNT_ID, endDate.getTime())));
+
+        Mockito.verify(usageManagerImpl, Mockito.never()).parseHelperTables(Mockito.any(AccountVO.class), Mockito.any(Date.class), Mockito.any(Date.class));
+        Mockito.verify(usageParseCheckpointDaoMock, Mockito.never()).updateParsedUntil(Mockito.anyLong(), Mockito.anyLong());
+    }
+
+    @Test
+    public void parseAccountParsesAPartiallyCoveredRangeFromTheCheckpointOnward() {
+        long parsedUntil = START + HOUR / 2;
+        Mockito.when(accountMock.getId()).thenReturn(ACCOUNT_ID);
+        Mockito.doReturn(true).when(usageManagerImpl).parseHelperTables(Mockito.eq(accountMock), Mockito.any(Date.class), Mockito.any(Date.class));
+
+        Assert.assertTrue(parseAccountInTransaction(Collections.singletonMap(ACCOUNT_ID, parsedUntil)));
+
+        Mockito.verify(usageManagerImpl).parseHelperTables(accountMock, new Date(parsedUntil + 1), endDate);
+    }
+
+    @Test
+    public void parseAccountCommitsTheCheckpointWithTheRecordsOfTheAccount() {
+        final List<Long> committedCheckpoints = new ArrayList<>();
+        Mockito.when(accountMock.getId()).thenReturn(ACCOUNT_ID);
+        Mockito.doReturn(true).when(usageManagerImpl).parseHelperTables(accountMock, startDate, endDate);
+        Mockito.doAnswer(invocation -> {
+            long parsedUntil = invocation.getArgument(1);
+            TransactionLegacy.runAfterCommit(() -> committedCheckpoints.add(parsedUntil));
+            return null;
+        }).when(usageParseCheckpointDaoMock).updateParsedUntil(ACCOUNT_ID, endDate.getTime());
+
+        TransactionLegacy txn = TransactionLegacy.open(TransactionLegacy.USAGE_DB);
+        try {
+            txn.start();
+            Assert.assertTrue(usageManagerImpl.parseAccount(accountMock, startDate, endDate, Collections.emptyMap()));
+            // committed by parseAccount itself, not by the commit of the usage job
+            Assert.assertEquals(Collections.singletonList(endDate.getTime()), committedCheckpoints);
+            txn.commit();
+        } finally {
+            txn.close();
+        }
+    }
+
+    @Test
+    public void parseAccountDoesNotMoveTheCheckpointWhenTheAccountFailsToParse() {
+        Mockito.doThrow(new CloudRuntimeException("parse failure")).when(usageManagerImpl).parseHelperTables(accountMock, startDate, endDate);
+
+        try {
+            parseAccountInTransaction(Collections.emptyMap());
+            Assert.fail("The parse failure should be thrown");
+        } catch (CloudRuntimeException e) {
+            Assert.assertEquals("parse failure", e.getMessage());
+        }
+
+        Mockito.verify(usageParseCheckpointDaoMock, Mockito.never()).updateParsedUntil(Mockito.anyLong(), Mockito.anyLong());
+    }
+
+    private boolean parseInParallel(ExecutorService parseExecutor) throws InterruptedException {
+        ReflectionTestUtils.setField(usageManagerImpl, "_parseWorkers", 2);
+        ReflectionTestUtils.setField(usageManagerImpl, "_parseExecutor", parseExecutor);
+        try {
+            return usageManagerImpl.parseInParallel(Collections.singletonList(accountMock), Collections.emptyList(),
+                    Collections.singletonList(new Pair<>(startDate, endDate)), Collections.emptyMap());
+        } finally {
+            parseExecutor.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void parseInParallelFailsWhenAWorkerFails() throws InterruptedException {
+        Mockito.doThrow(new AssertionError("parse failure")).when(usageManagerImpl).parseHelperTables(accountMock, startDate, endDate);
+
+        Assert.assertFalse(parseInParallel(Executors.newFixedThreadPool(2)));
+    }
+
+    @Test(timeout = 30000)
+    public void parseInParallelFailsWhenAWorkerCannotBeStarted() throws InterruptedException {
+        ExecutorService parseExecutor = Executors.newFixedThreadPool(2);
+        parseExecutor.shutdown();
+
+        Assert.assertFalse(parseInParallel(parseExecutor));
+    }
+
+    @Test(timeout = 30000)
+    public void parseInParallelDoesNotFailOnWorkersWithoutAccounts() throws InterruptedException {
+        Mockito.when(accountMock.getId()).thenReturn(ACCOUNT_ID);
+        Mockito.doReturn(true).when(usageManagerImpl).parseHelperTables(accountMock, startDate, endDate);
+
+        Assert.assertTrue(parseInParallel(Executors.newFixedThreadPool(2)));
+
+        Mockito.verify(usageManagerImpl).parseHelperTables(accountMock, startDate, endDate);
+    }
+
+    @Test(timeout = 30000)
+    public void parseInParallelCommitsTheCheckpointsOfEachWorker() throws InterruptedException {
+        ReflectionTestUtils.setField(usageManagerImpl, "_incrementalParse", false);
+        Mockito.when(accountMock.getId()).thenReturn(ACCOUNT_ID);
+        Mockito.doReturn(true).when(usageManagerImpl).parseHelperTables(accountMock, startDate, endDate);
+
+        Assert.assertTrue(parseInParallel(Executors.newFixedThreadPool(2)));
+
+        Mockito.verify(usageParseCheckpointDaoMock).updateParsedUntil(ACCOUNT_ID, endDate.getTime());
+    }
+}
@@ -0,0 +1,119 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.cloud.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in milliseconds, with fixed exponential buckets.
+ * Percentiles are approximated by the upper bound of the bucket they fall into.
+ */
+public class LatencyHistogram {
+
+    private static final long[] BUCKET_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000, Long.MAX_VALUE};
+
+    private final AtomicLongArray _buckets = new AtomicLongArray(BUCKET_BOUNDS.length);
+    private final AtomicLong _count = new AtomicLong(0);
+    private final AtomicLong _total = new AtomicLong(0);
+    private final AtomicLong _max = new AtomicLong(0);
+
+    public void record(long durationInMillis) {
+        if (durationInMillis < 0) {
+            durationInMillis = 0;
+        }
+        int i = 0;
+        while (durationInMillis > BUCKET_BOUNDS[i]) {
+            i++;
+        }
+        _buckets.incrementAndGet(i);
+        _count.incrementAndGet();
+        _total.addAndGet(durationInMillis);
+        final long duration = durationInMillis;
+        _max.accumulateAndGet(duration, Math::max);
+    }
+
+    public long getCount() {
+        return _count.get();
+    }
+
+    public long getTotal() {
+        return _total.get();
+    }
+
+    public long getMax() {
+        return _max.get();
+    }
+
+    public double getMean() {
+        long count = _count.get();
+        return count == 0 ? 0 : (double)_total.get() / count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return upper bound, in milliseconds, of the bucket the percentile falls into
+     */
+    public long getPercentile(double percentile) {
+        long count = _count.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long)Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            seen += _buckets.get(i);
+            if (seen >= rank && seen > 0) {
+                return Math.min(BUCKET_BOUNDS[i], _max.get());
+            }
+        }
+        return _max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+            _buckets.set(i, 0);
+        }
+        _count.set(0);
+        _total.set(0);
+        _max.set(0);
+    }
+
+    /**
+     * @return a summary suitable for JMX or API responses
+     */
+    public Map<String, String> toMap() {
+        Map<String, String> map = new LinkedHashMap<String, String>();
+        map.put("count", Long.toString(getCount()));
+        map.put("mean", String.format("%.2f", getMean()));
+        map.put("p50", Long.toString(getPercentile(50)));
+        map.put("p90", Long.toString(getPercentile(90)));
+        map.put("p99", Long.toString(getPercentile(99)));
+        map.put("max", Long.toString(getMax()));
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+}
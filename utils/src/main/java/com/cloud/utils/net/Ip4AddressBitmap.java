@@ -0,0 +1,82 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.cloud.utils.net;
+
+import java.util.BitSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Tracks which host addresses of an IPv4 cidr are in use, with one bit per address,
+ * so that even a /16 only takes 8KB and finding free addresses does not box them.
+ * The network and broadcast addresses are not part of the bitmap.
+ */
+public class Ip4AddressBitmap {
+    private final long _firstIp;
+    private final int _size;
+    private final BitSet _used;
+
+    public Ip4AddressBitmap(final String cidrAddress, final int cidrSize) {
+        if (cidrSize < 8 || cidrSize > 32) {
+            throw new IllegalArgumentException("Unsupported cidr size " + cidrSize + ", it must be between 8 and 32");
+        }
+        final long network = NetUtils.ip2Long(cidrAddress) & NetUtils.netMaskFromCidr(cidrSize);
+        _firstIp = network + 1;
+        // host addresses, without the network and the broadcast address
+        _size = Math.max(0, (1 << (32 - cidrSize)) - 2);
+        _used = new BitSet(_size);
+    }
+
+    public boolean contains(final long ip) {
+        return ip >= _firstIp && ip < _firstIp + _size;
+    }
+
+    /**
+     * Marks the address as in use, addresses out of the cidr are ignored.
+     *
+     * @return true if the address was free before.
+     */
+    public boolean setUsed(final long ip) {
+        if (!contains(ip)) {
+            return false;
+        }
+        final int index = (int)(ip - _firstIp);
+        final boolean wasFree = !_used.get(index);
+        _used.set(index);
+        return wasFree;
+    }
+
+    public boolean setUsed(final String ip) {
+        return setUsed(NetUtils.ip2Long(ip));
+    }
+
+    /**
+     * @return the lowest free addresses of the cidr, at most max of them, in ascending order.
+     */
+    public Set<Long> getFreeIps(final int max) {
+        final Set<Long> result = new TreeSet<Long>();
+        int index = _used.nextClearBit(0);
+        while (index < _size && result.size() < max) {
+            result.add(_firstIp + index);
+            index = _used.nextClearBit(index + 1);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,382 @@
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+
+package com.cloud.utils.ssh;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.log4j.Logger;
+
+import com.cloud.utils.LatencyHistogram;
+import com.cloud.utils.Pair;
+import com.trilead.ssh2.Connection;
+import com.trilead.ssh2.Session;
+
+/**
+ * Keeps one authenticated SSH connection per host and runs every command and file push to that
+ * host as a new channel on it, the same way an OpenSSH ControlMaster multiplexes sessions. This
+ * saves the TCP connect, key exchange and authentication of each command, which dominate the
+ * cost of short scripts.
+ *
+ * A connection that has been idle for longer than the idle timeout is closed, and one that was
+ * lost is replaced on its next use. The number of concurrent channels on a connection is bounded,
+ * as sshd refuses new sessions above its MaxSessions limit (10 by default).
+ *
+ * A host that goes away without closing its TCP connection leaves the SSH calls waiting for replies
+ * that never come, so each command is bounded as a whole, from connecting to its exit status, by its
+ * timeout: when the timeout passes, the connection is closed, which fails every call blocked on it.
+ */
+public class SshConnectionPool {
+    private static final Logger s_logger = Logger.getLogger(SshConnectionPool.class);
+
+    private static final ScheduledThreadPoolExecutor s_watchdog = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "SshConnectionPool-Watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        s_watchdog.setRemoveOnCancelPolicy(true);
+    }
+
+    public static final int DEFAULT_MAX_SESSIONS = 8;
+
+    private final int _port;
+    private final String _user;
+    private final File _pemKeyFile;
+    private final int _connectTimeoutInMs;
+    private final int _kexTimeoutInMs;
+    private final long _idleTimeoutInMs;
+    private final int _maxSessions;
+
+    private final Map<String, PooledConnection> _connections = new ConcurrentHashMap<String, PooledConnection>();
+    private final Map<String, ReentrantLock> _openLocks = new ConcurrentHashMap<String, ReentrantLock>();
+    private final Map<String, LatencyHistogram> _latencies = new ConcurrentHashMap<String, LatencyHistogram>();
+    private volatile long _lastIdleCheck = System.currentTimeMillis();
+
+    private class PooledConnection {
+        final String host;
+        final Connection conn;
+        final Semaphore sessions = new Semaphore(_maxSessions);
+        volatile long lastUsed = System.currentTimeMillis();
+        volatile boolean lost;
+
+        PooledConnection(String host, Connection conn) {
+            this.host = host;
+            this.conn = conn;
+        }
+
+        boolean isIdle(long now) {
+            return sessions.availablePermits() == _maxSessions && now - lastUsed > _idleTimeoutInMs;
+        }
+    }
+
+    /**
+     * Closes the connection when the deadline of a call passes, which is the only way to wake up a call
+     * waiting on a host that went away: a session blocked on it cannot be closed on its own. The other
+     * commands running on the connection fail too, as the host is not answering them either.
+     */
+    private class Watchdog implements Runnable {
+        final PooledConnection pooled;
+        final ScheduledFuture<?> future;
+        volatile boolean expired;
+
+        Watchdog(PooledConnection pooled, long deadline) {
+            this.pooled = pooled;
+            this.future = s_watchdog.schedule(this, deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void run() {
+            expired = true;
+            s_logger.warn("SSH call to " + pooled.host + " did not complete in time, closing its connection");
+            invalidate(pooled);
+        }
+
+        void cancel() {
+            future.cancel(false);
+        }
+    }
+
+    public SshConnectionPool(int port, String user, File pemKeyFile, int connectTimeoutInMs, int kexTimeoutInMs, long idleTimeoutInMs) {
+        this(port, user, pemKeyFile, connectTimeoutInMs, kexTimeoutInMs, idleTimeoutInMs, DEFAULT_MAX_SESSIONS);
+    }
+
+    public SshConnectionPool(int port, String user, File pemKeyFile, int connectTimeoutInMs, int kexTimeoutInMs, long idleTimeoutInMs, int maxSessions) {
+        _port = port;
+        _user = user;
+        _pemKeyFile = pemKeyFile;
+        _connectTimeoutInMs = connectTimeoutInMs;
+        _kexTimeoutInMs = kexTimeoutInMs;
+        _idleTimeoutInMs = idleTimeoutInMs;
+        _maxSessions = maxSessions;
+    }
+
+    /**
+     * Runs the command on the host and returns whether it exited with status 0, along with its output.
+     * If the pooled connection turns out to be gone when the session is opened, nothing was sent to the
+     * host yet, so the command is retried once on a new connection. The whole call, including opening
+     * the connection, is bounded by the timeout.
+     */
+    public Pair<Boolean, String> execute(String host, String command, int waitResultTimeoutInMs) throws Exception {
+        final long startTime = System.currentTimeMillis();
+        final long deadline = startTime + waitResultTimeoutInMs;
+        try {
+            for (int attempt = 1; ; attempt++) {
+                final PooledConnection pooled = acquire(host, deadline);
+                final Watchdog watchdog = new Watchdog(pooled, deadline);
+                Session sess = null;
+                try {
+                    try {
+                        sess = pooled.conn.openSession();
+                    } catch (IOException e) {
+                        invalidate(pooled);
+                        if (attempt > 1 || watchdog.expired) {
+                            throw e;
+                        }
+                        s_logger.debug("Pooled SSH connection to " + host + " is no longer usable, reconnecting: " + e.getMessage());
+                        continue;
+                    }
+                    final Pair<Boolean, String> result = SshHelper.executeInSession(sess, command, remainingTime(host, deadline));
+                    if (watchdog.expired) {
+                        throw new SshException("Timed out after " + waitResultTimeoutInMs + " ms running the command on " + host);
+                    }
+                    return result;
+                } catch (Exception e) {
+                    if (watchdog.expired && !(e instanceof SshException)) {
+                        throw new SshException("Timed out after " + waitResultTimeoutInMs + " ms running the command on " + host, e);
+                    }
+                    throw e;
+                } finally {
+                    watchdog.cancel();
+                    if (sess != null) {
+                        sess.close();
+                    }
+                    release(pooled);
+                }
+            }
+        } finally {
+            recordLatency(host, System.currentTimeMillis() - startTime);
+        }
+    }
+
+    /**
+     * Copies the data to a file on the host over its pooled connection. Copying a file is idempotent,
+     * so it is retried once on a new connection if the pooled one was lost. The whole call is bounded by
+     * the timeout.
+     */
+    public void scpTo(String host, String remoteTargetDirectory, byte[] data, String remoteFileName, String fileMode, int timeoutInMs) throws Exception {
+        final long startTime = System.currentTimeMillis();
+        final long deadline = startTime + timeoutInMs;
+        try {
+            for (int attempt = 1; ; attempt++) {
+                final PooledConnection pooled = acquire(host, deadline);
+                final Watchdog watchdog = new Watchdog(pooled, deadline);
+                try {
+                    if (fileMode != null) {
+                        pooled.conn.createSCPClient().put(data, remoteFileName, remoteTargetDirectory, fileMode);
+                    } else {
+                        pooled.conn.createSCPClient().put(data, remoteFileName, remoteTargetDirectory);
+                    }
+                    return;
+                } catch (IOException e) {
+                    if (watchdog.expired) {
+                        throw new SshException("Timed out after " + timeoutInMs + " ms copying " + remoteFileName + " to " + host, e);
+                    }
+                    if (attempt > 1 || !pooled.lost) {
+                        throw e;
+                    }
+                    s_logger.debug("Pooled SSH connection to " + host + " was lost, reconnecting: " + e.getMessage());
+                } finally {
+                    watchdog.cancel();
+                    release(pooled);
+                }
+            }
+        } finally {
+            recordLatency(host, System.currentTimeMillis() - startTime);
+        }
+    }
+
+    /**
+     * Returns the connection to the host, opening it if needed. Connections are opened under a lock
+     * per host, so a host that does not answer only holds up the callers of that host.
+     */
+    private PooledConnection acquire(String host, long deadline) throws Exception {
+        closeIdleConnections();
+
+        PooledConnection pooled = _connections.get(host);
+        if (pooled == null || pooled.lost) {
+            final ReentrantLock lock = _openLocks.computeIfAbsent(host, h -> new ReentrantLock());
+            if (!lock.tryLock(remainingTime(host, deadline), TimeUnit.MILLISECONDS)) {
+                throw new SshException("Timed out waiting for the SSH connection to " + host + " to be opened");
+            }
+            try {
+                pooled = _connections.get(host);
+                if (pooled == null || pooled.lost) {
+                    if (pooled != null) {
+                        invalidate(pooled);
+                    }
+                    pooled = open(host, remainingTime(host, deadline));
+                    _connections.put(host, pooled);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (!pooled.sessions.tryAcquire(remainingTime(host, deadline), TimeUnit.MILLISECONDS)) {
+            throw new SshException("Timed out waiting for a free SSH session to " + host);
+        }
+        pooled.lastUsed = System.currentTimeMillis();
+        return pooled;
+    }
+
+    private void release(PooledConnection pooled) {
+        pooled.lastUsed = System.currentTimeMillis();
+        pooled.sessions.release();
+    }
+
+    private int remainingTime(String host, long deadline) throws SshException {
+        final long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            throw new SshException("Timed out waiting for the SSH connection to " + host);
+        }
+        return (int)remaining;
+    }
+
+    /**
+     * Opens and authenticates a new connection to the host, in at most the given time.
+     */
+    protected Connection connect(String host, int timeoutInMs) throws Exception {
+        final Connection conn = new Connection(host, _port);
+        final ScheduledFuture<?> watchdog = s_watchdog.schedule(conn::close, timeoutInMs, TimeUnit.MILLISECONDS);
+        boolean authenticated = false;
+        try {
+            conn.connect(null, Math.min(_connectTimeoutInMs, timeoutInMs), Math.min(_kexTimeoutInMs, timeoutInMs));
+            conn.setTCPNoDelay(true);
+            if (!conn.authenticateWithPublicKey(_user, _pemKeyFile, null)) {
+                String msg = "Failed to authentication SSH user " + _user + " on host " + host;
+                s_logger.error(msg);
+                throw new SshException(msg);
+            }
+            authenticated = watchdog.cancel(false);
+            if (!authenticated) {
+                throw new SshException("Timed out after " + timeoutInMs + " ms opening the SSH connection to " + host);
+            }
+        } catch (IOException e) {
+            if (!watchdog.cancel(false)) {
+                throw new SshException("Timed out after " + timeoutInMs + " ms opening the SSH connection to " + host, e);
+            }
+            throw e;
+        } finally {
+            watchdog.cancel(false);
+            if (!authenticated) {
+                conn.close();
+            }
+        }
+        return conn;
+    }
+
+    private PooledConnection open(String host, int timeoutInMs) throws Exception {
+        final PooledConnection pooled = new PooledConnection(host, connect(host, timeoutInMs));
+        pooled.conn.addConnectionMonitor(reason -> {
+            pooled.lost = true;
+            _connections.remove(host, pooled);
+        });
+        if (s_logger.isDebugEnabled()) {
+            s_logger.debug("Opened pooled SSH connection to " + host + ":" + _port);
+        }
+        return pooled;
+    }
+
+    private void invalidate(PooledConnection pooled) {
+        pooled.lost = true;
+        _connections.remove(pooled.host, pooled);
+        pooled.conn.close();
+    }
+
+    private void recordLatency(String host, long duration) {
+        _latencies.computeIfAbsent(host, h -> new LatencyHistogram()).record(duration);
+    }
+
+    /**
+     * Closes the connections that were not used for longer than the idle timeout. This runs at most
+     * once per idle timeout, from the threads using the pool, so no housekeeping thread is needed.
+     */
+    protected void closeIdleConnections() {
+        final long now = System.currentTimeMillis();
+        if (now - _lastIdleCheck < _idleTimeoutInMs) {
+            return;
+        }
+        _lastIdleCheck = now;
+
+        Iterator<PooledConnection> it = _connections.values().iterator();
+        while (it.hasNext()) {
+            PooledConnection pooled = it.next();
+            if (pooled.isIdle(now)) {
+                it.remove();
+                pooled.conn.close();
+                LatencyHistogram latency = _latencies.remove(pooled.host);
+                if (s_logger.isDebugEnabled()) {
+                    s_logger.debug("Closed idle SSH connection to " + pooled.host + (latency != null ? ", command latency: " + latency : ""));
+                }
+            }
+        }
+    }
+
+    public void close(String host) {
+        PooledConnection pooled = _connections.remove(host);
+        if (pooled != null) {
+            pooled.conn.close();
+        }
+        _latencies.remove(host);
+    }
+
+    public void closeAll() {
+        for (String host : _connections.keySet()) {
+            close(host);
+        }
+    }
+
+    public int getConnectionCount() {
+        return _connections.size();
+    }
+
+    /**
+     * Returns the command latency statistics of each host with an open connection.
+     */
+    public Map<String, Map<String, String>> getLatencyStats() {
+        Map<String, Map<String, String>> stats = new HashMap<String, Map<String, String>>();
+        for (Map.Entry<String, LatencyHistogram> entry : _latencies.entrySet()) {
+            stats.put(entry.getKey(), entry.getValue().toMap());
+        }
+        return stats;
+    }
+
+    public LatencyHistogram getLatency(String host) {
+        return _latencies.get(host);
+    }
+}
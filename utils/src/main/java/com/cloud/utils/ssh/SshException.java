@@ -27,4 +27,8 @@ public class SshException extends Exception {
     public SshException(String msg) {
         super(msg);
     }
+
+    public SshException(String msg, Throwable cause) {
+        super(msg, cause);
+    }
 }
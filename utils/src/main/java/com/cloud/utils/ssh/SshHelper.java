@@ -224,72 +224,80 @@ public class SshHelper {
             }
             sess = openConnectionSession(conn);
 
-            sess.execCommand(command);
+            return executeInSession(sess, command, waitResultTimeoutInMs);
+        } finally {
+            if (sess != null)
+                sess.close();
 
-            InputStream stdout = sess.getStdout();
-            InputStream stderr = sess.getStderr();
+            if (conn != null)
+                conn.close();
+        }
+    }
 
-            byte[] buffer = new byte[8192];
-            StringBuffer sbResult = new StringBuffer();
-            int currentReadBytes = 0;
-            while (true) {
-                throwSshExceptionIfStdoutOrStdeerIsNull(stdout, stderr);
+    /**
+     * Runs the command in the given session, which must not have been used yet, and waits
+     * for its exit status. The connection the session belongs to is left open, so it can be
+     * shared by several commands.
+     */
+    public static Pair<Boolean, String> executeInSession(Session sess, String command, int waitResultTimeoutInMs) throws Exception {
+        sess.execCommand(command);
 
-                if ((stdout.available() == 0) && (stderr.available() == 0)) {
-                    int conditions = sess.waitForCondition(ChannelCondition.STDOUT_DATA | ChannelCondition.STDERR_DATA | ChannelCondition.EOF | ChannelCondition.EXIT_STATUS,
-                            waitResultTimeoutInMs);
+        InputStream stdout = sess.getStdout();
+        InputStream stderr = sess.getStderr();
 
-                    throwSshExceptionIfConditionsTimeout(conditions);
+        byte[] buffer = new byte[8192];
+        StringBuffer sbResult = new StringBuffer();
+        int currentReadBytes = 0;
+        while (true) {
+            throwSshExceptionIfStdoutOrStdeerIsNull(stdout, stderr);
 
-                    if ((conditions & ChannelCondition.EXIT_STATUS) != 0) {
-                        break;
-                    }
+            if ((stdout.available() == 0) && (stderr.available() == 0)) {
+                int conditions = sess.waitForCondition(ChannelCondition.STDOUT_DATA | ChannelCondition.STDERR_DATA | ChannelCondition.EOF | ChannelCondition.EXIT_STATUS,
+                        waitResultTimeoutInMs);
 
-                    if (canEndTheSshConnection(waitResultTimeoutInMs, sess, conditions)) {
-                        break;
-                    }
-                }
+                throwSshExceptionIfConditionsTimeout(conditions);
 
-               while((currentReadBytes = stdout.read(buffer)) != -1) {
-                    sbResult.append(new String(buffer, 0 , currentReadBytes));
+                if ((conditions & ChannelCondition.EXIT_STATUS) != 0) {
+                    break;
                 }
 
-                while((currentReadBytes = stderr.read(buffer)) != -1) {
-                    sbResult.append(new String(buffer, 0, currentReadBytes));
+                if (canEndTheSshConnection(waitResultTimeoutInMs, sess, conditions)) {
+                    break;
                 }
             }
 
-            String result = sbResult.toString();
-            if (StringUtils.isBlank(result)) {
-                try {
-                    result = IOUtils.toString(stdout, StandardCharsets.UTF_8);
-                }
-                catch (IOException e) {
-                    s_logger.error("Couldn't get content of input stream due to: " + e.getMessage());
-                    return new Pair<Boolean, String>(false, result);
-                }
+           while((currentReadBytes = stdout.read(buffer)) != -1) {
+                sbResult.append(new String(buffer, 0 , currentReadBytes));
             }
 
-            if (sess.getExitStatus() == null) {
-                //Exit status is NOT available. Returning failure result.
-                s_logger.error(String.format("SSH execution of command %s has no exit status set. Result output: %s", command, result));
-                return new Pair<Boolean, String>(false, result);
+            while((currentReadBytes = stderr.read(buffer)) != -1) {
+                sbResult.append(new String(buffer, 0, currentReadBytes));
             }
+        }
 
-            if (sess.getExitStatus() != null && sess.getExitStatus().intValue() != 0) {
-                s_logger.error(String.format("SSH execution of command %s has an error status code in return. Result output: %s", command, result));
+        String result = sbResult.toString();
+        if (StringUtils.isBlank(result)) {
+            try {
+                result = IOUtils.toString(stdout, StandardCharsets.UTF_8);
+            }
+            catch (IOException e) {
+                s_logger.error("Couldn't get content of input stream due to: " + e.getMessage());
                 return new Pair<Boolean, String>(false, result);
             }
-            return new Pair<Boolean, String>(true, result);
-        } finally {
-            if (sess != null)
-                sess.close();
+        }
 
-            if (conn != null)
-                conn.close();
+        if (sess.getExitStatus() == null) {
+            //Exit status is NOT available. Returning failure result.
+            s_logger.error(String.format("SSH execution of command %s has no exit status set. Result output: %s", command, result));
+            return new Pair<Boolean, String>(false, result);
         }
-    }
 
+        if (sess.getExitStatus() != null && sess.getExitStatus().intValue() != 0) {
+            s_logger.error(String.format("SSH execution of command %s has an error status code in return. Result output: %s", command, result));
+            return new Pair<Boolean, String>(false, result);
+        }
+        return new Pair<Boolean, String>(true, result);
+    }
 
     protected static Session openConnectionSession(Connection conn) throws IOException, InterruptedException {
         Session sess = conn.openSession();
@@ -0,0 +1,78 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.cloud.utils.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class Ip4AddressBitmapTest {
+
+    @Test
+    public void testHostAddressesOnly() {
+        Ip4AddressBitmap bitmap = new Ip4AddressBitmap("10.1.1.17", 24);
+        assertFalse(bitmap.contains(NetUtils.ip2Long("10.1.1.0")));
+        assertTrue(bitmap.contains(NetUtils.ip2Long("10.1.1.1")));
+        assertTrue(bitmap.contains(NetUtils.ip2Long("10.1.1.254")));
+        assertFalse(bitmap.contains(NetUtils.ip2Long("10.1.1.255")));
+    }
+
+    @Test
+    public void testSetUsed() {
+        Ip4AddressBitmap bitmap = new Ip4AddressBitmap("10.1.0.0", 16);
+        assertTrue(bitmap.setUsed("10.1.0.1"));
+        assertFalse(bitmap.setUsed("10.1.0.1"));
+        assertFalse(bitmap.setUsed("10.2.0.1"));
+        assertTrue(bitmap.setUsed("10.1.255.254"));
+        Set<Long> freeIps = bitmap.getFreeIps(1);
+        assertEquals(1, freeIps.size());
+        assertTrue(freeIps.contains(NetUtils.ip2Long("10.1.0.2")));
+    }
+
+    @Test
+    public void testGetFreeIpsMatchesGetAllIpsFromCidr() {
+        Ip4AddressBitmap bitmap = new Ip4AddressBitmap("192.168.0.0", 20);
+        Set<Long> usedIps = new HashSet<Long>();
+        for (long ip = NetUtils.ip2Long("192.168.0.1"); ip < NetUtils.ip2Long("192.168.1.100"); ip += 3) {
+            bitmap.setUsed(ip);
+            usedIps.add(ip);
+        }
+        assertEquals(NetUtils.getAllIpsFromCidr("192.168.0.0", 20, usedIps), bitmap.getFreeIps(255));
+    }
+
+    @Test
+    public void testFullCidr() {
+        Ip4AddressBitmap bitmap = new Ip4AddressBitmap("10.1.1.0", 30);
+        bitmap.setUsed("10.1.1.1");
+        bitmap.setUsed("10.1.1.2");
+        assertTrue(bitmap.getFreeIps(255).isEmpty());
+        assertTrue(new Ip4AddressBitmap("10.1.1.1", 32).getFreeIps(255).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedCidrSize() {
+        new Ip4AddressBitmap("10.0.0.0", 4);
+    }
+}
@@ -0,0 +1,220 @@
+//
+// Licensed to the Apache Software Foundation (ASF) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  The ASF licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+//
+
+package com.cloud.utils.ssh;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.cloud.utils.Pair;
+import com.trilead.ssh2.ChannelCondition;
+import com.trilead.ssh2.Connection;
+import com.trilead.ssh2.Session;
+
+public class SshConnectionPoolTest {
+
+    private static class TestPool extends SshConnectionPool {
+        final Queue<Connection> connections = new LinkedList<Connection>();
+        int connects;
+
+        TestPool(long idleTimeoutInMs) {
+            super(3922, "root", new File("/dev/null"), 1000, 1000, idleTimeoutInMs);
+        }
+
+        @Override
+        protected Connection connect(String host, int timeoutInMs) {
+            connects++;
+            return connections.remove();
+        }
+    }
+
+    private Connection mockConnection() throws Exception {
+        Connection conn = Mockito.mock(Connection.class);
+        Mockito.when(conn.openSession()).thenAnswer(invocation -> mockSession("ok"));
+        return conn;
+    }
+
+    private Session mockSession(String output) throws Exception {
+        Session sess = Mockito.mock(Session.class);
+        Mockito.when(sess.getStdout()).thenReturn(new ByteArrayInputStream(output.getBytes()));
+        Mockito.when(sess.getStderr()).thenReturn(new ByteArrayInputStream(new byte[0]));
+        Mockito.when(sess.waitForCondition(Mockito.anyInt(), Mockito.anyLong())).thenReturn(ChannelCondition.EXIT_STATUS);
+        Mockito.when(sess.getExitStatus()).thenReturn(0);
+        return sess;
+    }
+
+    @Test
+    public void executeReusesTheConnectionOfTheHost() throws Exception {
+        TestPool pool = new TestPool(60000);
+        Connection conn = mockConnection();
+        pool.connections.add(conn);
+
+        Pair<Boolean, String> first = pool.execute("169.254.0.10", "/opt/cloud/bin/netusage.sh -g", 1000);
+        Pair<Boolean, String> second = pool.execute("169.254.0.10", "/opt/cloud/bin/netusage.sh -g", 1000);
+
+        Assert.assertTrue(first.first());
+        Assert.assertEquals("ok", first.second());
+        Assert.assertTrue(second.first());
+        Assert.assertEquals(1, pool.connects);
+        Assert.assertEquals(1, pool.getConnectionCount());
+        Mockito.verify(conn, Mockito.times(2)).openSession();
+        Assert.assertEquals(2, pool.getLatency("169.254.0.10").getCount());
+    }
+
+    @Test
+    public void executeReconnectsWhenTheConnectionIsGone() throws Exception {
+        TestPool pool = new TestPool(60000);
+        Connection stale = Mockito.mock(Connection.class);
+        Mockito.when(stale.openSession()).thenThrow(new IOException("connection closed"));
+        Connection fresh = mockConnection();
+        pool.connections.add(stale);
+        pool.connections.add(fresh);
+
+        Pair<Boolean, String> result = pool.execute("169.254.0.10", "/opt/cloud/bin/netusage.sh -g", 1000);
+
+        Assert.assertTrue(result.first());
+        Assert.assertEquals(2, pool.connects);
+        Mockito.verify(stale).close();
+        Mockito.verify(fresh).openSession();
+    }
+
+    @Test(expected = IOException.class)
+    public void executeFailsWhenTheNewConnectionIsGoneToo() throws Exception {
+        TestPool pool = new TestPool(60000);
+        for (int i = 0; i < 2; i++) {
+            Connection stale = Mockito.mock(Connection.class);
+            Mockito.when(stale.openSession()).thenThrow(new IOException("connection closed"));
+            pool.connections.add(stale);
+        }
+
+        pool.execute("169.254.0.10", "/opt/cloud/bin/netusage.sh -g", 1000);
+    }
+
+    @Test
+    public void executeKeepsOneConnectionPerHost() throws Exception {
+        TestPool pool = new TestPool(60000);
+        pool.connections.add(mockConnection());
+        pool.connections.add(mockConnection());
+
+        pool.execute("169.254.0.10", "true", 1000);
+        pool.execute("169.254.0.11", "true", 1000);
+        pool.execute("169.254.0.10", "true", 1000);
+
+        Assert.assertEquals(2, pool.connects);
+        Assert.assertEquals(2, pool.getConnectionCount());
+        Assert.assertEquals(2, pool.getLatencyStats().size());
+    }
+
+    @Test
+    public void idleConnectionsAreClosed() throws Exception {
+        TestPool pool = new TestPool(0);
+        Connection first = mockConnection();
+        pool.connections.add(first);
+        pool.connections.add(mockConnection());
+
+        pool.execute("169.254.0.10", "true", 1000);
+        Thread.sleep(5);
+        pool.execute("169.254.0.10", "true", 1000);
+
+        Assert.assertEquals(2, pool.connects);
+        Mockito.verify(first).close();
+    }
+
+    /**
+     * A connection whose peer went away: opening a session waits until the connection is closed.
+     */
+    private Connection hangingConnection() throws Exception {
+        final CountDownLatch closed = new CountDownLatch(1);
+        Connection conn = Mockito.mock(Connection.class);
+        Mockito.doAnswer(invocation -> {
+            closed.countDown();
+            return null;
+        }).when(conn).close();
+        Mockito.when(conn.openSession()).thenAnswer(invocation -> {
+            closed.await();
+            throw new IOException("connection closed");
+        });
+        return conn;
+    }
+
+    @Test(timeout = 30000)
+    public void executeIsBoundedByItsTimeoutWhenTheHostDoesNotAnswer() throws Exception {
+        TestPool pool = new TestPool(60000);
+        Connection hanging = hangingConnection();
+        pool.connections.add(hanging);
+
+        long startTime = System.currentTimeMillis();
+        try {
+            pool.execute("169.254.0.10", "true", 200);
+            Assert.fail("The command should have timed out");
+        } catch (SshException e) {
+            Assert.assertTrue(e.getMessage().contains("Timed out"));
+        }
+
+        Assert.assertTrue(System.currentTimeMillis() - startTime < 10000);
+        Assert.assertEquals(1, pool.connects);
+        Assert.assertEquals(0, pool.getConnectionCount());
+        Mockito.verify(hanging, Mockito.atLeastOnce()).close();
+    }
+
+    @Test(timeout = 30000)
+    public void openingAConnectionOnlyHoldsUpItsOwnHost() throws Exception {
+        final CountDownLatch connecting = new CountDownLatch(1);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        final Connection other = mockConnection();
+        SshConnectionPool pool = new SshConnectionPool(3922, "root", new File("/dev/null"), 1000, 1000, 60000) {
+            @Override
+            protected Connection connect(String host, int timeoutInMs) throws Exception {
+                if (host.equals("169.254.0.10")) {
+                    connecting.countDown();
+                    unblock.await();
+                    throw new IOException("connection refused");
+                }
+                return other;
+            }
+        };
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Pair<Boolean, String>> blocked = executor.submit(() -> pool.execute("169.254.0.10", "true", 20000));
+            Assert.assertTrue(connecting.await(10, TimeUnit.SECONDS));
+
+            Pair<Boolean, String> result = pool.execute("169.254.0.11", "true", 5000);
+
+            Assert.assertTrue(result.first());
+            Assert.assertFalse(blocked.isDone());
+            unblock.countDown();
+        } finally {
+            unblock.countDown();
+            executor.shutdownNow();
+        }
+    }
+}